@@ -8,4 +8,4 @@ for i in ${LIB_DIR}*.jar; do
     CLASSPATH=$CLASSPATH:$i
 done
 
-$JAVA_HOME/bin/java -cp ${CLASSPATH} mil.nga.rod.accelerator.CacheManager
+$JAVA_HOME/bin/java -cp ${CLASSPATH} mil.nga.rod.accelerator.CacheManager "$@"
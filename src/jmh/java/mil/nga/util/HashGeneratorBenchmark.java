@@ -0,0 +1,234 @@
+package mil.nga.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mil.nga.types.HashType;
+
+/**
+ * JMH benchmarks measuring the throughput of file hashing for every
+ * combination of whole-file hash type, read buffer size, I/O strategy and
+ * file size.
+ * The I/O strategies are:
+ * <ul>
+ * <li><code>STREAM</code> - an <code>InputStream</code> feeding a heap
+ * buffer to the digest (the approach of the commons codec
+ * <code>DigestUtils</code> methods originally used).</li>
+ * <li><code>CHANNEL</code> - <code>HashGenerator</code> as configured in
+ * production (<code>FileChannel</code> reads into a direct buffer).</li>
+ * <li><code>READ_AHEAD</code> - <code>HashGenerator</code> with
+ * double-buffered asynchronous read-ahead.</li>
+ * </ul>
+ * Memory mapping does not use a read buffer, so it is measured separately
+ * by <code>MappedHashBenchmark</code>.  The tree and sampled hash types
+ * cannot be computed by <code>STREAM</code>, so they are measured 
+ * separately by <code>SegmentedHashBenchmark</code>.
+ *
+ * Throughput is reported by the <code>megabytes</code> counter (MB/s of 
+ * file data actually read).
+ * Run with <code>-prof gc</code> (the default of the benchmark profile)
+ * for the allocation rate.  The test files are generated once per trial
+ * in the directory named by the <code>benchmark.dir</code> system
+ * property (defaulted to <code>java.io.tmpdir</code>); unless the files
+ * are larger than the available memory the results reflect reads from
+ * the page cache rather than from disk.
+ *
+ * The full parameter space is large.  Narrow it with <code>-p</code>,
+ * e.g. <code>-p hashType=MD5,XXHASH64 -p fileSizeMB=1024</code>.
+ *
+ * @author L. Craig Carpenter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashGeneratorBenchmark {
+
+    /**
+     * Number of bytes in one MB.
+     */
+    private static final int MB = 1024 * 1024;
+
+    @Param({ "MD5", "SHA1", "SHA256", "SHA384", "SHA512", "XXHASH64" })
+    public String hashType;
+
+    @Param({ "64", "1024", "8192" })
+    public int bufferSizeKB;
+
+    @Param({ "STREAM", "CHANNEL", "READ_AHEAD" })
+    public String strategy;
+
+    @Param({ "1", "64", "1024", "4096" })
+    public int fileSizeMB;
+
+    // Private internal members.
+    private HashType      type;
+    private Path          file;
+    private HashGenerator generator;
+    private byte[]        heapBuffer;
+
+    /**
+     * Bytes read by <code>HashGenerator</code>, reported to it as its read
+     * throttle.
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Counts the MB read so that JMH reports MB/s alongside ops/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+    }
+
+    /**
+     * Generate the test file and configure the strategy.
+     *
+     * @throws IOException Thrown if the test file cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+
+        type       = HashType.valueOf(hashType);
+        if ("STREAM".equals(strategy) && 
+                (type.getMode() != HashType.Mode.STREAM)) {
+            throw new IllegalArgumentException("Strategy [ STREAM ] does "
+                    + "not support hash type [ "
+                    + hashType
+                    + " ].  Use SegmentedHashBenchmark.");
+        }
+        heapBuffer = new byte[bufferSizeKB * 1024];
+        generator  = new HashGenerator(bufferSizeKB * 1024, null, 0L, 
+                new ReadThrottle() {
+                    @Override
+                    public void acquire(Path file, int bytes)
+                            throws InterruptedIOException {
+                        bytesRead.addAndGet(bytes);
+                    }
+                },
+                "READ_AHEAD".equals(strategy));
+
+        file = createFile(fileSizeMB);
+    }
+
+    /**
+     * Generate a test file of random data in the directory named by the
+     * <code>benchmark.dir</code> system property.
+     *
+     * @param sizeMB The size of the file (in MB).
+     * @return The path of the file.
+     * @throws IOException Thrown if the test file cannot be written.
+     */
+    static Path createFile(int sizeMB) throws IOException {
+        Path dir  = Paths.get(System.getProperty(
+                "benchmark.dir", System.getProperty("java.io.tmpdir")));
+        Path file = Files.createTempFile(
+                dir, "HashGeneratorBenchmark", ".dat");
+        Random random = new Random(sizeMB);
+        byte[] chunk  = new byte[MB];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < sizeMB; i++) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Remove the test file.
+     *
+     * @throws IOException Thrown if the test file cannot be removed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Hash the test file once.
+     *
+     * @param counters Throughput counters.
+     * @return The hash (returned so it cannot be optimized away).
+     * @throws Exception Thrown if the file cannot be hashed.
+     */
+    @Benchmark
+    public String hash(Counters counters) throws Exception {
+        String hash;
+        long   bytes;
+        switch (strategy) {
+            case "STREAM":
+                hash  = streamHash();
+                bytes = (long)fileSizeMB * MB;
+                break;
+            default:
+                long before = bytesRead.get();
+                hash  = generator.getHash(file, type);
+                bytes = bytesRead.get() - before;
+                break;
+        }
+        counters.megabytes += (double)bytes / MB;
+        return hash;
+    }
+
+    /**
+     * Hash the file through an <code>InputStream</code>.
+     */
+    private String streamHash() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = newDigest(type);
+        try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(heapBuffer)) != -1) {
+                digest.update(heapBuffer, 0, count);
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Construct a digest for the underlying algorithm of the hash type.
+     *
+     * @param type The hash type.
+     * @return The digest.
+     * @throws NoSuchAlgorithmException Thrown if the algorithm is not 
+     * available.
+     */
+    static MessageDigest newDigest(HashType type) 
+            throws NoSuchAlgorithmException {
+        if (XXHash64.ALGORITHM.equals(type.getAlgorithm())) {
+            return new XXHash64();
+        }
+        return MessageDigest.getInstance(type.getAlgorithm());
+    }
+}
@@ -0,0 +1,134 @@
+package mil.nga.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mil.nga.types.HashType;
+
+/**
+ * JMH benchmark measuring the throughput of hashing a memory mapped file,
+ * for comparison with the strategies of <code>HashGeneratorBenchmark</code>.
+ * The file is mapped in windows of up to <code>MAX_MAP_SIZE</code> bytes 
+ * which are handed to the digest without copying, so there is no read 
+ * buffer size to vary.  Only the hash types that digest the whole file 
+ * sequentially are measured.
+ *
+ * Throughput is reported by the <code>megabytes</code> counter (MB/s of 
+ * file data read).  Test files are generated as for 
+ * <code>HashGeneratorBenchmark</code>.
+ *
+ * @author L. Craig Carpenter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedHashBenchmark {
+
+    /**
+     * Number of bytes in one MB.
+     */
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * Largest window mapped at once.
+     */
+    private static final long MAX_MAP_SIZE = 1024L * MB;
+
+    @Param({ "MD5", "SHA1", "SHA256", "SHA384", "SHA512", "XXHASH64" })
+    public String hashType;
+
+    @Param({ "1", "64", "1024", "4096" })
+    public int fileSizeMB;
+
+    // Private internal members.
+    private HashType type;
+    private Path     file;
+
+    /**
+     * Counts the MB read so that JMH reports MB/s alongside ops/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+    }
+
+    /**
+     * Generate the test file.
+     *
+     * @throws IOException Thrown if the test file cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        type = HashType.valueOf(hashType);
+        file = HashGeneratorBenchmark.createFile(fileSizeMB);
+    }
+
+    /**
+     * Remove the test file.
+     *
+     * @throws IOException Thrown if the test file cannot be removed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Hash the test file once by memory mapping it in windows of up to 
+     * <code>MAX_MAP_SIZE</code> bytes.
+     *
+     * @param counters Throughput counters.
+     * @return The hash (returned so it cannot be optimized away).
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws NoSuchAlgorithmException Thrown if the algorithm is not 
+     * available.
+     */
+    @Benchmark
+    public String hash(Counters counters) 
+            throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = HashGeneratorBenchmark.newDigest(type);
+        try (FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.READ)) {
+            long size     = channel.size();
+            long position = 0L;
+            while (position < size) {
+                long length = Math.min(MAX_MAP_SIZE, size - position);
+                MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(window);
+                position += length;
+            }
+            counters.megabytes += (double)size / MB;
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+}
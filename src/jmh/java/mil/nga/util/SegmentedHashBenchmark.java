@@ -0,0 +1,124 @@
+package mil.nga.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mil.nga.types.HashType;
+
+/**
+ * JMH benchmark measuring the throughput of the hash types that do not 
+ * digest the whole file sequentially (the tree and sampled types).  They
+ * are only implemented by <code>HashGenerator</code>, so only the 
+ * <code>CHANNEL</code> and <code>READ_AHEAD</code> strategies of 
+ * <code>HashGeneratorBenchmark</code> apply.  The figures are not 
+ * comparable with those of the whole-file hash types: the tree type 
+ * hashes every segment of the file but produces a different hash, and the
+ * sampled type reads only part of the file.
+ *
+ * Throughput is reported by the <code>megabytes</code> counter (MB/s of 
+ * file data actually read, which for the sampled type is only the sampled
+ * blocks).  Test files are generated as for 
+ * <code>HashGeneratorBenchmark</code>.
+ *
+ * @author L. Craig Carpenter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SegmentedHashBenchmark {
+
+    /**
+     * Number of bytes in one MB.
+     */
+    private static final int MB = 1024 * 1024;
+
+    @Param({ "SHA256_TREE", "XXHASH64_SAMPLED" })
+    public String hashType;
+
+    @Param({ "64", "1024", "8192" })
+    public int bufferSizeKB;
+
+    @Param({ "CHANNEL", "READ_AHEAD" })
+    public String strategy;
+
+    @Param({ "1", "64", "1024", "4096" })
+    public int fileSizeMB;
+
+    // Private internal members.
+    private HashType      type;
+    private Path          file;
+    private HashGenerator generator;
+
+    /**
+     * Bytes read by <code>HashGenerator</code>, reported to it as its read
+     * throttle.
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Generate the test file and configure the strategy.
+     *
+     * @throws IOException Thrown if the test file cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        type      = HashType.valueOf(hashType);
+        generator = new HashGenerator(bufferSizeKB * 1024, null, 0L, 
+                new ReadThrottle() {
+                    @Override
+                    public void acquire(Path file, int bytes)
+                            throws InterruptedIOException {
+                        bytesRead.addAndGet(bytes);
+                    }
+                },
+                "READ_AHEAD".equals(strategy));
+        file = HashGeneratorBenchmark.createFile(fileSizeMB);
+    }
+
+    /**
+     * Remove the test file.
+     *
+     * @throws IOException Thrown if the test file cannot be removed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Hash the test file once.
+     *
+     * @param counters Throughput counters.
+     * @return The hash (returned so it cannot be optimized away).
+     */
+    @Benchmark
+    public String hash(HashGeneratorBenchmark.Counters counters) {
+        long   before = bytesRead.get();
+        String hash   = generator.getHash(file, type);
+        counters.megabytes += (double)(bytesRead.get() - before) / MB;
+        return hash;
+    }
+}
@@ -189,6 +189,56 @@ public class PropertyLoader {
         return properties.getProperty(key, value);
     }
     
+    /**
+     * Getter method for a single integer property.  Unlike the String 
+     * versions this method never throws.  If the properties cannot be 
+     * loaded, the property is not defined, or the value is not a valid 
+     * integer, the supplied default is returned.
+     * 
+     * @param key The key of the property to look up.
+     * @param defaultValue The value to return if the property is not usable.
+     * @return The integer value of the property.
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        int value = defaultValue;
+        try {
+            String prop = getProperty(key);
+            if ((prop != null) && (!prop.trim().isEmpty())) {
+                value = Integer.parseInt(prop.trim());
+            }
+        }
+        catch (NumberFormatException nfe) {
+            LOGGER.warn("Invalid integer value supplied for property [ "
+                    + key
+                    + " ].  Using the default value of [ "
+                    + defaultValue
+                    + " ].");
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        return value;
+    }
+    
+    /**
+     * Getter method for a single boolean property.  This method never 
+     * throws.  If the properties cannot be loaded or the property is not 
+     * defined the supplied default is returned.
+     * 
+     * @param key The key of the property to look up.
+     * @param defaultValue The value to return if the property is not defined.
+     * @return The boolean value of the property.
+     */
+    public boolean getBooleanProperty(String key, boolean defaultValue) {
+        boolean value = defaultValue;
+        try {
+            String prop = getProperty(key);
+            if ((prop != null) && (!prop.trim().isEmpty())) {
+                value = Boolean.parseBoolean(prop.trim());
+            }
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        return value;
+    }
+    
     /**
      * Setter method for the name of the target properties file.
      * @param value The name of the target properties file.
@@ -0,0 +1,498 @@
+package mil.nga.rod;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.rod.model.Product;
+import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.types.HashType;
+
+/**
+ * Compact binary cache value encoding.  Field names are implied by their
+ * position, numbers and dates are variable-length integers and hex hashes
+ * are stored as raw bytes, so a value is typically well under half the
+ * size of the equivalent JSON and is encoded and decoded in a single pass
+ * over a byte array without any intermediate objects.
+ *
+ * Layout (version 1), where <code>varint</code> is an unsigned LEB128
+ * integer, <code>zigzag</code> a zigzag-encoded <code>varint</code>,
+ * <code>text</code> a <code>varint</code> of the UTF-8 length plus one (0
+ * for null) followed by the UTF-8 bytes and <code>hash</code> a tag byte
+ * followed by either the <code>varint</code> length and raw bytes of a
+ * lower-case hex hash (tag 1) or the hash as <code>text</code> (tag 0):
+ * <pre>
+ * byte   version (1)
+ * hash   primary hash
+ * byte   primary hash type code
+ * zigzag file size
+ * zigzag file date (milliseconds since the epoch)
+ * varint number of additional hashes, each a type byte and a hash
+ * text   aorCode, classification, classificationDescription, countryName
+ * zigzag edition, product file date, followed by text iso3Char
+ * zigzag product load date, followed by text mediaName, notes, nrn, nsn,
+ *        path, productType, releasability, releasabilityDescription
+ * zigzag product size, followed by text url
+ * </pre>
+ * Hash types are written as fixed codes independent of the order of the
+ * <code>HashType</code> constants: 0 md5, 1 sha1, 2 sha256, 3 sha384,
+ * 4 sha512, 5 sha256tree, 6 xxhash64, 7 xxhash64sampled.  A new hash type
+ * takes the next unused code; codes are never reassigned.
+ * Any change to the layout must use a new version byte.
+ *
+ * @author L. Craig Carpenter
+ */
+public class BinaryRecordCodec implements RecordCodec {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            BinaryRecordCodec.class);
+
+    /**
+     * Name of the codec.
+     */
+    public static final String NAME = "binary";
+
+    /**
+     * Header byte of the current layout.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Initial size of the encoding buffer.  Large enough for most records.
+     */
+    private static final int INITIAL_CAPACITY = 512;
+
+    /**
+     * Tag of a hash stored as text.
+     */
+    private static final byte TEXT_HASH = 0;
+
+    /**
+     * Tag of a lower-case hex hash stored as raw bytes.
+     */
+    private static final byte HEX_HASH = 1;
+
+    /**
+     * Lower-case hex digits.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(QueryRequestAccelerator record) {
+
+        if (record == null) {
+            return null;
+        }
+
+        Writer out = new Writer(INITIAL_CAPACITY);
+        out.writeByte(VERSION);
+        out.writeHash(record.getHash());
+        out.writeByte(hashTypeCode(record.getHashType()));
+        out.writeZigZag(record.getSize());
+        out.writeZigZag(record.getFileDate().getTime());
+        out.writeVarLong(record.getHashes().size());
+        for (Map.Entry<HashType, String> entry :
+                record.getHashes().entrySet()) {
+            out.writeByte(hashTypeCode(entry.getKey()));
+            out.writeHash(entry.getValue());
+        }
+
+        Product product = record.getProduct();
+        out.writeText(product.getAorCode());
+        out.writeText(product.getClassification());
+        out.writeText(product.getClassificationDescription());
+        out.writeText(product.getCountryName());
+        out.writeZigZag(product.getEdition());
+        out.writeZigZag(product.getFileDate().getTime());
+        out.writeText(product.getIso3Char());
+        out.writeZigZag(product.getLoadDate().getTime());
+        out.writeText(product.getMediaName());
+        out.writeText(product.getNotes());
+        out.writeText(product.getNRN());
+        out.writeText(product.getNSN());
+        out.writeText(product.getPath());
+        out.writeText(product.getProductType());
+        out.writeText(product.getReleasability());
+        out.writeText(product.getReleasabilityDescription());
+        out.writeZigZag(product.getSize());
+        out.writeText(product.getURL());
+        return out.toByteArray();
+    }
+
+    @Override
+    public QueryRequestAccelerator decode(byte[] value) {
+
+        QueryRequestAccelerator record = null;
+
+        if ((value == null) || (value.length == 0)) {
+            return record;
+        }
+        if (value[0] != VERSION) {
+            LOGGER.error("Unexpected header byte [ "
+                    + (value[0] & 0xFF)
+                    + " ] in a binary cache value.  Expected [ "
+                    + VERSION
+                    + " ].");
+            return record;
+        }
+
+        try {
+            Reader in = new Reader(value, 1);
+            QueryRequestAccelerator.QueryRequestAcceleratorBuilder builder =
+                    new QueryRequestAccelerator
+                        .QueryRequestAcceleratorBuilder()
+                        .hash(in.readHash())
+                        .hashType(in.readHashType())
+                        .size(in.readZigZag())
+                        .fileDate(new java.util.Date(in.readZigZag()));
+            long count = in.readVarLong();
+            for (long i = 0; i < count; i++) {
+                builder.addHash(in.readHashType(), in.readHash());
+            }
+            Product product = new Product.ProductBuilder()
+                    .aorCode(in.readText())
+                    .classification(in.readText())
+                    .classificationDescription(in.readText())
+                    .countryName(in.readText())
+                    .edition(in.readZigZag())
+                    .fileDate(new Date(in.readZigZag()))
+                    .iso3Char(in.readText())
+                    .loadDate(new Date(in.readZigZag()))
+                    .mediaName(in.readText())
+                    .notes(in.readText())
+                    .nrn(in.readText())
+                    .nsn(in.readText())
+                    .path(in.readText())
+                    .productType(in.readText())
+                    .releasability(in.readText())
+                    .releasabilityDescription(in.readText())
+                    .size(in.readZigZag())
+                    .url(in.readText())
+                    .build();
+            record = builder.product(product).build();
+        }
+        catch (IllegalArgumentException | IllegalStateException e) {
+            LOGGER.error("Unable to decode a binary cache value of [ "
+                    + value.length
+                    + " ] bytes.  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        return record;
+    }
+
+    /**
+     * Map a hash type to the code stored in the value.  See the layout in
+     * the class comment.
+     *
+     * @param type The hash type.
+     * @return The stored code.
+     */
+    private static int hashTypeCode(HashType type) {
+        switch (type) {
+            case MD5:              return 0;
+            case SHA1:             return 1;
+            case SHA256:           return 2;
+            case SHA384:           return 3;
+            case SHA512:           return 4;
+            case SHA256_TREE:      return 5;
+            case XXHASH64:         return 6;
+            case XXHASH64_SAMPLED: return 7;
+            default:
+                throw new IllegalArgumentException("No binary code is "
+                        + "assigned to hash type [ "
+                        + type
+                        + " ].");
+        }
+    }
+
+    /**
+     * Map a stored code back to its hash type.
+     *
+     * @param code The stored code.
+     * @return The hash type.
+     */
+    private static HashType hashTypeOf(int code) {
+        switch (code) {
+            case 0: return HashType.MD5;
+            case 1: return HashType.SHA1;
+            case 2: return HashType.SHA256;
+            case 3: return HashType.SHA384;
+            case 4: return HashType.SHA512;
+            case 5: return HashType.SHA256_TREE;
+            case 6: return HashType.XXHASH64;
+            case 7: return HashType.XXHASH64_SAMPLED;
+            default:
+                throw new IllegalArgumentException("Unknown hash type "
+                        + "code [ "
+                        + code
+                        + " ].");
+        }
+    }
+
+    /**
+     * Is the input a non-empty, even-length, lower-case hex String (i.e.
+     * can it be stored as raw bytes and restored exactly)?
+     *
+     * @param value The String to check.
+     * @return True if the value is lower-case hex.
+     */
+    private static boolean isHex(String value) {
+        if ((value.isEmpty()) || ((value.length() & 1) != 0)) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (((c < '0') || (c > '9')) && ((c < 'a') || (c > 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Growable byte array the value is encoded into.
+     */
+    private static class Writer {
+
+        private byte[] buffer;
+        private int    count = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity The initial capacity.
+         */
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        /**
+         * Make room for the input number of bytes.
+         */
+        private void ensureCapacity(int length) {
+            if ((count + length) > buffer.length) {
+                buffer = Arrays.copyOf(buffer,
+                        Math.max(buffer.length * 2, count + length));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[count++] = (byte)value;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0L) {
+                buffer[count++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[count++] = (byte)value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Write a String as its UTF-8 length (plus one) and UTF-8 bytes.
+         * Unpaired surrogates are written as '?', matching
+         * <code>String.getBytes</code>.
+         */
+        void writeText(String value) {
+            if (value == null) {
+                writeVarLong(0L);
+                return;
+            }
+            int length = value.length();
+            int bytes  = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes += 1;
+                }
+                else if (c < 0x800) {
+                    bytes += 2;
+                }
+                else if (Character.isHighSurrogate(c) && ((i + 1) < length)
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                }
+                else if (Character.isSurrogate(c)) {
+                    bytes += 1;
+                }
+                else {
+                    bytes += 3;
+                }
+            }
+            writeVarLong(bytes + 1L);
+            ensureCapacity(bytes);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[count++] = (byte)c;
+                }
+                else if (c < 0x800) {
+                    buffer[count++] = (byte)(0xC0 | (c >> 6));
+                    buffer[count++] = (byte)(0x80 | (c & 0x3F));
+                }
+                else if (Character.isHighSurrogate(c) && ((i + 1) < length)
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[count++] = (byte)(0xF0 | (cp >> 18));
+                    buffer[count++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | (cp & 0x3F));
+                }
+                else if (Character.isSurrogate(c)) {
+                    buffer[count++] = (byte)'?';
+                }
+                else {
+                    buffer[count++] = (byte)(0xE0 | (c >> 12));
+                    buffer[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                    buffer[count++] = (byte)(0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        /**
+         * Write a hash, as raw bytes if it is lower-case hex.
+         */
+        void writeHash(String value) {
+            if (isHex(value)) {
+                int length = value.length() / 2;
+                writeByte(HEX_HASH);
+                writeVarLong(length);
+                ensureCapacity(length);
+                for (int i = 0; i < value.length(); i += 2) {
+                    buffer[count++] = (byte)(
+                            (Character.digit(value.charAt(i), 16) << 4) |
+                            Character.digit(value.charAt(i + 1), 16));
+                }
+            }
+            else {
+                writeByte(TEXT_HASH);
+                writeText(value);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+
+    /**
+     * Cursor over the encoded value.  Every read is bounds checked so a
+     * truncated or corrupt value raises an
+     * <code>IllegalArgumentException</code>.
+     */
+    private static class Reader {
+
+        private final byte[] buffer;
+        private int          position;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer The encoded value.
+         * @param position Offset of the first byte to read.
+         */
+        Reader(byte[] buffer, int position) {
+            this.buffer   = buffer;
+            this.position = position;
+        }
+
+        /**
+         * Ensure the input number of bytes remain.
+         */
+        private void require(long length) {
+            if ((length < 0) || (length > (buffer.length - position))) {
+                throw new IllegalArgumentException("Value truncated at "
+                        + "offset [ "
+                        + position
+                        + " ].");
+            }
+        }
+
+        int readByte() {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Invalid variable-length "
+                    + "integer ending at offset [ "
+                    + position
+                    + " ].");
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1L);
+        }
+
+        String readText() {
+            long length = readVarLong() - 1L;
+            if (length < 0) {
+                return null;
+            }
+            require(length);
+            String value = new String(
+                    buffer, position, (int)length, StandardCharsets.UTF_8);
+            position += (int)length;
+            return value;
+        }
+
+        String readHash() {
+            int tag = readByte();
+            if (tag == TEXT_HASH) {
+                return readText();
+            }
+            if (tag != HEX_HASH) {
+                throw new IllegalArgumentException("Unknown hash tag [ "
+                        + tag
+                        + " ].");
+            }
+            long length = readVarLong();
+            require(length);
+            char[] hex = new char[(int)length * 2];
+            for (int i = 0; i < length; i++) {
+                int b = buffer[position++] & 0xFF;
+                hex[2 * i]     = HEX_DIGITS[b >>> 4];
+                hex[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+            }
+            return new String(hex);
+        }
+
+        HashType readHashType() {
+            return hashTypeOf(readByte());
+        }
+    }
+}
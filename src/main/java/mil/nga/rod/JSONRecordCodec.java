@@ -0,0 +1,49 @@
+package mil.nga.rod;
+
+import mil.nga.rod.model.QueryRequestAccelerator;
+
+/**
+ * The original cache value encoding: the record serialized as a JSON
+ * object by <code>JSONSerializer</code>.  JSON values carry no separate
+ * header; the opening brace of the object serves as the version byte, so
+ * every value already in the cache is recognized without being rewritten.
+ *
+ * @author L. Craig Carpenter
+ */
+public class JSONRecordCodec implements RecordCodec {
+
+    /**
+     * Name of the codec.
+     */
+    public static final String NAME = "json";
+
+    /**
+     * Header byte (the opening brace of the JSON object).
+     */
+    public static final byte VERSION = (byte)'{';
+
+    @Override
+    public byte getVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(QueryRequestAccelerator record) {
+        byte[] value = null;
+        if (record != null) {
+            value = JSONSerializer.getInstance().serializeToBytes(record);
+        }
+        return value;
+    }
+
+    @Override
+    public QueryRequestAccelerator decode(byte[] value) {
+        return JSONSerializer.getInstance()
+                .deserializeToQueryRequestAccelerator(value);
+    }
+}
@@ -2,7 +2,6 @@ package mil.nga.rod;
 
 import java.io.IOException;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.TimeZone;
 
@@ -14,7 +13,9 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.CollectionType;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
 
+import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
 
 /**
@@ -40,13 +41,15 @@ public class JSONSerializer {
      * date/time object.  The time component is not included.  As such JAX-B
      * throws errors trying to deserialize the time part.  Updated to exclude
      * time.
+     * 
+     * Updated: Excluding the time meant the on-disk file date could not be 
+     * used for change detection.  Dates are now written in full-precision 
+     * ISO-8601 format (i.e. yyyy-MM-dd'T'HH:mm:ss.SSSZ).  The Jackson 
+     * standard format still accepts the date-only values already stored in
+     * the cache.
      */
     private static final DateFormat dateFormatter = 
-            new SimpleDateFormat("yyyy-MM-dd");
-    
-    static {
-        dateFormatter.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
+            new StdDateFormat().withTimeZone(TimeZone.getTimeZone("GMT"));
     
     /**
      * Accessor method for the singleton instance of the 
@@ -109,6 +112,105 @@ public class JSONSerializer {
         return deserialized;
     }
     
+    /**
+     * Method used to deserialize UTF-8 encoded JSON into an object of type 
+     * <code>mil.nga.rod.model.QueryRequestAccelerator</code> without first
+     * converting it to a String.
+     * 
+     * @param json The UTF-8 encoded JSON.
+     * @return A <code>mil.nga.rod.model.QueryRequestAccelerator</code> object. 
+     * Null if any exceptions were encountered while deserializing the input.
+     */
+    public QueryRequestAccelerator deserializeToQueryRequestAccelerator(byte[] json) {
+        
+        QueryRequestAccelerator deserialized = null;
+        
+        try {
+            if (json != null) {
+                
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.setDateFormat(dateFormatter);
+                deserialized = mapper.readValue(
+                        json, 
+                        QueryRequestAccelerator.class);
+                
+            }
+        }
+        catch (JsonMappingException jme) {
+            LOGGER.error("Unexpected JsonMappingException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON to a QueryRequestAccelerator object.  Exception "
+                    + "message [ "
+                    + jme.getMessage()
+                    + " ].");
+        }
+        catch (JsonParseException jpe) {
+            LOGGER.error("Unexpected JsonParseException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON into a QueryRequestAccelerator object.  Exception "
+                    + "message [ "
+                    + jpe.getMessage()
+                    + " ].");
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Unexpected IOException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON into a QueryRequestAccelerator object.  Exception "
+                    + "message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+        return deserialized;
+    }
+    
+    /**
+     * Method used to deserialize a JSON object into an object of type 
+     * <code>mil.nga.rod.model.Product</code>
+     * 
+     * @param json The String in JSON format.
+     * @return A <code>mil.nga.rod.model.Product</code> object.  Null if any
+     * exceptions were encountered while deserializing the String.
+     */
+    public Product deserializeToProduct(String json) {
+        
+        Product deserialized = null;
+        
+        try {
+            if (json != null) {
+                
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.setDateFormat(dateFormatter);
+                deserialized = mapper.readValue(json, Product.class);
+                
+            }
+        }
+        catch (JsonMappingException jme) {
+            LOGGER.error("Unexpected JsonMappingException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON to a Product object.  Exception "
+                    + "message [ "
+                    + jme.getMessage()
+                    + " ].");
+        }
+        catch (JsonParseException jpe) {
+            LOGGER.error("Unexpected JsonParseException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON into a Product object.  Exception "
+                    + "message [ "
+                    + jpe.getMessage()
+                    + " ].");
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Unexpected IOException encountered "
+                    + "while attempting to deserialize the input "
+                    + "JSON into a Product object.  Exception "
+                    + "message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+        return deserialized;
+    }
+    
     /**
      * Method used to deserialize a JSON array into a List of String objects.
      * 
@@ -189,6 +291,39 @@ public class JSONSerializer {
         return json;
     }
     
+    /**
+     * Convert the input object into UTF-8 encoded JSON without creating an
+     * intermediate String.
+     * 
+     * @param obj A populated object.
+     * @return The UTF-8 encoded JSON.  Null if the object is null or could
+     * not be serialized.
+     */
+    public byte[] serializeToBytes(Object obj) {
+        
+        byte[] json = null;
+        
+        if (obj != null) {
+            try {
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.setDateFormat(dateFormatter);
+                json = mapper.writeValueAsBytes(obj);
+            }
+            catch (JsonProcessingException jpe) {
+                LOGGER.error("Unexpected JsonProcessingException encountered "
+                        + "while attempting to marshall the input "
+                        + "object to JSON.  Exception message [ "
+                        + jpe.getMessage()
+                        + " ].");
+            }
+        }
+        else {
+            LOGGER.warn("Input object is null.  Unable to "
+                    + "marshall the object to JSON.");
+        }
+        return json;
+    }
+    
     /**
      * Static inner class used to construct the Singleton object.  This class
      * exploits the fact that classes are not loaded until they are referenced
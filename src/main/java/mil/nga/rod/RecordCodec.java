@@ -0,0 +1,49 @@
+package mil.nga.rod;
+
+import mil.nga.rod.model.QueryRequestAccelerator;
+
+/**
+ * Interface implemented by the encodings of the accelerator records
+ * stored in the cache.  The first byte of every encoded value identifies
+ * the codec that wrote it (see <code>getVersion</code>), so values written
+ * by different codecs can coexist in the cache and be read back while the
+ * configured codec is being changed.
+ *
+ * @author L. Craig Carpenter
+ */
+public interface RecordCodec {
+
+    /**
+     * Getter method for the header byte that starts every value written
+     * by the codec.  Must be unique across codecs.
+     *
+     * @return The header (version) byte.
+     */
+    public byte getVersion();
+
+    /**
+     * Getter method for the name used to select the codec in the system
+     * properties.
+     *
+     * @return The codec name.
+     */
+    public String getName();
+
+    /**
+     * Encode the input record.
+     *
+     * @param record The record to encode.
+     * @return The encoded record, starting with the header byte.  Null if
+     * the record is null or could not be encoded.
+     */
+    public byte[] encode(QueryRequestAccelerator record);
+
+    /**
+     * Decode a record written by <code>encode</code>.
+     *
+     * @param value The encoded record, starting with the header byte.
+     * @return The record.  Null if the value is null or is not a valid
+     * encoding.
+     */
+    public QueryRequestAccelerator decode(byte[] value);
+}
@@ -4,16 +4,30 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.PropertyLoader;
+import mil.nga.exceptions.PropertiesNotLoadedException;
+import mil.nga.exceptions.UnknownHashTypeException;
+import mil.nga.rod.BinaryRecordCodec;
+import mil.nga.rod.JSONRecordCodec;
 import mil.nga.rod.JSONSerializer;
+import mil.nga.rod.RecordCodec;
 import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
 import mil.nga.types.HashType;
 import mil.nga.util.FileUtils;
 import mil.nga.util.HashGenerator;
+import mil.nga.util.ReadThrottle;
 
 /**
  * Class containing the logic required to generate the key/value pair for the
@@ -21,7 +35,7 @@ import mil.nga.util.HashGenerator;
  * 
  * @author L. Craig Carpenter
  */
-public class AcceleratorRecordFactory {
+public class AcceleratorRecordFactory implements CacheManagerConstants {
 
     /**
      * Set up the Log4j system for use throughout the class
@@ -33,11 +47,176 @@ public class AcceleratorRecordFactory {
      * The hash type to calculate.
      */
     public static final HashType HASH_TYPE = HashType.MD5;
+    
+    /**
+     * The hash type calculated for files at or above the tree hash 
+     * threshold.
+     */
+    public static final HashType TREE_HASH_TYPE = HashType.SHA256_TREE;
+    
+    /**
+     * Name of the field holding the primary hash when records are stored 
+     * as Redis hashes.
+     */
+    public static final String HASH_FIELD = "hash";
+    
+    /**
+     * Name of the field holding the type of the primary hash.
+     */
+    public static final String HASH_TYPE_FIELD = "hashType";
+    
+    /**
+     * Name of the field holding the size (in bytes) of the file.
+     */
+    public static final String SIZE_FIELD = "size";
+    
+    /**
+     * Name of the field holding the modification time of the file (in 
+     * milliseconds since the epoch).
+     */
+    public static final String FILE_DATE_FIELD = "fileDate";
+    
+    /**
+     * Name of the field holding the path of the file.
+     */
+    public static final String PATH_FIELD = "path";
+    
+    /**
+     * Name of the field holding the JSON serialized product.
+     */
+    public static final String PRODUCT_FIELD = "product";
+    
+    /**
+     * Prefix of the fields holding the additional hashes.  The field name 
+     * is the prefix followed by the hash type text (e.g. 
+     * <code>hashes.xxhash64</code>).
+     */
+    public static final String HASHES_FIELD_PREFIX = "hashes.";
+
+    /**
+     * Hash types computed in addition to <code>HASH_TYPE</code>.
+     */
+    private final Set<HashType> additionalTypes = 
+            EnumSet.noneOf(HashType.class);
+    
+    /**
+     * File size (in bytes) at or above which <code>TREE_HASH_TYPE</code> 
+     * is used.  0 if tree hashing is disabled.
+     */
+    private final long treeThreshold;
+    
+    /**
+     * Generator used to build records.  <code>HashGenerator</code> keeps 
+     * its buffers and digests per thread, so a single instance is shared 
+     * by every refresh thread.
+     */
+    private final HashGenerator generator;
+    
+    /**
+     * Generator used to compute fingerprints for verification.  Identical
+     * to <code>generator</code> but never checkpoints.
+     */
+    private final HashGenerator fingerprinter;
+    
+    /**
+     * Every known value codec keyed by header byte.
+     */
+    private final Map<Byte, RecordCodec> codecs = 
+            new HashMap<Byte, RecordCodec>();
+    
+    /**
+     * Codec used to encode new cache values.
+     */
+    private final RecordCodec codec;
 
     /**
      * Default constructor enforcing the singleton design pattern.
      */
-    private AcceleratorRecordFactory () {}
+    private AcceleratorRecordFactory () {
+        
+        int bufferSize = PropertyLoader.getInstance().getIntProperty(
+                REFRESH_HASH_BUFFER_SIZE_PROPERTY, 
+                DEFAULT_REFRESH_HASH_BUFFER_SIZE) * 1024;
+        
+        treeThreshold = Math.max(0L, PropertyLoader.getInstance().getIntProperty(
+                REFRESH_HASH_TREE_THRESHOLD_PROPERTY, 
+                DEFAULT_REFRESH_HASH_TREE_THRESHOLD)) * 1024L * 1024L;
+        
+        long checkpointInterval = PropertyLoader.getInstance().getIntProperty(
+                REFRESH_HASH_CHECKPOINT_INTERVAL_PROPERTY, 
+                DEFAULT_REFRESH_HASH_CHECKPOINT_INTERVAL) * 1024L * 1024L;
+        String dir = null;
+        try {
+            dir = PropertyLoader.getInstance().getProperty(
+                    REFRESH_HASH_CHECKPOINT_DIR_PROPERTY);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        Path checkpointDir = ((dir == null) || (dir.trim().isEmpty())) ? 
+                null : Paths.get(dir.trim());
+        
+        boolean readAhead = PropertyLoader.getInstance().getBooleanProperty(
+                REFRESH_HASH_READ_AHEAD_PROPERTY, 
+                DEFAULT_REFRESH_HASH_READ_AHEAD);
+        ReadRateLimiter limiter  = new ReadRateLimiter();
+        ReadThrottle    throttle = (limiter.isEnabled() ? limiter : null);
+        generator     = new HashGenerator(bufferSize, checkpointDir, 
+                checkpointInterval, throttle, readAhead);
+        fingerprinter = new HashGenerator(
+                bufferSize, null, 0L, throttle, readAhead);
+        
+        for (RecordCodec known : new RecordCodec[] { 
+                new JSONRecordCodec(), new BinaryRecordCodec() }) {
+            codecs.put(known.getVersion(), known);
+        }
+        RecordCodec selected = null;
+        String      name     = null;
+        try {
+            name = PropertyLoader.getInstance().getProperty(
+                    CacheManagerI.REDIS_VALUE_CODEC_PROPERTY);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        if ((name == null) || (name.trim().isEmpty())) {
+            name = CacheManagerI.DEFAULT_REDIS_VALUE_CODEC;
+        }
+        for (RecordCodec known : codecs.values()) {
+            if (known.getName().equalsIgnoreCase(name.trim())) {
+                selected = known;
+            }
+        }
+        if (selected == null) {
+            LOGGER.warn("Invalid value [ "
+                    + name
+                    + " ] supplied for property [ "
+                    + CacheManagerI.REDIS_VALUE_CODEC_PROPERTY
+                    + " ].  Using the default value of [ "
+                    + CacheManagerI.DEFAULT_REDIS_VALUE_CODEC
+                    + " ].");
+            selected = codecs.get(JSONRecordCodec.VERSION);
+        }
+        codec = selected;
+        
+        String types = null;
+        try {
+            types = PropertyLoader.getInstance().getProperty(
+                    REFRESH_HASH_ADDITIONAL_TYPES_PROPERTY);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        if ((types != null) && (!types.trim().isEmpty())) {
+            for (String type : types.split(",")) {
+                try {
+                    additionalTypes.add(HashType.fromString(type));
+                }
+                catch (UnknownHashTypeException uhte) {
+                    LOGGER.warn(uhte.getMessage()
+                            + "  It will not be computed.");
+                }
+            }
+            additionalTypes.remove(HASH_TYPE);
+            // Always computed, but never a reason to re-hash on their own.
+            additionalTypes.remove(QueryRequestAccelerator.FINGERPRINT_TYPE);
+            additionalTypes.remove(QueryRequestAccelerator.SAMPLE_TYPE);
+        }
+    }
     
     /**
      * Accessor method for the singleton instance of the 
@@ -50,6 +229,138 @@ public class AcceleratorRecordFactory {
         return AcceleratorRecordFactoryHolder.getSingleton();
     } 
     
+    /**
+     * Getter method for the hash types computed in addition to 
+     * <code>HASH_TYPE</code>.
+     * 
+     * @return Unmodifiable set of additional hash types.
+     */
+    public Set<HashType> getAdditionalHashTypes() {
+        return Collections.unmodifiableSet(additionalTypes);
+    }
+    
+    /**
+     * Does the input record carry every configured additional hash?  
+     * Records that do not must be re-hashed when an additional hash type is
+     * configured.  Tree-hashed records never carry additional hashes as 
+     * computing them would require a sequential pass over the file.  The 
+     * fingerprints are not considered.
+     * 
+     * @param record The existing record.
+     * @return True if no additional hash is missing.
+     */
+    public boolean hasAdditionalHashes(QueryRequestAccelerator record) {
+        return (record != null) && 
+                ((record.getHashType() != HASH_TYPE) || 
+                    record.getHashes().keySet().containsAll(additionalTypes));
+    }
+    
+    /**
+     * Compute a fingerprint of the input file.  The full fingerprint reads 
+     * the whole file but costs a fraction of the CPU time of the primary 
+     * hash; the sampled fingerprint reads only a few blocks.
+     * 
+     * @param path The path of the target file.
+     * @param type The fingerprint type (i.e. 
+     * <code>QueryRequestAccelerator.FINGERPRINT_TYPE</code> or 
+     * <code>QueryRequestAccelerator.SAMPLE_TYPE</code>).
+     * @return The fingerprint, or null if it could not be computed.
+     */
+    public String getFingerprint(String path, HashType type) {
+        String fingerprint = null;
+        if ((path != null) && (!path.isEmpty())) {
+            fingerprint = fingerprinter.getHash(
+                    Paths.get(path), type);
+        }
+        return fingerprint;
+    }
+    
+    /**
+     * Select the primary hash type for a file of the input size.  The 
+     * size threshold is the only selector (there is no per-product 
+     * override) so that every refresh picks the same type for a file.
+     * 
+     * @param size The size (in bytes) of the on-disk file.
+     * @return <code>TREE_HASH_TYPE</code> if the file is at or above the 
+     * configured threshold, <code>HASH_TYPE</code> otherwise.
+     */
+    public HashType getHashType(long size) {
+        return ((treeThreshold > 0) && (size >= treeThreshold)) ? 
+                TREE_HASH_TYPE : HASH_TYPE;
+    }
+    
+    /**
+     * Select every hash type computed for a new record of a file of the 
+     * input size.  All of them (and the fingerprints) are computed in one 
+     * pass.  The sampled fingerprint only reads a few blocks so every 
+     * record carries one.  Tree-hashed records get no full fingerprint, 
+     * which would need a sequential pass of its own; the verification 
+     * sweep compares their sampled one.
+     * 
+     * @param size The size (in bytes) of the on-disk file.
+     * @return The hash types, including the primary one.
+     */
+    public Set<HashType> getHashTypes(long size) {
+        HashType      type  = getHashType(size);
+        Set<HashType> types = EnumSet.of(
+                type, QueryRequestAccelerator.SAMPLE_TYPE);
+        if (type == HASH_TYPE) {
+            types.addAll(additionalTypes);
+            types.add(QueryRequestAccelerator.FINGERPRINT_TYPE);
+        }
+        return types;
+    }
+    
+    /**
+     * Compute every hash of a new record of the input file (see 
+     * <code>getHashTypes</code>) with the shared generator, i.e. with the 
+     * configured buffer size, read-ahead and read rate limit.
+     * 
+     * @param p The path of the target file.
+     * @param size The size (in bytes) of the on-disk file.
+     * @return Map of the computed hash values keyed by hash type.  Empty 
+     * if the hashes could not be generated.
+     */
+    public Map<HashType, String> getHashes(Path p, long size) {
+        return getHashes(p, size, 0);
+    }
+    
+    /**
+     * Compute every hash of a new record of the input file, reading at 
+     * most <code>readers</code> segments of a tree hash at once (see 
+     * <code>HashGenerator.getHashes(Path, Collection, int)</code>).
+     * 
+     * @param p The path of the target file.
+     * @param size The size (in bytes) of the on-disk file.
+     * @param readers The most concurrent reads of the file.  Values less 
+     * than 1 leave the tree hash fan-out unlimited.
+     * @return Map of the computed hash values keyed by hash type.  Empty 
+     * if the hashes could not be generated.
+     */
+    public Map<HashType, String> getHashes(Path p, long size, int readers) {
+        return generator.getHashes(p, getHashTypes(size), readers);
+    }
+    
+    /**
+     * Compute the hashes of a new record of the input file over at most 
+     * the first <code>length</code> bytes of the file (see 
+     * <code>HashGenerator.getPrefixHashes</code>).  The hash types are 
+     * those a full refresh of the file would compute.  Used to measure the
+     * hash throughput without reading whole multi-GB files.
+     * 
+     * @param p The path of the target file.
+     * @param size The size (in bytes) of the on-disk file.
+     * @param length The most bytes of the file to hash.
+     * @return Map of the computed values keyed by hash type.  Empty if the
+     * file could not be hashed.
+     */
+    public Map<HashType, String> getPrefixHashes(
+            Path p, 
+            long size, 
+            long length) {
+        return generator.getPrefixHashes(p, getHashTypes(size), 0, length);
+    }
+    
     /**
      * Calculate the key that will be used for storage/lookup of the query
      * accelerator records.  
@@ -134,6 +445,133 @@ public class AcceleratorRecordFactory {
         return value;
     }
     
+    /**
+     * Encode the input QueryRequestAccelerator record with the configured
+     * value codec.
+     * 
+     * @param record The QueryRequestAccelerator record to be cached.
+     * @return The encoded record, starting with the header byte of the 
+     * codec.  Null if the record is null.
+     */
+    public byte[] encode(QueryRequestAccelerator record) {
+        return codec.encode(record);
+    }
+    
+    /**
+     * Decode a cached value with the codec identified by its first 
+     * (header) byte, whichever codec is configured.
+     * 
+     * @param value The cached value.
+     * @return The record.  Null if the value is null, empty, written by an
+     * unknown codec or invalid.
+     */
+    public QueryRequestAccelerator decode(byte[] value) {
+        QueryRequestAccelerator record = null;
+        if ((value != null) && (value.length > 0)) {
+            RecordCodec reader = codecs.get(value[0]);
+            if (reader != null) {
+                record = reader.decode(value);
+            }
+            else {
+                LOGGER.error("Unknown cache value header byte [ "
+                        + (value[0] & 0xFF)
+                        + " ].  Unable to decode the value.");
+            }
+        }
+        return record;
+    }
+    
+    /**
+     * Getter method for the codec used to encode new cache values.
+     * 
+     * @return The configured codec.
+     */
+    public RecordCodec getCodec() {
+        return codec;
+    }
+    
+    /**
+     * Convert the input QueryRequestAccelerator record into the fields of
+     * a Redis hash.  The attributes readers commonly need on their own 
+     * (i.e. the hashes, size, file date and path) are stored in separate 
+     * fields so they can be retrieved without transferring or parsing the
+     * product, which is stored as JSON in its own field.
+     * 
+     * @param record The QueryRequestAccelerator record to be cached.
+     * @return The fields of the record.  Null if the record is null.
+     */
+    public Map<String, String> getFields(QueryRequestAccelerator record) {
+        Map<String, String> fields = null;
+        if (record != null) {
+            fields = new LinkedHashMap<String, String>();
+            fields.put(HASH_FIELD, record.getHash());
+            fields.put(HASH_TYPE_FIELD, record.getHashType().getText());
+            fields.put(SIZE_FIELD, Long.toString(record.getSize()));
+            fields.put(FILE_DATE_FIELD, 
+                    Long.toString(record.getFileDate().getTime()));
+            if (record.getPath() != null) {
+                fields.put(PATH_FIELD, record.getPath());
+            }
+            for (Map.Entry<HashType, String> entry : 
+                    record.getHashes().entrySet()) {
+                fields.put(HASHES_FIELD_PREFIX + entry.getKey().getText(), 
+                        entry.getValue());
+            }
+            fields.put(PRODUCT_FIELD, 
+                    JSONSerializer.getInstance().serialize(record.getProduct()));
+        }
+        return fields;
+    }
+    
+    /**
+     * Rebuild a QueryRequestAccelerator record from the fields of a Redis 
+     * hash written by <code>getFields</code>.  Unknown fields are ignored.
+     * 
+     * @param fields The fields of the record.
+     * @return The record.  Null if there are no fields or they do not make
+     * up a valid record.
+     */
+    public QueryRequestAccelerator getRecord(Map<String, String> fields) {
+        
+        QueryRequestAccelerator record = null;
+        
+        if ((fields != null) && (!fields.isEmpty())) {
+            try {
+                QueryRequestAccelerator.QueryRequestAcceleratorBuilder builder =
+                        new QueryRequestAccelerator
+                            .QueryRequestAcceleratorBuilder()
+                            .product(JSONSerializer.getInstance()
+                                    .deserializeToProduct(
+                                            fields.get(PRODUCT_FIELD)))
+                            .fileDate(new Date(Long.parseLong(
+                                    fields.get(FILE_DATE_FIELD))))
+                            .hash(fields.get(HASH_FIELD))
+                            .size(Long.parseLong(fields.get(SIZE_FIELD)));
+                if (fields.get(HASH_TYPE_FIELD) != null) {
+                    builder.hashType(HashType.fromString(
+                            fields.get(HASH_TYPE_FIELD)));
+                }
+                for (Map.Entry<String, String> entry : fields.entrySet()) {
+                    if (entry.getKey().startsWith(HASHES_FIELD_PREFIX)) {
+                        builder.addHash(
+                                HashType.fromString(entry.getKey().substring(
+                                        HASHES_FIELD_PREFIX.length())), 
+                                entry.getValue());
+                    }
+                }
+                record = builder.build();
+            }
+            catch (NumberFormatException | 
+                    IllegalStateException | 
+                    UnknownHashTypeException e) {
+                LOGGER.error("Unable to rebuild an accelerator record from "
+                        + "the cached fields.  Error message [ "
+                        + e.getMessage()
+                        + " ].");
+            }
+        }
+        return record;
+    }
     
     /**
      * Generate a <code>QueryRequestAccelerator</code> record for storage 
@@ -146,9 +584,25 @@ public class AcceleratorRecordFactory {
      */
     public QueryRequestAccelerator buildRecord(Product prod) 
             throws IOException {
+        return buildRecord(prod, 0);
+    }
+    
+    /**
+     * Generate a <code>QueryRequestAccelerator</code> record for storage 
+     * in the target cache, reading the file with at most 
+     * <code>readers</code> threads.
+     * 
+     * @param prod The database record identifying an on-disk ISO file.
+     * @param readers The most concurrent reads of the file (see 
+     * <code>getHashes(Path, long, int)</code>).
+     * @return A QueryRequestAccelerator record to add to the cache.
+     * @throws IOException Thrown if there are problems accessing the target 
+     * file.
+     */
+    public QueryRequestAccelerator buildRecord(Product prod, int readers) 
+            throws IOException {
         
-        QueryRequestAccelerator record    = null;
-        HashGenerator           generator = new HashGenerator();
+        QueryRequestAccelerator record = null;
         
         if (prod != null) {
             String path = prod.getPath();
@@ -156,14 +610,20 @@ public class AcceleratorRecordFactory {
                 try {
                     Path p = Paths.get(path);
                     if (Files.exists(p)) {
-                        String hash = generator.getHash(p, HASH_TYPE);
+                        long     size = FileUtils.getActualFileSize(p);
+                        HashType type = getHashType(size);
+                        Map<HashType, String> hashes = 
+                                getHashes(p, size, readers);
+                        String hash = hashes.remove(type);
                         if (hash != null) {
                             record = new QueryRequestAccelerator
                                     .QueryRequestAcceleratorBuilder()
                                     	.product(prod)
                                         .fileDate(FileUtils.getActualFileDate(p))
                                         .hash(hash)
-                                        .size(FileUtils.getActualFileSize(p))
+                                        .hashType(type)
+                                        .hashes(hashes)
+                                        .size(size)
                                         .build();
                         }
                         else {
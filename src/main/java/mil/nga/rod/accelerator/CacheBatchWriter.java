@@ -0,0 +1,162 @@
+package mil.nga.rod.accelerator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffers writes to the target cache and stores them in batches through 
+ * <code>CacheManagerI.putAllBytes</code> (or <code>putAllFields</code> 
+ * for records stored as hashes), turning one network round trip per key into 
+ * one per batch.  Instances are thread safe so a single writer 
+ * can be shared by all of the refresh threads.  If the same key is written
+ * more than once before a flush only the last value is stored.
+ * 
+ * Buffered entries are only in the cache once they have been flushed, so
+ * <code>flush</code> (or <code>close</code>) must be called before relying
+ * on them being there.  For the same reason products are recorded in the 
+ * refresh checkpoint (if any) through <code>mark</code>, which holds the 
+ * keys back until the writes buffered before them have been stored.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class CacheBatchWriter implements AutoCloseable {
+
+    // Private internal members.
+    private final CacheManagerI       cache;
+    private final RefreshCheckpoint   checkpoint;
+    private final int                 flushSize;
+    private final Map<String, byte[]> pending = 
+            new LinkedHashMap<String, byte[]>();
+    private final Map<String, Map<String, String>> pendingFields = 
+            new LinkedHashMap<String, Map<String, String>>();
+    private final List<String>        pendingMarks = new ArrayList<String>();
+    private boolean                   expensiveMark = false;
+    
+    /**
+     * Constructor.
+     * 
+     * @param cache The target cache.
+     * @param flushSize Number of buffered entries that triggers a flush.  
+     * Values less than 1 are raised to 1.
+     */
+    public CacheBatchWriter(CacheManagerI cache, int flushSize) {
+        this(cache, flushSize, null);
+    }
+    
+    /**
+     * Constructor.
+     * 
+     * @param cache The target cache.
+     * @param flushSize Number of buffered entries that triggers a flush.  
+     * Values less than 1 are raised to 1.
+     * @param checkpoint The refresh checkpoint.  May be null.
+     */
+    public CacheBatchWriter(
+            CacheManagerI cache, 
+            int flushSize, 
+            RefreshCheckpoint checkpoint) {
+        this.cache      = cache;
+        this.checkpoint = checkpoint;
+        this.flushSize  = Math.max(1, flushSize);
+    }
+    
+    /**
+     * Buffer a key/value pair, flushing the buffer if it is full.
+     * 
+     * @param key The key.
+     * @param value The value associated with the key.
+     */
+    public synchronized void put(String key, String value) {
+        putBytes(key, 
+                (value == null ? null : value.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Buffer a binary key/value pair, flushing the buffer if it is full.
+     * 
+     * @param key The key.
+     * @param value The value associated with the key.
+     */
+    public synchronized void putBytes(String key, byte[] value) {
+        pendingFields.remove(key);
+        pending.put(key, value);
+        if (size() >= flushSize) {
+            flush();
+        }
+    }
+    
+    /**
+     * Buffer a record stored as a hash, flushing the buffer if it is full.
+     * 
+     * @param key The key.
+     * @param fields The fields of the record.
+     */
+    public synchronized void putFields(String key, Map<String, String> fields) {
+        pending.remove(key);
+        pendingFields.put(key, fields);
+        if (size() >= flushSize) {
+            flush();
+        }
+    }
+    
+    /**
+     * Buffer a processed product for the refresh checkpoint.  The key is 
+     * recorded in the checkpoint by the next successful flush, i.e. only 
+     * once every write buffered before it is in the cache.
+     * 
+     * @param key The cache key of the product.
+     * @param expensive True if the product was expensive to process (i.e. 
+     * it required a new hash), in which case the checkpoint is flushed to 
+     * disk along with the batch.
+     */
+    public synchronized void mark(String key, boolean expensive) {
+        if (checkpoint != null) {
+            pendingMarks.add(key);
+            expensiveMark = expensiveMark || expensive;
+            if (pendingMarks.size() >= flushSize) {
+                flush();
+            }
+        }
+    }
+    
+    /**
+     * Getter method for the number of buffered entries.
+     * 
+     * @return The number of entries not yet written to the cache.
+     */
+    public synchronized int size() {
+        return pending.size() + pendingFields.size();
+    }
+    
+    /**
+     * Write all buffered entries to the cache, then record the buffered 
+     * products in the checkpoint.  If the write fails the entries and the
+     * products remain buffered.
+     */
+    public synchronized void flush() {
+        if (!pending.isEmpty()) {
+            cache.putAllBytes(pending);
+            pending.clear();
+        }
+        if (!pendingFields.isEmpty()) {
+            cache.putAllFields(pendingFields);
+            pendingFields.clear();
+        }
+        if (!pendingMarks.isEmpty()) {
+            checkpoint.mark(pendingMarks, expensiveMark);
+            pendingMarks.clear();
+            expensiveMark = false;
+        }
+    }
+    
+    /**
+     * Flush the buffered entries.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
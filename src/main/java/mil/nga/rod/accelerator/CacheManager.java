@@ -1,15 +1,34 @@
 package mil.nga.rod.accelerator;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.PropertyLoader;
 import mil.nga.exceptions.PropertiesNotLoadedException;
 import mil.nga.exceptions.PropertyNotFoundException;
 import mil.nga.rod.JSONSerializer;
@@ -17,8 +36,13 @@ import mil.nga.rod.jdbc.AcceleratorJDBCRecordFactory;
 import mil.nga.rod.jdbc.RoDRecordFactory;
 import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.types.HashType;
 import mil.nga.util.FileUtils;
+import mil.nga.util.HashGenerator;
+import mil.nga.util.Options;
+import mil.nga.util.Options.Multiplicity;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 
 /**
@@ -27,7 +51,7 @@ import redis.clients.jedis.exceptions.JedisConnectionException;
  * 
  * @author L. Craig Carpenter
  */
-public class CacheManager {
+public class CacheManager implements CacheManagerConstants {
 
     /**
      * Set up the Log4j system for use throughout the class
@@ -35,26 +59,102 @@ public class CacheManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(
             CacheManager.class);
     
+    /**
+     * Usage String presented when the command line arguments do not make 
+     * sense.
+     */
+    public static final String USAGE_STRING = 
+            "Usage : java mil.nga.rod.accelerator.CacheManager "
+            + "[ -daemon | -plan | -verify | -audit ] [ -h ] [ -help ]";
+    
     /** 
      * Expected format associated with dates coming in from callers.
      */
     private static final String INPUT_DATE_FORMAT_STRING = 
             "yyyy-MM-dd hh:mm:ss";
     
+    /**
+     * Number of milliseconds in a day.
+     */
+    private static final long MILLIS_PER_DAY = 86400000L;
+    
+    /**
+     * Number of milliseconds in a second.
+     */
+    private static final long MILLIS_PER_SECOND = 1000L;
+    
     /**
      * Date formatter objecf for printing output information.
      */
     private static final DateFormat dateFormatter = 
             new SimpleDateFormat(INPUT_DATE_FORMAT_STRING);
 
+    /**
+     * Checkpoint for the refresh currently in progress.  Null if 
+     * checkpointing is disabled or no refresh is running.
+     */
+    private volatile RefreshCheckpoint checkpoint = null;
+    
+    /**
+     * Batches the cache writes of the refresh currently in progress.  Null
+     * if no refresh is running, in which case records are written to the 
+     * cache individually.
+     */
+    private volatile CacheBatchWriter writer = null;
+    
+    /**
+     * Products that failed during the refresh currently in progress, keyed
+     * by cache key.  They are queued for the next refresh (see 
+     * <code>REFRESH_RETRY_KEY</code>).
+     */
+    private final Map<String, Product> failedProducts = 
+            new ConcurrentHashMap<String, Product>();
+    
+    /**
+     * Number of items that have completed processing during the refresh
+     * currently in progress.
+     */
+    private final AtomicInteger processedCounter = new AtomicInteger(0);
+    
+    /**
+     * If true, the connection pools are held open between refresh runs 
+     * (i.e. the CacheManager is running as a daemon).
+     */
+    private volatile boolean resident = false;
+    
+    /**
+     * Per-mount hashing concurrency limits.
+     */
+    private final MountLimiter mountLimiter = new MountLimiter();
+
     /**
      * Default constructor.
      */
     public CacheManager() { }
     
     /**
-     * See if the on-disk file changed in size since the last time the cache 
-     * was updated.  
+     * Getter method for the cache holding the refresh state (i.e. the 
+     * high-water mark, the time of the last full sweep and the retry 
+     * queue) and receiving the batched record writes.
+     * 
+     * @return The cache.
+     */
+    public CacheManagerI getCache() {
+        return RedisCacheManager.getInstance();
+    }
+    
+    /**
+     * Getter method for the per-mount hashing concurrency limits.
+     * 
+     * @return The mount limiter.
+     */
+    public MountLimiter getMountLimiter() {
+        return mountLimiter;
+    }
+    
+    /**
+     * See if the on-disk file changed in size or modification time since the
+     * last time the cache was updated.  
      * 
      * @param value The cached data.
      * @return True if the on-disk data has changed since the last update.
@@ -66,31 +166,20 @@ public class CacheManager {
         boolean needsUpdate = false;
         
         if ((value != null) && (!value.isEmpty())) {
-            
-            QueryRequestAccelerator record = JSONSerializer
+            needsUpdate = isUpdateRequired(JSONSerializer
                     .getInstance()
-                    .deserializeToQueryRequestAccelerator(value);
-            long size = FileUtils.getActualFileSize(Paths.get(record.getPath()));
-            
-            if (size != record.getSize()) {
-                
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("File [ "
-                            + record.getPath()
-                            + " ] has changed.  Cache record will be updated.");
-                }
-                
-                needsUpdate = true;
-            }
+                    .deserializeToQueryRequestAccelerator(value));
         }
         return needsUpdate;
     }
     
     /**
-     * See if the on-disk file changed in size since the last time the cache 
-     * was updated.  
+     * See if the on-disk file changed in size or modification time since the
+     * last time the cache was updated.  Records written before the full 
+     * modification time was stored (see <code>hasLegacyFileDate</code>) 
+     * are compared on size alone.
      * 
-     * @param value The existing data.
+     * @param product The existing data.
      * @return True if the on-disk data has changed since the last update.
      * @throws IOException Thrown if there are issues accessing the on-disk 
      * file.
@@ -102,34 +191,170 @@ public class CacheManager {
         
         if (product != null) {
             
-            long size = FileUtils.getActualFileSize(
-            		Paths.get(product.getPath()));
+            Path p    = Paths.get(product.getPath());
+            long size = FileUtils.getActualFileSize(p);
             
             if (size != product.getSize()) {
-                
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("File [ "
-                            + product.getPath()
-                            + " ] has changed.  Cache record will be updated.");
-                }
-                
                 needsUpdate = true;
             }
+            else if ((!hasLegacyFileDate(product)) && 
+                    (isFileDateChanged(
+                            FileUtils.getActualFileDate(p).getTime(), 
+                            product.getFileDate().getTime()))) {
+                needsUpdate = true;
+            }
+            
+            if (needsUpdate && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("File [ "
+                        + product.getPath()
+                        + " ] has changed.  Cache record will be updated.");
+            }
         }
         return needsUpdate;
     }
     
+    /**
+     * Compare the on-disk modification time with the one stored in an 
+     * existing record.  Records read from the database may hold the time 
+     * truncated to the second (the FILE_DATE column may be an Oracle 
+     * <code>DATE</code>, which has no fractional seconds), so a stored 
+     * time with no millisecond component is compared to the second.  All 
+     * other stored times are compared exactly.
+     * 
+     * @param actual The on-disk modification time (in milliseconds).
+     * @param stored The modification time stored in the record (in 
+     * milliseconds).
+     * @return True if the on-disk file was modified since the record was 
+     * written.
+     */
+    public boolean isFileDateChanged(long actual, long stored) {
+        if ((stored % MILLIS_PER_SECOND) == 0) {
+            return (Math.floorDiv(actual, MILLIS_PER_SECOND) != 
+                    Math.floorDiv(stored, MILLIS_PER_SECOND));
+        }
+        return actual != stored;
+    }
+    
+    /**
+     * Before the full-precision modification time was stored, the file date
+     * was truncated to the day (either by the JSON date format or by the 
+     * JDBC <code>setDate</code> call).  Such a record cannot be used for an 
+     * mtime comparison.  Rather than forcing a rehash of every file, legacy 
+     * records whose size still matches are re-stamped with the actual 
+     * modification time.
+     * 
+     * @param product The existing data.
+     * @return True if the stored file date has no time component.
+     */
+    public boolean hasLegacyFileDate(QueryRequestAccelerator product) {
+        boolean legacy = false;
+        if ((product != null) && (product.getFileDate() != null)) {
+            long time = product.getFileDate().getTime();
+            if ((time % MILLIS_PER_DAY) == 0) {
+                legacy = true;
+            }
+            else {
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(product.getFileDate());
+                legacy = (cal.get(Calendar.HOUR_OF_DAY) == 0) && 
+                        (cal.get(Calendar.MINUTE) == 0) && 
+                        (cal.get(Calendar.SECOND) == 0) && 
+                        (cal.get(Calendar.MILLISECOND) == 0);
+            }
+        }
+        return legacy;
+    }
+    
+    /**
+     * Getter method for the flag indicating the connection pools are held
+     * open between refresh runs.
+     * 
+     * @return True if running as a long-lived daemon.
+     */
+    public boolean isResident() {
+        return resident;
+    }
+    
+    /**
+     * Setter method for the flag indicating the connection pools are held
+     * open between refresh runs.
+     * 
+     * @param value True if running as a long-lived daemon.
+     */
+    public void setResident(boolean value) {
+        resident = value;
+    }
+    
     /**
      * Get a list of all products in the backing data store.
      * 
      * @return The list of all products in the backing data store.
      */
     public List<Product> getAllProducts() {
+        return getAllProducts(null);
+    }
+    
+    /**
+     * Get a list of the products in the backing data store that were loaded
+     * after the input date.
+     * 
+     * @param since Only products with a LOAD_DATE or FILE_DATE after this 
+     * date are returned.  If null, all products are returned.
+     * @return The list of products in the backing data store.
+     */
+    public List<Product> getAllProducts(Date since) {
+        return getAllProducts(since, null);
+    }
+    
+    /**
+     * Get a list of the products in the backing data store that were loaded
+     * after the input date, counting the products that could not be 
+     * retrieved.  A product that cannot be retrieved is left out of the 
+     * list rather than failing the whole read.
+     * 
+     * @param since Only products with a LOAD_DATE or FILE_DATE after this 
+     * date are returned.  If null, all products are returned.
+     * @param missing Incremented for each product that could not be 
+     * retrieved.  May be null.
+     * @return The list of products in the backing data store.  Null if the
+     * data store could not be queried.
+     */
+    public List<Product> getAllProducts(Date since, AtomicInteger missing) {
 
-        List<Product> products = null;
+        final List<Product> products = new ArrayList<Product>();
+        int loaded = getAllProducts(since, new Consumer<Product>() {
+            @Override
+            public void accept(Product product) {
+                products.add(product);
+            }
+        }, missing);
+        return (loaded < 0 ? null : products);
+    }
+    
+    /**
+     * Hand each product in the backing data store that was loaded after 
+     * the input date to the consumer as soon as it is read.  This allows
+     * the staged refresh pipeline to start work while the catalog is still
+     * being read.
+     * 
+     * @param since Only products with a LOAD_DATE or FILE_DATE after this 
+     * date are read.  If null, all products are read.
+     * @param consumer Callback receiving each product.
+     * @param missing Incremented for each product that could not be 
+     * retrieved.  May be null.
+     * @return The number of products read, or -1 if the data store could 
+     * not be queried.
+     */
+    public int getAllProducts(
+            Date since, 
+            Consumer<Product> consumer, 
+            AtomicInteger missing) {
+
+        int loaded = -1;
         
-        try (RoDRecordFactory factory = RoDRecordFactory.getInstance()) {
-            products = factory.getUniqueProducts();
+        try {
+            loaded = RoDRecordFactory.getInstance().getUniqueProducts(
+                    since, consumer, missing);
         }
         catch (PropertyNotFoundException pnfe) {
             LOGGER.error("PropertyNotFoundException raised "
@@ -165,171 +390,1723 @@ public class CacheManager {
                     + "or disable the caching feature.");
         }
         
-        return products;
+        return loaded;
     }
     
     /**
-     * Main method containing the logic required to update the accelerator cache.
+     * Get the current high-water mark of the product catalog (i.e. the most
+     * recent LOAD_DATE/FILE_DATE).  This is read before the refresh starts 
+     * so products loaded while the refresh is running are picked up by the
+     * next incremental run.
+     * 
+     * @return The catalog high-water mark.  Null if unavailable.
      */
-    public void updateAcceleratorCache() {
+    public Date getCatalogHighWaterMark() {
+        Date mark = null;
+        try {
+            mark = RoDRecordFactory.getInstance().getHighWaterMark();
+        }
+        catch (Exception e) {
+            LOGGER.warn("Unable to determine the catalog high-water mark.  "
+                    + "Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        return mark;
+    }
     
-        long start          = System.currentTimeMillis();
-        int  successCounter = 0;
-        int  failedCounter  = 0;
-        int  totalCounter   = 0;
+    /**
+     * Retrieve the high-water mark recorded by the last successful refresh.
+     * 
+     * @return The recorded high-water mark, or null if none has been 
+     * recorded (or it could not be retrieved).
+     */
+    public Date getRecordedHighWaterMark() {
+        Date since = null;
+        try {
+            String mark = getCache().get(HIGH_WATER_MARK_KEY);
+            if (mark != null) {
+                since = new Date(Long.parseLong(mark));
+            }
+        }
+        catch (NumberFormatException nfe) {
+            LOGGER.warn("Invalid refresh high-water mark found in the "
+                    + "cache.");
+        }
+        catch (JedisConnectionException jce) {
+            LOGGER.warn("Unable to retrieve the refresh high-water mark "
+                    + "from the cache.  Error message [ "
+                    + jce.getMessage()
+                    + " ].");
+        }
+        return since;
+    }
+    
+    /**
+     * Determine the starting point for an incremental refresh.  A full 
+     * sweep (indicated by a null return value) is performed if incremental
+     * refresh is disabled, no high-water mark has been recorded, or the 
+     * last full sweep is older than the configured full sweep interval.
+     * The full sweep catches out-of-band changes to files that were not 
+     * reflected in the catalog dates.
+     * 
+     * @return The high-water mark to refresh from, or null if a full sweep
+     * is required.
+     */
+    public Date getIncrementalStartDate() {
         
-        LOGGER.info("Cache update started at [ "
-                + dateFormatter.format(new Date(System.currentTimeMillis()))
-                + " ].");
-            
-        List<Product> records = getAllProducts();
+        Date since = null;
         
-        if ((records != null) && (records.size() > 0)) {
-            
-            try (RedisCacheManager cacheManager = RedisCacheManager.getInstance()) {
-                for (Product record : records) {
-                    
-                    totalCounter++;
-                    try {
-                        
-                        String key = AcceleratorRecordFactory.getInstance().getKey(record);
-                        QueryRequestAccelerator value = 
-                        		JSONSerializer
-                        			.getInstance()
-                        			.deserializeToQueryRequestAccelerator(
-                        					RedisCacheManager.getInstance().get(key));
-                        
-                        //Not in cache? 
-                        if (value == null) {
-                        	// Check the database
-                        	value = AcceleratorJDBCRecordFactory.getInstance().getRecord(record);
-                        	// Not in database?
-                        	if (value == null) {
-                        		// Generate the record.
-                        		value = AcceleratorRecordFactory
-                        				.getInstance()
-                        				.buildRecord(record);
-                        		if (value != null) {
-	                        		RedisCacheManager.getInstance().put(
-	                        				key, 
-	                        				AcceleratorRecordFactory.getInstance().getValue(value));
-	                        		AcceleratorJDBCRecordFactory.getInstance().insert(value);
-	                        		successCounter++;
-                        		}
-                        		else {
-                                    failedCounter++;
-                                }
-                        	}
-                        	// It's in the database.  Is an update necessary?
-                        	else if (isUpdateRequired(value)) {
-                        		value = AcceleratorRecordFactory
-                        				.getInstance()
-                        				.buildRecord(record);
-                        		if (value != null) {
-	                        		RedisCacheManager.getInstance().put(
-	                        				key, 
-	                        				AcceleratorRecordFactory.getInstance().getValue(value));
-	                        		AcceleratorJDBCRecordFactory.getInstance().update(value);
-	                        		successCounter++;
-                        		}
-                        		else {
-                                    failedCounter++;
-                                }
-                        	}
-                        	else {
-                        		// Ensure it's put back in the cache.
-                        		RedisCacheManager.getInstance().put(
-                        				key, 
-                        				AcceleratorRecordFactory.getInstance().getValue(value));
-                        	}
-                        }
-                        // It's in the cache.  Is an update necessary?
-                        else if (isUpdateRequired(value)) {
-                    		value = AcceleratorRecordFactory
-                    				.getInstance()
-                    				.buildRecord(record);
-                    		if (value != null) {
-                        		RedisCacheManager.getInstance().put(
-                        				key, 
-                        				AcceleratorRecordFactory.getInstance().getValue(value));
-                        		AcceleratorJDBCRecordFactory.getInstance().update(value);
-                        		successCounter++;
-                    		}
-                    		else {
-                                failedCounter++;
-                            }
-                    	}
-                    }
-                    catch (ClassNotFoundException cnfe) {
-                    	failedCounter++;
-                    	LOGGER.error("Configuration error encountered.  "
-                    			+ "Database unavailable.  Unexpected "
-                    			+ "ClassNotFoundException raised.  "
-                    			+ "Error message => [ "
-                    			+ cnfe.getMessage()
-                    			+ " ].");
-                    }
-                    catch (PropertiesNotLoadedException pnle) {
-                    	failedCounter++;
-                    	LOGGER.error("Configuration error encountered.  "
-                    			+ "Database unavailable.  Unexpected "
-                    			+ "PropertiesNotLoadedException raised.  "
-                    			+ "Error message => [ "
-                    			+ pnle.getMessage()
-                    			+ " ].");
-                    }
-                    catch (PropertyNotFoundException pnfe) {
-                    	failedCounter++;
-                    	LOGGER.error("Configuration error encountered.  "
-                    			+ "Database unavailable.  Unexpected "
-                    			+ "PropertyNotFoundException raised.  "
-                    			+ "Error message => [ "
-                    			+ pnfe.getMessage()
-                    			+ " ].");
-                    }
-                    catch (IOException ioe) {
-                        failedCounter++;
-                        LOGGER.error("Unexpected IOException raised while "
-                                + "attempting to access on-disk file [ "
-                                + record.getPath()
-                                + " ].  Error message [ "
-                                + ioe.getMessage()
-                                + " ].  Cache record not updated.");
-                    }
-                } // end for
-            } // end try-with-resources
+        if (PropertyLoader.getInstance().getBooleanProperty(
+                REFRESH_INCREMENTAL_PROPERTY, false)) {
             try {
-            	AcceleratorJDBCRecordFactory.getInstance().removeDuplicates();
+                long interval = PropertyLoader.getInstance().getIntProperty(
+                        REFRESH_FULL_SWEEP_INTERVAL_PROPERTY, 
+                        DEFAULT_REFRESH_FULL_SWEEP_INTERVAL) * 3600000L;
+                Date   mark      = getRecordedHighWaterMark();
+                String lastSweep = getCache().get(LAST_FULL_SWEEP_KEY);
+                if ((mark == null) || (lastSweep == null)) {
+                    LOGGER.info("No refresh high-water mark recorded.  A "
+                            + "full sweep will be performed.");
+                }
+                else if ((System.currentTimeMillis() - 
+                        Long.parseLong(lastSweep)) >= interval) {
+                    LOGGER.info("Full sweep interval has elapsed.  A full "
+                            + "sweep will be performed.");
+                }
+                else {
+                    since = mark;
+                }
             }
-            catch (Exception e) {}
-        } 
-        else {
-            LOGGER.error("Data store unavailable.  (Query did not return "
-                    + "any records).");
-        }       
+            catch (NumberFormatException nfe) {
+                LOGGER.warn("Invalid last full sweep time found in the "
+                        + "cache.  A full sweep will be performed.");
+            }
+            catch (JedisConnectionException jce) {
+                LOGGER.warn("Unable to retrieve the last full sweep time "
+                        + "from the cache.  Error message [ "
+                        + jce.getMessage()
+                        + " ].  A full sweep will be performed.");
+            }
+        }
+        return since;
+    }
+    
+    /**
+     * Record the refresh high-water mark (and the time of the last full 
+     * sweep, if applicable) in the cache.
+     * 
+     * @param mark The catalog high-water mark read at the start of the 
+     * refresh.
+     * @param fullSweep True if the refresh just completed was a full sweep.
+     */
+    public void updateHighWaterMark(Date mark, boolean fullSweep) {
+        if (mark != null) {
+            try {
+                getCache().put(
+                        HIGH_WATER_MARK_KEY, 
+                        Long.toString(mark.getTime()));
+                if (fullSweep) {
+                    getCache().put(
+                            LAST_FULL_SWEEP_KEY, 
+                            Long.toString(System.currentTimeMillis()));
+                }
+            }
+            catch (JedisConnectionException jce) {
+                LOGGER.warn("Unable to store the refresh high-water mark "
+                        + "in the cache.  Error message [ "
+                        + jce.getMessage()
+                        + " ].");
+            }
+        }
+    }
+    
+    /**
+     * Retrieve the products queued for retry by the last refresh.
+     * 
+     * @return The queued products.  Empty if none are queued (or the 
+     * queue could not be retrieved).
+     */
+    public List<Product> getRetryProducts() {
+        List<Product> products = new ArrayList<Product>();
+        try {
+            for (String json : getCache().getFields(
+                    REFRESH_RETRY_KEY).values()) {
+                Product product = JSONSerializer.getInstance()
+                        .deserializeToProduct(json);
+                if (product != null) {
+                    products.add(product);
+                }
+            }
+        }
+        catch (JedisDataException jde) {
+            LOGGER.warn("Invalid refresh retry queue found in the cache.");
+        }
+        catch (JedisConnectionException jce) {
+            LOGGER.warn("Unable to retrieve the refresh retry queue from "
+                    + "the cache.  Error message [ "
+                    + jce.getMessage()
+                    + " ].");
+        }
+        return products;
+    }
+    
+    /**
+     * Add the products queued for retry to the input list of products 
+     * selected from the catalog.  Queued products already in the list are
+     * not added again.
+     * 
+     * @param products The products selected from the catalog.
+     * @param retries The products queued for retry.
+     * @return The combined list.
+     */
+    private List<Product> addRetryProducts(
+            List<Product> products, 
+            List<Product> retries) {
+        if ((products != null) && (!retries.isEmpty())) {
+            Set<String> keys = new HashSet<String>();
+            for (Product product : products) {
+                keys.add(AcceleratorRecordFactory.getInstance().getKey(product));
+            }
+            int added = 0;
+            for (Product retry : retries) {
+                if (keys.add(AcceleratorRecordFactory.getInstance().getKey(retry))) {
+                    products.add(retry);
+                    added++;
+                }
+            }
+            LOGGER.info("Retrying [ "
+                    + added
+                    + " ] products that failed during the last refresh.");
+        }
+        return products;
+    }
+    
+    /**
+     * Replace the retry queue with the products that failed during the 
+     * refresh just completed.
+     * 
+     * @return True if the queue was stored.
+     */
+    private boolean updateRetryQueue() {
+        boolean stored = false;
+        try {
+            if (failedProducts.isEmpty()) {
+                getCache().remove(REFRESH_RETRY_KEY);
+            }
+            else {
+                Map<String, String> queue = new LinkedHashMap<String, String>();
+                for (Map.Entry<String, Product> entry : 
+                        failedProducts.entrySet()) {
+                    queue.put(entry.getKey(), JSONSerializer.getInstance()
+                            .serialize(entry.getValue()));
+                }
+                getCache().putFields(REFRESH_RETRY_KEY, queue);
+            }
+            stored = true;
+        }
+        catch (JedisConnectionException jce) {
+            LOGGER.warn("Unable to store the refresh retry queue in the "
+                    + "cache.  Error message [ "
+                    + jce.getMessage()
+                    + " ].");
+        }
+        return stored;
+    }
+    
+    /**
+     * Open the refresh checkpoint (if configured).  If an interrupted run 
+     * of the same type left a checkpoint behind, the products it recorded
+     * will be skipped by this run.  Incremental runs checkpoint to the 
+     * configured file with an <code>.incremental</code> suffix so that 
+     * full sweeps and incremental runs do not discard each other's 
+     * progress.
+     * 
+     * @param since The incremental starting point of the run, or null for a
+     * full sweep.
+     * @return The opened checkpoint, or null if checkpointing is disabled 
+     * or the checkpoint could not be opened.
+     */
+    private RefreshCheckpoint openCheckpoint(Date since) {
         
-        LOGGER.info("Cache update completed at [ "
-                + dateFormatter.format(new Date(System.currentTimeMillis()))
-                + " ] in [ "
-                + (System.currentTimeMillis() - start)
-                + " ] ms.");
-        LOGGER.info("Processed [ "
-                + totalCounter
-                + " ] records.  [ "
-                + successCounter 
-                + " ] were successfully updated, [ "
-                + failedCounter
-                + " ] records failed to update.");
+        RefreshCheckpoint cp       = null;
+        String            filename = null;
+        
+        try {
+            filename = PropertyLoader.getInstance().getProperty(
+                    REFRESH_CHECKPOINT_FILE_PROPERTY);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        
+        if ((filename != null) && (!filename.trim().isEmpty())) {
+            filename = filename.trim();
+            if (since != null) {
+                filename = filename + ".incremental";
+            }
+            cp = new RefreshCheckpoint(
+                    Paths.get(filename),
+                    (since == null ? "full" : Long.toString(since.getTime())),
+                    PropertyLoader.getInstance().getIntProperty(
+                            REFRESH_CHECKPOINT_FLUSH_INTERVAL_PROPERTY, 
+                            DEFAULT_REFRESH_CHECKPOINT_FLUSH_INTERVAL),
+                    PropertyLoader.getInstance().getIntProperty(
+                            REFRESH_CHECKPOINT_MAX_AGE_PROPERTY, 
+                            DEFAULT_REFRESH_CHECKPOINT_MAX_AGE) 
+                        * 60L * 60L * 1000L);
+            try {
+                cp.open();
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to open refresh checkpoint file [ "
+                        + filename
+                        + " ].  Error message [ "
+                        + ioe.getMessage()
+                        + " ].  Checkpointing disabled for this run.");
+                cp = null;
+            }
+        }
+        return cp;
     }
     
     /**
-     * Main method invoked to start the Replication-on-Demand cache management
-     * application.
-     * @param args Command line arguments.
+     * Was the input product already processed by an interrupted run that 
+     * is being resumed?
+     * 
+     * @param prod The product to check.
+     * @return True if the product can be skipped.
      */
-    public static void main(String[] args) {
+    public boolean isCheckpointed(Product prod) {
+        RefreshCheckpoint cp = checkpoint;
+        return (cp != null) && cp.isComplete(
+                AcceleratorRecordFactory.getInstance().getKey(prod));
+    }
+    
+    /**
+     * Record a processed item in the refresh checkpoint.  Failed items are
+     * not recorded so that they are retried if the run is resumed; they 
+     * are queued for the next run instead (see 
+     * <code>updateRetryQueue</code>).  Items
+     * are recorded through the batch writer so that no item is recorded 
+     * before its record is in the cache.
+     * 
+     * @param item The processed item.
+     */
+    public void checkpoint(RefreshItem item) {
+        processedCounter.incrementAndGet();
+        if ((item.getStatus() == RefreshStatus.FAILED) && 
+                (!item.getKey().isEmpty())) {
+            failedProducts.put(item.getKey(), item.getProduct());
+        }
+        RefreshCheckpoint cp = checkpoint;
+        if ((cp != null) && (item.getStatus() != RefreshStatus.FAILED)) {
+            boolean          expensive = 
+                    (item.getStatus() == RefreshStatus.UPDATED);
+            CacheBatchWriter w         = writer;
+            if (w != null) {
+                w.mark(item.getKey(), expensive);
+            }
+            else {
+                cp.mark(item.getKey(), expensive);
+            }
+        }
+    }
+    
+    /**
+     * Retrieve the number of worker threads to use when refreshing the 
+     * accelerator cache from the system properties.  If the property is not 
+     * defined, or is invalid, the default (serial) value is returned.
+     * 
+     * @return The number of refresh worker threads.
+     */
+    public int getRefreshThreads() {
+        int threads = PropertyLoader.getInstance().getIntProperty(
+                REFRESH_THREADS_PROPERTY, 
+                DEFAULT_REFRESH_THREADS);
+        if (threads < 1) {
+            LOGGER.warn("Invalid value supplied for property [ "
+                    + REFRESH_THREADS_PROPERTY
+                    + " ].  Using the default value of [ "
+                    + DEFAULT_REFRESH_THREADS
+                    + " ].");
+            threads = DEFAULT_REFRESH_THREADS;
+        }
+        return threads;
+    }
+    
+    /**
+     * The singleton holders used by the refresh are not synchronized.  This 
+     * method makes sure they are constructed before any worker threads are 
+     * started.
+     */
+    public void initializeSingletons() {
+        AcceleratorRecordFactory.getInstance();
+        RedisCacheManager.getInstance();
         try {
-            (new CacheManager()).updateAcceleratorCache();
+            AcceleratorJDBCRecordFactory.getInstance();
+        }
+        catch (Exception e) {
+            LOGGER.warn("Unable to initialize the accelerator "
+                    + "data store.  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+    }
+    
+    /**
+     * Retrieve the number of cache entries to load per round trip when 
+     * preloading the cache state.
+     * 
+     * @return The preload batch size.  0 if preloading is disabled.
+     */
+    public int getPreloadBatchSize() {
+        return Math.max(0, PropertyLoader.getInstance().getIntProperty(
+                REFRESH_PRELOAD_BATCH_SIZE_PROPERTY, 
+                DEFAULT_REFRESH_PRELOAD_BATCH_SIZE));
+    }
+    
+    /**
+     * Load the current cache entries for the input items in bulk.  Rather 
+     * than one <code>GET</code> round trip per product during the lookup 
+     * stage, the entries are retrieved with one <code>MGET</code> (or one
+     * pipeline of <code>HGETALL</code> commands if records are stored as 
+     * hashes) per batch.  If the bulk load fails the items are left untouched and the 
+     * lookup stage falls back to individual reads.
+     * 
+     * @param items The items to preload.
+     */
+    public void preload(List<RefreshItem> items) {
+        
+        int batchSize = getPreloadBatchSize();
+        
+        if ((batchSize > 0) && (items != null)) {
+            for (int i = 0; i < items.size(); i += batchSize) {
+                List<RefreshItem> batch = items.subList(
+                        i, Math.min(items.size(), i + batchSize));
+                List<String>      keys  = new ArrayList<String>();
+                for (RefreshItem item : batch) {
+                    item.setKey(AcceleratorRecordFactory.getInstance().getKey(
+                            item.getProduct()));
+                    keys.add(item.getKey());
+                }
+                try {
+                    if (RedisCacheManager.getInstance().isHashStorage()) {
+                        Map<String, Map<String, String>> fields = 
+                                RedisCacheManager.getInstance().getAllFields(
+                                        keys, batchSize);
+                        for (RefreshItem item : batch) {
+                            item.setCachedFields(fields.get(item.getKey()));
+                        }
+                    }
+                    else {
+                        Map<String, byte[]> values = RedisCacheManager
+                                .getInstance().getAllBytes(keys, batchSize);
+                        for (RefreshItem item : batch) {
+                            item.setCachedValue(values.get(item.getKey()));
+                        }
+                    }
+                }
+                catch (JedisConnectionException jce) {
+                    LOGGER.warn("Unable to preload the cache state.  Error "
+                            + "message [ "
+                            + jce.getMessage()
+                            + " ].  Records will be looked up individually.");
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Lookup stage.  Retrieve the existing accelerator record for the item 
+     * from the cache (or the preloaded cache entry), falling back to the 
+     * accelerator table if the record is not cached.
+     * 
+     * @param item The item to process.
+     * @throws ClassNotFoundException Thrown if the JDBC driver is not 
+     * available.
+     * @throws PropertiesNotLoadedException Thrown if the system properties 
+     * could not be loaded.
+     * @throws PropertyNotFoundException Thrown if a required database 
+     * property is missing.
+     */
+    public void lookup(RefreshItem item) 
+            throws ClassNotFoundException, 
+                PropertiesNotLoadedException, 
+                PropertyNotFoundException {
+        
+        if (item.getKey() == null) {
+            item.setKey(AcceleratorRecordFactory.getInstance().getKey(
+                    item.getProduct()));
+        }
+        QueryRequestAccelerator value = null;
+        if (RedisCacheManager.getInstance().isHashStorage()) {
+            Map<String, String> fields = item.isPreloaded() ? 
+                    item.getCachedFields() : 
+                    readFields(item.getKey());
+            value = AcceleratorRecordFactory.getInstance().getRecord(fields);
+            if (value != null) {
+                item.setCached(true);
+            }
+            else if (fields == null) {
+                // Written before the storage mode was changed.  Re-cached 
+                // as a hash by the write-back stage.
+                value = AcceleratorRecordFactory.getInstance().decode(
+                        readValue(item.getKey()));
+            }
+        }
+        else {
+            byte[] cachedValue = item.isPreloaded() ? 
+                    item.getCachedValue() : 
+                    readValue(item.getKey());
+            value = AcceleratorRecordFactory.getInstance().decode(cachedValue);
+            if (value != null) {
+                item.setCached(true);
+            }
+        }
+        if (value == null) {
+            // Not in cache?  Check the database.
+            value = AcceleratorJDBCRecordFactory
+                    .getInstance()
+                    .getRecord(item.getProduct());
+        }
+        item.setCurrent(value);
+    }
+    
+    /**
+     * Read a record stored as a string value.
+     * 
+     * @param key The cache key.
+     * @return The encoded record.  Null if the key is not in the cache or
+     * holds a value that is not a string.
+     */
+    private byte[] readValue(String key) {
+        try {
+            return RedisCacheManager.getInstance().getBytes(key);
+        }
+        catch (JedisDataException jde) {
+            return null;
+        }
+    }
+    
+    /**
+     * Read a record stored as a hash.
+     * 
+     * @param key The cache key.
+     * @return The fields of the record.  Empty if the key is not in the 
+     * cache, null if it holds a value that is not a hash.
+     */
+    private Map<String, String> readFields(String key) {
+        try {
+            return RedisCacheManager.getInstance().getFields(key);
+        }
+        catch (JedisDataException jde) {
+            return null;
+        }
+    }
+    
+    /**
+     * Change detection stage.  Compare the existing accelerator record 
+     * against the on-disk file and decide what work is required.
+     * 
+     * @param item The item to process.
+     * @throws IOException Thrown if there are issues accessing the on-disk 
+     * file.
+     */
+    public void detectChanges(RefreshItem item) throws IOException {
+        if (item.getCurrent() == null) {
+            item.setAction(RefreshItem.Action.INSERT);
+        }
+        else if (isUpdateRequired(item.getCurrent())) {
+            item.setAction(RefreshItem.Action.UPDATE);
+        }
+        else if (!AcceleratorRecordFactory.getInstance().hasAdditionalHashes(
+                item.getCurrent())) {
+            // A new hash type was configured.
+            item.setAction(RefreshItem.Action.UPDATE);
+        }
+        else if (item.getCurrent().getHashType() != 
+                AcceleratorRecordFactory.getInstance().getHashType(
+                        item.getCurrent().getSize())) {
+            // The tree hash threshold was changed.
+            item.setAction(RefreshItem.Action.UPDATE);
+        }
+        else if (hasLegacyFileDate(item.getCurrent()) && 
+                isFileDateChanged(
+                        FileUtils.getActualFileDate(Paths.get(
+                                item.getCurrent().getPath())).getTime(), 
+                        item.getCurrent().getFileDate().getTime())) {
+            item.setAction(RefreshItem.Action.RESTAMP);
+        }
+        else if (!item.isCached()) {
+            // Ensure it's put back in the cache.
+            item.setAction(RefreshItem.Action.RECACHE);
+        }
+        else {
+            item.setAction(RefreshItem.Action.NONE);
+        }
+    }
+    
+    /**
+     * Hashing stage.  Generate a new accelerator record for items that 
+     * require one.  The number of concurrent reads on each mount (one per 
+     * file, plus one per additional tree hash segment read in parallel) is
+     * limited by the <code>MountLimiter</code>.
+     * 
+     * @param item The item to process.
+     * @throws IOException Thrown if there are issues accessing the on-disk 
+     * file.
+     */
+    public void generate(RefreshItem item) throws IOException {
+        if (item.isHashRequired()) {
+            String mount = mountLimiter.getMount(item.getProduct().getPath());
+            try {
+                mountLimiter.acquire(mount);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting "
+                        + "to hash a file on mount [ "
+                        + mount
+                        + " ].");
+            }
+            // A tree hash reads several segments of the file at once.  Each
+            // extra reader needs a permit of its own, taken only if one is 
+            // free so that waiting for them cannot deadlock.
+            int extra = 0;
+            try {
+                Path p = Paths.get(item.getProduct().getPath());
+                if ((Files.exists(p)) && 
+                        (AcceleratorRecordFactory.getInstance().getHashType(
+                                FileUtils.getActualFileSize(p)).isTree())) {
+                    extra = mountLimiter.tryAcquire(
+                            mount, HashGenerator.TREE_PARALLELISM - 1);
+                }
+                item.setRecord(AcceleratorRecordFactory
+                        .getInstance()
+                        .buildRecord(item.getProduct(), 1 + extra));
+            }
+            finally {
+                mountLimiter.release(mount, extra);
+                mountLimiter.release(mount);
+            }
+            if (item.getRecord() == null) {
+                item.setStatus(RefreshStatus.FAILED);
+            }
+        }
+    }
+    
+    /**
+     * Write-back stage.  Push the results to the cache and the accelerator 
+     * table.
+     * 
+     * @param item The item to process.
+     * @throws ClassNotFoundException Thrown if the JDBC driver is not 
+     * available.
+     * @throws PropertiesNotLoadedException Thrown if the system properties 
+     * could not be loaded.
+     * @throws PropertyNotFoundException Thrown if a required database 
+     * property is missing.
+     * @throws IOException Thrown if there are issues accessing the on-disk 
+     * file.
+     */
+    public void writeBack(RefreshItem item) 
+            throws ClassNotFoundException, 
+                PropertiesNotLoadedException, 
+                PropertyNotFoundException,
+                IOException {
+        
+        if (item.getStatus() == RefreshStatus.FAILED) {
+            return;
+        }
+        switch (item.getAction()) {
+            case RECACHE:
+                cache(item.getKey(), item.getCurrent());
+                break;
+            case RESTAMP:
+                QueryRequestAccelerator restamped = 
+                        new QueryRequestAccelerator
+                            .QueryRequestAcceleratorBuilder()
+                            .product(item.getCurrent().getProduct())
+                            .fileDate(FileUtils.getActualFileDate(
+                                    Paths.get(item.getCurrent().getPath())))
+                            .hash(item.getCurrent().getHash())
+                            .hashType(item.getCurrent().getHashType())
+                            .hashes(item.getCurrent().getHashes())
+                            .size(item.getCurrent().getSize())
+                            .build();
+                item.setRecord(restamped);
+                cache(item.getKey(), restamped);
+                AcceleratorJDBCRecordFactory.getInstance().update(restamped);
+                break;
+            case INSERT:
+                cache(item.getKey(), item.getRecord());
+                AcceleratorJDBCRecordFactory.getInstance().insert(
+                        item.getRecord());
+                item.setStatus(RefreshStatus.UPDATED);
+                break;
+            case UPDATE:
+                cache(item.getKey(), item.getRecord());
+                AcceleratorJDBCRecordFactory.getInstance().update(
+                        item.getRecord());
+                item.setStatus(RefreshStatus.UPDATED);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Store a record in the cache, through the batch writer of the refresh
+     * in progress if there is one.  The record is written as a hash or 
+     * as a value encoded with the configured codec according to the 
+     * configured storage mode.
+     * 
+     * @param key The cache key.
+     * @param record The record.
+     */
+    private void cache(String key, QueryRequestAccelerator record) {
+        CacheBatchWriter w = writer;
+        if (RedisCacheManager.getInstance().isHashStorage()) {
+            Map<String, String> fields = 
+                    AcceleratorRecordFactory.getInstance().getFields(record);
+            if (w != null) {
+                w.putFields(key, fields);
+            }
+            else {
+                RedisCacheManager.getInstance().putFields(key, fields);
+            }
+        }
+        else {
+            byte[] value = 
+                    AcceleratorRecordFactory.getInstance().encode(record);
+            if (w != null) {
+                w.putBytes(key, value);
+            }
+            else {
+                RedisCacheManager.getInstance().putBytes(key, value);
+            }
+        }
+    }
+    
+    /**
+     * Bring the cache and accelerator table entries for a single product 
+     * up to date.  This method runs each of the refresh stages in turn and 
+     * is shared by the serial and parallel refresh paths.  It is safe to 
+     * call from multiple threads once the backing singletons have been 
+     * initialized.
+     * 
+     * @param record The product to refresh.
+     * @return The outcome of the refresh.
+     */
+    public RefreshStatus refresh(Product record) {
+        RefreshItem item = new RefreshItem(record);
+        refresh(item, true, true);
+        return item.getStatus();
+    }
+    
+    /**
+     * Run the requested refresh stages for a single item.  The detection 
+     * stages (lookup and change detection) and the update stages (hashing 
+     * and write-back) may be run separately so that the work can be 
+     * prioritized in between.  The item is checkpointed once no further 
+     * work remains.
+     * 
+     * @param item The item to refresh.
+     * @param detect If true, run the lookup and change detection stages.
+     * @param update If true, run the hashing and write-back stages.
+     */
+    private void refresh(RefreshItem item, boolean detect, boolean update) {
+        
+        Product record = item.getProduct();
+        
+        try {
+            if (detect) {
+                lookup(item);
+                detectChanges(item);
+            }
+            if (update) {
+                generate(item);
+                writeBack(item);
+            }
+        }
+        catch (ClassNotFoundException cnfe) {
+            item.setStatus(RefreshStatus.FAILED);
+        	LOGGER.error("Configuration error encountered.  "
+        			+ "Database unavailable.  Unexpected "
+        			+ "ClassNotFoundException raised.  "
+        			+ "Error message => [ "
+        			+ cnfe.getMessage()
+        			+ " ].");
+        }
+        catch (PropertiesNotLoadedException pnle) {
+            item.setStatus(RefreshStatus.FAILED);
+        	LOGGER.error("Configuration error encountered.  "
+        			+ "Database unavailable.  Unexpected "
+        			+ "PropertiesNotLoadedException raised.  "
+        			+ "Error message => [ "
+        			+ pnle.getMessage()
+        			+ " ].");
+        }
+        catch (PropertyNotFoundException pnfe) {
+            item.setStatus(RefreshStatus.FAILED);
+        	LOGGER.error("Configuration error encountered.  "
+        			+ "Database unavailable.  Unexpected "
+        			+ "PropertyNotFoundException raised.  "
+        			+ "Error message => [ "
+        			+ pnfe.getMessage()
+        			+ " ].");
+        }
+        catch (IOException ioe) {
+            item.setStatus(RefreshStatus.FAILED);
+            LOGGER.error("Unexpected IOException raised while "
+                    + "attempting to access on-disk file [ "
+                    + record.getPath()
+                    + " ].  Error message [ "
+                    + ioe.getMessage()
+                    + " ].  Cache record not updated.");
+        }
+        catch (RuntimeException re) {
+            item.setStatus(RefreshStatus.FAILED);
+            LOGGER.error("Unexpected "
+                    + re.getClass().getName()
+                    + " raised while refreshing on-disk file [ "
+                    + record.getPath()
+                    + " ].  Error message [ "
+                    + re.getMessage()
+                    + " ].  Cache record not updated.", re);
+        }
+        if (update || 
+                (item.getStatus() == RefreshStatus.FAILED) || 
+                (!item.isWriteRequired())) {
+            checkpoint(item);
+        }
+    }
+    
+    /**
+     * Refresh the input list of products in catalog order (see 
+     * <code>runTasks</code>).  The per-product logic is the same whatever 
+     * the number of threads.
+     * 
+     * @param records The items to refresh.
+     * @param threads The number of worker threads to use.
+     * @return Array containing the [ total, success, failed ] counters.  
+     * The total only counts the items actually processed, which is less 
+     * than the number of input items if the run was interrupted.
+     */
+    private int[] refreshAll(List<RefreshItem> records, int threads) {
+        
+        final AtomicInteger totalCounter   = new AtomicInteger(0);
+        final AtomicInteger successCounter = new AtomicInteger(0);
+        final AtomicInteger failedCounter  = new AtomicInteger(0);
+        List<Runnable>      tasks          = new ArrayList<Runnable>();
+        
+        for (final RefreshItem item : records) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(item, true, true);
+                    totalCounter.incrementAndGet();
+                    tally(item, successCounter, failedCounter);
+                }
+            });
+        }
+        runTasks(tasks, threads);
+        
+        return new int[] { 
+                totalCounter.get(), 
+                successCounter.get(), 
+                failedCounter.get() };
+    }
+    
+    /**
+     * Count the outcome of a processed item.
+     * 
+     * @param item The processed item.
+     * @param updated Incremented if the item was updated.
+     * @param failed Incremented if the item failed.
+     */
+    private static void tally(
+            RefreshItem item, 
+            AtomicInteger updated, 
+            AtomicInteger failed) {
+        switch (item.getStatus()) {
+            case UPDATED:
+                updated.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Refresh the input list of products in priority order.  Change 
+     * detection is run for every product first (this is cheap relative to 
+     * hashing) after which the products requiring work are sorted by the 
+     * refresh priority policy and then hashed/written in that order.
+     * 
+     * @param records The items to refresh.
+     * @param threads The number of worker threads to use.
+     * @param priority The refresh priority policy.
+     * @return Array containing the [ total, success, failed ] counters.  
+     * The total only counts the items whose change detection ran.
+     */
+    private int[] refreshPrioritized(
+            List<RefreshItem> records, 
+            int threads, 
+            RefreshPriority priority) {
+        
+        final AtomicInteger     totalCounter   = new AtomicInteger(0);
+        final AtomicInteger     successCounter = new AtomicInteger(0);
+        final AtomicInteger     failedCounter  = new AtomicInteger(0);
+        final List<RefreshItem> work           = 
+                Collections.synchronizedList(new ArrayList<RefreshItem>());
+        List<Runnable>          detectTasks    = new ArrayList<Runnable>();
+        List<Runnable>          updateTasks    = new ArrayList<Runnable>();
+        
+        for (final RefreshItem item : records) {
+            detectTasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(item, true, false);
+                    totalCounter.incrementAndGet();
+                    if (item.getStatus() == RefreshStatus.FAILED) {
+                        failedCounter.incrementAndGet();
+                    }
+                    else if (item.isWriteRequired()) {
+                        work.add(item);
+                    }
+                }
+            });
+        }
+        runTasks(detectTasks, threads);
+        
+        Collections.sort(work, priority);
+        LOGGER.info("[ "
+                + work.size()
+                + " ] of [ "
+                + records.size()
+                + " ] products require an update.  Processing in priority "
+                + "order [ "
+                + priority.toString()
+                + " ].");
+        
+        for (final RefreshItem item : work) {
+            updateTasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    refresh(item, false, true);
+                    tally(item, successCounter, failedCounter);
+                }
+            });
+        }
+        runTasks(updateTasks, threads);
+        
+        return new int[] { 
+                totalCounter.get(), 
+                successCounter.get(), 
+                failedCounter.get() };
+    }
+    
+    /**
+     * Run the input tasks to completion, in order, on a fixed-size pool of 
+     * worker threads.  A single thread runs the tasks in the calling 
+     * thread.  A task that throws is logged and does not stop the others.
+     * If interrupted, tasks that have not started are abandoned.
+     * 
+     * @param tasks The tasks to run.
+     * @param threads The number of worker threads to use.
+     * @return The number of tasks that ran to completion.
+     */
+    private int runTasks(List<Runnable> tasks, int threads) {
+        
+        int completed = 0;
+        
+        if (threads <= 1) {
+            for (Runnable task : tasks) {
+                if (Thread.currentThread().isInterrupted()) {
+                    LOGGER.error("Interrupted while running the refresh "
+                            + "tasks.  Outstanding work will be "
+                            + "abandoned.");
+                    break;
+                }
+                try {
+                    task.run();
+                    completed++;
+                }
+                catch (RuntimeException re) {
+                    logTaskFailure(re);
+                }
+            }
+            return completed;
+        }
+        
+        ExecutorService   executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>>   futures  = new ArrayList<Future<?>>();
+        try {
+            for (Runnable task : tasks) {
+                futures.add(executor.submit(task));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Waiting on the refresh workers.  [ "
+                            + tasks.size()
+                            + " ] tasks submitted.");
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            LOGGER.error("Interrupted while waiting for the refresh workers "
+                    + "to complete.  Outstanding work will be abandoned.");
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
+        for (Future<?> future : futures) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    future.get();
+                    completed++;
+                }
+                catch (ExecutionException ee) {
+                    logTaskFailure(ee.getCause());
+                }
+                catch (InterruptedException ie) {
+                    // Not reached, the future is already done.
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (completed < tasks.size()) {
+            LOGGER.warn("[ "
+                    + completed
+                    + " ] of [ "
+                    + tasks.size()
+                    + " ] refresh tasks ran to completion.");
+        }
+        return completed;
+    }
+    
+    /**
+     * Log a refresh task that failed with an unexpected exception.
+     * 
+     * @param t The exception raised by the task.
+     */
+    private static void logTaskFailure(Throwable t) {
+        LOGGER.error("Unexpected "
+                + t.getClass().getName()
+                + " raised by a refresh task.  Error message [ "
+                + t.getMessage()
+                + " ].", t);
+    }
+    
+    /**
+     * Main method containing the logic required to update the accelerator 
+     * cache.  If incremental refresh is enabled, and a full sweep is not 
+     * due, only the products loaded since the last recorded high-water mark
+     * are refreshed.
+     */
+    public void updateAcceleratorCache() {
+        updateAcceleratorCache(getIncrementalStartDate());
+    }
+    
+    /**
+     * Update the accelerator cache.
+     * 
+     * @param since If not null, only products with a LOAD_DATE or FILE_DATE
+     * after this date are refreshed (i.e. an incremental refresh).  If null,
+     * every product in the catalog is refreshed (i.e. a full sweep).
+     */
+    public void updateAcceleratorCache(Date since) {
+        try {
+            runRefresh(since);
+        }
+        finally {
+            // Store whatever an incomplete run left buffered.
+            if (writer != null) {
+                try {
+                    writer.close();
+                }
+                catch (Exception e) {
+                    LOGGER.error("Unable to store [ "
+                            + writer.size()
+                            + " ] buffered records in the cache.  Error "
+                            + "message [ "
+                            + e.getMessage()
+                            + " ].");
+                }
+                writer = null;
+            }
+            // Leave any checkpoint from an incomplete run on disk.
+            if (checkpoint != null) {
+                checkpoint.close();
+                checkpoint = null;
+            }
+            if (!isResident()) {
+                releaseResources();
+            }
+        }
+    }
+    
+    /**
+     * Close the Redis connection pool and the database connections.  When 
+     * running as a daemon these are held open between refresh runs.
+     */
+    public void releaseResources() {
+        RedisCacheManager.getInstance().close();
+        try {
+            RoDRecordFactory.getInstance().close();
+        }
+        catch (Exception e) {}
+        try {
+            AcceleratorJDBCRecordFactory.getInstance().close();
+        }
+        catch (Exception e) {}
+    }
+    
+    /**
+     * Perform a single refresh of the accelerator cache.
+     * 
+     * @param since If not null, only products loaded after this date are 
+     * refreshed.
+     */
+    private void runRefresh(Date since) {
+    
+        long start          = System.currentTimeMillis();
+        int  successCounter = 0;
+        int  failedCounter  = 0;
+        int  totalCounter   = 0;
+        int  expected       = 0;
+        int  threads        = getRefreshThreads();
+        Date mark           = getCatalogHighWaterMark();
+        // Was the whole catalog read?
+        boolean catalogRead = false;
+        
+        List<Product> retries = 
+                (since != null ? getRetryProducts() : new ArrayList<Product>());
+        
+        failedProducts.clear();
+        processedCounter.set(0);
+        checkpoint = openCheckpoint(since);
+        writer     = new CacheBatchWriter(
+                getCache(), 
+                RedisCacheManager.getInstance().getFlushSize(),
+                checkpoint);
+        
+        if (since != null) {
+            LOGGER.info("Incremental refresh of products loaded after [ "
+                    + dateFormatter.format(since)
+                    + " ].");
+        }
+        
+        if (PropertyLoader.getInstance().getBooleanProperty(
+                REFRESH_PIPELINE_PROPERTY, false)) {
+            
+            LOGGER.info("Cache update started at [ "
+                    + dateFormatter.format(new Date(System.currentTimeMillis()))
+                    + " ] using the staged refresh pipeline.");
+            
+            initializeSingletons();
+            RefreshPipeline pipeline = new RefreshPipeline(this);
+            int[]           counters = pipeline.execute(since, retries);
+            totalCounter   = counters[0];
+            successCounter = counters[1];
+            failedCounter  = counters[2];
+            expected       = totalCounter;
+            catalogRead    = pipeline.isCatalogComplete();
+        }
+        else {
+            
+            LOGGER.info("Cache update started at [ "
+                    + dateFormatter.format(new Date(System.currentTimeMillis()))
+                    + " ] using [ "
+                    + threads
+                    + " ] worker thread(s).");
+            
+            AtomicInteger missing = new AtomicInteger(0);
+            List<Product> records = addRetryProducts(
+                    getAllProducts(since, missing), retries);
+            catalogRead = (records != null) && (missing.get() == 0);
+            
+            if ((records != null) && (checkpoint != null)) {
+                List<Product> remaining = new ArrayList<Product>();
+                for (Product record : records) {
+                    if (!isCheckpointed(record)) {
+                        remaining.add(record);
+                    }
+                }
+                if (remaining.size() < records.size()) {
+                    LOGGER.info("Skipping [ "
+                            + (records.size() - remaining.size())
+                            + " ] products processed by the interrupted run.");
+                }
+                records = remaining;
+            }
+            
+            if ((records != null) && (records.size() > 0)) {
+                
+                RefreshPriority   priority = RefreshPriority.getInstance();
+                List<RefreshItem> items    = new ArrayList<RefreshItem>();
+                for (Product record : records) {
+                    items.add(new RefreshItem(record));
+                }
+                expected = items.size();
+                preload(items);
+                
+                if (priority != null) {
+                    initializeSingletons();
+                    int[] counters = refreshPrioritized(
+                            items, threads, priority);
+                    totalCounter   = counters[0];
+                    successCounter = counters[1];
+                    failedCounter  = counters[2];
+                }
+                else {
+                    if (threads > 1) {
+                        initializeSingletons();
+                    }
+                    int[] counters = refreshAll(items, threads);
+                    totalCounter   = counters[0];
+                    successCounter = counters[1];
+                    failedCounter  = counters[2];
+                }
+            } 
+        }
+        
+        // All records must be cached before the checkpoint is discarded.
+        writer.close();
+        writer = null;
+        
+        // The run only completed if the whole catalog was read and every 
+        // item was processed.  Otherwise the checkpoint is left on disk 
+        // (see updateAcceleratorCache) so that the next run resumes.
+        boolean complete = catalogRead && 
+                (processedCounter.get() >= expected) && 
+                (!Thread.currentThread().isInterrupted());
+        if (!complete) {
+            LOGGER.warn("The refresh did not complete.  [ "
+                    + processedCounter.get()
+                    + " ] of [ "
+                    + expected
+                    + " ] products were processed and the catalog read "
+                    + (catalogRead ? "completed" : "did not complete")
+                    + ".");
+        }
+        else if (checkpoint != null) {
+            checkpoint.finish();
+            checkpoint = null;
+        }
+        
+        if (totalCounter > 0) {
+            try {
+            	AcceleratorJDBCRecordFactory.getInstance().removeDuplicates();
+            }
+            catch (Exception e) {}
+        }
+        else if (since != null) {
+            LOGGER.info("No products were loaded after [ "
+                    + dateFormatter.format(since)
+                    + " ].");
+        }
+        else {
+            LOGGER.error("Data store unavailable.  (Query did not return "
+                    + "any records).");
+        }
+        
+        // Failed products are queued for the next run rather than holding 
+        // back the high-water mark, which would re-select every product 
+        // since the mark until they all succeed.  The mark is only advanced
+        // by a complete run, once the queue is safely stored.
+        if (complete && ((totalCounter > 0) || (since != null))) {
+            if (updateRetryQueue()) {
+                updateHighWaterMark(mark, (since == null));
+            }
+            else {
+                LOGGER.warn("The refresh high-water mark will not be "
+                        + "advanced.");
+            }
+        }
+        if (failedCounter > 0) {
+            LOGGER.warn("[ "
+                    + failedCounter
+                    + " ] records failed to update.  They will be retried "
+                    + "by the next incremental refresh.");
+        }
+        
+        LOGGER.info("Cache update completed at [ "
+                + dateFormatter.format(new Date(System.currentTimeMillis()))
+                + " ] in [ "
+                + (System.currentTimeMillis() - start)
+                + " ] ms.");
+        LOGGER.info("Processed [ "
+                + totalCounter
+                + " ] records.  [ "
+                + successCounter 
+                + " ] were successfully updated, [ "
+                + failedCounter
+                + " ] records failed to update.");
+    }
+    
+    /**
+     * Retrieve the number of threads that a real refresh would use for 
+     * hashing.  This is the hashing stage budget if the staged pipeline is
+     * enabled, otherwise the number of refresh worker threads.
+     * 
+     * @return The number of hashing threads.
+     */
+    public int getHashThreads() {
+        int threads = getRefreshThreads();
+        if (PropertyLoader.getInstance().getBooleanProperty(
+                REFRESH_PIPELINE_PROPERTY, false)) {
+            threads = Math.max(1, PropertyLoader.getInstance().getIntProperty(
+                    PIPELINE_HASH_THREADS_PROPERTY, 
+                    DEFAULT_PIPELINE_HASH_THREADS));
+        }
+        return threads;
+    }
+    
+    /**
+     * Classify a single product for the refresh plan.  This runs the lookup
+     * and change detection stages only; nothing is hashed or written.
+     * 
+     * @param item The item to classify.
+     * @param plan The plan to update.
+     */
+    private void classify(RefreshItem item, RefreshPlan plan) {
+        
+        Product record = item.getProduct();
+        
+        try {
+            Path p = Paths.get(record.getPath());
+            if (!Files.exists(p)) {
+                plan.add(item, RefreshPlan.Classification.MISSING, 0L);
+            }
+            else {
+                lookup(item);
+                detectChanges(item);
+                switch (item.getAction()) {
+                    case INSERT:
+                    case RECACHE:
+                        plan.add(item, 
+                                RefreshPlan.Classification.NOT_CACHED, 
+                                FileUtils.getActualFileSize(p));
+                        break;
+                    case UPDATE:
+                        plan.add(item, 
+                                RefreshPlan.Classification.STALE, 
+                                FileUtils.getActualFileSize(p));
+                        break;
+                    default:
+                        plan.add(item, 
+                                RefreshPlan.Classification.UNCHANGED, 
+                                0L);
+                        break;
+                }
+            }
+        }
+        catch (Exception e) {
+            plan.addError();
+            LOGGER.error("Unexpected "
+                    + e.getClass().getSimpleName()
+                    + " raised while planning the refresh of file [ "
+                    + record.getPath()
+                    + " ].  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+    }
+    
+    /**
+     * Measure the single-thread hash throughput by hashing files that 
+     * require a hash exactly as a refresh would (see 
+     * <code>AcceleratorRecordFactory.getPrefixHashes</code>).  Files larger
+     * than the remaining sample budget are hashed up to the budget, so the
+     * multi-GB ISOs are sampled too.  Reading files that a real refresh 
+     * would read anyway gives a more realistic figure than a synthetic 
+     * benchmark.
+     * 
+     * @param candidates The files requiring a hash.
+     * @return The throughput in bytes per second.  0 if it could not be
+     * measured.
+     */
+    private double measureHashThroughput(List<Product> candidates) {
+        
+        long budget  = PropertyLoader.getInstance().getIntProperty(
+                PLAN_SAMPLE_SIZE_PROPERTY, 
+                DEFAULT_PLAN_SAMPLE_SIZE) * 1024L * 1024L;
+        long read    = 0L;
+        long elapsed = 0L;
+        
+        for (Product record : candidates) {
+            if (read >= budget) {
+                break;
+            }
+            try {
+                Path p      = Paths.get(record.getPath());
+                long size   = FileUtils.getActualFileSize(p);
+                long length = Math.min(size, budget - read);
+                long start  = System.nanoTime();
+                if ((length > 0) && (!AcceleratorRecordFactory.getInstance()
+                        .getPrefixHashes(p, size, length).isEmpty())) {
+                    elapsed += System.nanoTime() - start;
+                    read    += length;
+                }
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to sample file [ "
+                        + record.getPath()
+                        + " ].  Error message [ "
+                        + ioe.getMessage()
+                        + " ].");
+            }
+        }
+        if (read == 0) {
+            LOGGER.warn("Unable to sample any file requiring a hash with a "
+                    + "sample size of [ "
+                    + (budget / (1024L * 1024L))
+                    + " ] MB.  Set property [ "
+                    + PLAN_HASH_THROUGHPUT_PROPERTY
+                    + " ] (or [ "
+                    + PLAN_SAMPLE_SIZE_PROPERTY
+                    + " ]) to estimate the refresh time.");
+        }
+        return ((read > 0) && (elapsed > 0)) ? 
+                (read * 1000000000.0) / elapsed : 0.0;
+    }
+    
+    /**
+     * Planning (dry-run) mode.  Classify every product that a refresh would
+     * visit without hashing anything or writing to the cache or the 
+     * accelerator table, total the bytes that would be hashed and estimate 
+     * the time the refresh would take.
+     * 
+     * @param since If not null, only products with a LOAD_DATE or FILE_DATE
+     * after this date are planned.  If null, the full catalog is planned.
+     * @return The refresh plan.
+     */
+    public RefreshPlan plan(Date since) {
+        
+        long          start   = System.currentTimeMillis();
+        RefreshPlan   plan    = new RefreshPlan();
+        int           threads = getRefreshThreads();
+        
+        try {
+            
+            List<Product> records = getAllProducts(since);
+            
+            if ((records != null) && (records.size() > 0)) {
+                initializeSingletons();
+                List<RefreshItem> items = new ArrayList<RefreshItem>();
+                for (Product record : records) {
+                    items.add(new RefreshItem(record));
+                }
+                preload(items);
+                List<Runnable> tasks = new ArrayList<Runnable>();
+                for (final RefreshItem item : items) {
+                    tasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            classify(item, plan);
+                        }
+                    });
+                }
+                runTasks(tasks, threads);
+            }
+            else {
+                LOGGER.error("Data store unavailable.  (Query did not return "
+                        + "any records).");
+            }
+            plan.setElapsedTime(System.currentTimeMillis() - start);
+            
+            double throughput = 0.0;
+            try {
+                String value = PropertyLoader.getInstance().getProperty(
+                        PLAN_HASH_THROUGHPUT_PROPERTY);
+                if ((value != null) && (!value.trim().isEmpty())) {
+                    throughput = Double.parseDouble(value.trim()) 
+                            * 1024.0 * 1024.0;
+                }
+            }
+            catch (PropertiesNotLoadedException | NumberFormatException e) {
+                LOGGER.warn("Invalid value supplied for property [ "
+                        + PLAN_HASH_THROUGHPUT_PROPERTY
+                        + " ].  The hash throughput will be measured.");
+            }
+            if ((throughput <= 0) && (plan.getHashBytes() > 0)) {
+                throughput = measureHashThroughput(plan.getHashRequired());
+            }
+            plan.setHashThroughput(throughput);
+        }
+        finally {
+            if (!isResident()) {
+                releaseResources();
+            }
+        }
+        
+        LOGGER.info(plan.toString(getHashThreads()));
+        return plan;
+    }
+    
+    /**
+     * Verify a single product during a verification sweep.  If the cached 
+     * record is otherwise current, a fingerprint of the on-disk file is 
+     * compared with the one stored in the record and the file is only 
+     * re-hashed if they differ (or the record has no fingerprint).  
+     * Tree-hashed records only carry the sampled fingerprint, which is 
+     * compared instead of the full fingerprint.  Items requiring any other
+     * work are refreshed as usual.
+     * 
+     * @param item The item to verify.
+     * @param type The fingerprint type to compare.
+     * @param mismatched Incremented for each file whose content changed 
+     * without a change to its size or modification time.
+     */
+    private void verify(
+            RefreshItem item, 
+            HashType type, 
+            AtomicInteger mismatched) {
+        
+        Product record = item.getProduct();
+        
+        try {
+            lookup(item);
+            detectChanges(item);
+            if ((item.getCurrent() != null) && (!item.isHashRequired())) {
+                HashType compared = type;
+                if ((item.getCurrent().getHashType().isTree()) && 
+                        (item.getCurrent().getHash(type) == null)) {
+                    // Tree-hashed records carry no full fingerprint as it 
+                    // would take a sequential pass over the (large) file.
+                    compared = QueryRequestAccelerator.SAMPLE_TYPE;
+                }
+                String expected = item.getCurrent().getHash(compared);
+                if (expected == null) {
+                    // Hash once so that subsequent sweeps are cheap.
+                    item.setAction(RefreshItem.Action.UPDATE);
+                }
+                else if (!expected.equals(fingerprint(record, compared))) {
+                    mismatched.incrementAndGet();
+                    LOGGER.warn("The content of file [ "
+                            + record.getPath()
+                            + " ] has changed but its size and modification "
+                            + "time have not.  It will be re-hashed.");
+                    item.setAction(RefreshItem.Action.UPDATE);
+                }
+            }
+        }
+        catch (Exception e) {
+            item.setStatus(RefreshStatus.FAILED);
+            LOGGER.error("Unexpected "
+                    + e.getClass().getSimpleName()
+                    + " raised while verifying file [ "
+                    + record.getPath()
+                    + " ].  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+            return;
+        }
+        refresh(item, false, true);
+    }
+    
+    /**
+     * Compute a fingerprint of the on-disk file of the input product, 
+     * subject to the per-mount concurrency limits.
+     * 
+     * @param record The product.
+     * @param type The fingerprint type.
+     * @return The fingerprint, or null if it could not be computed.
+     * @throws IOException Thrown if interrupted while waiting for the mount.
+     */
+    private String fingerprint(Product record, HashType type) 
+            throws IOException {
+        String mount = mountLimiter.getMount(record.getPath());
+        try {
+            mountLimiter.acquire(mount);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting "
+                    + "to fingerprint a file on mount [ "
+                    + mount
+                    + " ].");
+        }
+        try {
+            return AcceleratorRecordFactory.getInstance().getFingerprint(
+                    record.getPath(), type);
+        }
+        finally {
+            mountLimiter.release(mount);
+        }
+    }
+    
+    /**
+     * Verification sweep.  Unlike a refresh, which trusts the size and 
+     * modification time of each file, every cached file is read and its 
+     * fast (non-cryptographic) fingerprint compared with the one stored in
+     * the cache record.  The expensive primary hash is only recomputed for
+     * files whose fingerprint differs or which have no fingerprint yet.  
+     * Tree-hashed files are too large for a full sequential pass, so their
+     * sampled fingerprint is compared instead (see <code>audit</code>).
+     * 
+     * @return Array containing the [ total, updated, mismatched, failed ] 
+     * counters.
+     */
+    public int[] verify() {
+        return verify(QueryRequestAccelerator.FINGERPRINT_TYPE);
+    }
+    
+    /**
+     * Audit sweep.  Like the verification sweep, but only the sampled 
+     * fingerprint (file size, head, tail and a few pseudo-random blocks) 
+     * is compared so a few MB are read per file rather than the whole 
+     * file.  This catches files replaced by tools that preserve 
+     * timestamps, but not changes confined to unsampled blocks.
+     * 
+     * @return Array containing the [ total, updated, mismatched, failed ] 
+     * counters.
+     */
+    public int[] audit() {
+        return verify(QueryRequestAccelerator.SAMPLE_TYPE);
+    }
+    
+    /**
+     * Compare the input fingerprint type of every cached file with the 
+     * value stored in its cache record, re-hashing files that differ.
+     * 
+     * @param type The fingerprint type.
+     * @return Array containing the [ total, updated, mismatched, failed ] 
+     * counters.
+     */
+    private int[] verify(final HashType type) {
+        
+        long                start      = System.currentTimeMillis();
+        final AtomicInteger updated    = new AtomicInteger(0);
+        final AtomicInteger mismatched = new AtomicInteger(0);
+        final AtomicInteger failed     = new AtomicInteger(0);
+        int                 total      = 0;
+        
+        try {
+            List<Product> records = getAllProducts(null);
+            if ((records != null) && (records.size() > 0)) {
+                initializeSingletons();
+                List<RefreshItem> items = new ArrayList<RefreshItem>();
+                for (Product record : records) {
+                    items.add(new RefreshItem(record));
+                }
+                preload(items);
+                total = items.size();
+                List<Runnable> tasks = new ArrayList<Runnable>();
+                for (final RefreshItem item : items) {
+                    tasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            verify(item, type, mismatched);
+                            tally(item, updated, failed);
+                        }
+                    });
+                }
+                runTasks(tasks, getRefreshThreads());
+            }
+            else {
+                LOGGER.error("Data store unavailable.  (Query did not return "
+                        + "any records).");
+            }
+        }
+        finally {
+            if (!isResident()) {
+                releaseResources();
+            }
+        }
+        
+        LOGGER.info("Verification [ "
+                + type.getText()
+                + " ] complete.  Products [ "
+                + total
+                + " ], updated [ "
+                + updated.get()
+                + " ], fingerprint mismatches [ "
+                + mismatched.get()
+                + " ], failed [ "
+                + failed.get()
+                + " ].  Elapsed time [ "
+                + RefreshPlan.formatDuration(
+                        System.currentTimeMillis() - start)
+                + " ].");
+        return new int[] { 
+                total, updated.get(), mismatched.get(), failed.get() };
+    }
+    
+    /**
+     * Enumeration identifying the outcome of refreshing a single product.
+     */
+    public enum RefreshStatus {
+        /** The cache and accelerator table were updated. */
+        UPDATED,
+        /** The product could not be refreshed. */
+        FAILED,
+        /** No new accelerator record was required. */
+        UNCHANGED
+    }
+    
+    /**
+     * Main method invoked to start the Replication-on-Demand cache management
+     * application.  By default a single refresh is performed and the 
+     * application exits.  If the <code>-daemon</code> option is supplied the
+     * application stays resident and performs scheduled refreshes.  If the 
+     * <code>-plan</code> option is supplied the refresh is planned (and the 
+     * work estimated) but not performed.  If the <code>-verify</code> option
+     * is supplied a verification sweep is performed and if the 
+     * <code>-audit</code> option is supplied a (sampled) audit sweep is 
+     * performed.
+     * 
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        
+        Options opt = new Options(args, 0);
+        opt.getSet().addOption("daemon", Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("plan", Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("verify", Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("audit", Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("h", Multiplicity.ZERO_OR_MORE);
+        opt.getSet().addOption("help", Multiplicity.ZERO_OR_MORE);
+        
+        if (!opt.check(true, false)) {
+            System.err.println(USAGE_STRING);
+            System.exit(1);
+        }
+        if ((opt.getSet().isSet("h")) || (opt.getSet().isSet("help"))) {
+            System.out.println(USAGE_STRING);
+            System.exit(0);
+        }
+        
+        try {
+            if (opt.getSet().isSet("plan")) {
+                CacheManager manager = new CacheManager();
+                manager.plan(manager.getIncrementalStartDate());
+            }
+            else if (opt.getSet().isSet("verify")) {
+                (new CacheManager()).verify();
+            }
+            else if (opt.getSet().isSet("audit")) {
+                (new CacheManager()).audit();
+            }
+            else if (opt.getSet().isSet("daemon")) {
+                CacheManagerDaemon daemon = 
+                        new CacheManagerDaemon(new CacheManager());
+                daemon.start();
+                daemon.await();
+            }
+            else {
+                (new CacheManager()).updateAcceleratorCache();
+            }
         }
         catch (Exception e) {
             e.printStackTrace();
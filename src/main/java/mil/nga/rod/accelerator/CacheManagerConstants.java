@@ -31,4 +31,384 @@ public interface CacheManagerConstants {
     public static final String AVAILABLE_AORS_KEY = 
             "rod-aors";
     
+    /**
+     * Key under which the catalog high-water mark (the most recent 
+     * LOAD_DATE/FILE_DATE, in milliseconds since the epoch) processed by 
+     * the last successful refresh is stored.
+     */
+    public static final String HIGH_WATER_MARK_KEY = 
+            "rod-refresh-high-water-mark";
+    
+    /**
+     * Key under which the time (in milliseconds since the epoch) of the 
+     * last successful full sweep is stored.
+     */
+    public static final String LAST_FULL_SWEEP_KEY = 
+            "rod-refresh-last-full-sweep";
+    
+    /**
+     * Key of the Redis hash holding the products that failed during the 
+     * last refresh (field: cache key, value: JSON serialized product).  
+     * They are retried by the next incremental refresh, which allows the 
+     * high-water mark to be advanced past them.
+     */
+    public static final String REFRESH_RETRY_KEY = 
+            "rod-refresh-retry";
+    
+    /**
+     * Property identifying the number of worker threads used to refresh the 
+     * accelerator cache.  A value of 1 (the default) results in the original 
+     * serial behavior.
+     */
+    public static final String REFRESH_THREADS_PROPERTY = 
+            "refresh.threads";
+    
+    /**
+     * The default number of refresh worker threads.
+     */
+    public static final int DEFAULT_REFRESH_THREADS = 1;
+    
+    /**
+     * Property used to enable the staged (producer/consumer) refresh 
+     * pipeline.  When enabled, the refresh.threads property is ignored and 
+     * the per-stage thread budgets below are used instead.
+     */
+    public static final String REFRESH_PIPELINE_PROPERTY = 
+            "refresh.pipeline";
+    
+    /**
+     * Property identifying the number of threads in the cache/database 
+     * lookup stage of the refresh pipeline.
+     */
+    public static final String PIPELINE_LOOKUP_THREADS_PROPERTY = 
+            "refresh.pipeline.lookup.threads";
+    
+    /**
+     * Property identifying the number of threads in the file stat/change 
+     * detection stage of the refresh pipeline.
+     */
+    public static final String PIPELINE_DETECT_THREADS_PROPERTY = 
+            "refresh.pipeline.detect.threads";
+    
+    /**
+     * Property identifying the number of threads in the hashing stage of 
+     * the refresh pipeline.
+     */
+    public static final String PIPELINE_HASH_THREADS_PROPERTY = 
+            "refresh.pipeline.hash.threads";
+    
+    /**
+     * Property identifying the number of threads in the Redis/JDBC 
+     * write-back stage of the refresh pipeline.
+     */
+    public static final String PIPELINE_WRITE_THREADS_PROPERTY = 
+            "refresh.pipeline.write.threads";
+    
+    /**
+     * Property identifying the capacity of each of the bounded queues 
+     * joining the pipeline stages.
+     */
+    public static final String PIPELINE_QUEUE_CAPACITY_PROPERTY = 
+            "refresh.pipeline.queue_capacity";
+    
+    /**
+     * Property identifying how often (in seconds) the pipeline stage 
+     * statistics are logged.
+     */
+    public static final String PIPELINE_REPORT_INTERVAL_PROPERTY = 
+            "refresh.pipeline.report_interval";
+    
+    /**
+     * Default number of lookup stage threads.
+     */
+    public static final int DEFAULT_PIPELINE_LOOKUP_THREADS = 2;
+    
+    /**
+     * Default number of change detection stage threads.
+     */
+    public static final int DEFAULT_PIPELINE_DETECT_THREADS = 2;
+    
+    /**
+     * Default number of hashing stage threads.
+     */
+    public static final int DEFAULT_PIPELINE_HASH_THREADS = 4;
+    
+    /**
+     * Default number of write-back stage threads.
+     */
+    public static final int DEFAULT_PIPELINE_WRITE_THREADS = 2;
+    
+    /**
+     * Default capacity of the queues joining the pipeline stages.
+     */
+    public static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 1000;
+    
+    /**
+     * Default interval (in seconds) between pipeline statistics reports.
+     */
+    public static final int DEFAULT_PIPELINE_REPORT_INTERVAL = 60;
+    
+    /**
+     * Property used to enable incremental refresh.  When enabled, only 
+     * products loaded after the recorded high-water mark are refreshed 
+     * unless a full sweep is due.
+     */
+    public static final String REFRESH_INCREMENTAL_PROPERTY = 
+            "refresh.incremental";
+    
+    /**
+     * Property identifying the interval (in hours) between full sweeps when
+     * incremental refresh is enabled.
+     */
+    public static final String REFRESH_FULL_SWEEP_INTERVAL_PROPERTY = 
+            "refresh.full_sweep_interval";
+    
+    /**
+     * Default interval (in hours) between full sweeps.
+     */
+    public static final int DEFAULT_REFRESH_FULL_SWEEP_INTERVAL = 24;
+    
+    /**
+     * Property identifying the local file used to checkpoint refresh 
+     * progress.  If not defined, checkpointing is disabled.  Incremental
+     * runs use the same file name with an <code>.incremental</code> 
+     * suffix.
+     */
+    public static final String REFRESH_CHECKPOINT_FILE_PROPERTY = 
+            "refresh.checkpoint.file";
+    
+    /**
+     * Property identifying how many unchanged products are recorded before
+     * the checkpoint is flushed to disk.  Products that required a new hash
+     * are always flushed immediately.
+     */
+    public static final String REFRESH_CHECKPOINT_FLUSH_INTERVAL_PROPERTY = 
+            "refresh.checkpoint.flush_interval";
+    
+    /**
+     * Default checkpoint flush interval.
+     */
+    public static final int DEFAULT_REFRESH_CHECKPOINT_FLUSH_INTERVAL = 100;
+    
+    /**
+     * Property identifying the age (in hours) after which a checkpoint left
+     * by an interrupted run is discarded rather than resumed.  A value of 0
+     * means checkpoints never expire.
+     */
+    public static final String REFRESH_CHECKPOINT_MAX_AGE_PROPERTY = 
+            "refresh.checkpoint.max_age";
+    
+    /**
+     * Default maximum checkpoint age (in hours).
+     */
+    public static final int DEFAULT_REFRESH_CHECKPOINT_MAX_AGE = 24;
+    
+    /**
+     * Property identifying the interval (in minutes) between full refreshes
+     * when running as a daemon.  A value of 0 disables full refreshes.
+     */
+    public static final String DAEMON_FULL_INTERVAL_PROPERTY = 
+            "daemon.full_interval";
+    
+    /**
+     * Property identifying the interval (in minutes) between incremental 
+     * refreshes when running as a daemon.  A value of 0 disables 
+     * incremental refreshes.
+     */
+    public static final String DAEMON_INCREMENTAL_INTERVAL_PROPERTY = 
+            "daemon.incremental_interval";
+    
+    /**
+     * Default interval (in minutes) between full refreshes.
+     */
+    public static final int DEFAULT_DAEMON_FULL_INTERVAL = 1440;
+    
+    /**
+     * Default interval (in minutes) between incremental refreshes.
+     */
+    public static final int DEFAULT_DAEMON_INCREMENTAL_INTERVAL = 60;
+    
+    /**
+     * Time (in seconds) to wait for a refresh in progress to complete when
+     * the daemon is shut down.
+     */
+    public static final int DAEMON_SHUTDOWN_TIMEOUT = 30;
+    
+    /**
+     * Property identifying the single-thread hash throughput (in MB/s) used
+     * to estimate the duration of a refresh in planning mode.  If not 
+     * defined (or 0) the throughput is measured by hashing a sample of the
+     * files that require a hash.
+     */
+    public static final String PLAN_HASH_THROUGHPUT_PROPERTY = 
+            "refresh.plan.hash_throughput";
+    
+    /**
+     * Property identifying the number of megabytes read when measuring the
+     * hash throughput in planning mode.
+     */
+    public static final String PLAN_SAMPLE_SIZE_PROPERTY = 
+            "refresh.plan.sample_size";
+    
+    /**
+     * Default number of megabytes read when measuring the hash throughput.
+     */
+    public static final int DEFAULT_PLAN_SAMPLE_SIZE = 256;
+    
+    /**
+     * Property identifying the order in which refresh work is processed 
+     * once change detection is complete.  The value is a comma-separated 
+     * list of criteria (<code>miss</code>, <code>recent</code> and 
+     * <code>stale</code>) or <code>none</code> to process products in 
+     * catalog order.
+     */
+    public static final String REFRESH_PRIORITY_PROPERTY = 
+            "refresh.priority";
+    
+    /**
+     * Default refresh priority policy.  Prioritization is opt-in: by 
+     * default each product is refreshed in a single pass in catalog order.
+     */
+    public static final String DEFAULT_REFRESH_PRIORITY = "none";
+    
+    /**
+     * Property identifying the number of cache entries retrieved per 
+     * round trip when the current cache state is loaded in bulk at the 
+     * start of a refresh.  A value of 0 disables the bulk load (each 
+     * product is then looked up individually).
+     */
+    public static final String REFRESH_PRELOAD_BATCH_SIZE_PROPERTY = 
+            "refresh.preload.batch_size";
+    
+    /**
+     * Default number of cache entries retrieved per round trip.
+     */
+    public static final int DEFAULT_REFRESH_PRELOAD_BATCH_SIZE = 1000;
+    
+    /**
+     * Property identifying per-mount hashing concurrency limits.  The value
+     * is a comma-separated list of <code>path=limit</code> pairs (e.g. 
+     * <code>/mnt/nfs1=2,/data=8</code>).
+     */
+    public static final String REFRESH_MOUNT_LIMITS_PROPERTY = 
+            "refresh.mount.limits";
+    
+    /**
+     * Property identifying the hashing concurrency limit applied to mounts
+     * not listed in <code>refresh.mount.limits</code>.  A value of 0 means 
+     * no per-mount limit.
+     */
+    public static final String REFRESH_MOUNT_DEFAULT_LIMIT_PROPERTY = 
+            "refresh.mount.default_limit";
+    
+    /**
+     * Default per-mount hashing concurrency limit (unlimited).
+     */
+    public static final int DEFAULT_REFRESH_MOUNT_LIMIT = 0;
+    
+    /**
+     * Property identifying the size (in KB) of the buffer used to read 
+     * files while hashing.
+     */
+    public static final String REFRESH_HASH_BUFFER_SIZE_PROPERTY = 
+            "refresh.hash.buffer_size";
+    
+    /**
+     * Default size (in KB) of the hashing read buffer.
+     */
+    public static final int DEFAULT_REFRESH_HASH_BUFFER_SIZE = 1024;
+    
+    /**
+     * Property identifying hash types (comma-separated, e.g. 
+     * <code>sha256</code>) computed in addition to the MD5 hash.  All hash 
+     * types are computed in a single pass over the file.
+     */
+    public static final String REFRESH_HASH_ADDITIONAL_TYPES_PROPERTY = 
+            "refresh.hash.additional_types";
+    
+    /**
+     * Property identifying the file size (in MB) at or above which a 
+     * product is hashed with the segmented (tree) hash type rather than 
+     * MD5.  The segments of a tree hash are digested in parallel.
+     */
+    public static final String REFRESH_HASH_TREE_THRESHOLD_PROPERTY = 
+            "refresh.hash.tree_threshold";
+    
+    /**
+     * Default tree hash threshold (disabled, every product is hashed with 
+     * MD5).
+     */
+    public static final int DEFAULT_REFRESH_HASH_TREE_THRESHOLD = 0;
+    
+    /**
+     * Property identifying the local directory in which the intermediate 
+     * state of long-running hashes is persisted so that a restarted 
+     * refresh can continue hashing a large file where it left off.  
+     * Hashes are not checkpointed if it is not set.
+     */
+    public static final String REFRESH_HASH_CHECKPOINT_DIR_PROPERTY = 
+            "refresh.hash.checkpoint_dir";
+    
+    /**
+     * Property identifying the number of MB hashed between checkpoints.  
+     * Smaller files are never checkpointed.
+     */
+    public static final String REFRESH_HASH_CHECKPOINT_INTERVAL_PROPERTY = 
+            "refresh.hash.checkpoint_interval";
+    
+    /**
+     * Default number of MB hashed between checkpoints.
+     */
+    public static final int DEFAULT_REFRESH_HASH_CHECKPOINT_INTERVAL = 1024;
+    
+    /**
+     * Property identifying whether the next block of a file is read while
+     * the current block is being digested.
+     */
+    public static final String REFRESH_HASH_READ_AHEAD_PROPERTY = 
+            "refresh.hash.read_ahead";
+    
+    /**
+     * Default read-ahead setting (disabled).
+     */
+    public static final boolean DEFAULT_REFRESH_HASH_READ_AHEAD = false;
+    
+    /**
+     * Property identifying the maximum rate (in MB per second) at which 
+     * files are read while hashing, across all mounts.  A value of 0 means
+     * no global limit.
+     */
+    public static final String REFRESH_IO_LIMIT_PROPERTY = 
+            "refresh.io.limit";
+    
+    /**
+     * Property identifying the per-mount hashing read rate limits (in MB 
+     * per second) as a comma-separated list of <code>path=limit</code> 
+     * pairs.
+     */
+    public static final String REFRESH_IO_MOUNT_LIMITS_PROPERTY = 
+            "refresh.io.mount.limits";
+    
+    /**
+     * Property identifying the hashing read rate limit (in MB per second)
+     * applied to mounts not listed in <code>refresh.io.mount.limits</code>.
+     * A value of 0 means no per-mount limit.
+     */
+    public static final String REFRESH_IO_MOUNT_DEFAULT_LIMIT_PROPERTY = 
+            "refresh.io.mount.default_limit";
+    
+    /**
+     * Default hashing read rate limit (unlimited).
+     */
+    public static final int DEFAULT_REFRESH_IO_LIMIT = 0;
+    
+    /**
+     * Property identifying the times of day during which the read rate 
+     * limits apply, as a comma-separated list of 
+     * <code>HH:mm-HH:mm[=percent]</code> windows.  Outside of the windows 
+     * reads are not limited.  If not set the limits always apply.
+     */
+    public static final String REFRESH_IO_SCHEDULE_PROPERTY = 
+            "refresh.io.schedule";
+    
 }
@@ -0,0 +1,193 @@
+package mil.nga.rod.accelerator;
+
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.rod.jdbc.AcceleratorJDBCRecordFactory;
+import mil.nga.rod.jdbc.RoDRecordFactory;
+
+/**
+ * Long-running alternative to launching a new JVM for each cache refresh.
+ * The Redis connection pool, database connections and warmed-up code are
+ * held resident between runs.  Full and incremental refreshes are
+ * scheduled on their own intervals but share a single scheduler thread so
+ * that two refreshes never overlap.  If one run takes longer than an
+ * interval the next run simply starts late.
+ *
+ * @author L. Craig Carpenter
+ */
+public class CacheManagerDaemon implements CacheManagerConstants {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            CacheManagerDaemon.class);
+
+    // Private internal members.
+    private final CacheManager             manager;
+    private final ScheduledExecutorService scheduler;
+    private final long                     fullInterval;
+    private final long                     incrementalInterval;
+
+    /**
+     * Constructor loading the refresh intervals from the system properties.
+     *
+     * @param manager The CacheManager used to perform the refreshes.
+     */
+    public CacheManagerDaemon(CacheManager manager) {
+        PropertyLoader props = PropertyLoader.getInstance();
+        this.manager             = manager;
+        this.scheduler           = Executors.newSingleThreadScheduledExecutor();
+        this.fullInterval        = props.getIntProperty(
+                DAEMON_FULL_INTERVAL_PROPERTY,
+                DEFAULT_DAEMON_FULL_INTERVAL);
+        this.incrementalInterval = props.getIntProperty(
+                DAEMON_INCREMENTAL_INTERVAL_PROPERTY,
+                DEFAULT_DAEMON_INCREMENTAL_INTERVAL);
+        manager.setResident(true);
+    }
+
+    /**
+     * Perform a single refresh.  Everything thrown (including errors such 
+     * as an <code>OutOfMemoryError</code>) is caught and logged because 
+     * anything escaping a scheduled task would silently cancel all future 
+     * runs.
+     *
+     * @param full If true, refresh the entire catalog.  Otherwise refresh
+     * only the products loaded since the recorded high-water mark.
+     */
+    private void runRefresh(boolean full) {
+        try {
+            validateConnections();
+            Date since = null;
+            if (!full) {
+                since = manager.getRecordedHighWaterMark();
+                if (since == null) {
+                    LOGGER.info("No refresh high-water mark recorded.  "
+                            + "Performing a full sweep.");
+                }
+            }
+            manager.updateAcceleratorCache(since);
+        }
+        catch (Exception e) {
+            LOGGER.error("Unexpected "
+                    + e.getClass().getSimpleName()
+                    + " raised during scheduled refresh.  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        catch (Throwable t) {
+            LOGGER.error("Unexpected "
+                    + t.getClass().getSimpleName()
+                    + " raised during scheduled refresh.  The next "
+                    + "scheduled refresh will still run.  Error message [ "
+                    + t.getMessage()
+                    + " ].", t);
+        }
+    }
+
+    /**
+     * Discard any held database connections that are no longer usable
+     * (i.e. the database was restarted between runs).
+     */
+    private void validateConnections() {
+        try {
+            RoDRecordFactory.getInstance().validateConnection();
+            AcceleratorJDBCRecordFactory.getInstance().validateConnection();
+        }
+        catch (Exception e) {
+            LOGGER.warn("Unable to validate the database connections.  "
+                    + "Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Start the scheduler.  The first incremental refresh runs immediately
+     * (falling back to a full sweep if no high-water mark is recorded) and
+     * the first scheduled full sweep runs after one full interval.  An
+     * interval of 0 (or less) disables that type of refresh.
+     */
+    public void start() {
+
+        LOGGER.info("Starting cache manager daemon.  Full refresh interval [ "
+                + fullInterval
+                + " ] minutes, incremental refresh interval [ "
+                + incrementalInterval
+                + " ] minutes.");
+
+        if (incrementalInterval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    runRefresh(false);
+                }
+            }, 0, incrementalInterval, TimeUnit.MINUTES);
+        }
+        if (fullInterval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    runRefresh(true);
+                }
+            }, (incrementalInterval > 0 ? fullInterval : 0),
+                    fullInterval, TimeUnit.MINUTES);
+        }
+        if ((incrementalInterval <= 0) && (fullInterval <= 0)) {
+            LOGGER.error("Both refresh intervals are disabled.  The daemon "
+                    + "has nothing to do.");
+            scheduler.shutdown();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    /**
+     * Stop the scheduler, wait for any refresh in progress to complete and
+     * release the connection pools.  A refresh interrupted by a forced
+     * shutdown will resume from its checkpoint on the next run.
+     */
+    public void shutdown() {
+        if (!scheduler.isShutdown()) {
+            LOGGER.info("Stopping cache manager daemon.");
+            scheduler.shutdown();
+        }
+        try {
+            if (!scheduler.awaitTermination(
+                    DAEMON_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOGGER.warn("Refresh still running after [ "
+                        + DAEMON_SHUTDOWN_TIMEOUT
+                        + " ] seconds.  Forcing shutdown.");
+                scheduler.shutdownNow();
+            }
+        }
+        catch (InterruptedException ie) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        manager.releaseResources();
+    }
+
+    /**
+     * Block the calling thread until the daemon is shut down.
+     *
+     * @throws InterruptedException Thrown if the calling thread is
+     * interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        while (!scheduler.awaitTermination(1, TimeUnit.HOURS)) { }
+    }
+}
@@ -1,10 +1,17 @@
 package mil.nga.rod.accelerator;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Interface defining any constants used, and methods that the Cache manager 
- * code must implement.
+ * code must implement.  The multi-key methods have default implementations
+ * built on the single-key methods; implementations override them to use 
+ * fewer round trips.  Every storage mode and value codec relies on the 
+ * binary, hash (field) and scan methods so they have no defaults.
  * 
  * @author L. Craig Carpenter
  */
@@ -31,6 +38,89 @@ public interface CacheManagerI {
      */
     public static final String REDIS_PORT_PROPERTY = "redis.port";
     
+    /**
+     * Property identifying the maximum number of connections held in the 
+     * Redis connection pool.  This should be at least as large as the number
+     * of threads sharing the cache.
+     */
+    public static final String REDIS_MAX_CONNECTIONS_PROPERTY = 
+            "redis.max_connections";
+    
+    /**
+     * Property identifying the maximum number of commands sent in a 
+     * pipeline before waiting for the replies.
+     */
+    public static final String REDIS_PIPELINE_FLUSH_SIZE_PROPERTY = 
+            "redis.pipeline.flush_size";
+    
+    /**
+     * The default pipeline flush size.
+     */
+    public static final int DEFAULT_REDIS_PIPELINE_FLUSH_SIZE = 1000;
+    
+    /**
+     * Property identifying the maximum number of keys retrieved by a 
+     * single multi-key read (i.e. <code>MGET</code>).
+     */
+    public static final String REDIS_MGET_CHUNK_SIZE_PROPERTY = 
+            "redis.mget.chunk_size";
+    
+    /**
+     * The default multi-key read chunk size.
+     */
+    public static final int DEFAULT_REDIS_MGET_CHUNK_SIZE = 1000;
+    
+    /**
+     * Property identifying the number of keys requested from each 
+     * <code>SCAN</code> call when iterating over the keys in the cache.
+     */
+    public static final String REDIS_SCAN_COUNT_PROPERTY = 
+            "redis.scan.count";
+    
+    /**
+     * The default <code>SCAN</code> count.
+     */
+    public static final int DEFAULT_REDIS_SCAN_COUNT = 1000;
+    
+    /**
+     * Property identifying how accelerator records are stored in the 
+     * cache.  Either <code>string</code> (each record is a single JSON 
+     * string value) or <code>hash</code> (each record is a Redis hash with
+     * one field per attribute).
+     */
+    public static final String REDIS_STORAGE_MODE_PROPERTY = 
+            "redis.storage_mode";
+    
+    /**
+     * Storage mode writing each record as a single JSON string value.
+     */
+    public static final String STRING_STORAGE_MODE = "string";
+    
+    /**
+     * Storage mode writing each record as a Redis hash.
+     */
+    public static final String HASH_STORAGE_MODE = "hash";
+    
+    /**
+     * The default storage mode.
+     */
+    public static final String DEFAULT_REDIS_STORAGE_MODE = 
+            STRING_STORAGE_MODE;
+    
+    /**
+     * Property identifying the codec used to encode accelerator records 
+     * stored as string values.  Either <code>json</code> or 
+     * <code>binary</code>.  Values written by any codec can be read 
+     * whichever codec is configured.
+     */
+    public static final String REDIS_VALUE_CODEC_PROPERTY = 
+            "redis.value_codec";
+    
+    /**
+     * The default value codec.
+     */
+    public static final String DEFAULT_REDIS_VALUE_CODEC = "json";
+    
     /**
      * Retrieve a request accelerator record from the cache.
      * 
@@ -40,9 +130,102 @@ public interface CacheManagerI {
      */
     public String get(String key);
     
+    /**
+     * Retrieve the values associated with any number of keys using as few
+     * round trips as possible.  Large requests are split into chunks.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     */
+    public default Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        if (keys != null) {
+            for (String key : keys) {
+                if ((key != null) && (!values.containsKey(key))) {
+                    values.put(key, get(key));
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Retrieve a value from the cache without decoding it as a String.
+     * 
+     * @param key Key to query for.
+     * @return The value associated with the input key.  Null if the key is
+     * not in the cache.
+     */
+    public byte[] getBytes(String key);
+    
+    /**
+     * Retrieve the values associated with any number of keys without 
+     * decoding them as Strings, using as few round trips as possible.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     */
+    public default Map<String, byte[]> getAllBytes(Collection<String> keys) {
+        Map<String, byte[]> values = new LinkedHashMap<String, byte[]>();
+        if (keys != null) {
+            for (String key : keys) {
+                if ((key != null) && (!values.containsKey(key))) {
+                    values.put(key, getBytes(key));
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Retrieve every field of a record stored as a hash.
+     * 
+     * @param key Key to query for.
+     * @return The fields of the record.  Empty if the key is not in the 
+     * cache.
+     */
+    public Map<String, String> getFields(String key);
+    
+    /**
+     * Retrieve selected fields of a record stored as a hash.  Only the 
+     * requested fields are sent over the wire.
+     * 
+     * @param key Key to query for.
+     * @param fields The fields to retrieve.
+     * @return The values of the fields in request order.  Fields that are 
+     * not set (or keys that are not in the cache) map to null.
+     */
+    public List<String> getFields(String key, String... fields);
+    
+    /**
+     * Retrieve every field of any number of records stored as hashes 
+     * using as few round trips as possible.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to an empty map; 
+     * keys holding a value that is not a hash map to null.
+     */
+    public default Map<String, Map<String, String>> getAllFields(
+            Collection<String> keys) {
+        Map<String, Map<String, String>> values = 
+                new LinkedHashMap<String, Map<String, String>>();
+        if (keys != null) {
+            for (String key : keys) {
+                if ((key != null) && (!values.containsKey(key))) {
+                    values.put(key, getFields(key));
+                }
+            }
+        }
+        return values;
+    }
+    
     /**
      * Get a Set containing all of the keys that are currently stored in the 
-     * target cache.
+     * target cache.  The whole key space is held in memory, so prefer 
+     * <code>scanKeys</code> for large caches.
      *   
      * @return A Set containing all of the keys stored in the Redis cache.
      * @throws JedisConnectionException Runtime exception thrown if a 
@@ -50,6 +233,18 @@ public interface CacheManagerI {
      */
     public Set<String> getKeys();
     
+    /**
+     * Iterate over the keys in the target cache a page at a time without
+     * blocking the cache.  Keys present for the whole iteration are 
+     * returned at least once; keys added or removed during the iteration 
+     * may or may not be returned, and a key may be returned more than once.
+     * 
+     * @param match Glob-style pattern the keys must match.  Null matches 
+     * every key.
+     * @return The keys.
+     */
+    public Iterable<String> scanKeys(String match);
+    
     /**
      * Store a key/value pair in the target cache.
      * 
@@ -59,6 +254,82 @@ public interface CacheManagerI {
      */
     public void put(String key, String value);
     
+    /**
+     * Store a number of key/value pairs in the target cache using as few 
+     * round trips as possible.  Entries with a null or empty key or value
+     * are skipped.
+     * 
+     * @param entries The key/value pairs to store.
+     */
+    public default void putAll(Map<String, String> entries) {
+        if (entries != null) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if ((entry.getKey() != null) && (!entry.getKey().isEmpty()) &&
+                        (entry.getValue() != null) && 
+                        (!entry.getValue().isEmpty())) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Store a binary value in the target cache.
+     * 
+     * @param key The key.
+     * @param value The value associated with the key.
+     */
+    public void putBytes(String key, byte[] value);
+    
+    /**
+     * Store a number of binary values in the target cache using as few 
+     * round trips as possible.  Entries with a null or empty key or value
+     * are skipped.
+     * 
+     * @param entries The key/value pairs to store.
+     */
+    public default void putAllBytes(Map<String, byte[]> entries) {
+        if (entries != null) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                if ((entry.getKey() != null) && (!entry.getKey().isEmpty()) &&
+                        (entry.getValue() != null) && 
+                        (entry.getValue().length > 0)) {
+                    putBytes(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Store a record as a hash, replacing any value (of any type) 
+     * previously stored under the key.
+     * 
+     * @param key The key.
+     * @param fields The fields of the record.
+     */
+    public void putFields(String key, Map<String, String> fields);
+    
+    /**
+     * Store a number of records as hashes using as few round trips as 
+     * possible, replacing any values (of any type) previously stored under
+     * the keys.  Entries with a null or empty key or no fields are 
+     * skipped.
+     * 
+     * @param entries The fields of each record keyed by cache key.
+     */
+    public default void putAllFields(Map<String, Map<String, String>> entries) {
+        if (entries != null) {
+            for (Map.Entry<String, Map<String, String>> entry : 
+                    entries.entrySet()) {
+                if ((entry.getKey() != null) && (!entry.getKey().isEmpty()) &&
+                        (entry.getValue() != null) && 
+                        (!entry.getValue().isEmpty())) {
+                    putFields(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+    
     /**
      * Remove a key/value pair from the target cache.
      * 
@@ -0,0 +1,304 @@
+package mil.nga.rod.accelerator;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.exceptions.PropertiesNotLoadedException;
+
+/**
+ * The RoD holdings are spread across several NFS mounts and local arrays
+ * with very different throughput.  This class groups files by the mount
+ * on which they reside and applies a separate hashing concurrency limit to
+ * each mount.  Limits are configured as a comma-separated list of
+ * <code>path=limit</code> pairs.  A file belongs to the longest configured
+ * path that prefixes it; otherwise it belongs to the filesystem mount point
+ * on which it resides and receives the default limit.
+ *
+ * @author L. Craig Carpenter
+ */
+public class MountLimiter implements CacheManagerConstants {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            MountLimiter.class);
+
+    /**
+     * Group used for files whose mount cannot be determined.
+     */
+    public static final String UNKNOWN_MOUNT = "unknown";
+
+    // Private internal members.
+    private final Map<String, Integer>   limits     =
+            new LinkedHashMap<String, Integer>();
+    private final int                    defaultLimit;
+    private final Map<String, String>    mountCache =
+            new ConcurrentHashMap<String, String>();
+    private final Map<String, Semaphore> semaphores =
+            new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Constructor loading the per-mount limits from the system properties.
+     */
+    public MountLimiter() {
+        this(parseLimits(REFRESH_MOUNT_LIMITS_PROPERTY),
+                PropertyLoader.getInstance().getIntProperty(
+                        REFRESH_MOUNT_DEFAULT_LIMIT_PROPERTY,
+                        DEFAULT_REFRESH_MOUNT_LIMIT));
+    }
+
+    /**
+     * Constructor used to set all of the internal members.
+     *
+     * @param limits Per-mount limits keyed by normalized path.
+     * @param defaultLimit The limit of mounts not listed in 
+     * <code>limits</code>.  0 if unlimited.
+     */
+    MountLimiter(Map<String, Integer> limits, int defaultLimit) {
+        this.defaultLimit = Math.max(0, defaultLimit);
+        this.limits.putAll(limits);
+    }
+
+    /**
+     * Parse a property containing a comma-separated list of
+     * <code>path=limit</code> pairs.
+     *
+     * @param property The name of the property.
+     * @return The limits keyed by normalized path, in configuration order.
+     */
+    static Map<String, Integer> parseLimits(String property) {
+
+        String value = null;
+        try {
+            value = PropertyLoader.getInstance().getProperty(property);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        return parseLimits(property, value);
+    }
+
+    /**
+     * Parse a comma-separated list of <code>path=limit</code> pairs.
+     * Invalid entries are logged and ignored.
+     *
+     * @param property The name of the property supplying the value (for 
+     * logging).
+     * @param value The value to parse.
+     * @return The limits keyed by normalized path, in configuration order.
+     */
+    static Map<String, Integer> parseLimits(String property, String value) {
+
+        Map<String, Integer> parsed = new LinkedHashMap<String, Integer>();
+
+        if ((value != null) && (!value.trim().isEmpty())) {
+            for (String entry : value.split(",")) {
+                String[] pair = entry.split("=");
+                try {
+                    if (pair.length != 2) {
+                        throw new NumberFormatException();
+                    }
+                    parsed.put(
+                            Paths.get(pair[0].trim()).normalize().toString(),
+                            Integer.parseInt(pair[1].trim()));
+                }
+                catch (NumberFormatException nfe) {
+                    LOGGER.warn("Invalid entry [ "
+                            + entry.trim()
+                            + " ] in property [ "
+                            + property
+                            + " ].  Expected path=limit.  It will be "
+                            + "ignored.");
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Find the longest of the input paths that prefixes the input file.
+     *
+     * @param paths Candidate (normalized) paths.
+     * @param file The absolute, normalized path of the file.
+     * @return The longest matching path, or null if none match.
+     */
+    static String longestPrefix(Iterable<String> paths, Path file) {
+        String match = null;
+        for (String configured : paths) {
+            if (file.startsWith(configured) &&
+                    ((match == null) ||
+                            (configured.length() > match.length()))) {
+                match = configured;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Determine the mount (group) to which the input file belongs.
+     *
+     * @param file The path of the target file.
+     * @return The configured path or filesystem mount point containing the
+     * file.
+     */
+    public String getMount(String file) {
+
+        if ((file == null) || (file.isEmpty())) {
+            return UNKNOWN_MOUNT;
+        }
+        Path   p     = Paths.get(file).toAbsolutePath().normalize();
+        String match = longestPrefix(limits.keySet(), p);
+        if (match == null) {
+            Path   parent = p.getParent();
+            String dir    = (parent == null ? p.toString() : parent.toString());
+            match = mountCache.get(dir);
+            if (match == null) {
+                match = findMountPoint(parent == null ? p : parent);
+                mountCache.put(dir, match);
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Walk up the directory tree until the filesystem changes to find the
+     * mount point of the input directory.
+     *
+     * @param dir The directory.
+     * @return The mount point.
+     */
+    private String findMountPoint(Path dir) {
+        try {
+            while ((dir != null) && (!Files.exists(dir))) {
+                dir = dir.getParent();
+            }
+            if (dir != null) {
+                FileStore store = Files.getFileStore(dir);
+                Path      mount = dir;
+                Path      up    = dir.getParent();
+                while ((up != null) && (store.equals(Files.getFileStore(up)))) {
+                    mount = up;
+                    up    = up.getParent();
+                }
+                return mount.toString();
+            }
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Unable to determine the mount point of [ "
+                    + dir
+                    + " ].  Error message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+        return UNKNOWN_MOUNT;
+    }
+
+    /**
+     * Getter method for the hashing concurrency limit of a mount.
+     *
+     * @param mount The mount (see <code>getMount</code>).
+     * @return The limit.  0 if the mount is not limited.
+     */
+    public int getLimit(String mount) {
+        Integer limit = limits.get(mount);
+        return (limit == null ? defaultLimit : Math.max(0, limit));
+    }
+
+    /**
+     * Wait until hashing a file on the input mount is permitted.  Every
+     * call must be matched by a call to <code>release</code>.
+     *
+     * @param mount The mount (see <code>getMount</code>).
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     */
+    public void acquire(String mount) throws InterruptedException {
+        Semaphore semaphore = getSemaphore(mount);
+        if (semaphore != null) {
+            semaphore.acquire();
+        }
+    }
+
+    /**
+     * Release a permit obtained by <code>acquire</code>.
+     *
+     * @param mount The mount (see <code>getMount</code>).
+     */
+    public void release(String mount) {
+        Semaphore semaphore = getSemaphore(mount);
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Take up to the input number of additional permits for the input 
+     * mount without waiting.  A caller already holding a permit uses these
+     * to read one file with several threads (e.g. the segments of a tree 
+     * hash) without exceeding the mount's limit.  Every permit obtained 
+     * must be returned by <code>release(String, int)</code>.
+     *
+     * @param mount The mount (see <code>getMount</code>).
+     * @param permits The most permits wanted.
+     * @return The number of permits obtained.  <code>permits</code> if the
+     * mount is not limited.
+     */
+    public int tryAcquire(String mount, int permits) {
+        Semaphore semaphore = getSemaphore(mount);
+        if (semaphore == null) {
+            return Math.max(0, permits);
+        }
+        int acquired = 0;
+        while ((acquired < permits) && (semaphore.tryAcquire())) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    /**
+     * Release permits obtained by <code>tryAcquire</code>.
+     *
+     * @param mount The mount (see <code>getMount</code>).
+     * @param permits The number of permits to release.
+     */
+    public void release(String mount, int permits) {
+        Semaphore semaphore = getSemaphore(mount);
+        if ((semaphore != null) && (permits > 0)) {
+            semaphore.release(permits);
+        }
+    }
+
+    /**
+     * Get (creating if necessary) the semaphore enforcing the limit of the
+     * input mount.
+     *
+     * @param mount The mount.
+     * @return The semaphore, or null if the mount is not limited.
+     */
+    private Semaphore getSemaphore(String mount) {
+        int limit = getLimit(mount);
+        if (limit <= 0) {
+            return null;
+        }
+        Semaphore semaphore = semaphores.get(mount);
+        if (semaphore == null) {
+            synchronized (semaphores) {
+                semaphore = semaphores.get(mount);
+                if (semaphore == null) {
+                    semaphore = new Semaphore(limit, true);
+                    semaphores.put(mount, semaphore);
+                }
+            }
+        }
+        return semaphore;
+    }
+}
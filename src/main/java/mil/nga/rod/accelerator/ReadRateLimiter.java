@@ -0,0 +1,345 @@
+package mil.nga.rod.accelerator;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.exceptions.PropertiesNotLoadedException;
+import mil.nga.util.RateLimiter;
+import mil.nga.util.ReadThrottle;
+
+/**
+ * Limits the rate at which files are read while hashing so that a refresh
+ * running during business hours does not saturate the shared NFS volumes
+ * that also serve RoD downloads.  Every read is charged to a global token
+ * bucket and to the token bucket of the mount on which the file resides
+ * (see <code>MountLimiter</code>).  Per-mount limits are configured as a
+ * comma-separated list of <code>path=limit</code> pairs (in MB/s); a file
+ * belongs to the longest configured path that prefixes it, otherwise to
+ * its filesystem mount point which receives the default limit.
+ *
+ * The limits can be restricted to certain times of day with a schedule of
+ * <code>HH:mm-HH:mm[=percent]</code> windows.  Within a window the limits
+ * are scaled by the percentage (100 if omitted, at least 1); outside of 
+ * every window reads are unlimited.  The schedule is re-evaluated at most once a
+ * second while reads are in progress, so the limits change at runtime
+ * without restarting the refresh.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ReadRateLimiter implements ReadThrottle, CacheManagerConstants {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            ReadRateLimiter.class);
+
+    /**
+     * Interval (in milliseconds) between evaluations of the schedule.
+     */
+    private static final long SCHEDULE_CHECK_INTERVAL = 1000L;
+
+    /**
+     * Number of bytes in one MB.
+     */
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    // Private internal members.
+    private final long                     globalLimit;
+    private final Map<String, Integer>     limits;
+    private final long                     defaultLimit;
+    private final List<Window>             schedule;
+    private final MountLimiter             mounts = new MountLimiter();
+    private final RateLimiter              global = new RateLimiter(0L);
+    private final Map<String, RateLimiter> buckets =
+            new ConcurrentHashMap<String, RateLimiter>();
+    private volatile int                   percent   = -1;
+    private volatile long                  nextCheck = 0L;
+
+    /**
+     * Constructor loading the limits and the schedule from the system
+     * properties.
+     */
+    public ReadRateLimiter() {
+        this(PropertyLoader.getInstance());
+    }
+
+    /**
+     * Constructor loading the limits and the schedule from the input 
+     * properties.
+     *
+     * @param props The system properties.
+     */
+    private ReadRateLimiter(PropertyLoader props) {
+        this(props.getIntProperty(
+                    REFRESH_IO_LIMIT_PROPERTY, DEFAULT_REFRESH_IO_LIMIT),
+                MountLimiter.parseLimits(REFRESH_IO_MOUNT_LIMITS_PROPERTY),
+                props.getIntProperty(
+                    REFRESH_IO_MOUNT_DEFAULT_LIMIT_PROPERTY,
+                    DEFAULT_REFRESH_IO_LIMIT),
+                parseSchedule(getSchedule(props)));
+    }
+
+    /**
+     * Constructor used to set all of the internal members.
+     *
+     * @param globalLimit The global limit (in MB/s).  0 if unlimited.
+     * @param limits Per-mount limits (in MB/s) keyed by path.
+     * @param defaultLimit The limit (in MB/s) of mounts not listed in 
+     * <code>limits</code>.  0 if unlimited.
+     * @param schedule The schedule.  Empty if the limits always apply.
+     */
+    ReadRateLimiter(
+            long globalLimit, 
+            Map<String, Integer> limits, 
+            long defaultLimit, 
+            List<Window> schedule) {
+        this.globalLimit  = Math.max(0L, globalLimit);
+        this.limits       = limits;
+        this.defaultLimit = Math.max(0L, defaultLimit);
+        this.schedule     = schedule;
+    }
+
+    /**
+     * Read the schedule property.
+     *
+     * @param props The system properties.
+     * @return The schedule, or null if not set.
+     */
+    private static String getSchedule(PropertyLoader props) {
+        String value = null;
+        try {
+            value = props.getProperty(REFRESH_IO_SCHEDULE_PROPERTY);
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+        return value;
+    }
+
+    /**
+     * Determine whether any read rate limit is configured.  If not there
+     * is no point in installing the throttle.
+     *
+     * @return True if reads may be limited.
+     */
+    public boolean isEnabled() {
+        if ((globalLimit > 0) || (defaultLimit > 0)) {
+            return true;
+        }
+        for (Integer limit : limits.values()) {
+            if (limit > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void acquire(Path file, int bytes) throws InterruptedIOException {
+        updateSchedule();
+        Path   path  = file.toAbsolutePath().normalize();
+        String mount = MountLimiter.longestPrefix(limits.keySet(), path);
+        if (mount == null) {
+            mount = mounts.getMount(path.toString());
+        }
+        try {
+            global.acquire(bytes);
+            getBucket(mount).acquire(bytes);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for "
+                    + "the read rate limit of mount [ "
+                    + mount
+                    + " ].");
+        }
+    }
+
+    /**
+     * Calculate the percentage of the configured limits in force at the
+     * input time of day.
+     *
+     * @param time The time of day.
+     * @return The percentage.  0 means reads are not limited.
+     */
+    int getPercent(LocalTime time) {
+        if (schedule.isEmpty()) {
+            return 100;
+        }
+        for (Window window : schedule) {
+            if (window.contains(time)) {
+                return window.percent;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Re-evaluate the schedule if it has not been evaluated in the last
+     * second, adjusting every token bucket if the percentage in force has
+     * changed.
+     */
+    private void updateSchedule() {
+        long now = System.currentTimeMillis();
+        if (now < nextCheck) {
+            return;
+        }
+        synchronized (this) {
+            if (now < nextCheck) {
+                return;
+            }
+            nextCheck = now + SCHEDULE_CHECK_INTERVAL;
+            int current = getPercent(LocalTime.now());
+            if (current != percent) {
+                percent = current;
+                global.setRate(scale(globalLimit));
+                for (Map.Entry<String, RateLimiter> entry :
+                        buckets.entrySet()) {
+                    entry.getValue().setRate(scale(getLimit(entry.getKey())));
+                }
+                if (current == 0) {
+                    LOGGER.info("Hashing read rate limits lifted by the "
+                            + "schedule.");
+                }
+                else {
+                    LOGGER.info("Hashing read rate limits set to [ "
+                            + current
+                            + "% ] of the configured limits (global [ "
+                            + globalLimit
+                            + " ] MB/s).");
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter method for the configured read rate limit of a mount.
+     *
+     * @param mount The mount.
+     * @return The limit (in MB/s).  0 if the mount is not limited.
+     */
+    private long getLimit(String mount) {
+        Integer limit = limits.get(mount);
+        return (limit == null ? defaultLimit : Math.max(0, limit));
+    }
+
+    /**
+     * Convert a configured limit to the rate in force.
+     *
+     * @param limit The configured limit (in MB/s).
+     * @return The rate (in bytes per second).  0 if unlimited.
+     */
+    private long scale(long limit) {
+        return (limit * BYTES_PER_MB * Math.max(0, percent)) / 100L;
+    }
+
+    /**
+     * Get (creating if necessary) the token bucket of the input mount.
+     *
+     * @param mount The mount.
+     * @return The token bucket.
+     */
+    private RateLimiter getBucket(String mount) {
+        RateLimiter bucket = buckets.get(mount);
+        if (bucket == null) {
+            synchronized (this) {
+                bucket = buckets.get(mount);
+                if (bucket == null) {
+                    bucket = new RateLimiter(scale(getLimit(mount)));
+                    buckets.put(mount, bucket);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Parse the schedule.  Invalid windows are logged and ignored.  A 
+     * percentage of 0 is invalid: it would lift the limits during the 
+     * window (as outside of every window) rather than pause the reads.
+     *
+     * @param value Comma-separated list of
+     * <code>HH:mm-HH:mm[=percent]</code> windows.
+     * @return The windows in configuration order.  Empty if no schedule is
+     * configured.
+     */
+    static List<Window> parseSchedule(String value) {
+        List<Window> windows = new ArrayList<Window>();
+        if ((value != null) && (!value.trim().isEmpty())) {
+            for (String entry : value.split(",")) {
+                try {
+                    String[] pair  = entry.split("=");
+                    String[] times = pair[0].split("-");
+                    if ((pair.length > 2) || (times.length != 2)) {
+                        throw new IllegalArgumentException();
+                    }
+                    int percent = (pair.length == 2 ?
+                            Integer.parseInt(pair[1].trim()) : 100);
+                    if (percent < 1) {
+                        throw new IllegalArgumentException();
+                    }
+                    windows.add(new Window(
+                            LocalTime.parse(times[0].trim()),
+                            LocalTime.parse(times[1].trim()),
+                            percent));
+                }
+                catch (IllegalArgumentException | DateTimeParseException e) {
+                    LOGGER.warn("Invalid entry [ "
+                            + entry.trim()
+                            + " ] in property [ "
+                            + REFRESH_IO_SCHEDULE_PROPERTY
+                            + " ].  Expected HH:mm-HH:mm[=percent] with a "
+                            + "percent of at least 1.  It "
+                            + "will be ignored.");
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * A time of day window during which the limits apply.
+     */
+    static class Window {
+
+        private final LocalTime start;
+        private final LocalTime end;
+        private final int       percent;
+
+        /**
+         * Constructor.
+         *
+         * @param start Start of the window (inclusive).
+         * @param end End of the window (exclusive).  If before
+         * <code>start</code> the window wraps past midnight.
+         * @param percent Percentage of the configured limits in force.
+         */
+        Window(LocalTime start, LocalTime end, int percent) {
+            this.start   = start;
+            this.end     = end;
+            this.percent = percent;
+        }
+
+        /**
+         * Determine whether the input time falls within the window.
+         *
+         * @param time The time of day.
+         * @return True if the time is within the window.
+         */
+        boolean contains(LocalTime time) {
+            if (start.isBefore(end)) {
+                return (!time.isBefore(start)) && time.isBefore(end);
+            }
+            return (!time.isBefore(start)) || time.isBefore(end);
+        }
+    }
+}
@@ -1,5 +1,15 @@
 package mil.nga.rod.accelerator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -9,6 +19,12 @@ import mil.nga.PropertyLoader;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * Very simple class implementing the Java-based interface to the Redis cache
@@ -35,8 +51,23 @@ public class RedisCacheManager
     private String host = null;
     private int    port = DEFAULT_REDIS_PORT;
     
+    // Maximum size of the connection pool (0 keeps the Jedis default).
+    private int    maxConnections = 0;
+    
+    // Maximum number of pipelined commands between replies.
+    private int    flushSize = DEFAULT_REDIS_PIPELINE_FLUSH_SIZE;
+    
+    // Maximum number of keys per MGET.
+    private int    chunkSize = DEFAULT_REDIS_MGET_CHUNK_SIZE;
+    
+    // Number of keys requested per SCAN.
+    private int    scanCount = DEFAULT_REDIS_SCAN_COUNT;
+    
+    // How accelerator records are stored.
+    private String storageMode = DEFAULT_REDIS_STORAGE_MODE;
+    
     /**
-     * Default constructor used to set up the Redis connection pool.
+     * Default constructor used to load the Redis connection properties.
      */
     private RedisCacheManager() { 
         PropertyLoader pLoader = PropertyLoader.getInstance();
@@ -54,7 +85,88 @@ public class RedisCacheManager
             setPort(DEFAULT_REDIS_PORT);
         }
         
-        pool = new JedisPool(new JedisPoolConfig(), getHost(), getPort());
+        try {
+            maxConnections = Integer.parseInt(
+                    pLoader.getProperty(REDIS_MAX_CONNECTIONS_PROPERTY));
+        }
+        catch (Exception e) {
+            // Keep the Jedis defaults.
+        }
+        
+        try {
+            flushSize = Integer.parseInt(
+                    pLoader.getProperty(REDIS_PIPELINE_FLUSH_SIZE_PROPERTY));
+            if (flushSize < 1) {
+                flushSize = DEFAULT_REDIS_PIPELINE_FLUSH_SIZE;
+            }
+        }
+        catch (Exception e) {
+            flushSize = DEFAULT_REDIS_PIPELINE_FLUSH_SIZE;
+        }
+        
+        try {
+            chunkSize = Integer.parseInt(
+                    pLoader.getProperty(REDIS_MGET_CHUNK_SIZE_PROPERTY));
+            if (chunkSize < 1) {
+                chunkSize = DEFAULT_REDIS_MGET_CHUNK_SIZE;
+            }
+        }
+        catch (Exception e) {
+            chunkSize = DEFAULT_REDIS_MGET_CHUNK_SIZE;
+        }
+        
+        try {
+            scanCount = Integer.parseInt(
+                    pLoader.getProperty(REDIS_SCAN_COUNT_PROPERTY));
+            if (scanCount < 1) {
+                scanCount = DEFAULT_REDIS_SCAN_COUNT;
+            }
+        }
+        catch (Exception e) {
+            scanCount = DEFAULT_REDIS_SCAN_COUNT;
+        }
+        
+        try {
+            String mode = pLoader.getProperty(REDIS_STORAGE_MODE_PROPERTY);
+            if ((mode != null) && (!mode.trim().isEmpty())) {
+                mode = mode.trim().toLowerCase();
+                if (HASH_STORAGE_MODE.equals(mode) || 
+                        STRING_STORAGE_MODE.equals(mode)) {
+                    storageMode = mode;
+                }
+                else {
+                    LOGGER.warn("Invalid value [ "
+                            + mode
+                            + " ] supplied for property [ "
+                            + REDIS_STORAGE_MODE_PROPERTY
+                            + " ].  Using the default value of [ "
+                            + DEFAULT_REDIS_STORAGE_MODE
+                            + " ].");
+                }
+            }
+        }
+        catch (Exception e) {
+            storageMode = DEFAULT_REDIS_STORAGE_MODE;
+        }
+    }
+    
+    /**
+     * Getter method for the Jedis connection pool.  The pool is created on 
+     * first use, and re-created if it was destroyed by a previous call to 
+     * <code>close()</code>, allowing the singleton to be re-used.
+     * 
+     * @return The Jedis connection pool.
+     */
+    private synchronized JedisPool getPool() {
+        if (pool == null) {
+            JedisPoolConfig config = new JedisPoolConfig();
+            if (maxConnections > 0) {
+                config.setMaxTotal(maxConnections);
+                config.setMaxIdle(maxConnections);
+            }
+            pool = new JedisPool(config, getHost(), getPort());
+        }
+        return pool;
     }
 
     /**
@@ -69,7 +181,7 @@ public class RedisCacheManager
     public String get(String key) {
         String value = null;
         if ((key != null) && (!key.isEmpty())) {
-            try (Jedis jedis = pool.getResource()) {
+            try (Jedis jedis = getPool().getResource()) {
                 value = jedis.get(key);
             }
         }
@@ -80,6 +192,300 @@ public class RedisCacheManager
         return value;
     }
 
+    /**
+     * Retrieve the values associated with any number of keys with one 
+     * <code>MGET</code> per <code>redis.mget.chunk_size</code> keys.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, String> getAll(Collection<String> keys) {
+        return getAll(keys, chunkSize);
+    }
+    
+    /**
+     * Retrieve the values associated with any number of keys with one 
+     * <code>MGET</code> per chunk of keys, decoding the values read by 
+     * <code>getAllBytes</code> as UTF-8.
+     * 
+     * @param keys The keys to query for.
+     * @param chunk The maximum number of keys per <code>MGET</code>.  
+     * Values less than 1 are raised to 1.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, String> getAll(Collection<String> keys, int chunk) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, byte[]> entry : 
+                getAllBytes(keys, chunk).entrySet()) {
+            values.put(entry.getKey(), (entry.getValue() == null ? null : 
+                    SafeEncoder.encode(entry.getValue())));
+        }
+        return values;
+    }
+    
+    /**
+     * Retrieve a value from the cache without decoding it as a String.
+     * 
+     * @param key Key to query for.
+     * @return The value associated with the input key.  Null if the key is
+     * not in the cache.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public byte[] getBytes(String key) {
+        byte[] value = null;
+        if ((key != null) && (!key.isEmpty())) {
+            try (Jedis jedis = getPool().getResource()) {
+                value = jedis.get(SafeEncoder.encode(key));
+            }
+        }
+        else {
+            LOGGER.warn("The input key is null or empty.  It will not "
+                    + "be used to query the cache.  Return data will be null.");
+        }
+        return value;
+    }
+    
+    /**
+     * Retrieve the values associated with any number of keys without 
+     * decoding them as Strings.  See <code>getAllBytes(Collection, 
+     * int)</code>.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, byte[]> getAllBytes(Collection<String> keys) {
+        return getAllBytes(keys, chunkSize);
+    }
+    
+    /**
+     * Retrieve the values associated with any number of keys without 
+     * decoding them as Strings, with one <code>MGET</code> per chunk of 
+     * keys.  All chunks are read over the same connection.
+     * 
+     * @param keys The keys to query for.
+     * @param chunk The maximum number of keys per <code>MGET</code>.  
+     * Values less than 1 are raised to 1.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, byte[]> getAllBytes(Collection<String> keys, int chunk) {
+        try (Jedis jedis = getPool().getResource()) {
+            return readChunked(keys, chunk, new ChunkReader<byte[]>() {
+                @Override
+                public List<byte[]> read(List<String> batch) {
+                    byte[][] encoded = new byte[batch.size()][];
+                    for (int j = 0; j < batch.size(); j++) {
+                        encoded[j] = SafeEncoder.encode(batch.get(j));
+                    }
+                    return jedis.mget(encoded);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Retrieve every field of a record stored as a hash with 
+     * <code>HGETALL</code>.
+     * 
+     * @param key Key to query for.
+     * @return The fields of the record.  Empty if the key is not in the 
+     * cache.
+     * @throws JedisDataException Runtime exception thrown if the key holds
+     * a value that is not a hash.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, String> getFields(String key) {
+        Map<String, String> fields = Collections.<String, String>emptyMap();
+        if ((key != null) && (!key.isEmpty())) {
+            try (Jedis jedis = getPool().getResource()) {
+                fields = jedis.hgetAll(key);
+            }
+        }
+        else {
+            LOGGER.warn("The input key is null or empty.  It will not "
+                    + "be used to query the cache.  Return data will be empty.");
+        }
+        return fields;
+    }
+    
+    /**
+     * Retrieve selected fields of a record stored as a hash with 
+     * <code>HMGET</code>.
+     * 
+     * @param key Key to query for.
+     * @param fields The fields to retrieve.
+     * @return The values of the fields in request order.  Fields that are 
+     * not set (or keys that are not in the cache) map to null.
+     * @throws JedisDataException Runtime exception thrown if the key holds
+     * a value that is not a hash.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public List<String> getFields(String key, String... fields) {
+        List<String> values = new ArrayList<String>();
+        if ((fields == null) || (fields.length == 0)) {
+            return values;
+        }
+        if ((key != null) && (!key.isEmpty())) {
+            try (Jedis jedis = getPool().getResource()) {
+                values = jedis.hmget(key, fields);
+            }
+        }
+        else {
+            LOGGER.warn("The input key is null or empty.  It will not "
+                    + "be used to query the cache.  Return data will be null.");
+            for (int i = 0; i < fields.length; i++) {
+                values.add(null);
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Retrieve every field of any number of records stored as hashes.  See
+     * <code>getAllFields(Collection, int)</code>.
+     * 
+     * @param keys The keys to query for.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to an empty map; 
+     * keys holding a value that is not a hash map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, Map<String, String>> getAllFields(
+            Collection<String> keys) {
+        return getAllFields(keys, chunkSize);
+    }
+    
+    /**
+     * Retrieve every field of any number of records stored as hashes.  The
+     * <code>HGETALL</code> commands are pipelined on a single connection, 
+     * waiting for the replies every chunk of keys.
+     * 
+     * @param keys The keys to query for.
+     * @param chunk The maximum number of pipelined commands between 
+     * replies.  Values less than 1 are raised to 1.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order.  Keys that are not in the cache map to an empty map; 
+     * keys holding a value that is not a hash map to null.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public Map<String, Map<String, String>> getAllFields(
+            Collection<String> keys, 
+            int chunk) {
+        try (Jedis jedis = getPool().getResource()) {
+            final Pipeline pipeline = jedis.pipelined();
+            return readChunked(keys, chunk, 
+                    new ChunkReader<Map<String, String>>() {
+                @Override
+                public List<Map<String, String>> read(List<String> batch) {
+                    List<Response<Map<String, String>>> responses = 
+                            new ArrayList<Response<Map<String, String>>>();
+                    for (String key : batch) {
+                        responses.add(pipeline.hgetAll(key));
+                    }
+                    pipeline.sync();
+                    List<Map<String, String>> found = 
+                            new ArrayList<Map<String, String>>();
+                    for (Response<Map<String, String>> response : responses) {
+                        Map<String, String> fields = null;
+                        try {
+                            fields = response.get();
+                        }
+                        catch (JedisDataException jde) {
+                            // WRONGTYPE: the key holds a string value.
+                        }
+                        found.add(fields);
+                    }
+                    return found;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Read the values associated with any number of keys a chunk at a 
+     * time.  Null and duplicate keys are dropped before the keys are split
+     * into chunks, and the values read for each chunk are merged into a 
+     * single map in request order.
+     * 
+     * @param keys The keys to query for.
+     * @param chunk The maximum number of keys per read.  Values less than
+     * 1 are raised to 1.
+     * @param reader Reads the values of one chunk of keys.
+     * @return Map containing every (distinct, non-null) requested key in 
+     * request order, mapped to the value read for it (null if the key was
+     * not found).
+     */
+    static <V> Map<String, V> readChunked(
+            Collection<String> keys, 
+            int chunk, 
+            ChunkReader<V> reader) {
+        
+        Map<String, V> values = new LinkedHashMap<String, V>();
+        
+        if ((keys != null) && (!keys.isEmpty())) {
+            List<String> unique = new ArrayList<String>(
+                    new LinkedHashSet<String>(keys));
+            unique.remove(null);
+            chunk = Math.max(1, chunk);
+            for (int i = 0; i < unique.size(); i += chunk) {
+                List<String> batch = unique.subList(
+                        i, Math.min(unique.size(), i + chunk));
+                List<V>      found = reader.read(batch);
+                for (int j = 0; j < batch.size(); j++) {
+                    values.put(batch.get(j), 
+                            ((found != null) && (j < found.size())) ? 
+                                    found.get(j) : null);
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Getter method for the maximum number of pipelined commands sent 
+     * before waiting for the replies.
+     * 
+     * @return The pipeline flush size.
+     */
+    public int getFlushSize() {
+        return flushSize;
+    }
+    
+    /**
+     * Getter method for the maximum number of keys retrieved per 
+     * <code>MGET</code>.
+     * 
+     * @return The chunk size.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+    
+    /**
+     * Getter method for the number of keys requested per <code>SCAN</code>.
+     * 
+     * @return The scan count.
+     */
+    public int getScanCount() {
+        return scanCount;
+    }
+    
     /**
      * Getter method for the Redis cache host name.
      * 
@@ -89,22 +495,95 @@ public class RedisCacheManager
         return host;
     }
     
+    /**
+     * Getter method for the accelerator record storage mode.
+     * 
+     * @return <code>STRING_STORAGE_MODE</code> or 
+     * <code>HASH_STORAGE_MODE</code>.
+     */
+    public String getStorageMode() {
+        return storageMode;
+    }
+    
+    /**
+     * Are accelerator records stored as Redis hashes?
+     * 
+     * @return True if the storage mode is <code>HASH_STORAGE_MODE</code>.
+     */
+    public boolean isHashStorage() {
+        return HASH_STORAGE_MODE.equals(storageMode);
+    }
+    
     /**
      * Get a Set containing all of the keys that are currently stored in the 
-     * target cache.
+     * target cache.  The keys are collected with <code>SCAN</code> rather 
+     * than <code>KEYS *</code>, which would block the Redis server for the
+     * duration, but the whole key space is still held in memory.  Prefer 
+     * <code>scanKeys</code> for large caches.
      *   
      * @return A Set containing all of the keys stored in the Redis cache.
      * @throws JedisConnectionException Runtime exception thrown if a 
      * connection cannot be made to the local Redis cache. 
      */
     public Set<String> getKeys() {
-        Set<String> keySet = null;
-        try (Jedis jedis = pool.getResource()) {
-            keySet = jedis.keys("*");
+        Set<String> keySet = new HashSet<String>();
+        for (String key : scanKeys(null)) {
+            keySet.add(key);
         }
         return keySet;
     }
     
+    /**
+     * Iterate over the keys in the cache with <code>SCAN</code>, requesting
+     * <code>redis.scan.count</code> keys per call.  See 
+     * <code>scanKeys(String, int)</code>.
+     * 
+     * @param match Glob-style pattern the keys must match.  Null matches 
+     * every key.
+     * @return The keys.
+     */
+    public Iterable<String> scanKeys(String match) {
+        return scanKeys(match, scanCount);
+    }
+    
+    /**
+     * Iterate over the keys in the cache with <code>SCAN</code>.  Each page
+     * of keys is fetched over a connection borrowed from the pool for that
+     * call only, so an abandoned iteration holds no resources.  Keys 
+     * present for the whole iteration are returned at least once; keys 
+     * added or removed during the iteration may or may not be returned, 
+     * and a key may be returned more than once.  Removing keys that have 
+     * already been returned is safe.
+     * 
+     * @param match Glob-style pattern the keys must match.  Null matches 
+     * every key.
+     * @param count Hint for the number of keys examined per call.  Values
+     * less than 1 are raised to 1.
+     * @return The keys.
+     * @throws JedisConnectionException Runtime exception thrown (while 
+     * iterating) if a connection cannot be made to the local Redis cache. 
+     */
+    public Iterable<String> scanKeys(final String match, final int count) {
+        final ScanParams params = new ScanParams().count(Math.max(1, count));
+        if ((match != null) && (!match.isEmpty())) {
+            params.match(match);
+        }
+        final PageSource source = new PageSource() {
+            @Override
+            public ScanResult<String> scan(String cursor) {
+                try (Jedis jedis = getPool().getResource()) {
+                    return jedis.scan(cursor, params);
+                }
+            }
+        };
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new KeyIterator(source);
+            }
+        };
+    }
+    
     /**
      * Getter method for the Redis cache port.
      * 
@@ -137,7 +616,7 @@ public class RedisCacheManager
     public void put(String key, String value) {
         if ((key != null) && (!key.isEmpty())) {
             if ((value != null) && (!value.isEmpty())) {
-                try (Jedis jedis = pool.getResource()) {
+                try (Jedis jedis = getPool().getResource()) {
                     jedis.set(key, value);
                 }
             }
@@ -152,6 +631,177 @@ public class RedisCacheManager
         }
     }
  
+    /**
+     * Store a number of key/value pairs in the target cache.  The values
+     * are encoded as UTF-8 and stored with <code>putAllBytes</code>, so 
+     * thousands of keys are written per network round trip rather than 
+     * one.
+     * 
+     * @param entries The key/value pairs to store.  Entries with a null or
+     * empty key or value are skipped.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public void putAll(Map<String, String> entries) {
+        if ((entries != null) && (!entries.isEmpty())) {
+            Map<String, byte[]> encoded = new LinkedHashMap<String, byte[]>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                encoded.put(entry.getKey(), (entry.getValue() == null ? null :
+                        SafeEncoder.encode(entry.getValue())));
+            }
+            putAllBytes(encoded);
+        }
+    }
+    
+    /**
+     * Store a binary value in the target cache.
+     * 
+     * @param key The key.
+     * @param value The value associated with the key.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public void putBytes(String key, byte[] value) {
+        if ((key != null) && (!key.isEmpty())) {
+            if ((value != null) && (value.length > 0)) {
+                try (Jedis jedis = getPool().getResource()) {
+                    jedis.set(SafeEncoder.encode(key), value);
+                }
+            }
+            else {
+                LOGGER.error("The input value is null or empty.  It will not "
+                        + "be stored in the cache.");
+            }
+        }
+        else {
+            LOGGER.error("The input key is null or empty.  It will not "
+                    + "be used to identify a record in the cache.");
+        }
+    }
+    
+    /**
+     * Store a number of binary values in the target cache.  The 
+     * <code>SET</code> commands are pipelined on a single connection, 
+     * waiting for the replies every <code>flushSize</code> commands, so 
+     * thousands of keys are written per network round trip rather than 
+     * one.
+     * 
+     * @param entries The key/value pairs to store.  Entries with a null or
+     * empty key or value are skipped.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public void putAllBytes(Map<String, byte[]> entries) {
+        if ((entries != null) && (!entries.isEmpty())) {
+            int skipped = 0;
+            try (Jedis jedis = getPool().getResource()) {
+                Pipeline pipeline = jedis.pipelined();
+                int      pending  = 0;
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    if ((entry.getKey() == null) || 
+                            (entry.getKey().isEmpty()) || 
+                            (entry.getValue() == null) || 
+                            (entry.getValue().length == 0)) {
+                        skipped++;
+                        continue;
+                    }
+                    pipeline.set(
+                            SafeEncoder.encode(entry.getKey()), 
+                            entry.getValue());
+                    if (++pending >= flushSize) {
+                        pipeline.sync();
+                        pending = 0;
+                    }
+                }
+                pipeline.sync();
+            }
+            if (skipped > 0) {
+                LOGGER.error("[ "
+                        + skipped
+                        + " ] entries with a null or empty key or value "
+                        + "were not stored in the cache.");
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Stored [ "
+                        + (entries.size() - skipped)
+                        + " ] keys in the cache.");
+            }
+        }
+    }
+    
+    /**
+     * Store a record as a hash, replacing any value (of any type) 
+     * previously stored under the key.  See <code>putAllFields</code>.
+     * 
+     * @param key The key.
+     * @param fields The fields of the record.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public void putFields(String key, Map<String, String> fields) {
+        if ((key != null) && (!key.isEmpty())) {
+            putAllFields(Collections.singletonMap(key, fields));
+        }
+        else {
+            LOGGER.error("The input key is null or empty.  It will not "
+                    + "be used to identify a record in the cache.");
+        }
+    }
+    
+    /**
+     * Store a number of records as hashes.  Each record is written with 
+     * <code>DEL</code> and <code>HMSET</code> in a 
+     * <code>MULTI</code>/<code>EXEC</code> block, so readers never see a 
+     * partially written record and a key that held a string value (or a 
+     * hash with fields that are no longer written) is replaced rather than
+     * merged.  The blocks are pipelined on a single connection, waiting 
+     * for the replies every <code>flushSize</code> records.
+     * 
+     * @param entries The fields of each record keyed by cache key.  
+     * Entries with a null or empty key or no fields are skipped.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public void putAllFields(Map<String, Map<String, String>> entries) {
+        if ((entries != null) && (!entries.isEmpty())) {
+            int skipped = 0;
+            try (Jedis jedis = getPool().getResource()) {
+                Pipeline pipeline = jedis.pipelined();
+                int      pending  = 0;
+                for (Map.Entry<String, Map<String, String>> entry : 
+                        entries.entrySet()) {
+                    if ((entry.getKey() == null) || 
+                            (entry.getKey().isEmpty()) || 
+                            (entry.getValue() == null) || 
+                            (entry.getValue().isEmpty())) {
+                        skipped++;
+                        continue;
+                    }
+                    pipeline.multi();
+                    pipeline.del(entry.getKey());
+                    pipeline.hmset(entry.getKey(), entry.getValue());
+                    pipeline.exec();
+                    if (++pending >= flushSize) {
+                        pipeline.sync();
+                        pending = 0;
+                    }
+                }
+                pipeline.sync();
+            }
+            if (skipped > 0) {
+                LOGGER.error("[ "
+                        + skipped
+                        + " ] entries with a null or empty key or no "
+                        + "fields were not stored in the cache.");
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Stored [ "
+                        + (entries.size() - skipped)
+                        + " ] hashes in the cache.");
+            }
+        }
+    }
+    
     /**
      * Remove a key/value pair from the target cache.
      * 
@@ -164,7 +814,7 @@ public class RedisCacheManager
                         + key
                         + " ].");
             }
-            try (Jedis jedis = pool.getResource()) {
+            try (Jedis jedis = getPool().getResource()) {
                 jedis.del(key);
             }
         }
@@ -174,14 +824,35 @@ public class RedisCacheManager
         }
     }
     
+    /**
+     * Remove a number of key/value pairs from the target cache with a 
+     * single <code>DEL</code>.  Callers are responsible for keeping the 
+     * number of keys reasonable.
+     * 
+     * @param keys Keys to remove.
+     * @return The number of keys removed.
+     * @throws JedisConnectionException Runtime exception thrown if a 
+     * connection cannot be made to the local Redis cache. 
+     */
+    public long removeAll(Collection<String> keys) {
+        long removed = 0L;
+        if ((keys != null) && (!keys.isEmpty())) {
+            try (Jedis jedis = getPool().getResource()) {
+                removed = jedis.del(keys.toArray(new String[keys.size()]));
+            }
+        }
+        return removed;
+    }
+    
     /**
      * Close the Jedis connection pool.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         if (pool != null) {
             LOGGER.info("Closing the Jedis connection pool.");
             pool.destroy();
+            pool = null;
         }
     }
     
@@ -206,6 +877,80 @@ public class RedisCacheManager
         port = value;
     }
     
+    /**
+     * Reads the values of one chunk of keys for <code>readChunked</code>.
+     * 
+     * @param <V> The type of the values.
+     */
+    interface ChunkReader<V> {
+        
+        /**
+         * Read the values of the input keys.
+         * 
+         * @param batch The keys (distinct and non-null).
+         * @return The values in the same order as the keys.  Keys that 
+         * were not found map to null.
+         */
+        List<V> read(List<String> batch);
+    }
+    
+    /**
+     * Source of the pages of keys walked by <code>KeyIterator</code>.
+     */
+    interface PageSource {
+        
+        /**
+         * Fetch the page of keys following the input cursor.
+         * 
+         * @param cursor The cursor returned with the previous page, or 
+         * <code>ScanParams.SCAN_POINTER_START</code> for the first page.
+         * @return The page of keys (possibly empty) and the next cursor.
+         */
+        ScanResult<String> scan(String cursor);
+    }
+    
+    /**
+     * Iterator walking the <code>SCAN</code> cursor one page at a time.  
+     * The iteration is complete when the cursor returns to 
+     * <code>ScanParams.SCAN_POINTER_START</code>.
+     */
+    static class KeyIterator implements Iterator<String> {
+        
+        private final PageSource source;
+        private String           cursor = ScanParams.SCAN_POINTER_START;
+        private Iterator<String> page   = Collections.<String>emptyIterator();
+        private boolean          done   = false;
+        
+        /**
+         * Constructor.
+         * 
+         * @param source Fetches each page of keys.
+         */
+        KeyIterator(PageSource source) {
+            this.source = source;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            // Pages may be empty even though the iteration is not complete.
+            while ((!page.hasNext()) && (!done)) {
+                ScanResult<String> result = source.scan(cursor);
+                cursor = result.getStringCursor();
+                page   = result.getResult().iterator();
+                done   = ScanParams.SCAN_POINTER_START.equals(cursor);
+            }
+            return page.hasNext();
+        }
+        
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+    
     /**
      * Static inner class used to construct the Singleton object.  This class
      * exploits the fact that classes are not loaded until they are referenced
@@ -0,0 +1,291 @@
+package mil.nga.rod.accelerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent checkpoint allowing an interrupted cache refresh to resume
+ * where it left off.  The checkpoint is a simple local text file.  The
+ * first line identifies the refresh run (full sweep or incremental
+ * starting point), the second records when the run started and each 
+ * subsequent line contains the cache key of a product that has been 
+ * completely processed.  A checkpoint written by a different run, or one
+ * older than the maximum age, is discarded.  Full sweeps and incremental
+ * runs should use separate files so that one does not discard the 
+ * other's progress.
+ *
+ * Keys for products that required a new hash are flushed to disk as soon
+ * as their records have been stored since they are expensive to 
+ * re-process.  All other keys are flushed in batches.  Losing an unflushed
+ * key only means the (cheap) check for that product is repeated.
+ *
+ * @author L. Craig Carpenter
+ */
+public class RefreshCheckpoint implements AutoCloseable {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            RefreshCheckpoint.class);
+
+    /**
+     * Prefix of the header line identifying the refresh run.
+     */
+    private static final String HEADER_PREFIX = "# run=";
+
+    /**
+     * Prefix of the header line recording when the run started.
+     */
+    private static final String STARTED_PREFIX = "# started=";
+
+    // Private internal members.
+    private final Path        file;
+    private final String      runId;
+    private final int         flushInterval;
+    private final long        maxAge;
+    private final Set<String> completed = Collections.synchronizedSet(
+            new HashSet<String>());
+    private BufferedWriter    writer    = null;
+    private int               pending   = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param file The checkpoint file.
+     * @param runId Identifier of the refresh run.
+     * @param flushInterval Number of inexpensive keys to buffer before
+     * flushing to disk.
+     */
+    public RefreshCheckpoint(Path file, String runId, int flushInterval) {
+        this(file, runId, flushInterval, 0L);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file The checkpoint file.
+     * @param runId Identifier of the refresh run.
+     * @param flushInterval Number of inexpensive keys to buffer before
+     * flushing to disk.
+     * @param maxAge Age (in milliseconds) after which a checkpoint left by
+     * an interrupted run is discarded rather than resumed.  A value of 0 
+     * or less means the checkpoint never expires.
+     */
+    public RefreshCheckpoint(
+            Path file, 
+            String runId, 
+            int flushInterval, 
+            long maxAge) {
+        this.file          = file;
+        this.runId         = runId;
+        this.flushInterval = Math.max(1, flushInterval);
+        this.maxAge        = maxAge;
+    }
+
+    /**
+     * Load any keys recorded by a previous (interrupted) run of the same
+     * type and open the checkpoint for writing.  The checkpoint is started
+     * afresh if it belongs to a different run or has expired.
+     *
+     * @return The number of keys loaded from a previous run.
+     * @throws IOException Thrown if the checkpoint file cannot be read or
+     * written.
+     */
+    public synchronized int open() throws IOException {
+
+        boolean resume = false;
+
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(
+                    file, StandardCharsets.UTF_8)) {
+                String line    = reader.readLine();
+                long   started = getStarted(reader.readLine());
+                if ((line == null) || (!line.equals(HEADER_PREFIX + runId))) {
+                    LOGGER.info("Checkpoint file [ "
+                            + file.toString()
+                            + " ] belongs to a different refresh run.  It "
+                            + "will be discarded.");
+                }
+                else if ((started < 0) || ((maxAge > 0) && 
+                        (System.currentTimeMillis() - started > maxAge))) {
+                    LOGGER.info("Checkpoint file [ "
+                            + file.toString()
+                            + " ] has expired.  It will be discarded.");
+                }
+                else {
+                    resume = true;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty()) {
+                            completed.add(line);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (resume) {
+            writer = Files.newBufferedWriter(
+                    file,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND);
+            LOGGER.info("Resuming interrupted refresh.  [ "
+                    + completed.size()
+                    + " ] products were already processed.");
+        }
+        else {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            writer = Files.newBufferedWriter(
+                    file,
+                    StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            writer.write(HEADER_PREFIX + runId);
+            writer.newLine();
+            writer.write(STARTED_PREFIX + System.currentTimeMillis());
+            writer.newLine();
+            writer.flush();
+        }
+        return completed.size();
+    }
+
+    /**
+     * Parse the header line recording when the run started.
+     *
+     * @param line The header line.
+     * @return The start time (in milliseconds), or -1 if the line is not a
+     * valid start time header.
+     */
+    private static long getStarted(String line) {
+        if ((line != null) && (line.startsWith(STARTED_PREFIX))) {
+            try {
+                return Long.parseLong(
+                        line.substring(STARTED_PREFIX.length()).trim());
+            }
+            catch (NumberFormatException nfe) { }
+        }
+        return -1L;
+    }
+
+    /**
+     * Has the product identified by the input key already been processed?
+     *
+     * @param key The cache key.
+     * @return True if the key was recorded by a previous run.
+     */
+    public boolean isComplete(String key) {
+        return (key != null) && completed.contains(key);
+    }
+
+    /**
+     * Record that the product identified by the input key has been
+     * processed.
+     *
+     * @param key The cache key.
+     * @param flush If true the checkpoint is flushed to disk immediately.
+     */
+    public synchronized void mark(String key, boolean flush) {
+        if ((writer != null) && (key != null) && (!key.isEmpty())) {
+            try {
+                completed.add(key);
+                writer.write(key);
+                writer.newLine();
+                pending++;
+                if (flush || (pending >= flushInterval)) {
+                    writer.flush();
+                    pending = 0;
+                }
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to write to checkpoint file [ "
+                        + file.toString()
+                        + " ].  Error message [ "
+                        + ioe.getMessage()
+                        + " ].  Checkpointing disabled for this run.");
+                closeWriter();
+            }
+        }
+    }
+
+    /**
+     * Record that the products identified by the input keys have been
+     * processed.
+     *
+     * @param keys The cache keys.
+     * @param flush If true the checkpoint is flushed to disk once all of 
+     * the keys have been recorded.
+     */
+    public synchronized void mark(Collection<String> keys, boolean flush) {
+        if (keys != null) {
+            for (String key : keys) {
+                mark(key, false);
+            }
+            if (flush && (writer != null) && (pending > 0)) {
+                try {
+                    writer.flush();
+                    pending = 0;
+                }
+                catch (IOException ioe) {
+                    LOGGER.warn("Unable to write to checkpoint file [ "
+                            + file.toString()
+                            + " ].  Error message [ "
+                            + ioe.getMessage()
+                            + " ].  Checkpointing disabled for this run.");
+                    closeWriter();
+                }
+            }
+        }
+    }
+
+    /**
+     * The refresh ran to completion.  Close and remove the checkpoint so
+     * the next run starts from the beginning.
+     */
+    public synchronized void finish() {
+        closeWriter();
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Unable to remove checkpoint file [ "
+                    + file.toString()
+                    + " ].  Error message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+        completed.clear();
+    }
+
+    /**
+     * Flush and close the checkpoint, leaving it on disk for the next run.
+     */
+    @Override
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    /**
+     * Flush and close the underlying writer.
+     */
+    private void closeWriter() {
+        if (writer != null) {
+            try { writer.close(); } catch (Exception e) {}
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package mil.nga.rod.accelerator;
+
+import java.util.Map;
+
+import mil.nga.rod.accelerator.CacheManager.RefreshStatus;
+import mil.nga.rod.model.Product;
+import mil.nga.rod.model.QueryRequestAccelerator;
+
+/**
+ * Unit of work passed between the stages of a cache refresh.  Each stage
+ * populates the fields it is responsible for (lookup fills in the existing
+ * record, change detection decides on the action, hashing builds the new
+ * record and write-back records the final status).  An item is only ever
+ * owned by one stage at a time so no synchronization is required.
+ *
+ * @author L. Craig Carpenter
+ */
+public class RefreshItem {
+
+    /**
+     * Enumeration identifying the work required to bring a single cache
+     * entry up to date.
+     */
+    public enum Action {
+        /** The cache entry is current. */
+        NONE,
+        /** The accelerator table entry is current but not in the cache. */
+        RECACHE,
+        /** The file is unchanged but the record lacks a precise file date. */
+        RESTAMP,
+        /** No accelerator record exists.  Hash and insert. */
+        INSERT,
+        /** The accelerator record is stale.  Hash and update. */
+        UPDATE
+    }
+
+    // Private internal members.
+    private final Product           product;
+    private String                  key;
+    private QueryRequestAccelerator current;
+    private boolean                 cached    = false;
+    private boolean                 preloaded = false;
+    private byte[]                  cachedValue;
+    private Map<String, String>     cachedFields;
+    private Action                  action    = Action.NONE;
+    private QueryRequestAccelerator record;
+    private RefreshStatus           status    = RefreshStatus.UNCHANGED;
+
+    /**
+     * Constructor requiring the product that is to be refreshed.
+     *
+     * @param product The product to refresh.
+     */
+    public RefreshItem(Product product) {
+        this.product = product;
+    }
+
+    /**
+     * Getter method for the work required for this item.
+     * @return The action required.
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * Getter method for the encoded cache entry loaded in bulk before the
+     * lookup stage.
+     * @return The cached value.  Null if the product is not cached (or the
+     * value was not preloaded).
+     */
+    public byte[] getCachedValue() {
+        return cachedValue;
+    }
+
+    /**
+     * Getter method for the fields of the cache entry loaded in bulk 
+     * before the lookup stage when records are stored as Redis hashes.
+     * @return The cached fields.  Empty if the product is not cached, null
+     * if the entry is not a hash (or the fields were not preloaded).
+     */
+    public Map<String, String> getCachedFields() {
+        return cachedFields;
+    }
+
+    /**
+     * Getter method for the existing accelerator record (from either the
+     * cache or the accelerator table).
+     * @return The existing record.  May be null.
+     */
+    public QueryRequestAccelerator getCurrent() {
+        return current;
+    }
+
+    /**
+     * Getter method for the cache key associated with the product.
+     * @return The cache key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Getter method for the product being refreshed.
+     * @return The product.
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Getter method for the newly generated accelerator record.
+     * @return The new record.  Null until the hashing stage completes.
+     */
+    public QueryRequestAccelerator getRecord() {
+        return record;
+    }
+
+    /**
+     * Getter method for the outcome of the refresh.
+     * @return The refresh status.
+     */
+    public RefreshStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Getter method indicating whether the existing record came from the
+     * cache (as opposed to the accelerator table).
+     * @return True if the existing record was found in the cache.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Getter method indicating whether the cache entry was loaded in bulk
+     * (in which case the lookup stage does not query the cache again).
+     * @return True if the cache entry was preloaded.
+     */
+    public boolean isPreloaded() {
+        return preloaded;
+    }
+
+    /**
+     * Does the item require a new hash to be computed?
+     * @return True if the action is either an insert or an update.
+     */
+    public boolean isHashRequired() {
+        return (action == Action.INSERT) || (action == Action.UPDATE);
+    }
+
+    /**
+     * Does the item require the cache (and possibly the accelerator table)
+     * to be written?
+     * @return True if any action is required.
+     */
+    public boolean isWriteRequired() {
+        return action != Action.NONE;
+    }
+
+    /**
+     * Setter method for the work required for this item.
+     * @param value The action required.
+     */
+    public void setAction(Action value) {
+        action = value;
+    }
+
+    /**
+     * Setter method for the flag indicating the existing record was found
+     * in the cache.
+     * @param value True if the existing record was found in the cache.
+     */
+    public void setCached(boolean value) {
+        cached = value;
+    }
+
+    /**
+     * Setter method for the encoded cache entry loaded in bulk.  This 
+     * marks the item as preloaded.
+     * @param value The cached value.  Null if the product is not cached.
+     */
+    public void setCachedValue(byte[] value) {
+        cachedValue = value;
+        preloaded   = true;
+    }
+
+    /**
+     * Setter method for the fields of the cache entry loaded in bulk.  
+     * This marks the item as preloaded.
+     * @param value The cached fields.  Empty if the product is not cached,
+     * null if the entry is not a hash.
+     */
+    public void setCachedFields(Map<String, String> value) {
+        cachedFields = value;
+        preloaded    = true;
+    }
+
+    /**
+     * Setter method for the existing accelerator record.
+     * @param value The existing record.
+     */
+    public void setCurrent(QueryRequestAccelerator value) {
+        current = value;
+    }
+
+    /**
+     * Setter method for the cache key.
+     * @param value The cache key.
+     */
+    public void setKey(String value) {
+        key = value;
+    }
+
+    /**
+     * Setter method for the newly generated accelerator record.
+     * @param value The new record.
+     */
+    public void setRecord(QueryRequestAccelerator value) {
+        record = value;
+    }
+
+    /**
+     * Setter method for the outcome of the refresh.
+     * @param value The refresh status.
+     */
+    public void setStatus(RefreshStatus value) {
+        status = value;
+    }
+}
@@ -0,0 +1,719 @@
+package mil.nga.rod.accelerator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.rod.accelerator.CacheManager.RefreshStatus;
+import mil.nga.rod.model.Product;
+
+/**
+ * Staged producer/consumer implementation of the cache refresh.  The work
+ * performed for each product is split into the following stages, joined
+ * by bounded queues:
+ *
+ * <ol>
+ * <li>catalog read and bulk cache read (<code>CacheManager</code>, 
+ * calling thread)</li>
+ * <li>cache/database lookup</li>
+ * <li>file stat/change detection</li>
+ * <li>hashing (<code>HashGenerator</code>)</li>
+ * <li>Redis/JDBC write-back</li>
+ * </ol>
+ *
+ * Each stage has its own thread budget so that cheap operations (i.e. the
+ * Redis lookups) are not stuck behind the hash of the previous record.
+ * The bounded queues provide backpressure; a full queue blocks the
+ * upstream stage until the downstream stage catches up.  Items that do
+ * not require a hash bypass the hashing stage entirely.
+ *
+ * If a refresh priority policy is configured (see 
+ * <code>RefreshPriority</code>) the hashing and write-back queues are 
+ * priority ordered so that, for example, cache misses are hashed ahead of
+ * stale entries.  The catalog itself is read newest first.
+ *
+ * The hashing stage is split by mount so that each volume is hashed with
+ * its own queue and concurrency limit (see <code>MountLimiter</code>).
+ *
+ * @author L. Craig Carpenter
+ */
+public class RefreshPipeline implements CacheManagerConstants {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            RefreshPipeline.class);
+
+    /**
+     * Marker item used to signal the workers of a stage to exit.
+     */
+    private static final RefreshItem POISON = new RefreshItem(null);
+
+    /**
+     * The CacheManager supplying the per-stage logic.
+     */
+    private final CacheManager manager;
+
+    // Pipeline stages
+    private final Stage lookupStage;
+    private final Stage detectStage;
+    private final MountStage hashStage;
+    private final Stage writeStage;
+
+    // Interval (in seconds) between statistics reports.
+    private final int reportInterval;
+
+    // Counters tallied as items leave the pipeline.
+    private final AtomicInteger totalCounter   = new AtomicInteger(0);
+    private final AtomicInteger successCounter = new AtomicInteger(0);
+    private final AtomicInteger failedCounter  = new AtomicInteger(0);
+    private final AtomicInteger skippedCounter = new AtomicInteger(0);
+
+    // True once the whole catalog has been read.
+    private volatile boolean catalogComplete = false;
+
+    /**
+     * Constructor loading the stage thread budgets and queue capacity from
+     * the system properties.
+     *
+     * @param manager The CacheManager supplying the per-stage logic.
+     */
+    public RefreshPipeline(CacheManager manager) {
+
+        PropertyLoader props    = PropertyLoader.getInstance();
+        int            capacity = Math.max(1, props.getIntProperty(
+                PIPELINE_QUEUE_CAPACITY_PROPERTY,
+                DEFAULT_PIPELINE_QUEUE_CAPACITY));
+
+        this.manager        = manager;
+        this.reportInterval = props.getIntProperty(
+                PIPELINE_REPORT_INTERVAL_PROPERTY,
+                DEFAULT_PIPELINE_REPORT_INTERVAL);
+        
+        RefreshPriority priority = RefreshPriority.getInstance();
+        if (priority != null) {
+            LOGGER.info("Hashing and write-back will be ordered by refresh "
+                    + "priority [ "
+                    + priority.toString()
+                    + " ].");
+        }
+
+        writeStage = new Stage("write", props.getIntProperty(
+                PIPELINE_WRITE_THREADS_PROPERTY,
+                DEFAULT_PIPELINE_WRITE_THREADS), capacity, priority, null) {
+            @Override
+            void process(RefreshItem item) throws Exception {
+                getManager().writeBack(item);
+                complete(item);
+            }
+        };
+        hashStage = new MountStage(props.getIntProperty(
+                PIPELINE_HASH_THREADS_PROPERTY,
+                DEFAULT_PIPELINE_HASH_THREADS), capacity, priority, writeStage);
+        detectStage = new Stage("detect", props.getIntProperty(
+                PIPELINE_DETECT_THREADS_PROPERTY,
+                DEFAULT_PIPELINE_DETECT_THREADS), capacity, null, hashStage) {
+            @Override
+            void process(RefreshItem item) throws Exception {
+                getManager().detectChanges(item);
+                if (item.isHashRequired()) {
+                    hashStage.put(item);
+                }
+                else if (item.isWriteRequired()) {
+                    writeStage.put(item);
+                }
+                else {
+                    complete(item);
+                }
+            }
+        };
+        lookupStage = new Stage("lookup", props.getIntProperty(
+                PIPELINE_LOOKUP_THREADS_PROPERTY,
+                DEFAULT_PIPELINE_LOOKUP_THREADS), capacity, null, detectStage) {
+            @Override
+            void process(RefreshItem item) throws Exception {
+                getManager().lookup(item);
+                detectStage.put(item);
+            }
+        };
+    }
+
+    /**
+     * Was the whole product catalog read by the last call to 
+     * <code>execute</code>?  If not, either the catalog read failed and 
+     * only the products read before the failure were refreshed, or some
+     * products could not be retrieved and were skipped.
+     *
+     * @return True if the catalog read completed.
+     */
+    public boolean isCatalogComplete() {
+        return catalogComplete;
+    }
+
+    /**
+     * Getter method for the CacheManager supplying the per-stage logic.
+     * @return The CacheManager.
+     */
+    private CacheManager getManager() {
+        return manager;
+    }
+
+    /**
+     * Record the outcome of an item that has left the pipeline.
+     *
+     * @param item The completed item.
+     */
+    private void complete(RefreshItem item) {
+        getManager().checkpoint(item);
+        switch (item.getStatus()) {
+            case UPDATED:
+                successCounter.incrementAndGet();
+                break;
+            case FAILED:
+                failedCounter.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Load the cache state for a batch of items read from the catalog (one
+     * round trip for the whole batch) and hand them to the lookup stage.
+     * 
+     * @param batch The items to submit.  The list is cleared on return.
+     */
+    private void submit(List<RefreshItem> batch) {
+        getManager().preload(batch);
+        for (RefreshItem item : batch) {
+            lookupStage.put(item);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Log the queue depth and throughput of each of the stages.
+     */
+    private void report() {
+        List<Stage> stages = new ArrayList<Stage>();
+        stages.add(lookupStage);
+        stages.add(detectStage);
+        stages.addAll(hashStage.getStages());
+        stages.add(writeStage);
+        for (Stage stage : stages) {
+            LOGGER.info(stage.toString());
+        }
+    }
+
+    /**
+     * Run the refresh pipeline to completion.  The catalog is read in the
+     * calling thread which blocks once the lookup queue is full.
+     *
+     * @param since If not null, only products loaded after this date are
+     * refreshed.
+     * @return Array containing the [ total, success, failed ] counters.
+     */
+    public int[] execute(Date since) {
+        return execute(since, new ArrayList<Product>());
+    }
+
+    /**
+     * Run the refresh pipeline to completion.  The products queued for 
+     * retry are submitted first, then the catalog is read in the calling 
+     * thread which blocks once the lookup queue is full.  Catalog products
+     * that were queued for retry are not submitted again.
+     *
+     * @param since If not null, only products loaded after this date are
+     * refreshed.
+     * @param retries Products that failed during the last refresh.
+     * @return Array containing the [ total, success, failed ] counters.
+     */
+    public int[] execute(Date since, List<Product> retries) {
+
+        ScheduledExecutorService reporter = null;
+
+        lookupStage.start();
+        detectStage.start();
+        writeStage.start();
+
+        if (reportInterval > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor();
+            reporter.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    report();
+                }
+            }, reportInterval, reportInterval, TimeUnit.SECONDS);
+        }
+
+        final int               batchSize = getManager().getPreloadBatchSize();
+        final List<RefreshItem> batch     = new ArrayList<RefreshItem>();
+        final Set<String>       queued    = new HashSet<String>();
+        
+        for (Product product : retries) {
+            if ((queued.add(AcceleratorRecordFactory.getInstance()
+                    .getKey(product))) && 
+                    (!getManager().isCheckpointed(product))) {
+                totalCounter.incrementAndGet();
+                batch.add(new RefreshItem(product));
+                if (batch.size() >= batchSize) {
+                    submit(batch);
+                }
+            }
+        }
+        if (!queued.isEmpty()) {
+            LOGGER.info("Retrying [ "
+                    + queued.size()
+                    + " ] products that failed during the last refresh.");
+        }
+        
+        try {
+            AtomicInteger missing = new AtomicInteger(0);
+            int loaded = getManager().getAllProducts(
+                    since, new Consumer<Product>() {
+                @Override
+                public void accept(Product product) {
+                    // Queued products were submitted ahead of the catalog.
+                    boolean retried = queued.contains(
+                            AcceleratorRecordFactory.getInstance()
+                                .getKey(product));
+                    if (getManager().isCheckpointed(product)) {
+                        skippedCounter.incrementAndGet();
+                    }
+                    else if (!retried) {
+                        totalCounter.incrementAndGet();
+                        batch.add(new RefreshItem(product));
+                        if (batch.size() >= batchSize) {
+                            submit(batch);
+                        }
+                    }
+                }
+            }, missing);
+            catalogComplete = (loaded >= 0) && (missing.get() == 0);
+        }
+        catch (Exception e) {
+            LOGGER.error("Unexpected exception raised while reading the "
+                    + "product catalog.  Exception message [ "
+                    + e.getMessage()
+                    + " ].  Only products already read will be refreshed.");
+        }
+        finally {
+            submit(batch);
+            lookupStage.finish();
+        }
+        if (skippedCounter.get() > 0) {
+            LOGGER.info("Skipped [ "
+                    + skippedCounter.get()
+                    + " ] products processed by the interrupted run.");
+        }
+
+        writeStage.await();
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        report();
+
+        return new int[] {
+                totalCounter.get(),
+                successCounter.get(),
+                failedCounter.get() };
+    }
+
+    /**
+     * Hashing stage work.  Generate the new record and route the item to
+     * the write-back stage.
+     *
+     * @param item The item to hash.
+     * @throws Exception Any exception raised is treated as a failure of 
+     * the item.
+     */
+    private void hash(RefreshItem item) throws Exception {
+        getManager().generate(item);
+        if (item.getStatus() == RefreshStatus.FAILED) {
+            complete(item);
+        }
+        else {
+            writeStage.put(item);
+        }
+    }
+
+    /**
+     * Destination for work flowing out of a stage.
+     *
+     * @author L. Craig Carpenter
+     */
+    abstract class Sink {
+
+        /**
+         * Hand an item to the sink.
+         *
+         * @param item The item.
+         */
+        abstract void put(RefreshItem item);
+
+        /**
+         * Signal that no further items will be put.
+         */
+        abstract void finish();
+    }
+
+    /**
+     * Hashing stage split by mount.  Each mount on which the input files 
+     * reside gets its own queue and its own workers, sized by the mount 
+     * limit (see <code>MountLimiter</code>), so a slow volume cannot hold 
+     * up the hashing of files on the fast volumes.  Mounts without a 
+     * configured limit receive the default hashing thread budget.  The 
+     * per-mount stages are created as files on each mount are first seen.
+     *
+     * @author L. Craig Carpenter
+     */
+    class MountStage extends Sink {
+
+        private final int                     threads;
+        private final int                     capacity;
+        private final Comparator<RefreshItem> priority;
+        private final Sink                    next;
+        private final Map<String, Stage>      stages   = 
+                new LinkedHashMap<String, Stage>();
+        private boolean                       closed   = false;
+        private int                           finished = 0;
+
+        /**
+         * Sink handed to each per-mount stage.  The downstream stage is 
+         * only signalled once every per-mount stage has finished.
+         */
+        private final Sink gate = new Sink() {
+            @Override
+            void put(RefreshItem item) {
+                next.put(item);
+            }
+            @Override
+            void finish() {
+                stageFinished();
+            }
+        };
+
+        /**
+         * Constructor.
+         *
+         * @param threads Number of worker threads for mounts without a 
+         * configured limit.
+         * @param capacity The capacity of each per-mount queue.
+         * @param priority Ordering of the per-mount queues.  Null for FIFO.
+         * @param next The downstream stage to signal on completion.
+         */
+        MountStage(int threads, 
+                int capacity, 
+                Comparator<RefreshItem> priority, 
+                Sink next) {
+            this.threads  = Math.max(1, threads);
+            this.capacity = capacity;
+            this.priority = priority;
+            this.next     = next;
+        }
+
+        /**
+         * Getter method for the per-mount stages created so far.
+         *
+         * @return The per-mount stages.
+         */
+        synchronized List<Stage> getStages() {
+            return new ArrayList<Stage>(stages.values());
+        }
+
+        /**
+         * Get (creating and starting if necessary) the stage for the input
+         * mount.
+         *
+         * @param mount The mount.
+         * @return The per-mount stage.
+         */
+        private synchronized Stage getStage(String mount) {
+            Stage stage = stages.get(mount);
+            if (stage == null) {
+                int limit = getManager().getMountLimiter().getLimit(mount);
+                stage = new Stage("hash " + mount, 
+                        (limit > 0 ? limit : threads), 
+                        capacity, 
+                        priority, 
+                        gate) {
+                    @Override
+                    void process(RefreshItem item) throws Exception {
+                        hash(item);
+                    }
+                };
+                stages.put(mount, stage);
+                stage.start();
+            }
+            return stage;
+        }
+
+        /**
+         * Route the item to the stage for the mount on which its file 
+         * resides.
+         */
+        @Override
+        void put(RefreshItem item) {
+            getStage(getManager().getMountLimiter().getMount(
+                    item.getProduct().getPath())).put(item);
+        }
+
+        /**
+         * Signal every per-mount stage to finish.
+         */
+        @Override
+        void finish() {
+            List<Stage> current;
+            synchronized (this) {
+                closed  = true;
+                current = new ArrayList<Stage>(stages.values());
+            }
+            for (Stage stage : current) {
+                stage.finish();
+            }
+            if (current.isEmpty()) {
+                next.finish();
+            }
+        }
+
+        /**
+         * Called as each per-mount stage exits.  Signal the downstream 
+         * stage once they all have.
+         */
+        private void stageFinished() {
+            boolean done;
+            synchronized (this) {
+                finished++;
+                done = closed && (finished == stages.size());
+            }
+            if (done) {
+                next.finish();
+            }
+        }
+    }
+
+    /**
+     * A single pipeline stage consisting of a bounded input queue and a
+     * fixed number of worker threads.  When the last worker of a stage
+     * exits, the stage signals the downstream stage to finish.  If a 
+     * priority is supplied the input queue is priority ordered.  The 
+     * <code>PriorityBlockingQueue</code> is unbounded so a semaphore is 
+     * used to preserve the backpressure.
+     *
+     * @author L. Craig Carpenter
+     */
+    abstract class Stage extends Sink {
+
+        private final String                     name;
+        private final int                        threads;
+        private final BlockingQueue<RefreshItem> queue;
+        private final Semaphore                  permits;
+        private final Sink                       next;
+        private final List<Thread>               workers   = new ArrayList<Thread>();
+        private final AtomicInteger              active    = new AtomicInteger(0);
+        private final AtomicLong                 processed = new AtomicLong(0);
+        private volatile long                    startTime = 0L;
+
+        /**
+         * Constructor.
+         *
+         * @param name The stage name (for logging).
+         * @param threads The number of worker threads.
+         * @param capacity The capacity of the input queue.
+         * @param priority Ordering of the input queue.  Null for FIFO.
+         * @param next The downstream stage to signal on completion.  Null
+         * for the final stage.
+         */
+        Stage(String name, 
+                int threads, 
+                int capacity, 
+                final Comparator<RefreshItem> priority, 
+                Sink next) {
+            this.name    = name;
+            this.threads = Math.max(1, threads);
+            this.next    = next;
+            if (priority == null) {
+                this.queue   = new ArrayBlockingQueue<RefreshItem>(capacity);
+                this.permits = null;
+            }
+            else {
+                // The poison items must sort after all real work.
+                this.queue   = new PriorityBlockingQueue<RefreshItem>(
+                        capacity, new Comparator<RefreshItem>() {
+                    @Override
+                    public int compare(RefreshItem a, RefreshItem b) {
+                        if (a == POISON) {
+                            return (b == POISON) ? 0 : 1;
+                        }
+                        else if (b == POISON) {
+                            return -1;
+                        }
+                        return priority.compare(a, b);
+                    }
+                });
+                this.permits = new Semaphore(capacity);
+            }
+        }
+
+        /**
+         * Perform the stage-specific work on a single item and route it to
+         * the next stage (or complete it).
+         *
+         * @param item The item to process.
+         * @throws Exception Any exception raised is treated as a failure
+         * of the item.
+         */
+        abstract void process(RefreshItem item) throws Exception;
+
+        /**
+         * Add an item to the stage input queue, blocking if the queue is
+         * full.
+         *
+         * @param item The item to enqueue.
+         */
+        @Override
+        void put(RefreshItem item) {
+            try {
+                if (permits != null) {
+                    permits.acquire();
+                }
+                queue.put(item);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while "
+                        + "queueing work for pipeline stage [ "
+                        + name
+                        + " ].");
+            }
+        }
+
+        /**
+         * Signal all workers in this stage to exit once the queue drains.
+         */
+        @Override
+        void finish() {
+            for (int i = 0; i < threads; i++) {
+                put(POISON);
+            }
+        }
+
+        /**
+         * Start the stage worker threads.
+         */
+        void start() {
+            startTime = System.currentTimeMillis();
+            active.set(threads);
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, "refresh-" + name + "-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        /**
+         * Wait for this stage (and therefore all upstream stages) to exit.
+         */
+        void await() {
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                }
+                catch (InterruptedException ie) {
+                    LOGGER.error("Interrupted while waiting for pipeline "
+                            + "stage [ "
+                            + name
+                            + " ] to complete.");
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Worker loop.
+         */
+        private void work() {
+            try {
+                while (true) {
+                    RefreshItem item = queue.take();
+                    if (permits != null) {
+                        permits.release();
+                    }
+                    if (item == POISON) {
+                        break;
+                    }
+                    try {
+                        process(item);
+                    }
+                    catch (Exception e) {
+                        item.setStatus(RefreshStatus.FAILED);
+                        complete(item);
+                        LOGGER.error("Unexpected "
+                                + e.getClass().getSimpleName()
+                                + " raised in pipeline stage [ "
+                                + name
+                                + " ] while processing file [ "
+                                + item.getProduct().getPath()
+                                + " ].  Error message [ "
+                                + e.getMessage()
+                                + " ].  Cache record not updated.");
+                    }
+                    processed.incrementAndGet();
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                if ((active.decrementAndGet() == 0) && (next != null)) {
+                    next.finish();
+                }
+            }
+        }
+
+        /**
+         * Stage statistics in human-readable format.
+         */
+        @Override
+        public String toString() {
+            long   elapsed    = Math.max(1L,
+                    System.currentTimeMillis() - startTime);
+            double throughput = (processed.get() * 1000.0) / elapsed;
+            return String.format("Pipeline stage [ %s ]: threads [ %d ], "
+                    + "queue depth [ %d ], processed [ %d ], throughput "
+                    + "[ %.2f ] items/s.",
+                    name,
+                    threads,
+                    queue.size(),
+                    processed.get(),
+                    throughput);
+        }
+    }
+}
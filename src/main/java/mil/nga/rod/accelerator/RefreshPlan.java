@@ -0,0 +1,284 @@
+package mil.nga.rod.accelerator;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.rod.model.Product;
+
+/**
+ * Result of a refresh planning (dry-run) pass.  Every product in the
+ * catalog is classified according to the work a real refresh would
+ * perform, and the number of bytes that would have to be hashed is
+ * totaled.  Combined with a measured (or configured) hash throughput this
+ * gives an estimate of how long the refresh will take.  The per-class
+ * product lists are retained so that a scheduler can split the work.
+ *
+ * Instances are populated concurrently by the planning workers so all
+ * mutators are synchronized.
+ *
+ * @author L. Craig Carpenter
+ */
+public class RefreshPlan {
+
+    /**
+     * Enumeration identifying the state of a single product relative to
+     * the cache.
+     */
+    public enum Classification {
+        /** No cache entry exists for the product. */
+        NOT_CACHED,
+        /** A cache entry exists but the on-disk file has changed. */
+        STALE,
+        /** The cache entry is current. */
+        UNCHANGED,
+        /** The on-disk file does not exist. */
+        MISSING
+    }
+
+    // Private internal members.
+    private final Map<Classification, List<Product>> products =
+            new EnumMap<Classification, List<Product>>(Classification.class);
+    private final List<Product> hashRequired   = new ArrayList<Product>();
+    private long                hashBytes      = 0L;
+    private int                 writeCount     = 0;
+    private int                 errorCount     = 0;
+    private double              hashThroughput = 0.0;
+    private long                elapsedTime    = 0L;
+
+    /**
+     * Default constructor.
+     */
+    public RefreshPlan() {
+        for (Classification c : Classification.values()) {
+            products.put(c, new ArrayList<Product>());
+        }
+    }
+
+    /**
+     * Record the classification of a single product.
+     *
+     * @param item The item after change detection.
+     * @param classification The classification of the product.
+     * @param size The on-disk size of the file (only used if the item
+     * requires a hash).
+     */
+    public synchronized void add(
+            RefreshItem item,
+            Classification classification,
+            long size) {
+        products.get(classification).add(item.getProduct());
+        if (item.isHashRequired()) {
+            hashRequired.add(item.getProduct());
+            hashBytes += size;
+        }
+        if (item.isWriteRequired()) {
+            writeCount++;
+        }
+    }
+
+    /**
+     * Record a product that could not be classified.
+     */
+    public synchronized void addError() {
+        errorCount++;
+    }
+
+    /**
+     * Getter method for the number of products in the input class.
+     *
+     * @param classification The target classification.
+     * @return The number of products in the class.
+     */
+    public synchronized int getCount(Classification classification) {
+        return products.get(classification).size();
+    }
+
+    /**
+     * Getter method for the products in the input class.
+     *
+     * @param classification The target classification.
+     * @return A copy of the list of products in the class.
+     */
+    public synchronized List<Product> getProducts(
+            Classification classification) {
+        return new ArrayList<Product>(products.get(classification));
+    }
+
+    /**
+     * Getter method for the products that would require a new hash.
+     *
+     * @return A copy of the list of products requiring a hash.
+     */
+    public synchronized List<Product> getHashRequired() {
+        return new ArrayList<Product>(hashRequired);
+    }
+
+    /**
+     * Getter method for the total number of bytes that would be hashed.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getHashBytes() {
+        return hashBytes;
+    }
+
+    /**
+     * Getter method for the number of products that would require a
+     * write to the cache and/or the accelerator table.
+     *
+     * @return The number of writes.
+     */
+    public synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Getter method for the number of products that could not be
+     * classified.
+     *
+     * @return The number of errors.
+     */
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Getter method for the total number of products classified.
+     *
+     * @return The total number of products.
+     */
+    public synchronized int getTotal() {
+        int total = 0;
+        for (List<Product> list : products.values()) {
+            total += list.size();
+        }
+        return total;
+    }
+
+    /**
+     * Getter method for the hash throughput used in the estimate.
+     *
+     * @return The throughput in bytes per second.  0 if unknown.
+     */
+    public synchronized double getHashThroughput() {
+        return hashThroughput;
+    }
+
+    /**
+     * Setter method for the hash throughput used in the estimate.
+     *
+     * @param value The throughput (of a single hashing thread) in bytes
+     * per second.
+     */
+    public synchronized void setHashThroughput(double value) {
+        hashThroughput = value;
+    }
+
+    /**
+     * Getter method for the time taken to build the plan.  This
+     * approximates the cost of the lookup and change detection portion of
+     * a real refresh.
+     *
+     * @return The elapsed time in milliseconds.
+     */
+    public synchronized long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Setter method for the time taken to build the plan.
+     *
+     * @param value The elapsed time in milliseconds.
+     */
+    public synchronized void setElapsedTime(long value) {
+        elapsedTime = value;
+    }
+
+    /**
+     * Estimate the time required to hash all of the files requiring a
+     * hash.  The estimate assumes throughput scales linearly with the
+     * number of threads which will not be the case once the storage is
+     * saturated.
+     *
+     * @param threads The number of hashing threads.
+     * @return The estimated hashing time in milliseconds.  -1 if the hash
+     * throughput is unknown.
+     */
+    public synchronized long getEstimatedHashTime(int threads) {
+        long estimate = -1L;
+        if (hashBytes == 0) {
+            estimate = 0L;
+        }
+        else if (hashThroughput > 0) {
+            estimate = (long)((hashBytes * 1000.0) /
+                    (hashThroughput * Math.max(1, threads)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Convert a time in milliseconds to a human-readable String.
+     *
+     * @param millis The time in milliseconds.
+     * @return The formatted time (HH:MM:SS).
+     */
+    public static String formatDuration(long millis) {
+        if (millis < 0) {
+            return "unknown";
+        }
+        long seconds = millis / 1000L;
+        return String.format("%02d:%02d:%02d",
+                seconds / 3600L,
+                (seconds % 3600L) / 60L,
+                seconds % 60L);
+    }
+
+    /**
+     * Plan summary in human-readable format.
+     *
+     * @param threads The number of hashing threads the refresh would use.
+     * @return The summary.
+     */
+    public synchronized String toString(int threads) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Refresh plan: products [ ");
+        sb.append(getTotal());
+        sb.append(" ]");
+        for (Classification c : Classification.values()) {
+            sb.append(", ");
+            sb.append(c.name().toLowerCase());
+            sb.append(" [ ");
+            sb.append(products.get(c).size());
+            sb.append(" ]");
+        }
+        sb.append(", errors [ ");
+        sb.append(errorCount);
+        sb.append(" ].  Hashes required [ ");
+        sb.append(hashRequired.size());
+        sb.append(" ] totaling [ ");
+        sb.append(hashBytes);
+        sb.append(" ] bytes, writes required [ ");
+        sb.append(writeCount);
+        sb.append(" ].  Hash throughput [ ");
+        sb.append(String.format("%.2f", hashThroughput / (1024.0 * 1024.0)));
+        sb.append(" ] MB/s per thread, estimated hashing time [ ");
+        sb.append(formatDuration(getEstimatedHashTime(threads)));
+        sb.append(" ] using [ ");
+        sb.append(threads);
+        sb.append(" ] thread(s) (plus [ ");
+        sb.append(formatDuration(elapsedTime));
+        sb.append(" ] for lookup and change detection).");
+        return sb.toString();
+    }
+
+    /**
+     * Plan summary in human-readable format assuming a single hashing
+     * thread.
+     */
+    @Override
+    public String toString() {
+        return toString(1);
+    }
+}
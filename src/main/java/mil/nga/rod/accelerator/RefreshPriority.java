@@ -0,0 +1,229 @@
+package mil.nga.rod.accelerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.exceptions.PropertiesNotLoadedException;
+
+/**
+ * Configurable ordering applied to refresh work once change detection has
+ * determined what each product requires.  The policy is a comma-separated
+ * list of criteria (see <code>Criterion</code>) applied in order, each
+ * breaking ties left by the previous criterion.  Prioritization is 
+ * opt-in (the default policy is <code>none</code>).  The policy 
+ * <code>miss,recent,stale</code> processes cache misses first, then the 
+ * most recently loaded products, then stale entries, so the products 
+ * users are most likely to be requesting become available in the cache 
+ * first.
+ *
+ * @author L. Craig Carpenter
+ */
+public class RefreshPriority
+        implements Comparator<RefreshItem>, CacheManagerConstants {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            RefreshPriority.class);
+
+    /**
+     * Enumeration identifying the individual ordering criteria.
+     */
+    public enum Criterion {
+        /** Products with no cache entry first. */
+        MISS("miss"),
+        /** Most recently loaded (LOAD_DATE) products first. */
+        RECENT("recent"),
+        /** Products whose on-disk file has changed first. */
+        STALE("stale");
+
+        /**
+         * The text field.
+         */
+        private final String text;
+
+        /**
+         * Default constructor.
+         *
+         * @param text Text associated with the enumeration value.
+         */
+        private Criterion(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Getter method for the text associated with the enumeration value.
+         *
+         * @return The text associated with the instanced enumeration type.
+         */
+        public String getText() {
+            return this.text;
+        }
+
+        /**
+         * Convert an input String to its associated enumeration type.
+         *
+         * @param text Input text information.
+         * @return The matching Criterion, or null if there is no match.
+         */
+        public static Criterion fromString(String text) {
+            if (text != null) {
+                for (Criterion c : Criterion.values()) {
+                    if (text.trim().equalsIgnoreCase(c.getText())) {
+                        return c;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The criteria making up the policy.
+     */
+    private final List<Criterion> criteria;
+
+    /**
+     * Constructor.
+     *
+     * @param criteria The ordering criteria, highest priority first.
+     */
+    public RefreshPriority(List<Criterion> criteria) {
+        this.criteria = Collections.unmodifiableList(
+                new ArrayList<Criterion>(criteria));
+    }
+
+    /**
+     * Construct the refresh priority policy from the system properties.
+     *
+     * @return The configured policy, or null if prioritization is disabled
+     * (the default, or the property is set to <code>none</code>) in which
+     * case work is processed in catalog order.
+     */
+    public static RefreshPriority getInstance() {
+
+        String policy = DEFAULT_REFRESH_PRIORITY;
+
+        try {
+            String value = PropertyLoader.getInstance().getProperty(
+                    REFRESH_PRIORITY_PROPERTY);
+            if ((value != null) && (!value.trim().isEmpty())) {
+                policy = value.trim();
+            }
+        }
+        catch (PropertiesNotLoadedException pnle) { }
+
+        return parse(policy);
+    }
+
+    /**
+     * Construct a refresh priority policy from its text form.
+     *
+     * @param policy Comma-separated list of criteria, or <code>none</code>.
+     * @return The policy, or null if prioritization is disabled (including
+     * when no valid criterion is listed).
+     */
+    static RefreshPriority parse(String policy) {
+
+        List<Criterion> criteria = new ArrayList<Criterion>();
+
+        if ((policy == null) || (policy.trim().equalsIgnoreCase("none"))) {
+            return null;
+        }
+        for (String token : policy.split(",")) {
+            Criterion c = Criterion.fromString(token);
+            if (c == null) {
+                LOGGER.warn("Unknown refresh priority criterion [ "
+                        + token.trim()
+                        + " ] in property [ "
+                        + REFRESH_PRIORITY_PROPERTY
+                        + " ].  It will be ignored.");
+            }
+            else if (!criteria.contains(c)) {
+                criteria.add(c);
+            }
+        }
+        return criteria.isEmpty() ? null : new RefreshPriority(criteria);
+    }
+
+    /**
+     * Getter method for the criteria making up the policy.
+     *
+     * @return The ordering criteria, highest priority first.
+     */
+    public List<Criterion> getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Compare two items according to a single criterion.
+     *
+     * @param c The criterion.
+     * @param a The first item.
+     * @param b The second item.
+     * @return Negative if <code>a</code> should be processed first.
+     */
+    private int compare(Criterion c, RefreshItem a, RefreshItem b) {
+        switch (c) {
+            case MISS:
+                return Boolean.compare(a.isCached(), b.isCached());
+            case RECENT:
+                return Long.compare(loadTime(b), loadTime(a));
+            case STALE:
+                return Boolean.compare(
+                        a.getAction() != RefreshItem.Action.UPDATE,
+                        b.getAction() != RefreshItem.Action.UPDATE);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Null-safe accessor for the product LOAD_DATE.
+     *
+     * @param item The item.
+     * @return The load time in milliseconds (0 if unknown).
+     */
+    private static long loadTime(RefreshItem item) {
+        Date loadDate = (item.getProduct() == null ?
+                null : item.getProduct().getLoadDate());
+        return (loadDate == null ? 0L : loadDate.getTime());
+    }
+
+    /**
+     * Compare two items according to the configured policy.
+     */
+    @Override
+    public int compare(RefreshItem a, RefreshItem b) {
+        for (Criterion c : criteria) {
+            int result = compare(c, a, b);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The policy in human-readable format.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Criterion c : criteria) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append(c.getText());
+        }
+        return sb.toString();
+    }
+}
@@ -5,6 +5,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,8 +13,10 @@ import org.slf4j.LoggerFactory;
 import mil.nga.PropertyLoader;
 import mil.nga.exceptions.PropertiesNotLoadedException;
 import mil.nga.exceptions.PropertyNotFoundException;
+import mil.nga.exceptions.UnknownHashTypeException;
 import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.types.HashType;
 
 /**
  * This is kind of messy because the accelerator record data is stored in a 
@@ -107,9 +110,10 @@ public class AcceleratorJDBCRecordFactory
 		                    	record = new QueryRequestAccelerator
 		                    			.QueryRequestAcceleratorBuilder()
 		                    			.product(prod)
-		                    			.fileDate(rs.getDate("FILE_DATE"))
+		                    			.fileDate(toDate(rs.getTimestamp("FILE_DATE")))
 		                    			.size(rs.getLong("FILE_SIZE"))
-		                    			.hash(rs.getString("HASH"))
+		                    			.hashType(toHashType(rs.getString("HASH")))
+		                    			.hash(toHash(rs.getString("HASH")))
 		                    			.build();
 		                    }
 		                 
@@ -171,6 +175,81 @@ public class AcceleratorJDBCRecordFactory
     	return record;
     }
     
+    /**
+     * The FILE_DATE column holds the modification time of the on-disk file.
+     * Convert the <code>Timestamp</code> read from the database to a plain 
+     * <code>java.util.Date</code> (so that comparisons with the on-disk 
+     * date behave) without losing the time component.  If the column is 
+     * an Oracle <code>DATE</code> the time is truncated to the second; 
+     * <code>CacheManager.isFileDateChanged</code> allows for that.
+     * 
+     * @param ts The timestamp read from the database.
+     * @return The equivalent Date, or null if the input was null.
+     */
+    private static java.util.Date toDate(Timestamp ts) {
+        java.util.Date date = null;
+        if (ts != null) {
+            date = new java.util.Date(ts.getTime());
+        }
+        return date;
+    }
+    
+    /**
+     * The HASH column holds the bare hash when the hash type is the default
+     * (MD5).  Any other hash type is stored as <code>type:hash</code> (e.g. 
+     * <code>sha256tree:0a1b...</code>) so the column remains 
+     * self-describing without a schema change.
+     * 
+     * @param record The record to store.
+     * @return The value to write to the HASH column.
+     */
+    private static String toColumn(QueryRequestAccelerator record) {
+        if (record.getHashType() == QueryRequestAccelerator.DEFAULT_HASH_TYPE) {
+            return record.getHash();
+        }
+        return record.getHashType().getText() 
+                + HASH_TYPE_SEPARATOR 
+                + record.getHash();
+    }
+    
+    /**
+     * Extract the hash type from a value read from the HASH column.
+     * 
+     * @param value The HASH column value.
+     * @return The hash type (the default if no type prefix is present).
+     */
+    private static HashType toHashType(String value) {
+        HashType type = QueryRequestAccelerator.DEFAULT_HASH_TYPE;
+        if ((value != null) && (value.indexOf(HASH_TYPE_SEPARATOR) > 0)) {
+            String text = value.substring(
+                    0, value.indexOf(HASH_TYPE_SEPARATOR));
+            try {
+                type = HashType.fromString(text);
+            }
+            catch (UnknownHashTypeException uhte) {
+                LOGGER.warn(uhte.getMessage()
+                        + "  The stored hash will be treated as [ "
+                        + type.getText()
+                        + " ].");
+            }
+        }
+        return type;
+    }
+    
+    /**
+     * Extract the hash from a value read from the HASH column.
+     * 
+     * @param value The HASH column value.
+     * @return The hash with any hash type prefix removed.
+     */
+    private static String toHash(String value) {
+        if ((value != null) && (value.indexOf(HASH_TYPE_SEPARATOR) > 0)) {
+            return value.substring(
+                    value.indexOf(HASH_TYPE_SEPARATOR) + 1);
+        }
+        return value;
+    }
+    
     /**
      * Insert the data associated with the query request accelerator record 
      * into the backing data store.   
@@ -187,9 +266,9 @@ public class AcceleratorJDBCRecordFactory
 	    		stmt = getConnection().prepareStatement(sql);
 	    		stmt.setString(1, record.getProduct().getNRN());
 	    		stmt.setString(2, record.getProduct().getNSN());
-	    		stmt.setDate(  3, new java.sql.Date(record.getFileDate().getTime()));
+	    		stmt.setTimestamp(3, new Timestamp(record.getFileDate().getTime()));
 	    		stmt.setLong(  4, record.getSize());
-	    		stmt.setString(5, record.getHash());
+	    		stmt.setString(5, toColumn(record));
 	    		
 	    		stmt.executeUpdate();
 	    	}
@@ -268,9 +347,9 @@ public class AcceleratorJDBCRecordFactory
     	try {
 	    	if (getConnection() != null) {
 	    		stmt = getConnection().prepareStatement(sql);
-	    		stmt.setDate(  1, new java.sql.Date(record.getFileDate().getTime()));
+	    		stmt.setTimestamp(1, new Timestamp(record.getFileDate().getTime()));
 	    		stmt.setLong(  2, record.getSize());
-	    		stmt.setString(3, record.getHash());
+	    		stmt.setString(3, toColumn(record));
 	    		stmt.setString(4, record.getProduct().getNRN());
 	    		stmt.setString(5, record.getProduct().getNSN());
 	    		stmt.executeUpdate();
@@ -294,13 +373,14 @@ public class AcceleratorJDBCRecordFactory
     
     /**
      * Construct a <code>java.sql.Connection</code> from the input database
-     * connection properties.
+     * connection properties.  Synchronized because the connection is shared
+     * by the parallel refresh workers.
      * 
      * @return A populated <code>java.sql.Connection</code> object.
      * @throws SQLException Thrown if problems were encountered establishing 
      * the database connection. 
      */
-    private Connection getConnection() throws SQLException {
+    private synchronized Connection getConnection() throws SQLException {
         
         if (rodConnection == null) {
             rodConnection = DriverManager.getConnection(
@@ -326,13 +406,35 @@ public class AcceleratorJDBCRecordFactory
     } 
     
     /**
-     * Close the database connection if open.
+     * Long-running callers hold the connection open between uses.  This 
+     * method checks that the held connection is still usable and, if not,
+     * discards it so that it is re-established on next use.
+     */
+    public synchronized void validateConnection() {
+        if (rodConnection != null) {
+            boolean valid = false;
+            try {
+                valid = rodConnection.isValid(CONNECTION_VALIDATION_TIMEOUT);
+            }
+            catch (SQLException se) { }
+            if (!valid) {
+                LOGGER.warn("JDBC connection is no longer valid.  It will "
+                        + "be re-established.");
+                close();
+            }
+        }
+    }
+    
+    /**
+     * Close the database connection if open.  The connection reference is 
+     * cleared so that a subsequent call re-opens the connection.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         if (rodConnection != null) {
             LOGGER.info("Closing JDBC connection.");
             try { rodConnection.close(); } catch (Exception e) {}
+            rodConnection = null;
         }
     }
     
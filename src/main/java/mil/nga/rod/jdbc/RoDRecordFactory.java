@@ -5,10 +5,14 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -348,21 +352,119 @@ public class RoDRecordFactory
      * @return A list of products with a unique NSN/NRN combination.
      */
     public List<Product> getUniqueProducts() {
+        return getUniqueProducts((Date)null);
+    }
+    
+    /**
+     * Incremental version of <code>getUniqueProducts</code> returning only 
+     * the unique NSN/NRN combinations with a LOAD_DATE or FILE_DATE at or 
+     * after the input date.
+     * 
+     * @param since Only products loaded (or with a file date) at or after 
+     * this date are returned.  If null, all unique products are returned.
+     * @return A list of products with a unique NSN/NRN combination.  Null 
+     * if the catalog query could not be executed.
+     */
+    public List<Product> getUniqueProducts(Date since) {
+        return getUniqueProducts(since, (AtomicInteger)null);
+    }
+    
+    /**
+     * Incremental version of <code>getUniqueProducts</code> that also 
+     * counts the unique NSN/NRN combinations that could not be retrieved.
+     * Those products are left out of the returned list, so callers that 
+     * need the whole catalog must check the counter.
+     * 
+     * @param since Only products loaded (or with a file date) at or after 
+     * this date are returned.  If null, all unique products are returned.
+     * @param missing Incremented for each unique product that could not be
+     * retrieved.  May be null.
+     * @return A list of products with a unique NSN/NRN combination.  Null 
+     * if the catalog query could not be executed.
+     */
+    public List<Product> getUniqueProducts(Date since, AtomicInteger missing) {
         
-    	List<Product>       products       = new ArrayList<Product>();
-    	Map<String, String> uniqueProducts = new HashMap<String, String>();
+    	final List<Product> products = new ArrayList<Product>();
+    	int loaded = getUniqueProducts(since, new Consumer<Product>() {
+    	    @Override
+    	    public void accept(Product product) {
+    	        products.add(product);
+    	    }
+    	}, missing);
+        return (loaded < 0 ? null : products);
+    }
+    
+    /**
+     * The database team decided to store multiple records associated with 
+     * each unique NSN/NRN combination.  The intent was to allow easier 
+     * searching based on country and/or AOR.  The issue was the 15k or 
+     * so unique records exploded into the millions.  This method was added
+     * to get only the unique NSN/NRN combinations.
+     * 
+     * This version hands each product to the supplied consumer as soon as 
+     * it is loaded rather than materializing the entire list, allowing 
+     * downstream processing to start while the catalog is still being 
+     * read.
+     * 
+     * @param consumer Callback receiving each unique product.
+     * @return The number of unique products loaded.
+     */
+    public int getUniqueProducts(Consumer<Product> consumer) {
+        return getUniqueProducts(null, consumer, null);
+    }
+    
+    /**
+     * Incremental version of <code>getUniqueProducts</code>.  Only the 
+     * unique NSN/NRN combinations with a LOAD_DATE or FILE_DATE at or after
+     * the input date are loaded.  The comparison is inclusive because the 
+     * dates may only be stored to the second (or the day), so products 
+     * loaded after the high-water mark was read can share its value.  
+     * Each product is handed to the supplied consumer as soon as it is 
+     * loaded.
+     * 
+     * @param since Only products loaded (or with a file date) at or after 
+     * this date are returned.  If null, all unique products are returned.
+     * @param consumer Callback receiving each unique product.
+     * @param missing Incremented for each unique product that could not be
+     * retrieved.  Those products are logged and skipped.  May be null.
+     * @return The number of unique products loaded, or -1 if the catalog 
+     * query could not be executed (i.e. the data store was unavailable or
+     * the query failed).  Products loaded before a failure have already 
+     * been handed to the consumer.
+     */
+    public int getUniqueProducts(
+            Date since, 
+            Consumer<Product> consumer, 
+            AtomicInteger missing) {
+        
+    	int                 loaded         = 0;
+    	boolean             complete       = false;
+    	// Insertion ordered so the most recently loaded products are 
+    	// handed to the consumer first.
+    	Map<String, String> uniqueProducts = 
+    	        new LinkedHashMap<String, String>();
     	
         PreparedStatement stmt     = null;
         ResultSet         rs       = null;
         long              start    = System.currentTimeMillis();
         int               counter  = 0;
-        String            sql      = "select distinct NSN, NRN from "
+        String            sql      = "select NSN, NRN, max(LOAD_DATE) "
+                + "LATEST_LOAD_DATE from "
                 + TARGET_TABLE_NAME;
         
+        if (since != null) {
+            sql = sql + " where LOAD_DATE >= ? or FILE_DATE >= ?";
+        }
+        sql = sql + " group by NSN, NRN "
+                + "order by LATEST_LOAD_DATE desc nulls last";
             
         try { 
             if (getConnection() != null) {
             	stmt = getConnection().prepareStatement(sql);
+            	if (since != null) {
+            	    stmt.setTimestamp(1, new Timestamp(since.getTime()));
+            	    stmt.setTimestamp(2, new Timestamp(since.getTime()));
+            	}
                 rs   = stmt.executeQuery();
                 
                 // Load the map containing the unique products.
@@ -388,9 +490,13 @@ public class RoDRecordFactory
 	                			nrn, 
 	                			uniqueProducts.get(nrn));
 	                	if (prods.size() > 0) {
-	                		products.add(prods.get(0));
+	                		consumer.accept(prods.get(0));
+	                		loaded++;
 	                	}
 	                	else {
+	                		if (missing != null) {
+	                			missing.incrementAndGet();
+	                		}
 	                		LOGGER.warn("Unable to retrieve unique product "
 	                				+ "with key (i.e. NRN) => [ "
 	                				+ nrn
@@ -401,7 +507,7 @@ public class RoDRecordFactory
 	                }
 	                if (LOGGER.isDebugEnabled()) {
 	                	LOGGER.debug("Loaded [ "
-	                			+ products.size()
+	                			+ loaded
 	                			+ " ] unique products in [ "
 	                			+ (System.currentTimeMillis() - start)
 	                			+ " ] ms.");
@@ -411,7 +517,7 @@ public class RoDRecordFactory
                 	LOGGER.warn("Found 0 unique products.  Return product "
                 			+ "list will be empty.");
                 }
-                
+                complete = true;
             }
         }
         catch (SQLException se) {
@@ -429,7 +535,76 @@ public class RoDRecordFactory
                 if (stmt != null) { stmt.close(); } 
             } catch (Exception e) {}
         }
-        return products;
+        return (complete ? loaded : -1);
+    }
+    
+    /**
+     * Get the high-water mark of the product catalog.  This is the later of
+     * the most recent LOAD_DATE and the most recent FILE_DATE.  Products 
+     * loaded after a refresh has recorded this value can be selected with 
+     * the (inclusive) incremental version of 
+     * <code>getUniqueProducts</code>.
+     * 
+     * @return The catalog high-water mark.  Null if it could not be 
+     * determined.
+     */
+    public Date getHighWaterMark() {
+        
+        Date              mark  = null;
+        PreparedStatement stmt  = null;
+        ResultSet         rs    = null;
+        String            sql   = "select max(LOAD_DATE) as MAX_LOAD_DATE, "
+                + "max(FILE_DATE) as MAX_FILE_DATE from "
+                + TARGET_TABLE_NAME;
+        
+        try {
+            if (getConnection() != null) {
+                stmt = getConnection().prepareStatement(sql);
+                rs   = stmt.executeQuery();
+                if (rs.next()) {
+                    mark = getLater(
+                            rs.getTimestamp("MAX_LOAD_DATE"), 
+                            rs.getTimestamp("MAX_FILE_DATE"));
+                }
+            }
+        }
+        catch (SQLException se) {
+            LOGGER.error("An unexpected SQLException was raised while "
+                    + "attempting to retrieve the high-water mark of [ "
+                    + TARGET_TABLE_NAME
+                    + " ].  Error message [ "
+                    + se.getMessage() 
+                    + " ].");
+        }
+        finally {
+            try { 
+                if (rs != null) { rs.close(); } 
+            } catch (Exception e) {}
+            try { 
+                if (stmt != null) { stmt.close(); } 
+            } catch (Exception e) {}
+        }
+        return mark;
+    }
+    
+    /**
+     * Get the later of the two input dates.  Either may be null (e.g. a 
+     * catalog in which no FILE_DATE has been recorded).
+     * 
+     * @param first The first date.
+     * @param second The second date.
+     * @return The later of the two dates, or null if both are null.
+     */
+    static Date getLater(Date first, Date second) {
+        Date later = null;
+        if (first != null) {
+            later = new Date(first.getTime());
+        }
+        if ((second != null) && 
+                ((later == null) || (second.getTime() > later.getTime()))) {
+            later = new Date(second.getTime());
+        }
+        return later;
     }
     
     /**
@@ -577,13 +752,35 @@ public class RoDRecordFactory
     }
     
     /**
-     * Close the database connection if open.
+     * Long-running callers hold the connection open between uses.  This 
+     * method checks that the held connection is still usable and, if not,
+     * discards it so that it is re-established on next use.
+     */
+    public synchronized void validateConnection() {
+        if (rodConnection != null) {
+            boolean valid = false;
+            try {
+                valid = rodConnection.isValid(CONNECTION_VALIDATION_TIMEOUT);
+            }
+            catch (SQLException se) { }
+            if (!valid) {
+                LOGGER.warn("JDBC connection is no longer valid.  It will "
+                        + "be re-established.");
+                close();
+            }
+        }
+    }
+    
+    /**
+     * Close the database connection if open.  The connection reference is 
+     * cleared so that a subsequent call re-opens the connection.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         if (rodConnection != null) {
             LOGGER.info("Closing JDBC connection.");
             try { rodConnection.close(); } catch (Exception e) {}
+            rodConnection = null;
         }
     }
     
@@ -77,4 +77,15 @@ public interface RoDRecordFactoryConstants {
     public static final String ACCELERATOR_TARGET_TABLE_NAME = 
             "ROD_QUERY_REQUEST_ACCELERATOR";
     
+    /**
+     * Time (in seconds) to wait when validating a held database connection.
+     */
+    public static final int CONNECTION_VALIDATION_TIMEOUT = 5;
+    
+    /**
+     * Separator between the hash type and the hash in the HASH column of 
+     * the accelerator table (used for hash types other than the default).
+     */
+    public static final String HASH_TYPE_SEPARATOR = ":";
+    
 }
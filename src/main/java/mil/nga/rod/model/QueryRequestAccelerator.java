@@ -1,13 +1,19 @@
 package mil.nga.rod.model;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
 import java.text.SimpleDateFormat;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
+import mil.nga.types.HashType;
+
 /**
  * Object used to pre-compute information associated with on-disk files in 
  * in order to speed up execution time when a query is initiated.  We found 
@@ -31,6 +37,9 @@ public class QueryRequestAccelerator
         HASH           VARCHAR2(200),
     );
 
+    HASH holds the bare MD5 hash, or type:hash for any other hash type 
+    (e.g. sha256tree:0a1b...).
+
     The primary key is actually extracted from the parent class (i.e. Product).
 */
     /**
@@ -44,10 +53,29 @@ public class QueryRequestAccelerator
     private static final String FILE_DATE_FORMAT_STRING = 
             "yyyy-MM-dd hh:mm:ss";
     
+    /**
+     * Type of the primary hash unless specified otherwise.  Records 
+     * written before the hash type was recorded are all of this type.
+     */
+    public static final HashType DEFAULT_HASH_TYPE = HashType.MD5;
+    
+    /**
+     * Type of the fast fingerprint stored alongside the primary hash.
+     */
+    public static final HashType FINGERPRINT_TYPE = HashType.XXHASH64;
+    
+    /**
+     * Type of the sampled (partial-content) fingerprint stored alongside 
+     * the primary hash.
+     */
+    public static final HashType SAMPLE_TYPE = HashType.XXHASH64_SAMPLED;
+    
     // Private internal members.
-    private final Date   fileDate;
-    private final String hash;
-    private final long   size;
+    private final Date                  fileDate;
+    private final String                hash;
+    private final HashType              hashType;
+    private final Map<HashType, String> hashes;
+    private final long                  size;
     
     /**
      * Constructor used to set all of the required internal members.
@@ -58,6 +86,9 @@ public class QueryRequestAccelerator
     	super(builder.product);
         this.fileDate = builder.fileDate;
         this.hash     = builder.hash;
+        this.hashType = builder.hashType;
+        this.hashes   = Collections.unmodifiableMap(
+                new EnumMap<HashType, String>(builder.hashes));
         this.size     = builder.size;
     }
     
@@ -78,13 +109,75 @@ public class QueryRequestAccelerator
     }
 
     /**
-     * Getter method for the MD5 hash of the target file.
-     * @return The MD5 hash of the target file.
+     * Getter method for the primary hash of the target file.  This is the 
+     * MD5 hash unless <code>getHashType</code> says otherwise.  Files at 
+     * or above the tree hash threshold carry a tree hash here, so clients 
+     * expecting an MD5 hash must check the hash type first.
+     * @return The primary hash of the target file.
      */
     public String getHash() {
         return hash;
     }
     
+    /**
+     * Getter method for the type of the primary hash.  Large files may be 
+     * hashed with a segmented (tree) hash type so that they can be hashed 
+     * (and verified) in parallel.  Not serialized when it is the default 
+     * type so values written by earlier versions remain identical.
+     * @return The type of the primary hash.
+     */
+    @JsonInclude(
+            value = JsonInclude.Include.CUSTOM, 
+            valueFilter = DefaultHashTypeFilter.class)
+    public HashType getHashType() {
+        return hashType;
+    }
+    
+    /**
+     * Getter method for the additional hashes of the target file (i.e. 
+     * those computed alongside the primary hash in the same pass over the 
+     * file).  Not serialized when empty so values written by earlier 
+     * versions remain identical.
+     * @return Unmodifiable map of additional hashes keyed by hash type.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public Map<HashType, String> getHashes() {
+        return hashes;
+    }
+    
+    /**
+     * Getter method for a single additional hash of the target file.
+     * @param type The hash type.
+     * @return The hash, or null if that hash type was not computed.
+     */
+    public String getHash(HashType type) {
+        return hashes.get(type);
+    }
+    
+    /**
+     * Getter method for the fast (non-cryptographic) fingerprint of the 
+     * target file.  The fingerprint is stored with the additional hashes 
+     * and is used by verification sweeps to decide whether the primary 
+     * hash has to be recomputed.
+     * @return The fingerprint, or null if it was not computed.
+     */
+    @JsonIgnore
+    public String getFingerprint() {
+        return hashes.get(FINGERPRINT_TYPE);
+    }
+    
+    /**
+     * Getter method for the sampled fingerprint of the target file (i.e. 
+     * a fingerprint of its size, head, tail and a few pseudo-random 
+     * blocks).  Used by audit sweeps to detect replaced files without 
+     * reading them in full.
+     * @return The sampled fingerprint, or null if it was not computed.
+     */
+    @JsonIgnore
+    public String getSampledFingerprint() {
+        return hashes.get(SAMPLE_TYPE);
+    }
+    
     /**
      * Getter method for the MD5 hash of the target file.
      * @return The MD5 hash of the target file.
@@ -108,6 +201,16 @@ public class QueryRequestAccelerator
         sb.append(getSize());
         sb.append(" ], Hash => [ ");
         sb.append(getHash());
+        if (getHashType() != DEFAULT_HASH_TYPE) {
+            sb.append(" ], Hash Type => [ ");
+            sb.append(getHashType().getText());
+        }
+        for (Map.Entry<HashType, String> entry : getHashes().entrySet()) {
+            sb.append(" ], ");
+            sb.append(entry.getKey().getText());
+            sb.append(" => [ ");
+            sb.append(entry.getValue());
+        }
         sb.append(" ], File Date => [ ");
         sb.append((new SimpleDateFormat(FILE_DATE_FORMAT_STRING))
                 .format(getFileDate()));
@@ -127,10 +230,13 @@ public class QueryRequestAccelerator
     public static class QueryRequestAcceleratorBuilder {
         
         // Private internal members.
-    	private Product product;
-        private Date    fileDate;
-        private String  hash;
-        private long    size;
+    	private Product               product;
+        private Date                  fileDate;
+        private String                hash;
+        private HashType              hashType = DEFAULT_HASH_TYPE;
+        private Map<HashType, String> hashes = 
+                new EnumMap<HashType, String>(HashType.class);
+        private long                  size;
         
         /**
          * Method used to actually construct the
@@ -166,8 +272,8 @@ public class QueryRequestAccelerator
         }
         
         /**
-         * Setter method for the MD5 hash of the target file.
-         * @param value The MD5 hash of the target file.
+         * Setter method for the primary hash of the target file.
+         * @param value The primary hash of the target file.
          */
         public QueryRequestAcceleratorBuilder hash(String value) {
             if (value != null) {
@@ -176,6 +282,44 @@ public class QueryRequestAccelerator
             return this;
         }
         
+        /**
+         * Setter method for the type of the primary hash of the target 
+         * file.  Defaults to <code>DEFAULT_HASH_TYPE</code>.
+         * @param value The type of the primary hash.
+         */
+        public QueryRequestAcceleratorBuilder hashType(HashType value) {
+            if (value != null) {
+                hashType = value;
+            }
+            return this;
+        }
+        
+        /**
+         * Setter method for the additional hashes of the target file.
+         * @param value Map of additional hashes keyed by hash type.
+         */
+        public QueryRequestAcceleratorBuilder hashes(
+                Map<HashType, String> value) {
+            if (value != null) {
+                hashes.putAll(value);
+            }
+            return this;
+        }
+        
+        /**
+         * Setter method for a single additional hash of the target file.
+         * @param type The hash type.
+         * @param value The hash.
+         */
+        public QueryRequestAcceleratorBuilder addHash(
+                HashType type, 
+                String value) {
+            if ((type != null) && (value != null)) {
+                hashes.put(type, value);
+            }
+            return this;
+        }
+        
         /**
          * Setter method for the HYPERLINK_URL attribute.
          * @param value The HYPERLINK_URL attribute.
@@ -217,8 +361,9 @@ public class QueryRequestAccelerator
                         (object.getHash().isEmpty())) {
                     throw new IllegalStateException("Attempted to build "
                             + "QueryRequestAccelerator object but the value "
-                            + "for the MD5 hash "
-                            + "was null.");
+                            + "for the [ "
+                            + object.getHashType().getText()
+                            + " ] hash was null.");
                 }
                 if (object.getProduct() == null) {
                     throw new IllegalStateException("Attempted to build "
@@ -233,4 +378,22 @@ public class QueryRequestAccelerator
             }
         }
     }
+    
+    /**
+     * Jackson value filter used to suppress serialization of the default 
+     * hash type.  Jackson treats values for which <code>equals</code> 
+     * returns true as excluded.
+     */
+    static class DefaultHashTypeFilter {
+        
+        @Override
+        public boolean equals(Object value) {
+            return (value == null) || (value == DEFAULT_HASH_TYPE);
+        }
+        
+        @Override
+        public int hashCode() {
+            return DEFAULT_HASH_TYPE.hashCode();
+        }
+    }
 }
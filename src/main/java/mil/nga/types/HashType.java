@@ -3,29 +3,150 @@ package mil.nga.types;
 import mil.nga.exceptions.UnknownHashTypeException;
 
 /**
- * Enumeration type identifying what type of file hashes are supported.
+ * Enumeration type identifying what type of file hashes are supported.  
+ * XXHASH64 is a fast non-cryptographic fingerprint used to detect changed 
+ * files; it is not provided by the JCA (see 
+ * <code>mil.nga.util.XXHash64</code>).  XXHASH64_SAMPLED applies it to a 
+ * small sample of the file rather than the whole file.
  * 
  * @author L. Craig Carpenter
  */
 public enum HashType {
-    MD5("md5"),
-    SHA1("sha1"),
-    SHA256("sha256"),
-    SHA384("sha384"),
-    SHA512("sha512");
+    MD5("md5", "MD5"),
+    SHA1("sha1", "SHA-1"),
+    SHA256("sha256", "SHA-256"),
+    SHA384("sha384", "SHA-384"),
+    SHA512("sha512", "SHA-512"),
+    SHA256_TREE("sha256tree", "SHA-256", Mode.TREE),
+    XXHASH64("xxhash64", "XXH64"),
+    XXHASH64_SAMPLED("xxhash64sampled", "XXH64", Mode.SAMPLED);
+    
+    /**
+     * Enumeration identifying which bytes of the file are digested and how.
+     */
+    public enum Mode {
+        /** The whole file is digested sequentially. */
+        STREAM,
+        /** The whole file is digested in independent segments. */
+        TREE,
+        /** Only a sample of the file is digested. */
+        SAMPLED
+    }
+    
+    /**
+     * Size (in bytes) of the segments digested independently by the tree
+     * hash types.  The segment size is part of the definition of the hash 
+     * (changing it changes every tree hash) so it is fixed rather than 
+     * configurable.  Tree hashes are computed as follows:
+     * <pre>
+     * leaf[i] = H(file[i * TREE_SEGMENT_SIZE, (i + 1) * TREE_SEGMENT_SIZE))
+     * root    = H(leaf[0] || leaf[1] || ... || leaf[n - 1])
+     * </pre>
+     * where the last segment may be short and an empty file has a single 
+     * (empty) segment.  The leaf digests are concatenated in binary form 
+     * and the root is reported as lower-case hex.
+     */
+    public static final int TREE_SEGMENT_SIZE = 64 * 1024 * 1024;
+    
+    /**
+     * Size (in bytes) of each block digested by the sampled hash types.
+     */
+    public static final int SAMPLE_BLOCK_SIZE = 64 * 1024;
+    
+    /**
+     * Number of pseudo-random blocks (in addition to the head and tail 
+     * blocks) digested by the sampled hash types.  Like the block size, 
+     * this is part of the definition of the hash.  Sampled hashes are 
+     * computed over the file size (8 bytes, big-endian) followed by the 
+     * head block, the pseudo-random blocks and the tail block.  The 
+     * offsets of the pseudo-random blocks are generated by a 
+     * <code>java.util.Random</code> seeded with the file size:
+     * <pre>
+     * offset[i] = SAMPLE_BLOCK_SIZE + 
+     *         floorMod(random.nextLong(), size - 3 * SAMPLE_BLOCK_SIZE + 1)
+     * </pre>
+     * Files no larger than <code>(SAMPLE_BLOCKS + 2) * SAMPLE_BLOCK_SIZE
+     * </code> bytes are digested in full (after the size).
+     */
+    public static final int SAMPLE_BLOCKS = 16;
     
     /**
      * The text field.
      */
     private final String text;
     
+    /**
+     * The JCA <code>MessageDigest</code> algorithm name.
+     */
+    private final String algorithm;
+    
+    /**
+     * Which bytes of the file are digested and how.
+     */
+    private final Mode mode;
+    
     /**
      * Default constructor.
      * 
      * @param text Text associated with the enumeration value.
+     * @param algorithm The JCA <code>MessageDigest</code> algorithm name.
+     */
+    private HashType(String text, String algorithm) {
+        this(text, algorithm, Mode.STREAM);
+    }
+    
+    /**
+     * Constructor used by the segmented (tree) and sampled hash types.
+     * 
+     * @param text Text associated with the enumeration value.
+     * @param algorithm The JCA <code>MessageDigest</code> algorithm name 
+     * (for tree hashes, used for both the segment and root digests).
+     * @param mode Which bytes of the file are digested and how.
+     */
+    private HashType(String text, String algorithm, Mode mode) {
+        this.text      = text;
+        this.algorithm = algorithm;
+        this.mode      = mode;
+    }
+    
+    /**
+     * Getter method for which bytes of the file are digested and how.
+     * 
+     * @return The mode.
+     */
+    public Mode getMode() {
+        return this.mode;
+    }
+    
+    /**
+     * Is this a segmented (tree) hash?  The segments of a tree hash can be
+     * digested in parallel.  See <code>TREE_SEGMENT_SIZE</code>.
+     * 
+     * @return True if the file is digested in independent segments.
+     */
+    public boolean isTree() {
+        return this.mode == Mode.TREE;
+    }
+    
+    /**
+     * Is this a sampled hash?  Sampled hashes read only a few blocks of 
+     * the file.  See <code>SAMPLE_BLOCKS</code>.
+     * 
+     * @return True if only a sample of the file is digested.
+     */
+    public boolean isSampled() {
+        return this.mode == Mode.SAMPLED;
+    }
+    
+    /**
+     * Getter method for the JCA <code>MessageDigest</code> algorithm name
+     * associated with the enumeration value.
+     * 
+     * @return The algorithm name (suitable for 
+     * <code>MessageDigest.getInstance</code>).
      */
-    private HashType(String text) {
-        this.text = text;
+    public String getAlgorithm() {
+        return this.algorithm;
     }
     
     /**
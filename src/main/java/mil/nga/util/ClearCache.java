@@ -1,36 +1,83 @@
 package mil.nga.util;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 import mil.nga.rod.accelerator.RedisCacheManager;
+import mil.nga.util.Options.Multiplicity;
+import mil.nga.util.Options.Separator;
 
 /**
  * Simple application used to remove all of the key/value pairs from the 
- * Cache.
+ * Cache.  The keys are enumerated with <code>SCAN</code> and removed a 
+ * page at a time, so the tool neither blocks the Redis server nor holds 
+ * the key space in memory.  An optional pattern limits the keys removed.
  * 
  * @author L. Craig Carpenter
  */
 public class ClearCache {
 
+    /**
+     * Usage String presented when the command line arguments do not make 
+     * sense.
+     */
+    public static final String USAGE_STRING = 
+            "Usage : java mil.nga.util.ClearCache [ -match=<pattern> ] "
+            + "[ -count=<keys per scan> ] [ -h ] [ -help ]";
+    
     /**
      * Main method.
      * 
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
-        int keysRemoved = 0;
+        
+        Options opt = new Options(args, 0);
+        opt.getSet().addOption("match", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("count", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("h", Multiplicity.ZERO_OR_MORE);
+        opt.getSet().addOption("help", Multiplicity.ZERO_OR_MORE);
+        
+        if (!opt.check(true, false)) {
+            System.err.println(USAGE_STRING);
+            System.exit(1);
+        }
+        if ((opt.getSet().isSet("h")) || (opt.getSet().isSet("help"))) {
+            System.out.println(USAGE_STRING);
+            System.exit(0);
+        }
+        
+        String match = null;
+        if (opt.getSet().isSet("match")) {
+            match = opt.getSet().getOption("match").getResultValue(0);
+        }
+        
+        long keysRemoved = 0L;
         try (RedisCacheManager manager = RedisCacheManager.getInstance()) { 
-            Set<String> keySet = manager.getKeys();
-            if (keySet.size() > 0) {
-                for (String key : keySet) {
-                    manager.remove(key);
-                    keysRemoved++;
+            int count = manager.getScanCount();
+            if (opt.getSet().isSet("count")) {
+                count = Integer.parseInt(
+                        opt.getSet().getOption("count").getResultValue(0));
+            }
+            count = Math.max(1, count);
+            List<String> batch = new ArrayList<String>();
+            for (String key : manager.scanKeys(match, count)) {
+                batch.add(key);
+                if (batch.size() >= count) {
+                    keysRemoved += manager.removeAll(batch);
+                    batch.clear();
                 }
             }
-            else {
-                System.out.println("The cache is empty.");
+            keysRemoved += manager.removeAll(batch);
+            if (keysRemoved == 0) {
+                System.out.println("The cache contains no matching "
+                        + "elements.");
             }
         }
+        catch (NumberFormatException nfe) {
+            System.err.println(USAGE_STRING);
+            System.exit(1);
+        }
         System.out.println("Removed [ "
                 + keysRemoved
                 + " ] keys.");
@@ -1,37 +1,84 @@
 package mil.nga.util;
 
-import java.util.Set;
-
 import mil.nga.rod.accelerator.RedisCacheManager;
+import mil.nga.util.Options.Multiplicity;
+import mil.nga.util.Options.Separator;
 
 /**
- * Simple application used to output a list of all keys in the cache.
+ * Simple application used to output a list of all keys in the cache.  The
+ * keys are enumerated with <code>SCAN</code> and printed as they arrive, 
+ * so the tool is safe to run against a production cache and does not hold
+ * the key space in memory.  Keys modified while the tool runs may be 
+ * printed more than once.
  * 
  * @author L. Craig Carpenter
  */
 public class DumpKeys {
 
+    /**
+     * Usage String presented when the command line arguments do not make 
+     * sense.
+     */
+    public static final String USAGE_STRING = 
+            "Usage : java mil.nga.util.DumpKeys [ -match=<pattern> ] "
+            + "[ -count=<keys per scan> ] [ -h ] [ -help ]";
+    
     /**
      * Main method.
      * 
      * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        
+        Options opt = new Options(args, 0);
+        opt.getSet().addOption("match", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("count", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("h", Multiplicity.ZERO_OR_MORE);
+        opt.getSet().addOption("help", Multiplicity.ZERO_OR_MORE);
+        
+        if (!opt.check(true, false)) {
+            System.err.println(USAGE_STRING);
+            System.exit(1);
+        }
+        if ((opt.getSet().isSet("h")) || (opt.getSet().isSet("help"))) {
+            System.out.println(USAGE_STRING);
+            System.exit(0);
+        }
+        
+        String match = null;
+        if (opt.getSet().isSet("match")) {
+            match = opt.getSet().getOption("match").getResultValue(0);
+        }
+        
     	long start = System.currentTimeMillis();
+    	long count = 0L;
         try (RedisCacheManager manager = RedisCacheManager.getInstance()) { 
-            Set<String> keySet = manager.getKeys();
-            if (keySet.size() > 0) {
-                for (String key : keySet) {
-                    System.out.println(key);
-                }
+            Iterable<String> keys;
+            if (opt.getSet().isSet("count")) {
+                keys = manager.scanKeys(match, Integer.parseInt(
+                        opt.getSet().getOption("count").getResultValue(0)));
+            }
+            else {
+                keys = manager.scanKeys(match);
+            }
+            for (String key : keys) {
+                System.out.println(key);
+                count++;
+            }
+            if (count > 0) {
                 System.out.println("The cache contains [ "
-                        + keySet.size()
-                        + " ] elements.");
+                        + count
+                        + " ] matching elements.");
             }
             else {
-                System.out.println("The cache is empty.");
+                System.out.println("The cache contains no matching "
+                        + "elements.");
             }
         }
+        catch (NumberFormatException nfe) {
+            System.err.println(USAGE_STRING);
+            System.exit(1);
+        }
         System.out.println("Keys retreived in [ "
         		+ (System.currentTimeMillis() - start)
         		+ " ] ms.");
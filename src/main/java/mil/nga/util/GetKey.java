@@ -1,17 +1,21 @@
 package mil.nga.util;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import mil.nga.rod.JSONSerializer;
+import mil.nga.rod.JSONRecordCodec;
+import mil.nga.rod.accelerator.AcceleratorRecordFactory;
 import mil.nga.rod.accelerator.RedisCacheManager;
 import mil.nga.rod.jdbc.RoDRecordFactory;
 import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
 import mil.nga.util.Options.Multiplicity;
 import mil.nga.util.Options.Separator;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 /**
  * Command line tool used to dump the value associated with a key in the 
@@ -34,7 +38,8 @@ public class GetKey {
      */
     public static final String USAGE_STRING = 
             "Usage : java mil.nga.util.GetKey -key=<key name> "
-            + "[ -deserialize ] [ -h ] [ -help ]";
+            + "[ -fields=<field>,<field>... ] [ -deserialize ] [ -h ] "
+            + "[ -help ]";
     
     /**
      * Usage String presented when the command line arguments do not make 
@@ -42,7 +47,8 @@ public class GetKey {
      */
     public static final String HELP_STRING = 
             "Usage : java mil.nga.util.GetKey -key=<key name> "
-            + "[ -deserialize ] [ -h ] [ -help ]";
+            + "[ -fields=<field>,<field>... ] [ -deserialize ] [ -h ] "
+            + "[ -help ]";
     
     /**
      * Default constructor requiring clients to supply the key to retrieve 
@@ -53,8 +59,26 @@ public class GetKey {
      * @param getISORecords If true 
      */
     public GetKey(String key, boolean deserialize) {
+        this(key, null, deserialize);
+    }
+    
+    /**
+     * Constructor requiring clients to supply the key to retrieve from the
+     * cache, the fields to retrieve (records stored as hashes only) and 
+     * whether or not to deserialize the record.
+     * 
+     * @param key The key to query for.
+     * @param fields The fields to retrieve.  Null or empty for all fields.
+     * @param deserialize If true print the deserialized record.
+     */
+    public GetKey(String key, String[] fields, boolean deserialize) {
     	long start = System.currentTimeMillis();
-        printKeyValue(key, deserialize);
+        if ((fields != null) && (fields.length > 0)) {
+            printFields(key, fields);
+        }
+        else {
+            printKeyValue(key, deserialize);
+        }
         LOGGER.info("Key/value retrieved in [ "
         		+ (System.currentTimeMillis() - start)
         		+ " ] ms.");
@@ -125,22 +149,40 @@ public class GetKey {
      */
     public void printKeyValue(String key, boolean deserialize) {
         try (RedisCacheManager manager = RedisCacheManager.getInstance()) { 
-            String value = manager.get(key);
-            if ((value == null) || (value.isEmpty())) {
+            byte[] value;
+            try {
+                value = manager.getBytes(key);
+            }
+            catch (JedisDataException jde) {
+                // The record is stored as a hash.
+                printHash(manager.getFields(key), deserialize);
+                return;
+            }
+            if ((value == null) || (value.length == 0)) {
                 LOGGER.warn("Input key [ "
                         + key 
                         + " ] does not exist in the cache.");
             }
             else {
-                System.out.println("Key => [ "
-                        + key 
-                        + " ], value => [ "
-                        + value
-                        + " ].");
+                if (value[0] == JSONRecordCodec.VERSION) {
+                    System.out.println("Key => [ "
+                            + key 
+                            + " ], value => [ "
+                            + new String(value, StandardCharsets.UTF_8)
+                            + " ].");
+                }
+                else {
+                    System.out.println("Key => [ "
+                            + key 
+                            + " ], binary value of [ "
+                            + value.length
+                            + " ] bytes with header byte [ "
+                            + (value[0] & 0xFF)
+                            + " ].");
+                }
                 if (deserialize) {
                 	QueryRequestAccelerator record = 
-                			JSONSerializer.getInstance()
-                				.deserializeToQueryRequestAccelerator(value);
+                			AcceleratorRecordFactory.getInstance().decode(value);
                 	if (record != null) {
                 		System.out.println(record.toString());
                 	}
@@ -154,6 +196,62 @@ public class GetKey {
         }
     }
     
+    /**
+     * Print out the fields of a record stored as a hash.
+     * 
+     * @param fields The fields of the record.
+     * @param deserialize If true print the rebuilt record.
+     */
+    private void printHash(Map<String, String> fields, boolean deserialize) {
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            System.out.println("Field => [ "
+                    + entry.getKey()
+                    + " ], value => [ "
+                    + entry.getValue()
+                    + " ].");
+        }
+        if (deserialize) {
+            QueryRequestAccelerator record = 
+                    AcceleratorRecordFactory.getInstance().getRecord(fields);
+            if (record != null) {
+                System.out.println(record.toString());
+            }
+            else {
+                System.err.println("Error encountered while deserializing the "
+                        + "requested key!");
+            }
+        }
+    }
+    
+    /**
+     * Print out selected fields of a record stored as a hash.  Only the 
+     * requested fields are retrieved from the cache.
+     * 
+     * @param key The key to query for.
+     * @param fields The fields to retrieve.
+     */
+    public void printFields(String key, String[] fields) {
+        try (RedisCacheManager manager = RedisCacheManager.getInstance()) { 
+            List<String> values = manager.getFields(key, fields);
+            for (int i = 0; i < fields.length; i++) {
+                System.out.println("Key => [ "
+                        + key 
+                        + " ], field => [ "
+                        + fields[i]
+                        + " ], value => [ "
+                        + values.get(i)
+                        + " ].");
+            }
+        }
+        catch (JedisDataException jde) {
+            LOGGER.error("Input key [ "
+                    + key 
+                    + " ] is not stored as a hash.  Error message [ "
+                    + jde.getMessage()
+                    + " ].");
+        }
+    }
+    
     /**
      * Main method used to process the command line arguments.
      * 
@@ -161,12 +259,14 @@ public class GetKey {
      */
     public static void main(String[] args) {
         
-        String  key         = null;
-        boolean deserialize = false;
+        String   key         = null;
+        String[] fields      = null;
+        boolean  deserialize = false;
         
         // set up the command line options
         Options opt = new Options(args, 0);
         opt.getSet().addOption("key", Separator.EQUALS, Multiplicity.ONCE);
+        opt.getSet().addOption("fields", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("deserialize", Multiplicity.ZERO_OR_MORE);
         opt.getSet().addOption("h", Multiplicity.ZERO_OR_MORE);
         opt.getSet().addOption("help", Multiplicity.ZERO_OR_MORE);
@@ -203,10 +303,14 @@ public class GetKey {
             System.err.println(USAGE_STRING);
             System.exit(1);
         }
+        if (opt.getSet().isSet("fields")) {
+            fields = opt.getSet().getOption("fields").getResultValue(0)
+                    .split(",");
+        }
         if (opt.getSet().isSet("deserialize")) {
         	deserialize = true;
         }
-        new GetKey(key, deserialize);
+        new GetKey(key, fields, deserialize);
      
     }
 }
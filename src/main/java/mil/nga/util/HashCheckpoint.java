@@ -0,0 +1,240 @@
+package mil.nga.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Intermediate state of a long-running hash persisted to local disk so
+ * that a restarted process can continue hashing a very large file from
+ * where it left off rather than from byte zero.  A checkpoint records the
+ * number of bytes of the file consumed and the serialized digest state,
+ * along with the size and modification time of the file when hashing
+ * started.  A checkpoint is only valid if the file has not changed since.
+ *
+ * Each file has (at most) one checkpoint file per set of hash types in the
+ * checkpoint directory, named after the SHA-1 of its absolute path.
+ * Checkpoints are written to a temporary file and then renamed so a crash
+ * while saving cannot leave a corrupt checkpoint behind.
+ *
+ * @author L. Craig Carpenter
+ */
+public class HashCheckpoint {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            HashCheckpoint.class);
+
+    /**
+     * Format version written at the start of every checkpoint file.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Extension of the checkpoint files.
+     */
+    private static final String EXTENSION = ".hash";
+
+    // Private internal members.
+    private final String   path;
+    private final String   name;
+    private final long     size;
+    private final long     lastModified;
+    private final long     position;
+    private final byte[]   state;
+
+    /**
+     * Constructor.
+     *
+     * @param file The file being hashed.
+     * @param name Name identifying the hash type(s) being generated.
+     * @param size The size of the file when hashing started.
+     * @param lastModified The modification time (in milliseconds) of the
+     * file when hashing started.
+     * @param position The number of bytes of the file consumed.
+     * @param state The serialized digest state.
+     */
+    public HashCheckpoint(
+            Path file,
+            String name,
+            long size,
+            long lastModified,
+            long position,
+            byte[] state) {
+        this.path         = file.toAbsolutePath().normalize().toString();
+        this.name         = name;
+        this.size         = size;
+        this.lastModified = lastModified;
+        this.position     = position;
+        this.state        = state;
+    }
+
+    /**
+     * Getter method for the number of bytes of the file consumed.
+     * @return The number of bytes.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Getter method for the serialized digest state.
+     * @return The state.
+     */
+    public byte[] getState() {
+        return state;
+    }
+
+    /**
+     * Load the checkpoint of the input file.
+     *
+     * @param dir The checkpoint directory.
+     * @param file The file being hashed.
+     * @param name Name identifying the hash type(s) being generated.
+     * @param size The current size of the file.
+     * @param lastModified The current modification time (in milliseconds)
+     * of the file.
+     * @return The checkpoint, or null if there is no checkpoint for the
+     * file and hash type or the file has changed since it was written.
+     */
+    public static HashCheckpoint load(
+            Path dir,
+            Path file,
+            String name,
+            long size,
+            long lastModified) {
+
+        HashCheckpoint checkpoint = null;
+        Path           target     = getCheckpointFile(dir, file, name);
+
+        try (DataInputStream in = new DataInputStream(
+                Files.newInputStream(target))) {
+            if (in.readInt() == VERSION) {
+                String path     = in.readUTF();
+                String text     = in.readUTF();
+                long   fileSize = in.readLong();
+                long   modified = in.readLong();
+                long   position = in.readLong();
+                byte[] state    = new byte[in.readInt()];
+                in.readFully(state);
+                if (path.equals(file.toAbsolutePath().normalize().toString())
+                        && text.equals(name)
+                        && (fileSize == size)
+                        && (modified == lastModified)
+                        && (position <= size)) {
+                    checkpoint = new HashCheckpoint(
+                            file, name, fileSize, modified, position, state);
+                }
+                else {
+                    LOGGER.info("Discarding the hash checkpoint for file [ "
+                            + file.toString()
+                            + " ].  The file has changed since it was "
+                            + "written.");
+                }
+            }
+        }
+        catch (NoSuchFileException nsfe) { }
+        catch (IOException | NegativeArraySizeException e) {
+            LOGGER.warn("Unable to read hash checkpoint [ "
+                    + target.toString()
+                    + " ].  It will be ignored.  Error message [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Persist the checkpoint.  Failures are logged but otherwise ignored
+     * since a missing checkpoint only costs time.
+     *
+     * @param dir The checkpoint directory.
+     */
+    public void save(Path dir) {
+
+        Path target = getCheckpointFile(dir, Paths.get(path), name);
+        Path temp   = target.resolveSibling(
+                target.getFileName().toString() + ".tmp");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(VERSION);
+                out.writeUTF(path);
+                out.writeUTF(name);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeLong(position);
+                out.writeInt(state.length);
+                out.write(state);
+            }
+            Files.createDirectories(dir);
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, target,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Unable to save hash checkpoint [ "
+                    + target.toString()
+                    + " ].  Error message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Remove the checkpoint of the input file (if any).
+     *
+     * @param dir The checkpoint directory.
+     * @param file The file that was hashed.
+     * @param name Name identifying the hash type(s) that were generated.
+     */
+    public static void delete(Path dir, Path file, String name) {
+        Path target = getCheckpointFile(dir, file, name);
+        try {
+            Files.deleteIfExists(target);
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Unable to remove hash checkpoint [ "
+                    + target.toString()
+                    + " ].  Error message [ "
+                    + ioe.getMessage()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Construct the name of the checkpoint file of the input file.
+     *
+     * @param dir The checkpoint directory.
+     * @param file The file being hashed.
+     * @param name Name identifying the hash type(s) being generated.
+     * @return The path of the checkpoint file.
+     */
+    private static Path getCheckpointFile(Path dir, Path file, String name) {
+        return dir.resolve(DigestUtils.sha1Hex(
+                file.toAbsolutePath().normalize().toString()) 
+                + "."
+                + name
+                + EXTENSION);
+    }
+}
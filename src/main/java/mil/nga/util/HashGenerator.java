@@ -1,11 +1,37 @@
 package mil.nga.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,11 +45,18 @@ import mil.nga.types.HashType;
  * 
  * Note: This class has a dependency on the commons codec library because we 
  * ran into issues when converting the output hashes to Base64 using the JDK 
- * classes (specifically, leading 0s were being dropped).
+ * classes (specifically, leading 0s were being dropped).  The digests 
+ * themselves are computed with the JDK <code>MessageDigest</code> classes
+ * fed directly from a <code>FileChannel</code>.
  * 
  * This class was adapted from the HashGenerator EJB removing the bean 
  * annotations and changing it to use the NIO library.
  * 
+ * Instances are immutable and thread safe.  Read buffers, digests and the
+ * scratch space used for hex encoding are held per thread and re-used, so
+ * a single instance should be shared and steady-state hashing allocates 
+ * little more than the returned strings.
+ * 
  * @author L. Craig Carpenter
  */
 public class HashGenerator {
@@ -34,10 +67,266 @@ public class HashGenerator {
     private static final Logger LOGGER = LoggerFactory.getLogger(
             HashGenerator.class);
     
+    /**
+     * Default size (in bytes) of the buffer used to read the target file.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    
+    /**
+     * Per-thread read buffers.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = 
+            new ThreadLocal<ByteBuffer>();
+    
+    /**
+     * Per-thread second read buffers used by read-ahead.
+     */
+    private static final ThreadLocal<ByteBuffer> AHEAD_BUFFERS = 
+            new ThreadLocal<ByteBuffer>();
+    
+    /**
+     * Per-thread digests keyed by hash type.  Looking up a JCA digest and
+     * constructing it costs far more than resetting an existing one, so 
+     * each thread keeps one digest per hash type (and a separate one for 
+     * the resumable implementations) and re-uses it for every file.
+     */
+    private static final ThreadLocal<Map<HashType, MessageDigest>> DIGESTS = 
+            new ThreadLocal<Map<HashType, MessageDigest>>() {
+                @Override
+                protected Map<HashType, MessageDigest> initialValue() {
+                    return new EnumMap<HashType, MessageDigest>(
+                            HashType.class);
+                }
+            };
+    
+    /**
+     * Per-thread resumable digests keyed by hash type.
+     */
+    private static final ThreadLocal<Map<HashType, MessageDigest>> RESUMABLE =
+            new ThreadLocal<Map<HashType, MessageDigest>>() {
+                @Override
+                protected Map<HashType, MessageDigest> initialValue() {
+                    return new EnumMap<HashType, MessageDigest>(
+                            HashType.class);
+                }
+            };
+    
+    /**
+     * Largest digest length (in bytes) of any supported hash type.
+     */
+    private static final int MAX_DIGEST_LENGTH = 64;
+    
+    /**
+     * Per-thread scratch space used to finish digests and hex encode them
+     * without allocating intermediate arrays.
+     */
+    private static final ThreadLocal<byte[]> DIGEST_BYTES = 
+            new ThreadLocal<byte[]>() {
+                @Override
+                protected byte[] initialValue() {
+                    return new byte[MAX_DIGEST_LENGTH];
+                }
+            };
+    
+    /**
+     * Per-thread hex output buffers (see <code>DIGEST_BYTES</code>).
+     */
+    private static final ThreadLocal<char[]> HEX_CHARS = 
+            new ThreadLocal<char[]>() {
+                @Override
+                protected char[] initialValue() {
+                    return new char[2 * MAX_DIGEST_LENGTH];
+                }
+            };
+    
+    /**
+     * Lower-case hex digits.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    /**
+     * Number of workers digesting the segments of tree hashes, which is 
+     * also the most segments of a single file digested at once.
+     */
+    public static final int TREE_PARALLELISM = 
+            Runtime.getRuntime().availableProcessors();
+    
+    /**
+     * Workers digesting the segments of tree hashes.  Shared by every 
+     * instance so that concurrent tree hashes cannot oversubscribe the 
+     * processors.  The threads are daemons and are only started when a 
+     * tree hash is first requested.
+     */
+    private static final ExecutorService TREE_POOL = 
+            Executors.newFixedThreadPool(
+                    TREE_PARALLELISM,
+                    new ThreadFactory() {
+                        private int count = 0;
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "tree-hash-" + (++count));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+    
+    /**
+     * Size (in bytes) of the buffer used to read the target file.
+     */
+    private final int bufferSize;
+    
+    /**
+     * Directory in which the state of long-running hashes is persisted.  
+     * Null if hashes are not checkpointed.
+     */
+    private final Path checkpointDir;
+    
+    /**
+     * Number of bytes hashed between checkpoints.  Files smaller than this
+     * are never checkpointed.
+     */
+    private final long checkpointInterval;
+    
+    /**
+     * Limits the rate at which files are read.  Null if reads are not 
+     * limited.
+     */
+    private final ReadThrottle throttle;
+    
+    /**
+     * Read the next block of a file while the current block is digested.
+     */
+    private final boolean readAhead;
+    
+    /**
+     * Size (in bytes) of the segments digested by the tree hash types.  
+     * Always <code>HashType.TREE_SEGMENT_SIZE</code> outside of tests.
+     */
+    private final long treeSegmentSize;
+    
     /**
      * Default constructor.
      */
-    public HashGenerator() { }
+    public HashGenerator() { 
+        this(DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Constructor allowing clients to tune the read size.  Larger reads 
+     * amortize the per-call overhead when hashing large files.
+     * 
+     * @param bufferSize The size (in bytes) of the read buffer.  Values 
+     * less than 4 KB are raised to 4 KB.
+     */
+    public HashGenerator(int bufferSize) {
+        this(bufferSize, null, 0L);
+    }
+    
+    /**
+     * Constructor enabling resumable hashing.  Hashes of files of at least
+     * <code>checkpointInterval</code> bytes periodically persist their 
+     * intermediate state to <code>checkpointDir</code> (see 
+     * <code>HashCheckpoint</code>).  If the process dies, the next attempt 
+     * to hash the same (unchanged) file continues from the last checkpoint.
+     * Checkpointing applies to the tree hash types and to the streamed 
+     * types whose digest state can be persisted (MD5 and XXHASH64); other 
+     * requests are not resumable.
+     * 
+     * @param bufferSize The size (in bytes) of the read buffer.  Values 
+     * less than 4 KB are raised to 4 KB.
+     * @param checkpointDir The checkpoint directory.  Null disables 
+     * checkpointing.
+     * @param checkpointInterval The number of bytes hashed between 
+     * checkpoints.  Values less than 1 disable checkpointing.
+     */
+    public HashGenerator(
+            int bufferSize, 
+            Path checkpointDir, 
+            long checkpointInterval) {
+        this(bufferSize, checkpointDir, checkpointInterval, null);
+    }
+    
+    /**
+     * Constructor enabling resumable and rate limited hashing.  Every read
+     * of a file being hashed is reported to <code>throttle</code> which 
+     * blocks the reading thread if files are being read too quickly.
+     * 
+     * @param bufferSize The size (in bytes) of the read buffer.  Values 
+     * less than 4 KB are raised to 4 KB.
+     * @param checkpointDir The checkpoint directory.  Null disables 
+     * checkpointing.
+     * @param checkpointInterval The number of bytes hashed between 
+     * checkpoints.  Values less than 1 disable checkpointing.
+     * @param throttle Limits the read rate.  Null disables rate limiting.
+     */
+    public HashGenerator(
+            int bufferSize, 
+            Path checkpointDir, 
+            long checkpointInterval,
+            ReadThrottle throttle) {
+        this(bufferSize, checkpointDir, checkpointInterval, throttle, false);
+    }
+    
+    /**
+     * Constructor additionally enabling read-ahead.  With read-ahead the 
+     * sequential pass over a file reads through an 
+     * <code>AsynchronousFileChannel</code> into two alternating buffers: 
+     * the read of the next block is in flight while the current block is 
+     * being digested, so the disk (or network) and the CPU are busy at the
+     * same time.  This helps most on high-latency NFS mounts; on local 
+     * disks the kernel's own read-ahead already hides most of the latency.
+     * Tree and sampled hashes are not affected.
+     * 
+     * @param bufferSize The size (in bytes) of each read buffer.  Values 
+     * less than 4 KB are raised to 4 KB.
+     * @param checkpointDir The checkpoint directory.  Null disables 
+     * checkpointing.
+     * @param checkpointInterval The number of bytes hashed between 
+     * checkpoints.  Values less than 1 disable checkpointing.
+     * @param throttle Limits the read rate.  Null disables rate limiting.
+     * @param readAhead True to read the next block while the current 
+     * block is digested.
+     */
+    public HashGenerator(
+            int bufferSize, 
+            Path checkpointDir, 
+            long checkpointInterval,
+            ReadThrottle throttle,
+            boolean readAhead) {
+        this(bufferSize, checkpointDir, checkpointInterval, throttle, 
+                readAhead, HashType.TREE_SEGMENT_SIZE);
+    }
+    
+    /**
+     * Constructor allowing tests to shrink the tree hash segment size so 
+     * that multi-segment trees can be exercised with small files.  The 
+     * segment size is part of the definition of the tree hashes, so hashes
+     * computed with any other value than 
+     * <code>HashType.TREE_SEGMENT_SIZE</code> must never be stored.
+     * 
+     * @param bufferSize The size (in bytes) of each read buffer.
+     * @param checkpointDir The checkpoint directory.
+     * @param checkpointInterval The number of bytes hashed between 
+     * checkpoints.
+     * @param throttle Limits the read rate.
+     * @param readAhead True to read ahead.
+     * @param treeSegmentSize The tree hash segment size (in bytes).
+     */
+    HashGenerator(
+            int bufferSize, 
+            Path checkpointDir, 
+            long checkpointInterval,
+            ReadThrottle throttle,
+            boolean readAhead,
+            long treeSegmentSize) {
+        this.bufferSize         = Math.max(4096, bufferSize);
+        this.checkpointDir      = (checkpointInterval > 0 ? 
+                checkpointDir : null);
+        this.checkpointInterval = checkpointInterval;
+        this.throttle           = throttle;
+        this.readAhead          = readAhead;
+        this.treeSegmentSize    = Math.max(1L, treeSegmentSize);
+    }
     
     /**
      * Compute a hash of the input file.  For available hash types see 
@@ -77,27 +366,7 @@ public class HashGenerator {
         
         if ((p != null) && (Files.exists(p))) {
             long startTime = System.currentTimeMillis();
-            switch (type) {
-                case MD5 : 
-                    hash = getMD5Hash(p);
-                    break;
-                case SHA1:
-                    hash = getSHA1Hash(p);
-                    break;
-                case SHA256:
-                    hash = getSHA256Hash(p);
-                    break;
-                case SHA384:
-                    hash = getSHA384Hash(p);                        
-                    break;
-                case SHA512:
-                    hash = getSHA512Hash(p);                        
-                    break;
-                default:
-                    LOGGER.error("Client requested hash type [ "
-                            + type.getText()
-                            + " ] which is not yet implemented.");
-            }
+            hash = digest(p, Collections.singleton(type), 0, Long.MAX_VALUE).get(type);
             
             long elapsedTime = System.currentTimeMillis() - startTime;
             if (LOGGER.isDebugEnabled()) {
@@ -121,174 +390,1001 @@ public class HashGenerator {
     }
     
     /**
-     * Calculate the MD5 hash using the Apache Commons Codec classes.  
+     * Compute any number of hashes of the input file in a single pass over
+     * the file.  Each block read is fed to every requested digest so 
+     * adding a hash type costs CPU time but no additional I/O.  Tree hash 
+     * types are the exception; they are computed in their own (parallel) 
+     * pass.  For 
+     * available hash types see @see mil.nga.types.HashType.
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated MD5 hash.
+     * @param p Path object of file we want the hashes computed.
+     * @param types The hash types to generate.
+     * @return Map of the computed hash values keyed by hash type.  Empty 
+     * if the hashes could not be generated.
      */
-    private String getMD5Hash(Path file) {
-
-        InputStream is   = null;
-        String      hash = null;
-
-        try {
-            is = Files.newInputStream(file);
-            hash = org.apache.commons.codec.digest.DigestUtils.md5Hex(is);
+    public Map<HashType, String> getHashes(
+            Path p, 
+            Collection<HashType> types) {
+        return getHashes(p, types, 0);
+    }
+    
+    /**
+     * Compute any number of hashes of the input file in a single pass over
+     * the file (see <code>getHashes(Path, Collection)</code>), limiting the
+     * number of segments of a tree hash that are read at the same time.  
+     * Callers limiting the number of concurrent readers of a mount use this
+     * to keep a single large file from exceeding the limit on its own.
+     * 
+     * @param p Path object of file we want the hashes computed.
+     * @param types The hash types to generate.
+     * @param readers The most segments of a tree hash read at once.  
+     * Values less than 1 (or above <code>TREE_PARALLELISM</code>) mean 
+     * <code>TREE_PARALLELISM</code>.
+     * @return Map of the computed hash values keyed by hash type.  Empty 
+     * if the hashes could not be generated.
+     */
+    public Map<HashType, String> getHashes(
+            Path p, 
+            Collection<HashType> types,
+            int readers) {
+        return getHashes(p, types, readers, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Compute the input hash types over at most the first 
+     * <code>length</code> bytes of the file, exactly as 
+     * <code>getHashes(Path, Collection, int)</code> would compute them over
+     * the whole file.  The results are not hashes of the file.  This is 
+     * used to measure the throughput of the configured hashing on files 
+     * too large to hash in full (e.g. when planning a refresh).  Sampled 
+     * hash types read their usual blocks and nothing is checkpointed.
+     * 
+     * @param p Path object of file to read.
+     * @param types The hash types to compute.
+     * @param readers The most segments of a tree hash read at once (see 
+     * <code>getHashes(Path, Collection, int)</code>).
+     * @param length The most bytes of the file to hash.
+     * @return Map of the computed values keyed by hash type.  Empty if the
+     * file could not be hashed.
+     */
+    public Map<HashType, String> getPrefixHashes(
+            Path p, 
+            Collection<HashType> types,
+            int readers,
+            long length) {
+        return getHashes(p, types, readers, Math.max(0L, length));
+    }
+    
+    /**
+     * Compute the input hash types over at most the first 
+     * <code>length</code> bytes of the file.
+     * 
+     * @param p Path object of file we want the hashes computed.
+     * @param types The hash types to generate.
+     * @param readers The most segments of a tree hash read at once.
+     * @param length The most bytes of the file to hash.  
+     * <code>Long.MAX_VALUE</code> for the whole file.
+     * @return Map of the computed hash values keyed by hash type.  Empty 
+     * if the hashes could not be generated.
+     */
+    private Map<HashType, String> getHashes(
+            Path p, 
+            Collection<HashType> types,
+            int readers,
+            long length) {
+        
+        Map<HashType, String> hashes = new EnumMap<HashType, String>(
+                HashType.class);
+        
+        if ((p != null) && (Files.exists(p))) {
+            if ((types != null) && (!types.isEmpty())) {
+                long startTime = System.currentTimeMillis();
+                hashes = digest(p, types, readers, length);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Hash types [ "
+                            + types.toString()
+                            + " ] for file [ "
+                            + p.toString()
+                            + " ] created in [ "
+                            + Long.toString(
+                                    System.currentTimeMillis() - startTime)
+                            + " ] ms.");
+                }
+            }
         }
-        catch (IOException ioe) {
-            LOGGER.error(
-                 "Unexpected IOException encountered while generating "
-                 + "the [ " 
-                 + HashType.MD5.getText() 
-                 + " ] hash for file [ "
-                 + file.toString()
-                 + " ].  Exception message [ "
-                 + ioe.getMessage()
-                 + " ].  Method will return a null hash.");
+        else {
+            LOGGER.error("The input file is null or does not exist.  Unable "
+                    + "to generate the file hashes." );
         }
-        finally {
-            if (is != null) {
-                    try { is.close(); } catch (Exception e) {}
+        return hashes;
+    }
+    
+    /**
+     * Compute digests of the input file.  Tree hash types are computed by 
+     * digesting the file segments in parallel and sampled types by reading
+     * a few blocks of the file; all other types are computed together in a
+     * single sequential pass.
+     * 
+     * @param file The file we need the hashes for.
+     * @param types The hash types to generate.
+     * @param readers The most tree hash segments read at once (see 
+     * <code>getHashes(Path, Collection, int)</code>).
+     * @param length The most bytes of the file to digest.  
+     * <code>Long.MAX_VALUE</code> for the whole file.  Only whole file 
+     * digests are checkpointed.
+     * @return Map of the calculated hashes (lower-case hex) keyed by hash 
+     * type.  Types that could not be generated are absent.
+     */
+    private Map<HashType, String> digest(
+            Path file, 
+            Collection<HashType> types,
+            int readers,
+            long length) {
+        
+        Map<HashType, String> hashes   = new EnumMap<HashType, String>(
+                HashType.class);
+        Set<HashType>         streamed = EnumSet.noneOf(HashType.class);
+        
+        for (HashType type : types) {
+            String hash = null;
+            switch (type.getMode()) {
+                case TREE:
+                    hash = treeDigest(file, type, readers, length);
+                    break;
+                case SAMPLED:
+                    hash = sampledDigest(file, type);
+                    break;
+                default:
+                    streamed.add(type);
+                    break;
+            }
+            if (hash != null) {
+                hashes.put(type, hash);
             }
         }
-        return hash;
+        if ((!streamed.isEmpty()) && 
+                (length == Long.MAX_VALUE) && 
+                (isResumable(streamed)) && 
+                (isCheckpointed(file))) {
+            hashes.putAll(resumableDigest(file, streamed));
+        }
+        else if (!streamed.isEmpty()) {
+            hashes.putAll(streamDigest(file, streamed, length));
+        }
+        return hashes;
     }
     
     /**
-     * Calculate the SHA-1 hash using the Apache Commons Codec classes.
-     * Note: SHA-1 hash generation seems to take about twice as long as MD5 
-     * hash generation.
+     * Should hashes of the input file be checkpointed?
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA1 hash.
+     * @param file The file to be hashed.
+     * @return True if checkpointing is enabled and the file is large 
+     * enough to be checkpointed.
      */
-    private String getSHA1Hash(Path file) {
-
-        InputStream is   = null;
-        String      hash = null;
-
+    private boolean isCheckpointed(Path file) {
         try {
-            is = Files.newInputStream(file);
-            hash = org.apache.commons.codec.digest.DigestUtils.sha1Hex(is);
+            return (checkpointDir != null) && 
+                    (Files.size(file) >= checkpointInterval);
         }
         catch (IOException ioe) {
-             LOGGER.error(
-                     "Unexpected IOException encountered while generating "
-                     + "the [ " 
-                     + HashType.SHA1.getText() 
-                     + " ] hash for file [ "
-                     + file.toString()
-                     + " ].  Exception message [ "
-                     + ioe.getMessage()
-                     + " ].  Method will return a null hash.");
+            return false;
         }
-        finally {
-            if (is != null) {
-                    try { is.close(); } catch (Exception e) {}
+    }
+    
+    /**
+     * Can all of the input hash types be computed by digests whose state 
+     * can be persisted?
+     * 
+     * @param types The hash types.
+     * @return True if the hash types are resumable.
+     */
+    private static boolean isResumable(Collection<HashType> types) {
+        for (HashType type : types) {
+            if ((type != HashType.MD5) && 
+                    (!XXHash64.ALGORITHM.equals(type.getAlgorithm()))) {
+                return false;
             }
         }
-        return hash;
+        return true;
     }
-
+    
     /**
-     * Calculate the SHA-256 hash using the Apache Commons Codec classes.
+     * Get the calling thread's digest, whose state can be persisted, for 
+     * the input hash type.  See <code>isResumable</code>.
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA256 hash.
+     * @param type The hash type.
+     * @return A reset digest.
      */
-    private String getSHA256Hash(Path file) {
-
-        InputStream is   = null;
-        String      hash = null;
-
-        try {
-            is = Files.newInputStream(file);
-            hash = org.apache.commons.codec.digest.DigestUtils.sha256Hex(is);
+    private static MessageDigest getResumableDigest(HashType type) {
+        Map<HashType, MessageDigest> pool   = RESUMABLE.get();
+        MessageDigest                digest = pool.get(type);
+        if (digest == null) {
+            digest = (type == HashType.MD5 ? 
+                    new ResumableMD5() : new XXHash64());
+            pool.put(type, digest);
+        }
+        digest.reset();
+        return digest;
+    }
+    
+    /**
+     * Compute the requested (resumable) hashes of the input file in a 
+     * single pass, persisting the state of every digest every 
+     * <code>checkpointInterval</code> bytes and continuing from a 
+     * previously persisted state if the file has not changed since it was
+     * written.  The checkpoint is removed once the hashes are complete.
+     * 
+     * @param file The file we need the hashes for.
+     * @param types The hash types to generate.  See 
+     * <code>isResumable</code>.
+     * @return Map of the calculated hashes (lower-case hex) keyed by hash 
+     * type.  Empty if the hashes could not be generated.
+     */
+    private Map<HashType, String> resumableDigest(
+            Path file, 
+            Set<HashType> types) {
+        
+        Map<HashType, String>        hashes   = new EnumMap<HashType, String>(
+                HashType.class);
+        Map<HashType, MessageDigest> digests  = 
+                new EnumMap<HashType, MessageDigest>(HashType.class);
+        StringBuilder                name     = new StringBuilder();
+        long                         position = 0L;
+        
+        for (HashType type : types) {
+            digests.put(type, getResumableDigest(type));
+            if (name.length() > 0) {
+                name.append("+");
+            }
+            name.append(type.getText());
+        }
+        
+        try (BlockReader reader = new BlockReader(file)) {
+            
+            long size     = reader.size();
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            HashCheckpoint checkpoint = HashCheckpoint.load(
+                    checkpointDir, file, name.toString(), size, modified);
+            if (checkpoint != null) {
+                try {
+                    ByteBuffer state = ByteBuffer.wrap(checkpoint.getState());
+                    for (MessageDigest digest : digests.values()) {
+                        byte[] bytes = new byte[state.getInt()];
+                        state.get(bytes);
+                        ((ResumableDigest)digest).setState(bytes);
+                        if (((ResumableDigest)digest).getCount() != 
+                                checkpoint.getPosition()) {
+                            throw new IllegalArgumentException("Invalid "
+                                    + "hash checkpoint.  Inconsistent byte "
+                                    + "count.");
+                        }
+                    }
+                    position = checkpoint.getPosition();
+                    LOGGER.info("Resuming the [ "
+                            + name.toString()
+                            + " ] hash of file [ "
+                            + file.toString()
+                            + " ] at byte [ "
+                            + position
+                            + " ] of [ "
+                            + size
+                            + " ].");
+                }
+                catch (IllegalArgumentException | 
+                        BufferUnderflowException | 
+                        NegativeArraySizeException e) {
+                    LOGGER.warn("Invalid hash checkpoint for file [ "
+                            + file.toString()
+                            + " ].  It will be ignored.");
+                    for (MessageDigest digest : digests.values()) {
+                        digest.reset();
+                    }
+                    position = 0L;
+                }
+            }
+            
+            ByteBuffer buffer;
+            long       saved  = position;
+            reader.position(position);
+            while ((buffer = reader.next()) != null) {
+                position = reader.position();
+                for (MessageDigest digest : digests.values()) {
+                    buffer.rewind();
+                    digest.update(buffer);
+                }
+                if ((position - saved) >= checkpointInterval) {
+                    new HashCheckpoint(file, name.toString(), size, modified, 
+                            position, getState(digests.values()))
+                        .save(checkpointDir);
+                    saved = position;
+                }
+            }
+            for (Map.Entry<HashType, MessageDigest> entry : 
+                    digests.entrySet()) {
+                hashes.put(
+                        entry.getKey(), 
+                        toHex(entry.getValue()));
+            }
+            HashCheckpoint.delete(checkpointDir, file, name.toString());
         }
         catch (IOException ioe) {
             LOGGER.error(
                 "Unexpected IOException encountered while generating "
                 + "the [ " 
-                + HashType.SHA256.getText() 
-                + " ] hash for file [ "
+                + name.toString() 
+                + " ] hash(es) for file [ "
                 + file.toString()
                 + " ].  Exception message [ "
                 + ioe.getMessage()
                 + " ].  Method will return a null hash.");
         }
+        return hashes;
+    }
+    
+    /**
+     * Serialize the state of the input (resumable) digests.  Each state is
+     * written as its length followed by its bytes.
+     * 
+     * @param digests The digests.
+     * @return The combined state.
+     */
+    private static byte[] getState(Collection<MessageDigest> digests) {
+        int length = 0;
+        for (MessageDigest digest : digests) {
+            length += 4 + ((ResumableDigest)digest).getState().length;
+        }
+        ByteBuffer state = ByteBuffer.allocate(length);
+        for (MessageDigest digest : digests) {
+            byte[] bytes = ((ResumableDigest)digest).getState();
+            state.putInt(bytes.length);
+            state.put(bytes);
+        }
+        return state.array();
+    }
+    
+    /**
+     * Compute a segmented (tree) hash of the input file.  Each segment of 
+     * <code>HashType.TREE_SEGMENT_SIZE</code> bytes is digested 
+     * independently by the shared worker pool using positional reads on a 
+     * single <code>FileChannel</code>.  At most <code>readers</code> 
+     * segments are in flight; the next segment is submitted as each one 
+     * completes.  The segment digests are then digested in order to 
+     * produce the root.  Segments still outstanding when the hash fails (or
+     * the thread is interrupted) are cancelled.  See 
+     * <code>HashType.TREE_SEGMENT_SIZE</code> for the exact construction.
+     * When checkpointing, the completed leaf digests are persisted so that
+     * a restarted hash only has to digest the remaining segments.
+     * 
+     * @param file The file we need the hash for.
+     * @param type The (tree) hash type to generate.
+     * @param readers The most segments read at once.  Values less than 1 
+     * mean <code>TREE_PARALLELISM</code>.
+     * @param length The most bytes of the file to digest.  
+     * <code>Long.MAX_VALUE</code> for the whole file.
+     * @return The root hash (lower-case hex), or null if it could not be 
+     * generated.
+     */
+    private String treeDigest(
+            final Path file, 
+            final HashType type, 
+            int readers,
+            long length) {
+        
+        String                hash    = null;
+        Deque<Future<byte[]>> leaves  = new ArrayDeque<Future<byte[]>>();
+        int                   window  = ((readers < 1) || 
+                (readers > TREE_PARALLELISM)) ? TREE_PARALLELISM : readers;
+        
+        try (final FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.READ)) {
+            
+            MessageDigest root     = getDigest(type);
+            final long    size     = Math.min(channel.size(), length);
+            long          segments = Math.max(1L, 
+                    (size + treeSegmentSize - 1) / treeSegmentSize);
+            long          first    = 0L;
+            long          modified = 0L;
+            ByteArrayOutputStream completed = null;
+            
+            if ((checkpointDir != null) && 
+                    (size >= checkpointInterval) && 
+                    (length == Long.MAX_VALUE)) {
+                modified  = Files.getLastModifiedTime(file).toMillis();
+                completed = new ByteArrayOutputStream();
+                HashCheckpoint checkpoint = HashCheckpoint.load(
+                        checkpointDir, file, type.getText(), size, modified);
+                int digestLength = root.getDigestLength();
+                if ((checkpoint != null) && 
+                        (checkpoint.getState().length % digestLength == 0)) {
+                    long done = checkpoint.getState().length / digestLength;
+                    if ((done < segments) && (checkpoint.getPosition() == 
+                            done * treeSegmentSize)) {
+                        first = done;
+                        completed.write(checkpoint.getState());
+                        root.update(checkpoint.getState());
+                        LOGGER.info("Resuming the [ "
+                                + type.getText()
+                                + " ] hash of file [ "
+                                + file.toString()
+                                + " ] at byte [ "
+                                + checkpoint.getPosition()
+                                + " ] of [ "
+                                + size
+                                + " ].");
+                    }
+                }
+            }
+            
+            long next = first;
+            while ((next < segments) && (leaves.size() < window)) {
+                leaves.add(submitSegment(file, channel, next++, size, type));
+            }
+            long saved = first * treeSegmentSize;
+            long done  = first;
+            while (!leaves.isEmpty()) {
+                byte[] digest = leaves.peekFirst().get();
+                leaves.removeFirst();
+                if (next < segments) {
+                    leaves.add(submitSegment(
+                            file, channel, next++, size, type));
+                }
+                root.update(digest);
+                done++;
+                if (completed != null) {
+                    completed.write(digest);
+                    long position = Math.min(
+                            size, done * treeSegmentSize);
+                    if (((position - saved) >= checkpointInterval) && 
+                            (done < segments)) {
+                        new HashCheckpoint(file, type.getText(), size, modified, 
+                                position, completed.toByteArray())
+                            .save(checkpointDir);
+                        saved = position;
+                    }
+                }
+            }
+            hash = toHex(root);
+            if (completed != null) {
+                HashCheckpoint.delete(checkpointDir, file, type.getText());
+            }
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            LOGGER.error("Hash algorithm [ "
+                    + type.getAlgorithm()
+                    + " ] is not available.  Method will return a null "
+                    + "hash.");
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while generating the [ " 
+                    + type.getText() 
+                    + " ] hash for file [ "
+                    + file.toString()
+                    + " ].  Method will return a null hash.");
+        }
+        catch (ExecutionException | IOException e) {
+            Throwable cause = (e.getCause() == null ? e : e.getCause());
+            LOGGER.error(
+                "Unexpected exception encountered while generating "
+                + "the [ " 
+                + type.getText() 
+                + " ] hash for file [ "
+                + file.toString()
+                + " ].  Exception message [ "
+                + cause.getMessage()
+                + " ].  Method will return a null hash.");
+        }
         finally {
-            if (is != null) {
-                    try { is.close(); } catch (Exception e) {}
+            for (Future<byte[]> leaf : leaves) {
+                leaf.cancel(true);
             }
         }
         return hash;
     }
     
     /**
-     * Calculate the SHA-384 hash using the Apache Commons Codec classes.
+     * Submit the digest of a single segment of a tree hash to the shared 
+     * worker pool.
+     * 
+     * @param file The file being hashed.
+     * @param channel Open channel to the file.
+     * @param index The index of the segment.
+     * @param size The size (in bytes) of the file.
+     * @param type The (tree) hash type being generated.
+     * @return The pending binary digest of the segment.
+     */
+    private Future<byte[]> submitSegment(
+            final Path file, 
+            final FileChannel channel, 
+            long index, 
+            long size, 
+            final HashType type) {
+        final long start = index * treeSegmentSize;
+        final long end   = Math.min(size, start + treeSegmentSize);
+        return TREE_POOL.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return digestSegment(file, channel, start, end, type);
+            }
+        });
+    }
+    
+    /**
+     * Compute a sampled hash of the input file.  Only the head block, the 
+     * tail block and <code>HashType.SAMPLE_BLOCKS</code> pseudo-random 
+     * blocks are read (see <code>HashType.SAMPLE_BLOCKS</code> for the 
+     * exact construction) so the cost is independent of the file size.
      * 
      * @param file The file we need the hash for.
-     * @return The calculated SHA384 hash.
+     * @param type The (sampled) hash type to generate.
+     * @return The hash (lower-case hex), or null if it could not be 
+     * generated.
      */
-    private String getSHA384Hash(Path file) {
-
-        InputStream is   = null;
-        String      hash = null;
-
-        try {
-            is = Files.newInputStream(file);
-            hash = org.apache.commons.codec.digest.DigestUtils.sha384Hex(is);
+    private String sampledDigest(Path file, HashType type) {
+        
+        String hash = null;
+        
+        try (FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.READ)) {
+            
+            MessageDigest digest = getDigest(type);
+            long          size   = channel.size();
+            long          block  = HashType.SAMPLE_BLOCK_SIZE;
+            
+            digest.update(ByteBuffer.allocate(8).putLong(0, size));
+            if (size <= (HashType.SAMPLE_BLOCKS + 2) * block) {
+                digestRange(file, channel, 0L, size, digest);
+            }
+            else {
+                Random random = new Random(size);
+                long   span   = size - (3 * block) + 1;
+                digestRange(file, channel, 0L, block, digest);
+                for (int i = 0; i < HashType.SAMPLE_BLOCKS; i++) {
+                    long offset = block + Math.floorMod(random.nextLong(), span);
+                    digestRange(
+                            file, channel, offset, offset + block, digest);
+                }
+                digestRange(file, channel, size - block, size, digest);
+            }
+            hash = toHex(digest);
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            LOGGER.error("Hash algorithm [ "
+                    + type.getAlgorithm()
+                    + " ] is not available.  Method will return a null "
+                    + "hash.");
         }
         catch (IOException ioe) {
             LOGGER.error(
                 "Unexpected IOException encountered while generating "
                 + "the [ " 
-                + HashType.SHA384.getText() 
+                + type.getText() 
                 + " ] hash for file [ "
                 + file.toString()
                 + " ].  Exception message [ "
                 + ioe.getMessage()
                 + " ].  Method will return a null hash.");
         }
-        finally {
-            if (is != null) {
-                    try { is.close(); } catch (Exception e) {}
+        return hash;
+    }
+    
+    /**
+     * Digest a single segment of a file for a tree hash.
+     * 
+     * @param file The file being hashed.
+     * @param channel Open channel to the file.  Only positional reads are 
+     * used so the channel may be shared between threads.
+     * @param start Offset of the first byte of the segment.
+     * @param end Offset one past the last byte of the segment.
+     * @param type The (tree) hash type being generated.
+     * @return The binary digest of the segment.
+     * @throws IOException Thrown if the file cannot be read.
+     * @throws NoSuchAlgorithmException Thrown if the digest algorithm is 
+     * not available.
+     */
+    private byte[] digestSegment(
+            Path file,
+            FileChannel channel, 
+            long start, 
+            long end, 
+            HashType type) throws IOException, NoSuchAlgorithmException {
+        
+        MessageDigest digest = getDigest(type);
+        digestRange(file, channel, start, end, digest);
+        return digest.digest();
+    }
+    
+    /**
+     * Feed a range of a file to a digest using positional reads.
+     * 
+     * @param file The file being hashed.
+     * @param channel Open channel to the file.  Only positional reads are 
+     * used so the channel may be shared between threads.
+     * @param start Offset of the first byte of the range.
+     * @param end Offset one past the last byte of the range.
+     * @param digest The digest to update.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    private void digestRange(
+            Path file,
+            FileChannel channel, 
+            long start, 
+            long end, 
+            MessageDigest digest) throws IOException {
+        
+        ByteBuffer buffer   = getBuffer();
+        long       position = start;
+        
+        while (position < end) {
+            buffer.limit((int)Math.min(buffer.capacity(), end - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("File truncated while hashing.  "
+                        + "Expected [ "
+                        + end
+                        + " ] bytes, found [ "
+                        + position
+                        + " ].");
             }
+            throttle(file, count);
+            position += count;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
         }
-        return hash;
     }
     
     /**
-     * Calculate the SHA-512 hash using the Apache Commons Codec classes.
+     * Compute digests of the input file in a single sequential pass.  
+     * Rather than streaming the file 
+     * through the small heap buffers used by the commons codec 
+     * <code>DigestUtils</code> methods, the file is read through a 
+     * <code>FileChannel</code> into a large, reusable, direct buffer which
+     * is handed straight to each <code>MessageDigest</code>.  This avoids 
+     * the copies between the kernel, the stream buffer and the digest 
+     * buffer which dominate when hashing multi-GB ISO images.
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA512 hash.
+     * @param file The file we need the hashes for.
+     * @param types The hash types to generate.
+     * @param length The most bytes of the file to digest.  
+     * <code>Long.MAX_VALUE</code> for the whole file.
+     * @return Map of the calculated hashes (lower-case hex) keyed by hash 
+     * type.  Empty if the hashes could not be generated.
      */
-    private String getSHA512Hash(Path file) {
+    private Map<HashType, String> streamDigest(
+            Path file, 
+            Collection<HashType> types,
+            long length) {
 
-        InputStream is   = null;
-        String      hash = null;
+        Map<HashType, String> hashes = new EnumMap<HashType, String>(
+                HashType.class);
+        HashType              type   = null;
 
-        try {
-            is = Files.newInputStream(file);
-            hash = org.apache.commons.codec.digest.DigestUtils.sha512Hex(is);
+        try (BlockReader reader = new BlockReader(file, length)) {
+            Map<HashType, MessageDigest> digests = 
+                    new EnumMap<HashType, MessageDigest>(HashType.class);
+            for (HashType t : types) {
+                type = t;
+                digests.put(t, getDigest(t));
+            }
+            ByteBuffer buffer;
+            while ((buffer = reader.next()) != null) {
+                for (MessageDigest digest : digests.values()) {
+                    buffer.rewind();
+                    digest.update(buffer);
+                }
+            }
+            for (Map.Entry<HashType, MessageDigest> entry : 
+                    digests.entrySet()) {
+                hashes.put(
+                        entry.getKey(), 
+                        toHex(entry.getValue()));
+            }
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            LOGGER.error("Hash algorithm [ "
+                    + type.getAlgorithm()
+                    + " ] is not available.  Method will return a null "
+                    + "hash.");
         }
         catch (IOException ioe) {
             LOGGER.error(
                 "Unexpected IOException encountered while generating "
                 + "the [ " 
-                + HashType.SHA512.getText() 
-                + " ] hash for file [ "
+                + types.toString() 
+                + " ] hash(es) for file [ "
                 + file.toString()
                 + " ].  Exception message [ "
                 + ioe.getMessage()
                 + " ].  Method will return a null hash.");
         }
-        finally {
-            if (is != null) {
-                    try { is.close(); } catch (Exception e) {}
+        return hashes;
+    }
+    
+    /**
+     * Get the calling thread's digest for the input hash type, creating it
+     * on first use.  Non-cryptographic types are implemented locally; all
+     * others are obtained from the JCA.  A thread must finish with a 
+     * digest before asking for another of the same type.
+     * 
+     * @param type The hash type.
+     * @return A reset digest.
+     * @throws NoSuchAlgorithmException Thrown if the algorithm is not 
+     * available.
+     */
+    static MessageDigest getDigest(HashType type) 
+            throws NoSuchAlgorithmException {
+        Map<HashType, MessageDigest> pool   = DIGESTS.get();
+        MessageDigest                digest = pool.get(type);
+        if (digest == null) {
+            if (XXHash64.ALGORITHM.equals(type.getAlgorithm())) {
+                digest = new XXHash64();
+            }
+            else {
+                digest = MessageDigest.getInstance(type.getAlgorithm());
+            }
+            pool.put(type, digest);
+        }
+        digest.reset();
+        return digest;
+    }
+    
+    /**
+     * Complete the input digest and encode it as lower-case hex using the 
+     * calling thread's scratch buffers, so the only allocation is the 
+     * returned string.  The digest is reset.
+     * 
+     * @param digest The digest to complete.
+     * @return The hex encoded digest.
+     */
+    static String toHex(MessageDigest digest) {
+        byte[] bytes  = DIGEST_BYTES.get();
+        char[] chars  = HEX_CHARS.get();
+        int    length = digest.getDigestLength();
+        try {
+            length = digest.digest(bytes, 0, length);
+        }
+        catch (DigestException de) {
+            // Not possible; the scratch buffer holds the longest digest.
+            return Hex.encodeHexString(digest.digest());
+        }
+        for (int i = 0; i < length; i++) {
+            chars[2 * i]       = HEX_DIGITS[(bytes[i] >>> 4) & 0x0F];
+            chars[(2 * i) + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars, 0, 2 * length);
+    }
+    
+    /**
+     * Report a read to the throttle (if any).
+     * 
+     * @param file The file that was read.
+     * @param count The number of bytes read.
+     * @throws InterruptedIOException Thrown if the thread is interrupted 
+     * while waiting for the throttle.
+     */
+    private void throttle(Path file, int count) 
+            throws InterruptedIOException {
+        if ((throttle != null) && (count > 0)) {
+            throttle.acquire(file, count);
+        }
+    }
+    
+    /**
+     * Get the read buffer for the calling thread.  Direct buffers are 
+     * expensive to allocate so one is held per thread and re-used for every
+     * file hashed by that thread.
+     * 
+     * @return A cleared direct buffer of the configured size.
+     */
+    private ByteBuffer getBuffer() {
+        return getBuffer(BUFFERS);
+    }
+    
+    /**
+     * Get the calling thread's buffer from the input pool.
+     * 
+     * @param pool The per-thread buffers.
+     * @return A cleared direct buffer of the configured size.
+     */
+    private ByteBuffer getBuffer(ThreadLocal<ByteBuffer> pool) {
+        ByteBuffer buffer = pool.get();
+        if ((buffer == null) || (buffer.capacity() != bufferSize)) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            pool.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+    
+    /**
+     * Sequential reader used by the single-pass digests.  Returns the file
+     * one block at a time, either with plain positional reads or, when 
+     * read-ahead is enabled, with asynchronous reads that fetch the next 
+     * block into the other of two buffers while the caller digests the 
+     * current one.  Every read is reported to the throttle.  A returned 
+     * block is only valid until the next call to <code>next</code>.  The
+     * reader may be limited to a prefix of the file.
+     */
+    private final class BlockReader implements Closeable {
+        
+        private final Path                    file;
+        private final FileChannel             channel;
+        private final AsynchronousFileChannel async;
+        private final long                    limit;
+        private final ByteBuffer[]            buffers = new ByteBuffer[2];
+        private Future<Integer>               pending;
+        private int                           current;
+        private long                          position;
+        
+        /**
+         * Constructor opening the file.
+         * 
+         * @param file The file to read.
+         * @throws IOException Thrown if the file cannot be opened.
+         */
+        BlockReader(Path file) throws IOException {
+            this(file, Long.MAX_VALUE);
+        }
+        
+        /**
+         * Constructor opening the file.
+         * 
+         * @param file The file to read.
+         * @param limit Offset one past the last byte to read.
+         * @throws IOException Thrown if the file cannot be opened.
+         */
+        BlockReader(Path file, long limit) throws IOException {
+            this.file  = file;
+            this.limit = limit;
+            if (readAhead) {
+                channel    = null;
+                async      = AsynchronousFileChannel.open(
+                        file, StandardOpenOption.READ);
+                buffers[0] = getBuffer(BUFFERS);
+                buffers[1] = getBuffer(AHEAD_BUFFERS);
+            }
+            else {
+                channel    = FileChannel.open(file, StandardOpenOption.READ);
+                async      = null;
+                buffers[0] = getBuffer(BUFFERS);
+            }
+        }
+        
+        /**
+         * Getter method for the size of the file.
+         * @return The size (in bytes).
+         * @throws IOException Thrown if the size cannot be determined.
+         */
+        long size() throws IOException {
+            return (async != null ? async.size() : channel.size());
+        }
+        
+        /**
+         * Getter method for the offset one past the last byte returned.
+         * @return The position.
+         */
+        long position() {
+            return position;
+        }
+        
+        /**
+         * Set the offset of the first byte to read.  Must be called before 
+         * the first call to <code>next</code>.
+         * 
+         * @param start The offset.
+         */
+        void position(long start) {
+            position = start;
+        }
+        
+        /**
+         * Read the next block of the file.
+         * 
+         * @return The block (flipped, ready to be read), or null at the 
+         * end of the file (or of the prefix being read).
+         * @throws IOException Thrown if the file cannot be read.
+         */
+        ByteBuffer next() throws IOException {
+            
+            ByteBuffer buffer = buffers[current];
+            int        count;
+            
+            if (position >= limit) {
+                return null;
+            }
+            if (async == null) {
+                buffer.clear();
+                count = channel.read(buffer, position);
+            }
+            else {
+                if (pending == null) {
+                    pending = read(buffer, position);
+                }
+                count   = waitFor(pending);
+                pending = null;
+                if (count >= 0) {
+                    current = 1 - current;
+                    if (position + count < limit) {
+                        pending = read(buffers[current], position + count);
+                    }
+                }
+            }
+            if (count < 0) {
+                return null;
+            }
+            count = (int)Math.min(count, limit - position);
+            throttle(file, count);
+            position += count;
+            buffer.flip();
+            buffer.limit(count);
+            return buffer;
+        }
+        
+        /**
+         * Start an asynchronous read.
+         * 
+         * @param buffer The buffer to fill.
+         * @param offset The offset of the first byte to read.
+         * @return The pending read.
+         */
+        private Future<Integer> read(ByteBuffer buffer, long offset) {
+            buffer.clear();
+            return async.read(buffer, offset);
+        }
+        
+        /**
+         * Wait for an asynchronous read to complete.
+         * 
+         * @param read The pending read.
+         * @return The number of bytes read, or -1 at the end of the file.
+         * @throws IOException Thrown if the read failed or the thread was
+         * interrupted.
+         */
+        private int waitFor(Future<Integer> read) throws IOException {
+            try {
+                return read.get();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading "
+                        + "file [ "
+                        + file.toString()
+                        + " ].");
+            }
+            catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException)cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+        
+        /**
+         * Close the file.  Any outstanding read is allowed to finish first
+         * since its target is a buffer that will be re-used by this thread.
+         * If it cannot be waited for the thread's buffers are discarded.
+         * 
+         * @throws IOException Thrown if the file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (async != null) {
+                if (pending != null) {
+                    try {
+                        waitFor(pending);
+                    }
+                    catch (IOException ioe) {
+                        BUFFERS.remove();
+                        AHEAD_BUFFERS.remove();
+                    }
+                }
+                async.close();
+            }
+            else {
+                channel.close();
             }
         }
-        return hash;
     }
 }
@@ -0,0 +1,100 @@
+package mil.nga.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple thread-safe token bucket limiting the rate at which some resource
+ * (e.g. bytes read from disk) is consumed.  Tokens accumulate at 
+ * <code>rate</code> per second up to a burst of one second's worth.  
+ * Callers may take more tokens than are available; the bucket goes into 
+ * debt and the caller sleeps until the debt would have been repaid, so a
+ * single large request is delayed rather than rejected and concurrent
+ * callers are served in the order in which they arrived.
+ * 
+ * The rate may be changed at any time.  A rate of zero (or less) disables
+ * the limit.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class RateLimiter {
+
+    // Private internal members.
+    private long   rate;
+    private double available;
+    private long   last;
+    
+    /**
+     * Constructor.
+     * 
+     * @param rate The number of tokens per second.  Values less than 1 
+     * disable the limit.
+     */
+    public RateLimiter(long rate) {
+        this.rate      = Math.max(0L, rate);
+        this.available = this.rate;
+        this.last      = System.nanoTime();
+    }
+    
+    /**
+     * Getter method for the current rate.
+     * @return The number of tokens per second (0 if unlimited).
+     */
+    public synchronized long getRate() {
+        return rate;
+    }
+    
+    /**
+     * Change the rate.  Any tokens accumulated beyond the new burst size
+     * are discarded.
+     * 
+     * @param rate The number of tokens per second.  Values less than 1 
+     * disable the limit.
+     */
+    public synchronized void setRate(long rate) {
+        refill();
+        this.rate = Math.max(0L, rate);
+        if (this.rate == 0L) {
+            available = 0.0;
+        }
+        else {
+            available = Math.min(available, this.rate);
+        }
+    }
+    
+    /**
+     * Take tokens from the bucket, blocking until the consumption fits 
+     * within the rate.
+     * 
+     * @param tokens The number of tokens to take.
+     * @throws InterruptedException Thrown if the calling thread is 
+     * interrupted while waiting.
+     */
+    public void acquire(long tokens) throws InterruptedException {
+        long wait = 0L;
+        synchronized (this) {
+            if (rate > 0L) {
+                refill();
+                available -= tokens;
+                if (available < 0.0) {
+                    wait = (long)((-available * 1.0E9) / rate);
+                }
+            }
+        }
+        if (wait > 0L) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+    
+    /**
+     * Add the tokens accumulated since the last call.  Must be called with
+     * the monitor held.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        if (rate > 0L) {
+            available = Math.min(rate, 
+                    available + (((now - last) * (double)rate) / 1.0E9));
+        }
+        last = now;
+    }
+}
@@ -0,0 +1,27 @@
+package mil.nga.util;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+
+/**
+ * Hook through which <code>HashGenerator</code> reports every read of a 
+ * file being hashed so that the overall read rate can be limited.  
+ * Implementations block the reading thread for as long as necessary and
+ * must be thread safe, since the segments of tree hashes are read 
+ * concurrently.
+ * 
+ * @author L. Craig Carpenter
+ */
+public interface ReadThrottle {
+
+    /**
+     * Account for bytes read from a file, blocking if the read exceeds the
+     * permitted rate.
+     * 
+     * @param file The file that was read.
+     * @param bytes The number of bytes read.
+     * @throws InterruptedIOException Thrown if the thread is interrupted 
+     * while waiting.
+     */
+    void acquire(Path file, int bytes) throws InterruptedIOException;
+}
@@ -0,0 +1,33 @@
+package mil.nga.util;
+
+/**
+ * Implemented by digests whose intermediate state can be exported and
+ * restored, allowing the hash of a very large file to be continued after
+ * a restart of the process (see <code>HashCheckpoint</code>).
+ *
+ * @author L. Craig Carpenter
+ */
+public interface ResumableDigest {
+
+    /**
+     * Getter method for the number of bytes digested so far.
+     *
+     * @return The number of bytes.
+     */
+    long getCount();
+
+    /**
+     * Export the intermediate state.
+     *
+     * @return The serialized state.
+     */
+    byte[] getState();
+
+    /**
+     * Restore a state previously obtained from <code>getState</code>.
+     *
+     * @param state The serialized state.
+     * @throws IllegalArgumentException Thrown if the state is not valid.
+     */
+    void setState(byte[] state);
+}
@@ -0,0 +1,235 @@
+package mil.nga.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * MD5 (RFC 1321) implementation whose intermediate state can be exported
+ * and restored.  The JDK <code>MessageDigest</code> implementations do not
+ * expose their state, so they cannot be used when a partially computed
+ * hash of a very large file has to survive a restart of the process (see
+ * <code>HashCheckpoint</code>).  The output is identical to that of the
+ * JDK MD5 implementation, but it is slower than the (intrinsified) JDK 
+ * implementation so it should only be used when the state is needed.
+ *
+ * Instances are not thread safe.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ResumableMD5 extends MessageDigest implements ResumableDigest {
+
+    /**
+     * Size (in bytes) of an exported state.
+     */
+    public static final int STATE_SIZE = 16 + 8 + 1 + 64;
+
+    /**
+     * Per-round shift amounts.
+     */
+    private static final int[] S = {
+        7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+        5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20,
+        4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+        6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21 };
+
+    /**
+     * Per-round additive constants (floor(abs(sin(i + 1)) * 2^32)).
+     */
+    private static final int[] K = new int[64];
+    static {
+        for (int i = 0; i < 64; i++) {
+            K[i] = (int)(long)(Math.abs(Math.sin(i + 1)) * 4294967296.0);
+        }
+    }
+
+    // Private internal members.
+    private final int[]  state  = new int[4];
+    private final int[]  words  = new int[16];
+    private final byte[] block  = new byte[64];
+    private final byte[] chunk  = new byte[64 * 1024];
+    private int          blockLength;
+    private long         count;
+
+    /**
+     * Default constructor.
+     */
+    public ResumableMD5() {
+        super("MD5");
+        engineReset();
+    }
+
+    /**
+     * Constructor restoring a state previously obtained from
+     * <code>getState</code>.
+     *
+     * @param exported The exported state.
+     * @throws IllegalArgumentException Thrown if the state is not valid.
+     */
+    public ResumableMD5(byte[] exported) {
+        this();
+        setState(exported);
+    }
+
+    @Override
+    public void setState(byte[] exported) {
+        if ((exported == null) || (exported.length != STATE_SIZE)) {
+            throw new IllegalArgumentException("Invalid MD5 state.  "
+                    + "Expected [ "
+                    + STATE_SIZE
+                    + " ] bytes.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(exported);
+        for (int i = 0; i < 4; i++) {
+            state[i] = buffer.getInt();
+        }
+        count       = buffer.getLong();
+        blockLength = buffer.get() & 0xFF;
+        if ((count < 0) || (blockLength >= 64) ||
+                (blockLength != (int)(count % 64))) {
+            throw new IllegalArgumentException("Invalid MD5 state.  "
+                    + "Inconsistent byte count.");
+        }
+        buffer.get(block);
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 16;
+    }
+
+    @Override
+    protected void engineReset() {
+        state[0]    = 0x67452301;
+        state[1]    = 0xefcdab89;
+        state[2]    = 0x98badcfe;
+        state[3]    = 0x10325476;
+        count       = 0L;
+        blockLength = 0;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public byte[] getState() {
+        ByteBuffer buffer = ByteBuffer.allocate(STATE_SIZE);
+        for (int i = 0; i < 4; i++) {
+            buffer.putInt(state[i]);
+        }
+        buffer.putLong(count);
+        buffer.put((byte)blockLength);
+        buffer.put(block);
+        return buffer.array();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        engineUpdate(new byte[] { input }, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            engineUpdate(chunk, 0, length);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] data, int offset, int length) {
+        count += length;
+        if (blockLength > 0) {
+            int n = Math.min(64 - blockLength, length);
+            System.arraycopy(data, offset, block, blockLength, n);
+            blockLength += n;
+            offset      += n;
+            length      -= n;
+            if (blockLength < 64) {
+                return;
+            }
+            transform(block, 0);
+            blockLength = 0;
+        }
+        while (length >= 64) {
+            transform(data, offset);
+            offset += 64;
+            length -= 64;
+        }
+        if (length > 0) {
+            System.arraycopy(data, offset, block, 0, length);
+            blockLength = length;
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long   bits    = count << 3;
+        int    padding = (blockLength < 56) ?
+                (56 - blockLength) : (120 - blockLength);
+        byte[] tail    = new byte[padding + 8];
+        tail[0] = (byte)0x80;
+        for (int i = 0; i < 8; i++) {
+            tail[padding + i] = (byte)(bits >>> (8 * i));
+        }
+        engineUpdate(tail, 0, tail.length);
+
+        byte[] digest = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            digest[i] = (byte)(state[i / 4] >>> (8 * (i % 4)));
+        }
+        engineReset();
+        return digest;
+    }
+
+    /**
+     * Process a single 64 byte block.
+     *
+     * @param data Array containing the block.
+     * @param offset Offset of the block.
+     */
+    private void transform(byte[] data, int offset) {
+        for (int i = 0; i < 16; i++) {
+            int j = offset + (i * 4);
+            words[i] = (data[j] & 0xFF) |
+                    ((data[j + 1] & 0xFF) << 8) |
+                    ((data[j + 2] & 0xFF) << 16) |
+                    ((data[j + 3] & 0xFF) << 24);
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        for (int i = 0; i < 64; i++) {
+            int f;
+            int g;
+            if (i < 16) {
+                f = (b & c) | (~b & d);
+                g = i;
+            }
+            else if (i < 32) {
+                f = (d & b) | (~d & c);
+                g = (5 * i + 1) & 0x0F;
+            }
+            else if (i < 48) {
+                f = b ^ c ^ d;
+                g = (3 * i + 5) & 0x0F;
+            }
+            else {
+                f = c ^ (b | ~d);
+                g = (7 * i) & 0x0F;
+            }
+            int t = d;
+            d = c;
+            c = b;
+            b = b + Integer.rotateLeft(a + f + K[i] + words[g], S[i]);
+            a = t;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+    }
+}
@@ -0,0 +1,239 @@
+package mil.nga.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Implementation of the 64-bit xxHash (XXH64) non-cryptographic hash
+ * function (seed 0) packaged as a <code>MessageDigest</code> so that it can
+ * be computed alongside the cryptographic digests in the same pass over a
+ * file.  It is several times faster than MD5 which makes it suitable for
+ * detecting changed files, but it must not be used where resistance to
+ * deliberate collisions matters.  The digest is the 8 byte hash in
+ * big-endian (canonical) order, i.e. the hex form matches the output of
+ * <code>xxhsum -H64</code>.
+ *
+ * Instances are not thread safe.
+ *
+ * @author L. Craig Carpenter
+ */
+public class XXHash64 extends MessageDigest implements ResumableDigest {
+
+    /**
+     * Algorithm name.
+     */
+    public static final String ALGORITHM = "XXH64";
+
+    /**
+     * Size (in bytes) of an exported state.
+     */
+    public static final int STATE_SIZE = 32 + 8 + 32;
+
+    // Constants defined by the xxHash specification.
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    // Private internal members.
+    private final ByteBuffer stripe =
+            ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long length;
+
+    /**
+     * Default constructor.
+     */
+    public XXHash64() {
+        super(ALGORITHM);
+        engineReset();
+    }
+
+    @Override
+    public long getCount() {
+        return length;
+    }
+
+    @Override
+    public byte[] getState() {
+        ByteBuffer buffer = ByteBuffer.allocate(STATE_SIZE);
+        buffer.putLong(v1).putLong(v2).putLong(v3).putLong(v4);
+        buffer.putLong(length);
+        buffer.put(stripe.array());
+        return buffer.array();
+    }
+
+    @Override
+    public void setState(byte[] exported) {
+        if ((exported == null) || (exported.length != STATE_SIZE)) {
+            throw new IllegalArgumentException("Invalid XXH64 state.  "
+                    + "Expected [ "
+                    + STATE_SIZE
+                    + " ] bytes.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(exported);
+        long count = buffer.getLong(32);
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid XXH64 state.  "
+                    + "Negative byte count.");
+        }
+        v1     = buffer.getLong();
+        v2     = buffer.getLong();
+        v3     = buffer.getLong();
+        v4     = buffer.getLong();
+        length = buffer.getLong();
+        stripe.clear();
+        stripe.put(exported, 40, 32);
+        stripe.position((int)(length % 32));
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return 8;
+    }
+
+    @Override
+    protected void engineReset() {
+        v1     = PRIME64_1 + PRIME64_2;
+        v2     = PRIME64_2;
+        v3     = 0L;
+        v4     = -PRIME64_1;
+        length = 0L;
+        stripe.clear();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        stripe.put(input);
+        length++;
+        if (!stripe.hasRemaining()) {
+            processStripe(stripe, 0);
+            stripe.clear();
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        engineUpdate(ByteBuffer.wrap(input, offset, len));
+    }
+
+    /**
+     * Digest the remaining bytes of the input buffer.  The lanes are read
+     * with absolute little-endian reads directly from the input (its byte
+     * order is switched for the duration of the call and then restored) 
+     * so no view of the buffer is allocated per update.
+     */
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        ByteOrder order = input.order();
+        int       end   = input.limit();
+        int       p     = input.position();
+
+        length += (end - p);
+        input.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (stripe.position() > 0) {
+                int n = Math.min(stripe.remaining(), end - p);
+                for (int i = 0; i < n; i++) {
+                    stripe.put(input.get(p++));
+                }
+                if (stripe.hasRemaining()) {
+                    return;
+                }
+                processStripe(stripe, 0);
+                stripe.clear();
+            }
+            while ((end - p) >= 32) {
+                processStripe(input, p);
+                p += 32;
+            }
+            while (p < end) {
+                stripe.put(input.get(p++));
+            }
+        }
+        finally {
+            input.order(order);
+            input.position(end);
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+
+        long h;
+        if (length >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        }
+        else {
+            h = PRIME64_5;
+        }
+        h += length;
+
+        int end = stripe.position();
+        int p   = 0;
+        while ((p + 8) <= end) {
+            h ^= round(0L, stripe.getLong(p));
+            h  = (Long.rotateLeft(h, 27) * PRIME64_1) + PRIME64_4;
+            p += 8;
+        }
+        if ((p + 4) <= end) {
+            h ^= (stripe.getInt(p) & 0xFFFFFFFFL) * PRIME64_1;
+            h  = (Long.rotateLeft(h, 23) * PRIME64_2) + PRIME64_3;
+            p += 4;
+        }
+        while (p < end) {
+            h ^= (stripe.get(p) & 0xFFL) * PRIME64_5;
+            h  = Long.rotateLeft(h, 11) * PRIME64_1;
+            p++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME64_2;
+        h ^= h >>> 29;
+        h *= PRIME64_3;
+        h ^= h >>> 32;
+
+        engineReset();
+        return ByteBuffer.allocate(8).putLong(h).array();
+    }
+
+    /**
+     * Process a full 32 byte stripe.
+     *
+     * @param data Little-endian buffer containing the stripe.
+     * @param offset Offset of the stripe within the buffer.
+     */
+    private void processStripe(ByteBuffer data, int offset) {
+        v1 = round(v1, data.getLong(offset));
+        v2 = round(v2, data.getLong(offset + 8));
+        v3 = round(v3, data.getLong(offset + 16));
+        v4 = round(v4, data.getLong(offset + 24));
+    }
+
+    /**
+     * Accumulate one 8 byte lane.
+     */
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc  = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    /**
+     * Fold one accumulator into the final hash.
+     */
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0L, value);
+        return (acc * PRIME64_1) + PRIME64_4;
+    }
+}
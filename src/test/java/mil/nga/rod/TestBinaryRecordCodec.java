@@ -0,0 +1,94 @@
+package mil.nga.rod;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import mil.nga.rod.accelerator.AcceleratorRecordFactory;
+import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.rod.model.TestProduct;
+import mil.nga.rod.model.TestQueryRequestAccelerator;
+
+/**
+ * Test class ensuring that records survive a round trip through the binary
+ * value codec and that it is smaller than the JSON it replaces.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestBinaryRecordCodec {
+
+    @Test
+    public void testRoundTrip() {
+
+        // Multi-byte characters (including a surrogate pair) in the notes.
+        QueryRequestAccelerator record = TestQueryRequestAccelerator
+                .getBuilder(TestProduct.getBuilder()
+                        .notes("Notes \u00e9\u4e2d\ud83d\ude00 end")
+                        .build())
+                .build();
+        BinaryRecordCodec       codec  = new BinaryRecordCodec();
+        byte[]                  value  = codec.encode(record);
+        QueryRequestAccelerator record2 = codec.decode(value);
+
+        assertEquals(BinaryRecordCodec.VERSION, value[0]);
+        // Version, hash tag, hash length and 32 hash bytes precede the
+        // fixed code of the primary hash type (5 is sha256tree).
+        assertEquals(5, value[35]);
+        assertNotNull(record2);
+        // Every attribute of the record and its product must survive.
+        assertEquals(JSONSerializer.getInstance().serialize(record),
+                JSONSerializer.getInstance().serialize(record2));
+        assertEquals(record.getHashType(), record2.getHashType());
+        assertEquals(record.getFileDate(), record2.getFileDate());
+
+        byte[] json = new JSONRecordCodec().encode(record);
+        assertEquals(JSONRecordCodec.VERSION, json[0]);
+        assertTrue(value.length < json.length);
+    }
+
+    @Test
+    public void testInvalidValues() {
+
+        BinaryRecordCodec codec = new BinaryRecordCodec();
+        byte[]            value = codec.encode(
+                TestQueryRequestAccelerator.getBuilder(
+                        TestProduct.getBuilder().notes(null).build()).build());
+
+        assertNotNull(codec.decode(value));
+        assertNull(codec.decode(Arrays.copyOf(value, value.length - 3)));
+        assertNull(codec.decode(new byte[] { BinaryRecordCodec.VERSION }));
+        assertNull(codec.decode(new byte[0]));
+        assertNull(codec.decode(null));
+    }
+
+    @Test
+    public void testCodecDispatch() {
+
+        QueryRequestAccelerator  record  = TestQueryRequestAccelerator
+                .getBuilder(TestProduct.getProduct())
+                .build();
+        AcceleratorRecordFactory factory = 
+                AcceleratorRecordFactory.getInstance();
+        String                   json    = 
+                JSONSerializer.getInstance().serialize(record);
+
+        // Values written by either codec are read whichever is configured.
+        for (RecordCodec codec : new RecordCodec[] { 
+                new JSONRecordCodec(), new BinaryRecordCodec() }) {
+            byte[] value = codec.encode(record);
+            assertEquals(codec.getVersion(), value[0]);
+            assertEquals(json, JSONSerializer.getInstance().serialize(
+                    factory.decode(value)));
+        }
+        assertEquals(JSONRecordCodec.NAME, factory.getCodec().getName());
+        assertEquals(json, JSONSerializer.getInstance().serialize(
+                factory.decode(factory.encode(record))));
+
+        byte[] unknown = new BinaryRecordCodec().encode(record);
+        unknown[0] = (byte)0x7f;
+        assertNull(factory.decode(unknown));
+        assertNull(factory.decode(new byte[0]));
+        assertNull(factory.decode(null));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.Test;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import mil.nga.rod.JSONSerializer;
@@ -14,6 +15,7 @@ import mil.nga.rod.model.Product;
 import mil.nga.rod.model.QueryRequestAccelerator;
 import mil.nga.rod.model.TestProduct;
 import mil.nga.rod.model.TestQueryRequestAccelerator;
+import mil.nga.types.HashType;
 
 public class TestJSONSerializer {
 
@@ -91,6 +93,92 @@ public class TestJSONSerializer {
         
     }
     
+    @Test
+    public void testAdditionalHashSerialization() {
+        
+        Product product = TestProduct.getProduct();
+        
+        QueryRequestAccelerator record = new QueryRequestAccelerator.QueryRequestAcceleratorBuilder()
+        		.product(product)
+        		.size(TestQueryRequestAccelerator.SIZE)
+        		.fileDate(TestQueryRequestAccelerator.CURRENT_DATE)
+        		.hash(TestQueryRequestAccelerator.HASH)
+        		.addHash(HashType.SHA256, "FEDCBA9876543210")
+        		.build();
+        
+        String serialized = JSONSerializer.getInstance().serialize(record);
+        QueryRequestAccelerator record2 = JSONSerializer
+                    .getInstance()
+                    .deserializeToQueryRequestAccelerator(serialized);
+        
+        assertEquals(record.getHash(), record2.getHash());
+        assertEquals("FEDCBA9876543210", record2.getHash(HashType.SHA256));
+        assertNull(record2.getHash(HashType.SHA512));
+        
+        // Records without additional hashes serialize as before.
+        QueryRequestAccelerator record3 = new QueryRequestAccelerator.QueryRequestAcceleratorBuilder()
+        		.product(product)
+        		.size(TestQueryRequestAccelerator.SIZE)
+        		.fileDate(TestQueryRequestAccelerator.CURRENT_DATE)
+        		.hash(TestQueryRequestAccelerator.HASH)
+        		.build();
+        assertFalse(JSONSerializer.getInstance().serialize(record3)
+                .contains("hashes"));
+        assertFalse(JSONSerializer.getInstance().serialize(record3)
+                .contains("hashType"));
+        assertEquals(HashType.MD5, JSONSerializer.getInstance()
+                .deserializeToQueryRequestAccelerator(
+                        JSONSerializer.getInstance().serialize(record3))
+                .getHashType());
+        
+        // The primary hash type round-trips when it is not the default.
+        QueryRequestAccelerator record4 = new QueryRequestAccelerator.QueryRequestAcceleratorBuilder()
+        		.product(product)
+        		.size(TestQueryRequestAccelerator.SIZE)
+        		.fileDate(TestQueryRequestAccelerator.CURRENT_DATE)
+        		.hash(TestQueryRequestAccelerator.HASH)
+        		.hashType(HashType.SHA256_TREE)
+        		.build();
+        QueryRequestAccelerator record5 = JSONSerializer
+                    .getInstance()
+                    .deserializeToQueryRequestAccelerator(
+                            JSONSerializer.getInstance().serialize(record4));
+        assertEquals(HashType.SHA256_TREE, record5.getHashType());
+        assertEquals(record4.getHash(), record5.getHash());
+    }
+    
+    @Test
+    public void testFileDatePrecision() {
+        
+        Product product = TestProduct.getProduct();
+        
+        // Use a time with a non-zero millisecond component.
+        Date fileDate = new Date(1500000000123L);
+        QueryRequestAccelerator record = new QueryRequestAccelerator.QueryRequestAcceleratorBuilder()
+        		.product(product)
+        		.size(TestQueryRequestAccelerator.SIZE)
+        		.fileDate(fileDate)
+        		.hash(TestQueryRequestAccelerator.HASH)
+        		.build();
+        
+        String serialized = JSONSerializer.getInstance().serialize(record);
+        QueryRequestAccelerator record2 = JSONSerializer
+                    .getInstance()
+                    .deserializeToQueryRequestAccelerator(serialized);
+        assertEquals(fileDate.getTime(), record2.getFileDate().getTime());
+        
+        // Values written with the old date-only format must still load.
+        // (The nested product carries its own date-only fileDate.)
+        String legacy = serialized.replaceFirst(
+                "\"fileDate\":\"[^\"]*T[^\"]*\"", 
+                "\"fileDate\":\"2017-07-14\"");
+        QueryRequestAccelerator record3 = JSONSerializer
+                    .getInstance()
+                    .deserializeToQueryRequestAccelerator(legacy);
+        assertNotNull(record3);
+        assertEquals(1499990400000L, record3.getFileDate().getTime());
+    }
+    
  
     
 }
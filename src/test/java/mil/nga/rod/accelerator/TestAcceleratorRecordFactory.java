@@ -0,0 +1,107 @@
+package mil.nga.rod.accelerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import mil.nga.rod.JSONSerializer;
+import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.rod.model.TestProduct;
+import mil.nga.rod.model.TestQueryRequestAccelerator;
+import mil.nga.types.HashType;
+
+/**
+ * Test class ensuring that accelerator records survive a round trip
+ * through the fields of a Redis hash.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestAcceleratorRecordFactory {
+
+    private void assertSameRecord(
+            QueryRequestAccelerator expected,
+            QueryRequestAccelerator actual) {
+        assertNotNull(actual);
+        assertEquals(JSONSerializer.getInstance().serialize(expected),
+                JSONSerializer.getInstance().serialize(actual));
+        assertEquals(expected.getHashType(), actual.getHashType());
+        assertEquals(expected.getHashes(), actual.getHashes());
+        assertEquals(expected.getFileDate(), actual.getFileDate());
+    }
+
+    @Test
+    public void testFieldRoundTrip() {
+
+        AcceleratorRecordFactory factory =
+                AcceleratorRecordFactory.getInstance();
+        QueryRequestAccelerator  record  =
+                TestQueryRequestAccelerator
+                        .getBuilder(TestProduct.getProduct()).build();
+        Map<String, String>      fields  = factory.getFields(record);
+
+        assertEquals(HashType.SHA256_TREE.getText(),
+                fields.get(AcceleratorRecordFactory.HASH_TYPE_FIELD));
+        assertEquals(TestQueryRequestAccelerator.SAMPLED_HASH, fields.get(
+                AcceleratorRecordFactory.HASHES_FIELD_PREFIX
+                    + HashType.XXHASH64_SAMPLED.getText()));
+        assertEquals(TestProduct.PATH,
+                fields.get(AcceleratorRecordFactory.PATH_FIELD));
+        assertSameRecord(record, factory.getRecord(fields));
+
+        // Unknown fields are ignored.
+        fields.put("unknown", "value");
+        assertSameRecord(record, factory.getRecord(fields));
+    }
+
+    @Test
+    public void testMissingPath() {
+
+        // Products always carry a path, but the path field is only a copy
+        // for readers so records written without it must still be read.
+        AcceleratorRecordFactory factory =
+                AcceleratorRecordFactory.getInstance();
+        QueryRequestAccelerator  record  =
+                TestQueryRequestAccelerator
+                        .getBuilder(TestProduct.getProduct()).build();
+        Map<String, String>      fields  = factory.getFields(record);
+
+        fields.remove(AcceleratorRecordFactory.PATH_FIELD);
+        QueryRequestAccelerator record2 = factory.getRecord(fields);
+        assertSameRecord(record, record2);
+        assertEquals(TestProduct.PATH, record2.getPath());
+    }
+
+    @Test
+    public void testInvalidFields() {
+
+        AcceleratorRecordFactory factory =
+                AcceleratorRecordFactory.getInstance();
+        Map<String, String>      fields  = factory.getFields(
+                TestQueryRequestAccelerator
+                        .getBuilder(TestProduct.getProduct()).build());
+
+        assertNull(factory.getFields(null));
+        assertNull(factory.getRecord(null));
+        assertNull(factory.getRecord(new LinkedHashMap<String, String>()));
+
+        // Missing product.
+        Map<String, String> missing = new LinkedHashMap<String, String>(fields);
+        missing.remove(AcceleratorRecordFactory.PRODUCT_FIELD);
+        assertNull(factory.getRecord(missing));
+
+        // Product that is not valid JSON.
+        Map<String, String> invalid = new LinkedHashMap<String, String>(fields);
+        invalid.put(AcceleratorRecordFactory.PRODUCT_FIELD, "{ not json");
+        assertNull(factory.getRecord(invalid));
+
+        // Invalid numbers and hash types.
+        Map<String, String> size = new LinkedHashMap<String, String>(fields);
+        size.put(AcceleratorRecordFactory.SIZE_FIELD, "large");
+        assertNull(factory.getRecord(size));
+        Map<String, String> type = new LinkedHashMap<String, String>(fields);
+        type.put(AcceleratorRecordFactory.HASH_TYPE_FIELD, "crc32");
+        assertNull(factory.getRecord(type));
+    }
+}
@@ -0,0 +1,244 @@
+package mil.nga.rod.accelerator;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class ensuring that the batch writer stores every record in as few
+ * calls to the cache as its flush size allows.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class TestCacheBatchWriter {
+
+    /**
+     * In-memory cache recording the size of each batch.  Of the multi-key
+     * methods only the batch writes are overridden; the reads use the 
+     * interface defaults.  Also used as the cache of a stubbed cache 
+     * manager (see <code>TestCacheManager</code>).
+     */
+    static class MemoryCache implements CacheManagerI {
+        
+        private final Map<String, String> entries = 
+                new HashMap<String, String>();
+        private final Map<String, Map<String, String>> hashes = 
+                new HashMap<String, Map<String, String>>();
+        private final List<Integer>       batches = new ArrayList<Integer>();
+        
+        @Override
+        public String get(String key) {
+            return entries.get(key);
+        }
+        
+        @Override
+        public byte[] getBytes(String key) {
+            String value = entries.get(key);
+            return (value == null ? null : 
+                    value.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        @Override
+        public Map<String, String> getFields(String key) {
+            Map<String, String> fields = hashes.get(key);
+            return (fields == null ? new HashMap<String, String>() : fields);
+        }
+        
+        @Override
+        public List<String> getFields(String key, String... fields) {
+            List<String> values = new ArrayList<String>();
+            for (String field : fields) {
+                values.add(getFields(key).get(field));
+            }
+            return values;
+        }
+        
+        @Override
+        public Set<String> getKeys() {
+            return entries.keySet();
+        }
+        
+        /**
+         * Only a null pattern (i.e. every key) is supported.
+         */
+        @Override
+        public Iterable<String> scanKeys(String match) {
+            assertNull(match);
+            return new ArrayList<String>(entries.keySet());
+        }
+        
+        @Override
+        public void put(String key, String value) {
+            entries.put(key, value);
+            batches.add(1);
+        }
+        
+        @Override
+        public void putBytes(String key, byte[] value) {
+            putAllBytes(Collections.singletonMap(key, value));
+        }
+        
+        @Override
+        public void putFields(String key, Map<String, String> fields) {
+            putAllFields(Collections.singletonMap(key, fields));
+        }
+        
+        @Override
+        public void putAllBytes(Map<String, byte[]> values) {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                hashes.remove(entry.getKey());
+                entries.put(entry.getKey(), 
+                        new String(entry.getValue(), StandardCharsets.UTF_8));
+            }
+            batches.add(values.size());
+        }
+        
+        @Override
+        public void putAllFields(Map<String, Map<String, String>> values) {
+            for (Map.Entry<String, Map<String, String>> entry : 
+                    values.entrySet()) {
+                entries.remove(entry.getKey());
+                hashes.put(entry.getKey(), 
+                        new HashMap<String, String>(entry.getValue()));
+            }
+            batches.add(values.size());
+        }
+        
+        @Override
+        public void remove(String key) {
+            entries.remove(key);
+            hashes.remove(key);
+        }
+    }
+    
+    @Test
+    public void testBatching() {
+        
+        MemoryCache cache = new MemoryCache();
+        try (CacheBatchWriter writer = new CacheBatchWriter(cache, 100)) {
+            for (int i = 0; i < 250; i++) {
+                writer.put("key" + i, "value" + i);
+            }
+            assertEquals(50, writer.size());
+            assertEquals(200, cache.entries.size());
+        }
+        assertEquals(250, cache.entries.size());
+        assertEquals("value249", cache.get("key249"));
+        assertEquals(3, cache.batches.size());
+        assertEquals(Integer.valueOf(50), cache.batches.get(2));
+    }
+    
+    @Test
+    public void testFieldBatching() {
+        
+        MemoryCache cache = new MemoryCache();
+        try (CacheBatchWriter writer = new CacheBatchWriter(cache, 100)) {
+            for (int i = 0; i < 150; i++) {
+                Map<String, String> fields = new HashMap<String, String>();
+                fields.put("hash", "hash" + i);
+                fields.put("size", Integer.toString(i));
+                writer.putFields("key" + i, fields);
+            }
+            // A later string write of the same key replaces the hash.
+            writer.put("key149", "value149");
+            assertEquals(50, writer.size());
+            assertEquals(100, cache.hashes.size());
+        }
+        assertEquals(149, cache.hashes.size());
+        assertEquals("value149", cache.get("key149"));
+        assertEquals("hash42", cache.getFields("key42").get("hash"));
+        // One hash batch when full, then one of each kind on close.
+        assertEquals(3, cache.batches.size());
+    }
+    
+    @Test
+    public void testCheckpointMarks() throws Exception {
+        
+        Path              dir   = Files.createTempDirectory(
+                "TestCacheBatchWriter");
+        Path              file  = dir.resolve("checkpoint");
+        RefreshCheckpoint cp    = new RefreshCheckpoint(file, "full", 1000);
+        MemoryCache       cache = new MemoryCache();
+        
+        // A cache that fails every batch write.
+        MemoryCache broken = new MemoryCache() {
+            @Override
+            public void putAllBytes(Map<String, byte[]> values) {
+                throw new IllegalStateException("Cache unavailable.");
+            }
+        };
+        try {
+            cp.open();
+            CacheBatchWriter writer = new CacheBatchWriter(broken, 2, cp);
+            writer.put("key0", "value0");
+            writer.mark("key0", true);
+            try {
+                writer.put("key1", "value1");
+                fail("The failed write should be reported.");
+            }
+            catch (IllegalStateException ise) { }
+            // Nothing is recorded until its record is cached.
+            assertFalse(cp.isComplete("key0"));
+            
+            writer = new CacheBatchWriter(cache, 3, cp);
+            writer.put("key0", "value0");
+            writer.mark("key0", true);
+            writer.mark("key1", false);
+            assertFalse(cp.isComplete("key0"));
+            writer.mark("key2", false);
+            // The marks filled the batch and were recorded after the write.
+            assertTrue(cp.isComplete("key0"));
+            assertTrue(cp.isComplete("key2"));
+            assertEquals("value0", cache.get("key0"));
+            assertEquals(1, cache.batches.size());
+            // The expensive mark flushed the checkpoint file.
+            assertTrue(Files.readAllLines(file, StandardCharsets.UTF_8)
+                    .contains("key0"));
+        }
+        finally {
+            cp.close();
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+    
+    @Test
+    public void testDefaultMethods() {
+        
+        // The multi-key reads fall back on the single-key reads.
+        MemoryCache cache = new MemoryCache();
+        try (CacheBatchWriter writer = new CacheBatchWriter(cache, 2)) {
+            writer.put("a+1", "value1");
+            writer.put("a+2", "value2");
+            writer.put("b+1", "value3");
+        }
+        Map<String, String> values = cache.getAll(
+                Arrays.asList("b+1", null, "a+1", "b+1", "missing"));
+        assertEquals(Arrays.asList("b+1", "a+1", "missing"), 
+                new ArrayList<String>(values.keySet()));
+        assertEquals("value3", values.get("b+1"));
+        assertNull(values.get("missing"));
+        Map<String, byte[]> bytes = cache.getAllBytes(
+                Arrays.asList("a+1", "missing"));
+        assertEquals("value1", new String(bytes.get("a+1"), 
+                StandardCharsets.UTF_8));
+        assertTrue(bytes.containsKey("missing"));
+        assertNull(bytes.get("missing"));
+        
+        cache.putFields("c", Collections.singletonMap("hash", "hash1"));
+        Map<String, Map<String, String>> fields = cache.getAllFields(
+                Arrays.asList("c", "missing"));
+        assertEquals("hash1", fields.get("c").get("hash"));
+        assertTrue(fields.get("missing").isEmpty());
+    }
+}
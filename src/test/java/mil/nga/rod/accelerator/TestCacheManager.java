@@ -0,0 +1,374 @@
+package mil.nga.rod.accelerator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import mil.nga.PropertyLoader;
+import mil.nga.rod.JSONSerializer;
+import mil.nga.rod.accelerator.CacheManager.RefreshStatus;
+import mil.nga.rod.model.Product;
+import mil.nga.rod.model.QueryRequestAccelerator;
+import mil.nga.rod.model.TestProduct;
+import mil.nga.rod.model.TestQueryRequestAccelerator;
+import mil.nga.util.FileUtils;
+
+/**
+ * Test class for the change detection and incremental refresh logic of 
+ * the cache manager.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestCacheManager implements CacheManagerConstants {
+
+    /**
+     * The catalog high-water mark read by the stubbed refreshes.
+     */
+    private static final long MARK = 1500000000000L;
+
+    /**
+     * Cache manager stub serving the catalog from a list and keeping the
+     * refresh state in memory.  Products whose NRN starts with FAIL fail 
+     * to hash.
+     */
+    private static class StubManager extends CacheManager {
+
+        private final TestCacheBatchWriter.MemoryCache cache     =
+                new TestCacheBatchWriter.MemoryCache();
+        private final List<Product>                    catalog   =
+                new ArrayList<Product>();
+        private final List<String>                     refreshed =
+                Collections.synchronizedList(new ArrayList<String>());
+        private boolean                                available = true;
+        private int                                    missing   = 0;
+
+        StubManager() {
+            setResident(true);
+        }
+
+        @Override
+        public CacheManagerI getCache() {
+            return cache;
+        }
+
+        @Override
+        public Date getCatalogHighWaterMark() {
+            return new Date(MARK);
+        }
+
+        @Override
+        public int getAllProducts(
+                Date since,
+                Consumer<Product> consumer,
+                AtomicInteger missing) {
+            if (!available) {
+                return -1;
+            }
+            for (Product product : catalog) {
+                consumer.accept(product);
+            }
+            missing.addAndGet(this.missing);
+            return catalog.size();
+        }
+
+        @Override
+        public void preload(List<RefreshItem> items) { }
+
+        @Override
+        public void lookup(RefreshItem item) {
+            item.setKey(AcceleratorRecordFactory.getInstance().getKey(
+                    item.getProduct()));
+        }
+
+        @Override
+        public void detectChanges(RefreshItem item) {
+            item.setAction(RefreshItem.Action.UPDATE);
+        }
+
+        @Override
+        public void generate(RefreshItem item) {
+            if (item.getProduct().getNRN().startsWith("FAIL")) {
+                item.setStatus(RefreshStatus.FAILED);
+            }
+        }
+
+        @Override
+        public void writeBack(RefreshItem item) {
+            if (item.getStatus() != RefreshStatus.FAILED) {
+                refreshed.add(item.getProduct().getNRN());
+                item.setStatus(RefreshStatus.UPDATED);
+            }
+        }
+
+        /**
+         * Getter method for the NRNs of the products in the retry queue.
+         */
+        Set<String> getQueuedNRNs() {
+            Set<String> nrns = new HashSet<String>();
+            for (Product product : getRetryProducts()) {
+                nrns.add(product.getNRN());
+            }
+            return nrns;
+        }
+    }
+
+    // Original values of the properties changed by a test.
+    private final Map<String, String> saved = new HashMap<String, String>();
+
+    /**
+     * Override one of the shared system properties for the current test.
+     */
+    private void setProperty(String key, String value) throws Exception {
+        Properties props = PropertyLoader.getInstance().getProperties();
+        if (!saved.containsKey(key)) {
+            saved.put(key, props.getProperty(key));
+        }
+        props.setProperty(key, value);
+    }
+
+    @After
+    public void restoreProperties() throws Exception {
+        Properties props = PropertyLoader.getInstance().getProperties();
+        for (Map.Entry<String, String> entry : saved.entrySet()) {
+            if (entry.getValue() == null) {
+                props.remove(entry.getKey());
+            }
+            else {
+                props.setProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        saved.clear();
+    }
+
+    private static Product getProduct(String nrn) {
+        return TestProduct.getBuilder().nrn(nrn).build();
+    }
+
+    /**
+     * Queue the input products for retry, as a failed refresh would.
+     */
+    private static void queue(StubManager manager, String... nrns) {
+        Map<String, String> queue = new HashMap<String, String>();
+        for (String nrn : nrns) {
+            Product product = getProduct(nrn);
+            queue.put(AcceleratorRecordFactory.getInstance().getKey(product),
+                    JSONSerializer.getInstance().serialize(product));
+        }
+        manager.getCache().putFields(REFRESH_RETRY_KEY, queue);
+    }
+
+    /**
+     * Set up a stubbed, serial, refresh without checkpointing.
+     */
+    private StubManager getManager(String... nrns) throws Exception {
+        setProperty(REFRESH_PIPELINE_PROPERTY, "false");
+        setProperty(REFRESH_THREADS_PROPERTY, "1");
+        setProperty(REFRESH_CHECKPOINT_FILE_PROPERTY, "");
+        StubManager manager = new StubManager();
+        for (String nrn : nrns) {
+            manager.catalog.add(getProduct(nrn));
+        }
+        return manager;
+    }
+
+    private QueryRequestAccelerator buildRecord(Path file, long fileDate)
+            throws Exception {
+        return TestQueryRequestAccelerator.getBuilder(TestProduct.getBuilder()
+                        .path(file.toString())
+                        .build())
+                .size(FileUtils.getActualFileSize(file))
+                .fileDate(new Date(fileDate))
+                .build();
+    }
+
+    @Test
+    public void testFileDatePrecision() throws Exception {
+
+        CacheManager manager = new CacheManager();
+        Path         file    = Files.createTempFile("TestCacheManager", ".iso");
+        try {
+            Files.write(file, new byte[] { 1, 2, 3 });
+            long mtime = 1500000000123L;
+            Files.setLastModifiedTime(file, FileTime.fromMillis(mtime));
+            mtime = FileUtils.getActualFileDate(file).getTime();
+            long seconds = mtime - (mtime % 1000L);
+
+            // Exact and second-truncated (e.g. Oracle DATE) times match.
+            assertFalse(manager.isUpdateRequired(buildRecord(file, mtime)));
+            assertFalse(manager.isUpdateRequired(buildRecord(file, seconds)));
+
+            // Any other change is detected.
+            assertTrue(manager.isUpdateRequired(
+                    buildRecord(file, seconds - 1000L)));
+            if ((mtime % 1000L) != 0) {
+                assertTrue(manager.isUpdateRequired(
+                        buildRecord(file, mtime + 1L)));
+            }
+
+            assertFalse(manager.isFileDateChanged(1999L, 1000L));
+            assertTrue(manager.isFileDateChanged(2000L, 1000L));
+            assertTrue(manager.isFileDateChanged(1998L, 1999L));
+            assertFalse(manager.isFileDateChanged(-1L, -1000L));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testIncrementalStartDate() throws Exception {
+
+        StubManager manager = getManager();
+        long        now     = System.currentTimeMillis();
+        manager.getCache().put(HIGH_WATER_MARK_KEY, Long.toString(MARK));
+        manager.getCache().put(LAST_FULL_SWEEP_KEY, Long.toString(now));
+
+        // Incremental refresh is opt-in.
+        setProperty(REFRESH_INCREMENTAL_PROPERTY, "false");
+        assertNull(manager.getIncrementalStartDate());
+
+        setProperty(REFRESH_INCREMENTAL_PROPERTY, "true");
+        setProperty(REFRESH_FULL_SWEEP_INTERVAL_PROPERTY, "24");
+        assertEquals(new Date(MARK), manager.getRecordedHighWaterMark());
+        assertEquals(new Date(MARK), manager.getIncrementalStartDate());
+
+        // Full sweep due.
+        manager.getCache().put(LAST_FULL_SWEEP_KEY,
+                Long.toString(now - (25L * 3600000L)));
+        assertNull(manager.getIncrementalStartDate());
+        setProperty(REFRESH_FULL_SWEEP_INTERVAL_PROPERTY, "48");
+        assertEquals(new Date(MARK), manager.getIncrementalStartDate());
+
+        // Invalid last full sweep time.
+        manager.getCache().put(LAST_FULL_SWEEP_KEY, "bogus");
+        assertNull(manager.getIncrementalStartDate());
+
+        // No full sweep or no mark recorded.
+        manager.getCache().remove(LAST_FULL_SWEEP_KEY);
+        assertNull(manager.getIncrementalStartDate());
+        manager.getCache().put(LAST_FULL_SWEEP_KEY, Long.toString(now));
+        manager.getCache().remove(HIGH_WATER_MARK_KEY);
+        assertNull(manager.getRecordedHighWaterMark());
+        assertNull(manager.getIncrementalStartDate());
+    }
+
+    @Test
+    public void testUpdateHighWaterMark() throws Exception {
+
+        StubManager manager = getManager();
+
+        manager.updateHighWaterMark(null, true);
+        assertNull(manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertNull(manager.getCache().get(LAST_FULL_SWEEP_KEY));
+
+        // An incremental run does not reset the full sweep interval.
+        manager.updateHighWaterMark(new Date(MARK), false);
+        assertEquals(Long.toString(MARK),
+                manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertNull(manager.getCache().get(LAST_FULL_SWEEP_KEY));
+
+        long start = System.currentTimeMillis();
+        manager.updateHighWaterMark(new Date(MARK + 1L), true);
+        assertEquals(Long.toString(MARK + 1L),
+                manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertTrue(Long.parseLong(manager.getCache().get(
+                LAST_FULL_SWEEP_KEY)) >= start);
+    }
+
+    /**
+     * A complete full sweep records the mark and the full sweep time and
+     * queues its failures rather than holding back the mark.
+     */
+    @Test
+    public void testFullSweep() throws Exception {
+
+        StubManager manager = getManager("A", "FAIL-B");
+        manager.updateAcceleratorCache(null);
+
+        assertEquals(Arrays.asList("A"), manager.refreshed);
+        assertEquals(Long.toString(MARK),
+                manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertNotNull(manager.getCache().get(LAST_FULL_SWEEP_KEY));
+        assertEquals(new HashSet<String>(Arrays.asList("FAIL-B")),
+                manager.getQueuedNRNs());
+    }
+
+    /**
+     * An incremental run refreshes the queued products along with the 
+     * catalog products, each once, and empties the queue once they 
+     * succeed.
+     */
+    @Test
+    public void testRetryQueueMerge() throws Exception {
+
+        StubManager manager = getManager("A", "B");
+        queue(manager, "B", "C");
+        manager.updateAcceleratorCache(new Date(MARK - 1000L));
+
+        List<String> refreshed = new ArrayList<String>(manager.refreshed);
+        Collections.sort(refreshed);
+        assertEquals(Arrays.asList("A", "B", "C"), refreshed);
+        assertTrue(manager.getQueuedNRNs().isEmpty());
+        assertEquals(Long.toString(MARK),
+                manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertNull(manager.getCache().get(LAST_FULL_SWEEP_KEY));
+
+        // Full sweeps do not read the queue.
+        manager = getManager("A");
+        queue(manager, "C");
+        manager.updateAcceleratorCache(null);
+        assertEquals(Arrays.asList("A"), manager.refreshed);
+    }
+
+    /**
+     * A run that did not read the whole catalog must not advance the mark
+     * or replace the retry queue, otherwise the unread products would not
+     * be selected by the next incremental run.
+     */
+    @Test
+    public void testIncompleteRun() throws Exception {
+
+        String old = Long.toString(MARK - 1000L);
+
+        // A product could not be retrieved.
+        StubManager manager = getManager("A", "FAIL-B");
+        manager.missing = 1;
+        manager.getCache().put(HIGH_WATER_MARK_KEY, old);
+        queue(manager, "C");
+        manager.updateAcceleratorCache(new Date(MARK - 1000L));
+        assertEquals(old, manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertEquals(new HashSet<String>(Arrays.asList("C")),
+                manager.getQueuedNRNs());
+
+        // The catalog could not be read at all.
+        manager = getManager("A");
+        manager.available = false;
+        manager.getCache().put(HIGH_WATER_MARK_KEY, old);
+        manager.updateAcceleratorCache(new Date(MARK - 1000L));
+        assertTrue(manager.refreshed.isEmpty());
+        assertEquals(old, manager.getCache().get(HIGH_WATER_MARK_KEY));
+
+        // Nor does an incomplete full sweep.
+        manager = getManager("A");
+        manager.missing = 1;
+        manager.updateAcceleratorCache(null);
+        assertNull(manager.getCache().get(HIGH_WATER_MARK_KEY));
+        assertNull(manager.getCache().get(LAST_FULL_SWEEP_KEY));
+    }
+}
@@ -0,0 +1,168 @@
+package mil.nga.rod.accelerator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the parsing of the per-mount hashing limits and the
+ * accounting of the permits taken by the hashing threads.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestMountLimiter {
+
+    private MountLimiter getLimiter(int limitA, int defaultLimit) {
+        Map<String, Integer> limits = new LinkedHashMap<String, Integer>();
+        limits.put("/mnt/a", limitA);
+        limits.put("/mnt/a/fast", 0);
+        return new MountLimiter(limits, defaultLimit);
+    }
+
+    @Test
+    public void testParseLimits() {
+
+        assertTrue(MountLimiter.parseLimits("test", null).isEmpty());
+        assertTrue(MountLimiter.parseLimits("test", " ").isEmpty());
+
+        Map<String, Integer> limits = MountLimiter.parseLimits("test",
+                " /mnt/a/ = 2 , /mnt/b/../c=4");
+        assertEquals(Arrays.asList("/mnt/a", "/mnt/c"),
+                Arrays.asList(limits.keySet().toArray()));
+        assertEquals(Integer.valueOf(2), limits.get("/mnt/a"));
+        assertEquals(Integer.valueOf(4), limits.get("/mnt/c"));
+
+        // Invalid entries are ignored, the valid ones are kept.
+        limits = MountLimiter.parseLimits("test",
+                "/mnt/a,/mnt/b=x,/mnt/c=1=2,/mnt/d=3");
+        assertEquals(1, limits.size());
+        assertEquals(Integer.valueOf(3), limits.get("/mnt/d"));
+
+        // The shipped configuration does not limit any mount.
+        assertTrue(MountLimiter.parseLimits(
+                CacheManagerConstants.REFRESH_MOUNT_LIMITS_PROPERTY).isEmpty());
+    }
+
+    @Test
+    public void testLongestPrefix() {
+
+        List<String> paths = Arrays.asList("/mnt", "/mnt/a", "/mnt/ab");
+        assertEquals("/mnt/ab",
+                MountLimiter.longestPrefix(paths, Paths.get("/mnt/ab/x.iso")));
+        assertEquals("/mnt/a",
+                MountLimiter.longestPrefix(paths, Paths.get("/mnt/a/b/x.iso")));
+
+        // Prefixes match whole path elements only.
+        assertEquals("/mnt",
+                MountLimiter.longestPrefix(paths, Paths.get("/mnt/abc/x.iso")));
+        assertNull(MountLimiter.longestPrefix(paths, Paths.get("/data/x.iso")));
+        assertNull(MountLimiter.longestPrefix(
+                Collections.<String>emptyList(), Paths.get("/mnt/a/x.iso")));
+    }
+
+    @Test
+    public void testGetMount() throws Exception {
+
+        MountLimiter limiter = getLimiter(2, 0);
+        assertEquals(MountLimiter.UNKNOWN_MOUNT, limiter.getMount(null));
+        assertEquals(MountLimiter.UNKNOWN_MOUNT, limiter.getMount(""));
+        assertEquals("/mnt/a", limiter.getMount("/mnt/a/b/../x.iso"));
+        assertEquals("/mnt/a/fast", limiter.getMount("/mnt/a/fast/x.iso"));
+
+        // Files outside the configured paths belong to their filesystem
+        // mount point.
+        Path file = Files.createTempFile("TestMountLimiter", ".iso");
+        try {
+            String mount = limiter.getMount(file.toString());
+            assertTrue(mount, file.toAbsolutePath().startsWith(mount));
+            assertEquals(mount, limiter.getMount(file.toString()));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testGetLimit() {
+
+        MountLimiter limiter = getLimiter(2, 3);
+        assertEquals(2, limiter.getLimit("/mnt/a"));
+        assertEquals(0, limiter.getLimit("/mnt/a/fast"));
+        assertEquals(3, limiter.getLimit("/mnt/b"));
+        assertEquals(0, getLimiter(-1, 0).getLimit("/mnt/a"));
+        assertEquals(0, getLimiter(2, -1).getLimit("/mnt/b"));
+    }
+
+    @Test
+    public void testTryAcquire() throws Exception {
+
+        MountLimiter limiter = getLimiter(3, 0);
+
+        // Unlimited mounts grant every permit requested.
+        assertEquals(5, limiter.tryAcquire("/mnt/a/fast", 5));
+        assertEquals(0, limiter.tryAcquire("/mnt/a/fast", -1));
+        limiter.release("/mnt/a/fast", 5);
+
+        // Limited mounts grant at most the free permits, without waiting.
+        assertEquals(0, limiter.tryAcquire("/mnt/a", 0));
+        assertEquals(2, limiter.tryAcquire("/mnt/a", 2));
+        assertEquals(1, limiter.tryAcquire("/mnt/a", 2));
+        assertEquals(0, limiter.tryAcquire("/mnt/a", 2));
+        limiter.release("/mnt/a", 0);
+        limiter.release("/mnt/a", 2);
+        limiter.release("/mnt/a", 1);
+        assertEquals(3, limiter.tryAcquire("/mnt/a", 4));
+        limiter.release("/mnt/a", 3);
+    }
+
+    /**
+     * A tree hash holds the permit of its file and reads its segments with
+     * as many extra permits as are free (see
+     * <code>CacheManager.generate</code>).  The mount limit is never
+     * exceeded and every permit is returned.
+     */
+    @Test
+    public void testTreeFanOut() throws Exception {
+
+        MountLimiter limiter     = getLimiter(4, 0);
+        int          parallelism = 8;
+
+        // First file takes all of the remaining permits.
+        limiter.acquire("/mnt/a");
+        int first = limiter.tryAcquire("/mnt/a", parallelism - 1);
+        assertEquals(3, first);
+
+        // Nothing is left for a second file's extra readers.
+        assertEquals(0, limiter.tryAcquire("/mnt/a", parallelism - 1));
+
+        // Once the first file is done a second file runs with its own
+        // permit plus the rest.
+        limiter.release("/mnt/a", first);
+        limiter.release("/mnt/a");
+        limiter.acquire("/mnt/a");
+        assertEquals(3, limiter.tryAcquire("/mnt/a", parallelism - 1));
+        limiter.release("/mnt/a", 3);
+        limiter.release("/mnt/a");
+
+        // Two files hashed at once share the limit.
+        limiter.acquire("/mnt/a");
+        limiter.acquire("/mnt/a");
+        int extra = limiter.tryAcquire("/mnt/a", parallelism - 1);
+        assertEquals(2, extra);
+        limiter.release("/mnt/a", extra);
+        limiter.release("/mnt/a");
+        limiter.release("/mnt/a");
+
+        // All permits are back.
+        assertEquals(4, limiter.tryAcquire("/mnt/a", parallelism));
+        limiter.release("/mnt/a", 4);
+    }
+}
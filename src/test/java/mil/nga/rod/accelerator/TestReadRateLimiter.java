@@ -0,0 +1,92 @@
+package mil.nga.rod.accelerator;
+
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the parsing and evaluation of the read rate limit
+ * schedule.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestReadRateLimiter {
+
+    private ReadRateLimiter getLimiter(String schedule) {
+        return new ReadRateLimiter(100L,
+                Collections.<String, Integer>emptyMap(), 0L,
+                ReadRateLimiter.parseSchedule(schedule));
+    }
+
+    @Test
+    public void testParseSchedule() {
+
+        assertTrue(ReadRateLimiter.parseSchedule(null).isEmpty());
+        assertTrue(ReadRateLimiter.parseSchedule(" ").isEmpty());
+
+        List<ReadRateLimiter.Window> windows = ReadRateLimiter.parseSchedule(
+                " 07:00-19:00 , 19:00-22:00=50");
+        assertEquals(2, windows.size());
+        assertTrue(windows.get(0).contains(LocalTime.of(7, 0)));
+        assertFalse(windows.get(0).contains(LocalTime.of(19, 0)));
+
+        // Invalid windows are ignored, the valid ones are kept.
+        windows = ReadRateLimiter.parseSchedule(
+                "07:00-19:00,25:00-26:00,07:00,07:00-08:00=x,"
+                + "07:00-08:00=50=60,07:00-08:00=-1,08:00-09:00=25");
+        assertEquals(2, windows.size());
+    }
+
+    @Test
+    public void testZeroPercent() {
+
+        // =0 would lift the limits during the window, so it is rejected.
+        assertTrue(ReadRateLimiter.parseSchedule("07:00-19:00=0").isEmpty());
+        assertEquals(1, ReadRateLimiter.parseSchedule(
+                "07:00-19:00=0,19:00-22:00=1").size());
+    }
+
+    @Test
+    public void testWindowContains() {
+
+        ReadRateLimiter.Window day = new ReadRateLimiter.Window(
+                LocalTime.of(7, 0), LocalTime.of(19, 0), 100);
+        assertTrue(day.contains(LocalTime.of(7, 0)));
+        assertTrue(day.contains(LocalTime.of(18, 59, 59)));
+        assertFalse(day.contains(LocalTime.of(19, 0)));
+        assertFalse(day.contains(LocalTime.of(6, 59)));
+        assertFalse(day.contains(LocalTime.MIDNIGHT));
+
+        // Windows ending before they start wrap past midnight.
+        ReadRateLimiter.Window night = new ReadRateLimiter.Window(
+                LocalTime.of(22, 0), LocalTime.of(6, 0), 100);
+        assertTrue(night.contains(LocalTime.of(22, 0)));
+        assertTrue(night.contains(LocalTime.of(23, 59, 59)));
+        assertTrue(night.contains(LocalTime.MIDNIGHT));
+        assertTrue(night.contains(LocalTime.of(5, 59)));
+        assertFalse(night.contains(LocalTime.of(6, 0)));
+        assertFalse(night.contains(LocalTime.NOON));
+    }
+
+    @Test
+    public void testGetPercent() {
+
+        // Without a schedule the limits always apply in full.
+        assertEquals(100, getLimiter(null).getPercent(LocalTime.NOON));
+
+        ReadRateLimiter limiter = getLimiter(
+                "07:00-19:00,19:00-22:00=50,21:00-23:00=10,23:00-01:00=150");
+        assertEquals(100, limiter.getPercent(LocalTime.of(7, 0)));
+        assertEquals(50,  limiter.getPercent(LocalTime.of(19, 0)));
+        // Overlapping windows: the first configured window wins.
+        assertEquals(50,  limiter.getPercent(LocalTime.of(21, 30)));
+        assertEquals(10,  limiter.getPercent(LocalTime.of(22, 30)));
+        assertEquals(150, limiter.getPercent(LocalTime.of(0, 30)));
+        // Outside of every window reads are not limited.
+        assertEquals(0,   limiter.getPercent(LocalTime.of(3, 0)));
+        assertEquals(0,   limiter.getPercent(LocalTime.of(1, 0)));
+    }
+}
@@ -0,0 +1,181 @@
+package mil.nga.rod.accelerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * Test class for the parts of the Redis cache manager that do not require
+ * a running Redis server.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestRedisCacheManager {
+
+    /**
+     * Chunk reader serving values from a map and recording each chunk.
+     */
+    private static class MapReader
+            implements RedisCacheManager.ChunkReader<String> {
+
+        private final Map<String, String> values;
+        private final List<List<String>>  chunks =
+                new ArrayList<List<String>>();
+
+        MapReader(Map<String, String> values) {
+            this.values = values;
+        }
+
+        @Override
+        public List<String> read(List<String> batch) {
+            chunks.add(new ArrayList<String>(batch));
+            List<String> found = new ArrayList<String>();
+            for (String key : batch) {
+                found.add(values.get(key));
+            }
+            return found;
+        }
+    }
+
+    @Test
+    public void testReadChunked() {
+
+        Map<String, String> cached = new HashMap<String, String>();
+        for (int i = 0; i < 5; i++) {
+            cached.put("key" + i, "value" + i);
+        }
+        MapReader reader = new MapReader(cached);
+
+        Map<String, String> values = RedisCacheManager.readChunked(
+                Arrays.asList("key4", "key0", null, "missing", "key4",
+                        "key1", "key2", "key3", null),
+                2, reader);
+
+        // Nulls and duplicates are dropped before chunking.
+        assertEquals(Arrays.asList("key4", "key0", "missing", "key1",
+                "key2", "key3"), new ArrayList<String>(values.keySet()));
+        assertEquals(3, reader.chunks.size());
+        assertEquals(Arrays.asList("key4", "key0"), reader.chunks.get(0));
+        assertEquals(Arrays.asList("missing", "key1"), reader.chunks.get(1));
+        assertEquals(Arrays.asList("key2", "key3"), reader.chunks.get(2));
+
+        // Misses map to null.
+        assertTrue(values.containsKey("missing"));
+        assertNull(values.get("missing"));
+        assertEquals("value4", values.get("key4"));
+        assertEquals("value3", values.get("key3"));
+    }
+
+    @Test
+    public void testReadChunkedLimits() {
+
+        MapReader reader = new MapReader(new HashMap<String, String>());
+
+        assertTrue(RedisCacheManager.readChunked(null, 10, reader).isEmpty());
+        assertTrue(RedisCacheManager.readChunked(
+                new ArrayList<String>(), 10, reader).isEmpty());
+        assertTrue(RedisCacheManager.readChunked(
+                Arrays.asList((String)null), 10, reader).isEmpty());
+        assertTrue(reader.chunks.isEmpty());
+
+        // Chunk sizes below 1 are raised to 1.
+        Map<String, String> values = RedisCacheManager.readChunked(
+                Arrays.asList("a", "b", "c"), 0, reader);
+        assertEquals(3, values.size());
+        assertEquals(3, reader.chunks.size());
+
+        // A chunk larger than the request is a single read.
+        reader.chunks.clear();
+        RedisCacheManager.readChunked(Arrays.asList("a", "b", "c"), 1000,
+                reader);
+        assertEquals(1, reader.chunks.size());
+    }
+
+    /**
+     * Page source serving fixed pages.  Page i is returned for cursor i and
+     * the last page returns the cursor to "0".
+     */
+    private static class FakePages implements RedisCacheManager.PageSource {
+
+        private final List<List<String>> pages;
+        private final List<String>       cursors = new ArrayList<String>();
+
+        FakePages(List<List<String>> pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public ScanResult<String> scan(String cursor) {
+            cursors.add(cursor);
+            int index = Integer.parseInt(cursor);
+            String next = (index + 1 < pages.size()) ?
+                    Integer.toString(index + 1) :
+                    ScanParams.SCAN_POINTER_START;
+            return new ScanResult<String>(next, pages.get(index));
+        }
+    }
+
+    @Test
+    public void testKeyIterator() {
+
+        List<String> empty = Collections.<String>emptyList();
+        FakePages source = new FakePages(Arrays.asList(
+                empty,
+                Arrays.asList("a", "b"),
+                empty,
+                empty,
+                Arrays.asList("c"),
+                empty));
+
+        List<String> keys = new ArrayList<String>();
+        Iterator<String> iter = new RedisCacheManager.KeyIterator(source);
+        while (iter.hasNext()) {
+            keys.add(iter.next());
+        }
+
+        // Empty pages are skipped without ending the iteration, which ends
+        // (without another SCAN) once the cursor returns to "0".
+        assertEquals(Arrays.asList("a", "b", "c"), keys);
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5"),
+                source.cursors);
+        assertFalse(iter.hasNext());
+        assertEquals(6, source.cursors.size());
+        try {
+            iter.next();
+            fail("Exhausted iterator must throw NoSuchElementException.");
+        }
+        catch (NoSuchElementException nsee) { }
+    }
+
+    @Test
+    public void testKeyIteratorSinglePage() {
+
+        // A cache that fits in one page ends after a single SCAN, and an
+        // empty cache returns no keys.
+        FakePages one = new FakePages(Arrays.asList(
+                Arrays.asList("a", "b")));
+        List<String> keys = new ArrayList<String>();
+        Iterator<String> iter = new RedisCacheManager.KeyIterator(one);
+        while (iter.hasNext()) {
+            keys.add(iter.next());
+        }
+        assertEquals(Arrays.asList("a", "b"), keys);
+        assertEquals(1, one.cursors.size());
+
+        FakePages none = new FakePages(Arrays.asList(
+                Collections.<String>emptyList()));
+        assertFalse(new RedisCacheManager.KeyIterator(none).hasNext());
+        assertEquals(1, none.cursors.size());
+    }
+}
@@ -0,0 +1,417 @@
+package mil.nga.rod.accelerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import mil.nga.rod.accelerator.CacheManager.RefreshStatus;
+import mil.nga.rod.model.Product;
+import mil.nga.rod.model.TestProduct;
+
+/**
+ * Test class for the staged refresh pipeline.  The per-stage logic of the
+ * cache manager is stubbed so that the routing, accounting and shutdown
+ * of the pipeline can be tested without a data store or cache.  The
+ * behaviour of each stubbed product is selected by the prefix of its NRN.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestRefreshPipeline {
+
+    /**
+     * Cache manager stub recording the work performed by each stage.
+     */
+    static class StubManager extends CacheManager {
+
+        private final MountLimiter               limiter;
+        private final List<Product>              catalog;
+        private final RuntimeException           catalogFailure;
+        private final List<String>               hashed      =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final List<String>               written     =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final List<String>               completed   =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final List<String>               hashThreads =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final Map<String, AtomicInteger> active      =
+                new ConcurrentHashMap<String, AtomicInteger>();
+        private final Map<String, AtomicInteger> peak        =
+                new ConcurrentHashMap<String, AtomicInteger>();
+        private final AtomicInteger              maxBatch    =
+                new AtomicInteger(0);
+
+        StubManager(List<Product> catalog, RuntimeException catalogFailure) {
+            Map<String, Integer> limits = new HashMap<String, Integer>();
+            limits.put("/mnt/a", 1);
+            limits.put("/mnt/b", 2);
+            this.limiter        = new MountLimiter(limits, 0);
+            this.catalog        = catalog;
+            this.catalogFailure = catalogFailure;
+        }
+
+        @Override
+        public MountLimiter getMountLimiter() {
+            return limiter;
+        }
+
+        @Override
+        public int getAllProducts(
+                Date since,
+                Consumer<Product> consumer,
+                AtomicInteger missing) {
+            for (Product product : catalog) {
+                consumer.accept(product);
+            }
+            if (catalogFailure != null) {
+                throw catalogFailure;
+            }
+            return catalog.size();
+        }
+
+        @Override
+        public int getPreloadBatchSize() {
+            return 2;
+        }
+
+        @Override
+        public void preload(List<RefreshItem> items) {
+            int size = items.size();
+            int max  = maxBatch.get();
+            while ((size > max) && (!maxBatch.compareAndSet(max, size))) {
+                max = maxBatch.get();
+            }
+        }
+
+        @Override
+        public boolean isCheckpointed(Product prod) {
+            return prod.getNRN().startsWith("DONE");
+        }
+
+        @Override
+        public void lookup(RefreshItem item) {
+            if (item.getProduct().getNRN().startsWith("LOOKUPFAIL")) {
+                throw new IllegalStateException("lookup failed");
+            }
+            item.setKey(item.getProduct().getNRN());
+        }
+
+        @Override
+        public void detectChanges(RefreshItem item) {
+            String nrn = item.getProduct().getNRN();
+            if (nrn.startsWith("NONE")) {
+                item.setAction(RefreshItem.Action.NONE);
+            }
+            else if (nrn.startsWith("RESTAMP")) {
+                item.setAction(RefreshItem.Action.RESTAMP);
+            }
+            else {
+                item.setAction(RefreshItem.Action.UPDATE);
+            }
+        }
+
+        @Override
+        public void generate(RefreshItem item) throws IOException {
+            String mount = limiter.getMount(item.getProduct().getPath());
+            active.putIfAbsent(mount, new AtomicInteger(0));
+            peak.putIfAbsent(mount, new AtomicInteger(0));
+            int now = active.get(mount).incrementAndGet();
+            int max = peak.get(mount).get();
+            while ((now > max) && (!peak.get(mount).compareAndSet(max, now))) {
+                max = peak.get(mount).get();
+            }
+            hashThreads.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(10);
+            }
+            catch (InterruptedException ie) {
+                throw new IOException(ie);
+            }
+            finally {
+                active.get(mount).decrementAndGet();
+            }
+            hashed.add(item.getProduct().getNRN());
+            if (item.getProduct().getNRN().startsWith("HASHFAIL")) {
+                item.setStatus(RefreshStatus.FAILED);
+            }
+        }
+
+        @Override
+        public void writeBack(RefreshItem item) throws IOException {
+            written.add(item.getProduct().getNRN());
+            if (item.getProduct().getNRN().startsWith("WRITEFAIL")) {
+                throw new IOException("write failed");
+            }
+            if (item.isHashRequired()) {
+                item.setStatus(RefreshStatus.UPDATED);
+            }
+        }
+
+        @Override
+        public void checkpoint(RefreshItem item) {
+            completed.add(item.getProduct().getNRN());
+        }
+    }
+
+    private static Product getProduct(String nrn, String mount) {
+        return TestProduct.getBuilder()
+                .nrn(nrn)
+                .path(mount + "/" + nrn + ".iso")
+                .build();
+    }
+
+    private static List<Product> getProducts(String mount, String... nrns) {
+        List<Product> products = new ArrayList<Product>();
+        for (String nrn : nrns) {
+            products.add(getProduct(nrn, mount));
+        }
+        return products;
+    }
+
+    /**
+     * Wait for the pipeline worker threads to exit.
+     */
+    private static void assertWorkersExited() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (true) {
+            List<String> alive = new ArrayList<String>();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.isAlive() &&
+                        thread.getName().startsWith("refresh-")) {
+                    alive.add(thread.getName());
+                }
+            }
+            if (alive.isEmpty()) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Pipeline workers still running " + alive);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Every item leaves the pipeline exactly once, whatever the stage it
+     * leaves from, and the counters agree with the outcome of each item.
+     */
+    @Test
+    public void testCounters() throws Exception {
+
+        List<Product> catalog = getProducts("/mnt/a",
+                "NONE-1", "RESTAMP-1", "UPDATE-1", "HASHFAIL-1",
+                "LOOKUPFAIL-1", "DONE-1");
+        catalog.addAll(getProducts("/mnt/b",
+                "NONE-2", "UPDATE-2", "WRITEFAIL-1"));
+        List<Product> retries = getProducts("/mnt/b",
+                "UPDATE-3", "DONE-2");
+        retries.add(getProduct("UPDATE-1", "/mnt/a"));
+
+        StubManager     manager  = new StubManager(catalog, null);
+        RefreshPipeline pipeline = new RefreshPipeline(manager);
+        int[]           counters = pipeline.execute(null, retries);
+
+        // Checkpointed products are skipped and retried products that are
+        // also in the catalog are only submitted once.
+        assertEquals(9, counters[0]);
+        assertEquals(3, counters[1]);
+        assertEquals(3, counters[2]);
+        assertTrue(pipeline.isCatalogComplete());
+
+        List<String> completed = new ArrayList<String>(manager.completed);
+        Collections.sort(completed);
+        assertEquals(Arrays.asList(
+                "HASHFAIL-1", "LOOKUPFAIL-1", "NONE-1", "NONE-2",
+                "RESTAMP-1", "UPDATE-1", "UPDATE-2", "UPDATE-3",
+                "WRITEFAIL-1"), completed);
+
+        // Only hash-required items are hashed.  Items that failed hashing
+        // or need no write never reach the write-back stage.
+        List<String> hashed = new ArrayList<String>(manager.hashed);
+        Collections.sort(hashed);
+        assertEquals(Arrays.asList(
+                "HASHFAIL-1", "UPDATE-1", "UPDATE-2", "UPDATE-3",
+                "WRITEFAIL-1"), hashed);
+        List<String> written = new ArrayList<String>(manager.written);
+        Collections.sort(written);
+        assertEquals(Arrays.asList(
+                "RESTAMP-1", "UPDATE-1", "UPDATE-2", "UPDATE-3",
+                "WRITEFAIL-1"), written);
+
+        assertTrue(manager.maxBatch.get() <= manager.getPreloadBatchSize());
+        assertWorkersExited();
+    }
+
+    /**
+     * A failed catalog read still drains and shuts down the pipeline.  The
+     * products read before the failure are refreshed and the catalog is
+     * reported incomplete.
+     */
+    @Test
+    public void testCatalogFailure() throws Exception {
+
+        StubManager manager = new StubManager(
+                getProducts("/mnt/a", "UPDATE-1", "NONE-1", "UPDATE-2"),
+                new IllegalStateException("catalog unavailable"));
+        RefreshPipeline pipeline = new RefreshPipeline(manager);
+        int[]           counters = pipeline.execute(null);
+
+        assertFalse(pipeline.isCatalogComplete());
+        assertEquals(3, counters[0]);
+        assertEquals(2, counters[1]);
+        assertEquals(0, counters[2]);
+        assertEquals(3, manager.completed.size());
+        assertWorkersExited();
+
+        // A product that could not be retrieved also leaves the catalog
+        // incomplete.
+        manager = new StubManager(
+                getProducts("/mnt/a", "UPDATE-1"), null) {
+            @Override
+            public int getAllProducts(
+                    Date since,
+                    Consumer<Product> consumer,
+                    AtomicInteger missing) {
+                missing.incrementAndGet();
+                return super.getAllProducts(since, consumer, missing);
+            }
+        };
+        pipeline = new RefreshPipeline(manager);
+        counters = pipeline.execute(null);
+        assertFalse(pipeline.isCatalogComplete());
+        assertEquals(1, counters[1]);
+        assertWorkersExited();
+    }
+
+    /**
+     * Each mount is hashed by its own stage, within the mount's limit.
+     */
+    @Test
+    public void testMountStages() throws Exception {
+
+        List<Product> catalog = getProducts("/mnt/a",
+                "UPDATE-A1", "UPDATE-A2", "UPDATE-A3", "UPDATE-A4");
+        catalog.addAll(getProducts("/mnt/b",
+                "UPDATE-B1", "UPDATE-B2", "UPDATE-B3", "UPDATE-B4"));
+
+        StubManager     manager  = new StubManager(catalog, null);
+        RefreshPipeline pipeline = new RefreshPipeline(manager);
+        int[]           counters = pipeline.execute(null);
+
+        assertEquals(8, counters[0]);
+        assertEquals(8, counters[1]);
+        assertEquals(8, manager.hashed.size());
+        assertEquals(1, manager.peak.get("/mnt/a").get());
+        assertTrue(manager.peak.get("/mnt/b").get() <= 2);
+        for (String name : manager.hashThreads) {
+            assertTrue(name, name.startsWith("refresh-hash /mnt/a-") ||
+                    name.startsWith("refresh-hash /mnt/b-"));
+        }
+        assertWorkersExited();
+    }
+
+    /**
+     * Items in a priority ordered stage are processed in priority order
+     * and the poison items sort after all real work, so nothing queued is
+     * lost when the stage is finished.
+     */
+    @Test
+    public void testPriorityStage() throws Exception {
+
+        final List<String> order =
+                Collections.synchronizedList(new ArrayList<String>());
+        RefreshPipeline pipeline = new RefreshPipeline(
+                new StubManager(new ArrayList<Product>(), null));
+        RefreshPipeline.Stage stage = pipeline.new Stage(
+                "priority", 1, 4, new Comparator<RefreshItem>() {
+            @Override
+            public int compare(RefreshItem a, RefreshItem b) {
+                return a.getProduct().getNRN().compareTo(
+                        b.getProduct().getNRN());
+            }
+        }, null) {
+            @Override
+            void process(RefreshItem item) {
+                order.add(item.getProduct().getNRN());
+            }
+        };
+
+        // Queue the poison item ahead of some of the work.
+        stage.put(new RefreshItem(getProduct("C", "/mnt/a")));
+        stage.finish();
+        stage.put(new RefreshItem(getProduct("A", "/mnt/a")));
+        stage.put(new RefreshItem(getProduct("B", "/mnt/a")));
+        stage.start();
+        stage.await();
+
+        assertEquals(Arrays.asList("A", "B", "C"), order);
+    }
+
+    /**
+     * A full stage blocks the upstream stage until its workers catch up,
+     * whether the queue is FIFO or priority ordered (where the bound is
+     * enforced by a semaphore).
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+
+        RefreshPipeline pipeline = new RefreshPipeline(
+                new StubManager(new ArrayList<Product>(), null));
+        List<Comparator<RefreshItem>> priorities =
+                new ArrayList<Comparator<RefreshItem>>();
+        priorities.add(null);
+        priorities.add(new Comparator<RefreshItem>() {
+            @Override
+            public int compare(RefreshItem a, RefreshItem b) {
+                return 0;
+            }
+        });
+
+        for (Comparator<RefreshItem> priority : priorities) {
+
+            final AtomicInteger processed = new AtomicInteger(0);
+            final RefreshPipeline.Stage stage = pipeline.new Stage(
+                    "bounded", 1, 2, priority, null) {
+                @Override
+                void process(RefreshItem item) {
+                    processed.incrementAndGet();
+                }
+            };
+            stage.put(new RefreshItem(getProduct("A", "/mnt/a")));
+            stage.put(new RefreshItem(getProduct("B", "/mnt/a")));
+
+            final CountDownLatch queued = new CountDownLatch(1);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    stage.put(new RefreshItem(getProduct("C", "/mnt/a")));
+                    queued.countDown();
+                }
+            });
+            producer.start();
+
+            // The third item does not fit until the stage starts draining.
+            assertFalse(queued.await(200, TimeUnit.MILLISECONDS));
+            stage.start();
+            assertTrue(queued.await(5, TimeUnit.SECONDS));
+            producer.join();
+            stage.finish();
+            stage.await();
+            assertEquals(3, processed.get());
+        }
+    }
+}
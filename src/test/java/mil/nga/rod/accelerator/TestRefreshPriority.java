@@ -0,0 +1,104 @@
+package mil.nga.rod.accelerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import mil.nga.rod.model.Product;
+import mil.nga.rod.model.TestProduct;
+
+/**
+ * Test class ensuring that refresh work is ordered according to the 
+ * configured priority policy.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class TestRefreshPriority {
+
+    /**
+     * Build a refresh item in the state it would be in after change 
+     * detection.
+     */
+    private RefreshItem getItem(
+            String nrn, 
+            long loadTime, 
+            boolean cached, 
+            RefreshItem.Action action) {
+        
+        Product product = TestProduct.getBuilder()
+                .loadDate(new java.sql.Date(loadTime))
+                .nrn(nrn)
+                .build();
+        RefreshItem item = new RefreshItem(product);
+        item.setCached(cached);
+        item.setAction(action);
+        return item;
+    }
+    
+    /**
+     * Prioritization is opt-in: the default policy keeps catalog order.
+     */
+    @Test
+    public void testDefaultPolicy() {
+        
+        assertNull(RefreshPriority.parse(
+                CacheManagerConstants.DEFAULT_REFRESH_PRIORITY));
+        assertNull(RefreshPriority.parse(" None "));
+        assertNull(RefreshPriority.parse(null));
+        assertNull(RefreshPriority.parse("bogus"));
+        assertEquals("miss,recent,stale", 
+                RefreshPriority.parse("miss, recent,stale,miss").toString());
+    }
+    
+    /**
+     * Test the miss, then most recent, then stale policy.
+     */
+    @Test
+    public void testMissRecentStale() {
+        
+        RefreshItem oldStale  = getItem("A", 1000L, true,  RefreshItem.Action.UPDATE);
+        RefreshItem newStale  = getItem("B", 3000L, true,  RefreshItem.Action.UPDATE);
+        RefreshItem oldMiss   = getItem("C", 1000L, false, RefreshItem.Action.INSERT);
+        RefreshItem newMiss   = getItem("D", 2000L, false, RefreshItem.Action.INSERT);
+        RefreshItem restamp   = getItem("E", 3000L, true,  RefreshItem.Action.RESTAMP);
+        
+        List<RefreshItem> items = new ArrayList<RefreshItem>(Arrays.asList(
+                oldStale, newStale, oldMiss, newMiss, restamp));
+        Collections.sort(items, new RefreshPriority(Arrays.asList(
+                RefreshPriority.Criterion.MISS, 
+                RefreshPriority.Criterion.RECENT, 
+                RefreshPriority.Criterion.STALE)));
+        
+        assertEquals(newMiss,  items.get(0));
+        assertEquals(oldMiss,  items.get(1));
+        assertEquals(newStale, items.get(2));
+        assertEquals(restamp,  items.get(3));
+        assertEquals(oldStale, items.get(4));
+    }
+    
+    /**
+     * Test that the criteria are applied in the configured order.
+     */
+    @Test
+    public void testStaleFirst() {
+        
+        RefreshItem miss  = getItem("A", 3000L, false, RefreshItem.Action.INSERT);
+        RefreshItem stale = getItem("B", 1000L, true,  RefreshItem.Action.UPDATE);
+        
+        List<RefreshItem> items = new ArrayList<RefreshItem>(Arrays.asList(
+                miss, stale));
+        Collections.sort(items, new RefreshPriority(Arrays.asList(
+                RefreshPriority.Criterion.STALE, 
+                RefreshPriority.Criterion.MISS)));
+        
+        assertEquals(stale, items.get(0));
+        assertEquals(miss,  items.get(1));
+        assertEquals(RefreshPriority.Criterion.RECENT, 
+                RefreshPriority.Criterion.fromString(" Recent "));
+        assertNull(RefreshPriority.Criterion.fromString("bogus"));
+    }
+}
@@ -0,0 +1,42 @@
+package mil.nga.rod.jdbc;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the parts of the RoD record factory that do not require
+ * a database connection.
+ *
+ * @author L. Craig Carpenter
+ */
+public class TestRoDRecordFactory {
+
+    /**
+     * The catalog high-water mark is the later of the most recent 
+     * LOAD_DATE and the most recent FILE_DATE.
+     */
+    @Test
+    public void testHighWaterMark() {
+
+        Timestamp load = new Timestamp(1500000000000L);
+        Timestamp file = new Timestamp(1500000000123L);
+
+        assertNull(RoDRecordFactory.getLater(null, null));
+        assertEquals(new Date(load.getTime()),
+                RoDRecordFactory.getLater(load, null));
+        assertEquals(new Date(file.getTime()),
+                RoDRecordFactory.getLater(null, file));
+        assertEquals(new Date(file.getTime()),
+                RoDRecordFactory.getLater(load, file));
+        assertEquals(new Date(file.getTime()),
+                RoDRecordFactory.getLater(file, load));
+        assertEquals(new Date(load.getTime()),
+                RoDRecordFactory.getLater(load, load));
+
+        // The mark is a plain date, not one of the JDBC timestamps.
+        assertEquals(Date.class, RoDRecordFactory.getLater(load, file).getClass());
+    }
+}
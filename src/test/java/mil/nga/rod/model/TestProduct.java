@@ -28,6 +28,44 @@ public class TestProduct {
     public static Date   FILE_DATE = new Date(System.currentTimeMillis());
     public static Date   LOAD_DATE = FILE_DATE;
     
+    /**
+     * Shared test fixture.  Construct a builder populated with the test
+     * values above.  Callers may override individual attributes before 
+     * building.
+     * 
+     * @return A populated builder.
+     */
+    public static Product.ProductBuilder getBuilder() {
+        return new Product.ProductBuilder()
+                .aorCode(AOR_CODE)
+                .classification(CLASSIFICATION)
+                .classificationDescription(CLASSIFICATION_DESCRIPTION)
+                .countryName(COUNTRY_NAME)
+                .edition(EDITION)
+                .fileDate(FILE_DATE)
+                .iso3Char(ISO3CHR)
+                .loadDate(LOAD_DATE)
+                .mediaName(MEDIA_NAME)
+                .notes(NOTES)
+                .nsn(NSN)
+                .nrn(NRN)
+                .path(PATH)
+                .productType(PRODUCT_TYPE)
+                .releasability(RELEASABILITY)
+                .releasabilityDescription(RELEASABILITY_DESCRIPTION)
+                .size(SIZE)
+                .url(URL);
+    }
+    
+    /**
+     * Shared test fixture.  Construct a product from the test values.
+     * 
+     * @return The product.
+     */
+    public static Product getProduct() {
+        return getBuilder().build();
+    }
+    
     @Test
     public void runTest() {
         
@@ -5,6 +5,8 @@ import java.util.Date;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import mil.nga.types.HashType;
+
 /**
  * Test class ensuring that the target POJO reads/writes correctly.
  * 
@@ -16,6 +18,30 @@ public class TestQueryRequestAccelerator {
 	public static final String HASH = "0123456789ABCDEF";
 	public static final Date   CURRENT_DATE =  new Date(System.currentTimeMillis());
 	public static final long   SIZE = 12345L;
+	public static final String TREE_HASH = 
+	        "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+	public static final String SAMPLED_HASH = "00ff00ff00ff00ff";
+	
+    /**
+     * Shared test fixture.  Construct a builder for a record of the input 
+     * product carrying a tree hash plus sampled and SHA-256 additional 
+     * hashes.  Callers may override individual attributes before building.
+     * 
+     * @param product The product the record describes.
+     * @return A populated builder.
+     */
+    public static QueryRequestAccelerator.QueryRequestAcceleratorBuilder 
+            getBuilder(Product product) {
+        return new QueryRequestAccelerator.QueryRequestAcceleratorBuilder()
+                .product(product)
+                .size(SIZE)
+                .fileDate(CURRENT_DATE)
+                .hash(TREE_HASH)
+                .hashType(HashType.SHA256_TREE)
+                .addHash(HashType.XXHASH64_SAMPLED, SAMPLED_HASH)
+                .addHash(HashType.SHA256, HASH);
+    }
+    
     /**
      * Test construction of the target object.
      */
@@ -0,0 +1,591 @@
+package mil.nga.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import mil.nga.types.HashType;
+
+/**
+ * Test class ensuring that the FileChannel-based hashing engine produces
+ * the same results as the commons codec implementation it replaced.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class TestHashGenerator {
+
+    /**
+     * Create a temporary file of the requested size containing random 
+     * data.
+     */
+    private Path createFile(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Path p = Files.createTempFile("TestHashGenerator", ".dat");
+        Files.write(p, data);
+        p.toFile().deleteOnExit();
+        return p;
+    }
+    
+    /**
+     * Remove a temporary (checkpoint) directory and its contents.
+     */
+    private void deleteDirectory(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+    
+    /**
+     * Compare against commons codec for all hash types using a file that 
+     * is not a multiple of the buffer size.
+     */
+    @Test
+    public void testHashTypes() throws IOException {
+        
+        Path p = createFile(3 * 4096 + 17);
+        byte[] data = Files.readAllBytes(p);
+        HashGenerator generator = new HashGenerator(4096);
+        
+        assertEquals(DigestUtils.md5Hex(data), 
+                generator.getHash(p, HashType.MD5));
+        assertEquals(DigestUtils.sha1Hex(data), 
+                generator.getHash(p, HashType.SHA1));
+        assertEquals(DigestUtils.sha256Hex(data), 
+                generator.getHash(p, HashType.SHA256));
+        assertEquals(DigestUtils.sha384Hex(data), 
+                generator.getHash(p, HashType.SHA384));
+        assertEquals(DigestUtils.sha512Hex(data), 
+                generator.getHash(p, HashType.SHA512));
+    }
+    
+    /**
+     * The hash must not depend on the read size (or on buffers re-used 
+     * from a previous file).
+     */
+    @Test
+    public void testBufferSizes() throws IOException {
+        
+        Path p = createFile(100000);
+        String expected = DigestUtils.md5Hex(Files.readAllBytes(p));
+        
+        assertEquals(expected, 
+                new HashGenerator(4096).getHash(p, HashType.MD5));
+        assertEquals(expected, 
+                new HashGenerator().getHash(p, HashType.MD5));
+        assertEquals(expected, 
+                new HashGenerator(1).getHash(p, HashType.MD5));
+        assertEquals(DigestUtils.md5Hex(new byte[0]), 
+                new HashGenerator().getHash(createFile(0), HashType.MD5));
+    }
+    
+    /**
+     * All requested hash types must be computed in one pass and match the 
+     * single-type results.
+     */
+    @Test
+    public void testMultipleHashTypes() throws IOException {
+        
+        Path p = createFile(3 * 4096 + 17);
+        byte[] data = Files.readAllBytes(p);
+        Map<HashType, String> hashes = new HashGenerator(4096).getHashes(
+                p, EnumSet.of(HashType.MD5, HashType.SHA256));
+        
+        assertEquals(2, hashes.size());
+        assertEquals(DigestUtils.md5Hex(data), hashes.get(HashType.MD5));
+        assertEquals(DigestUtils.sha256Hex(data), hashes.get(HashType.SHA256));
+    }
+    
+    /**
+     * A file smaller than one segment has a single leaf so the tree hash 
+     * is the digest of the digest of the file.  The tree hash may be 
+     * requested alongside the streamed types.
+     */
+    @Test
+    public void testTreeHash() throws IOException {
+        
+        Path p = createFile(3 * 4096 + 17);
+        byte[] data = Files.readAllBytes(p);
+        HashGenerator generator = new HashGenerator(4096);
+        
+        assertEquals(DigestUtils.sha256Hex(DigestUtils.sha256(data)), 
+                generator.getHash(p, HashType.SHA256_TREE));
+        assertEquals(DigestUtils.sha256Hex(DigestUtils.sha256(new byte[0])), 
+                generator.getHash(createFile(0), HashType.SHA256_TREE));
+        
+        Map<HashType, String> hashes = generator.getHashes(
+                p, EnumSet.of(HashType.MD5, HashType.SHA256_TREE));
+        assertEquals(DigestUtils.md5Hex(data), hashes.get(HashType.MD5));
+        assertEquals(DigestUtils.sha256Hex(DigestUtils.sha256(data)), 
+                hashes.get(HashType.SHA256_TREE));
+    }
+    
+    /**
+     * Compute the tree hash of <code>data</code> directly from its 
+     * definition (see <code>HashType.TREE_SEGMENT_SIZE</code>).
+     */
+    private String treeHash(byte[] data, int segmentSize) {
+        ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+        int offset = 0;
+        do {
+            int    length = Math.min(segmentSize, data.length - offset);
+            byte[] leaf   = DigestUtils.sha256(
+                    Arrays.copyOfRange(data, offset, offset + length));
+            leaves.write(leaf, 0, leaf.length);
+            offset += length;
+        } while (offset < data.length);
+        return DigestUtils.sha256Hex(leaves.toByteArray());
+    }
+    
+    /**
+     * Trees with more than one leaf (using a reduced segment size so that 
+     * the files stay small) must match an independently computed root, 
+     * with and without checkpointing.
+     */
+    @Test
+    public void testMultiSegmentTreeHash() throws IOException {
+        
+        Path dir = Files.createTempDirectory("TestHashGenerator");
+        try {
+            HashGenerator generator = new HashGenerator(
+                    4096, null, 0L, null, false, 4096L);
+            HashGenerator resumable = new HashGenerator(
+                    4096, dir, 4096L, null, false, 4096L);
+            for (int size : new int[] { 4097, 2 * 4096, 3 * 4096 + 17 }) {
+                Path   p    = createFile(size);
+                byte[] data = Files.readAllBytes(p);
+                String tree = treeHash(data, 4096);
+                
+                // More than one leaf, so the root is not H(H(data)).
+                assertNotEquals(DigestUtils.sha256Hex(
+                        DigestUtils.sha256(data)), tree);
+                assertEquals(tree, 
+                        generator.getHash(p, HashType.SHA256_TREE));
+                assertEquals(tree, 
+                        resumable.getHash(p, HashType.SHA256_TREE));
+            }
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+    
+    /**
+     * Limiting the segments of a tree hash read at once must not change 
+     * the hash and must hold the number of concurrent reads to the limit.
+     */
+    @Test
+    public void testTreeHashReaders() throws IOException {
+        
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger peak   = new AtomicInteger(0);
+        ReadThrottle throttle = new ReadThrottle() {
+            @Override
+            public void acquire(Path file, int bytes) {
+                int now = active.incrementAndGet();
+                int max;
+                while ((now > (max = peak.get())) && 
+                        (!peak.compareAndSet(max, now))) { }
+                try {
+                    Thread.sleep(1L);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+            }
+        };
+        HashGenerator generator = new HashGenerator(
+                4096, null, 0L, throttle, false, 4096L);
+        Path   p    = createFile(16 * 4096 + 17);
+        String tree = treeHash(Files.readAllBytes(p), 4096);
+        
+        for (int readers : new int[] { 1, 2 }) {
+            peak.set(0);
+            assertEquals(tree, generator.getHashes(p, 
+                    EnumSet.of(HashType.SHA256_TREE), readers)
+                        .get(HashType.SHA256_TREE));
+            assertTrue(peak.get() <= readers);
+        }
+        assertEquals(tree, generator.getHash(p, HashType.SHA256_TREE));
+    }
+    
+    /**
+     * The resumable MD5 implementation must match the JDK implementation,
+     * including after its state has been exported and restored.
+     */
+    @Test
+    public void testResumableMD5() throws IOException {
+        
+        byte[] data = Files.readAllBytes(createFile(3 * 4096 + 17));
+        for (int split : new int[] { 0, 1, 55, 56, 64, 100, data.length }) {
+            ResumableMD5 md5 = new ResumableMD5();
+            md5.update(data, 0, split);
+            ResumableMD5 restored = new ResumableMD5(md5.getState());
+            restored.update(data, split, data.length - split);
+            assertEquals(DigestUtils.md5Hex(data), 
+                    Hex.encodeHexString(restored.digest()));
+        }
+    }
+    
+    /**
+     * Wrap digest states in the checkpoint format used by HashGenerator.
+     */
+    private byte[] toCheckpointState(ResumableDigest... digests) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (ResumableDigest digest : digests) {
+            byte[] state = digest.getState();
+            bytes.write(ByteBuffer.allocate(4).putInt(state.length).array(), 
+                    0, 4);
+            bytes.write(state, 0, state.length);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * A hash continues from a valid checkpoint and ignores a checkpoint 
+     * written for a different version of the file.
+     */
+    @Test
+    public void testCheckpoint() throws IOException {
+        
+        Path dir = Files.createTempDirectory("TestHashGenerator");
+        try {
+            checkpoint(dir);
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+    
+    private void checkpoint(Path dir) throws IOException {
+        
+        Path   p        = createFile(3 * 4096 + 17);
+        byte[] data     = Files.readAllBytes(p);
+        long   modified = Files.getLastModifiedTime(p).toMillis();
+        HashGenerator generator = new HashGenerator(4096, dir, 4096);
+        
+        // A checkpoint holding the state of different content proves that
+        // the hash really resumes from the saved state and position: the 
+        // first 8 KB are not read again, so the result is the MD5 of the 
+        // substituted content followed by the rest of the file.
+        byte[] other = new byte[8192];
+        ResumableMD5 md5 = new ResumableMD5();
+        md5.update(other, 0, other.length);
+        new HashCheckpoint(p, "md5", data.length, modified, 
+                8192, toCheckpointState(md5)).save(dir);
+        byte[] spliced = Arrays.copyOf(data, data.length);
+        System.arraycopy(other, 0, spliced, 0, other.length);
+        assertNotEquals(DigestUtils.md5Hex(data), 
+                DigestUtils.md5Hex(spliced));
+        assertEquals(DigestUtils.md5Hex(spliced), 
+                generator.getHash(p, HashType.MD5));
+        
+        // Likewise the tree hash resumes with the saved (wrong) leaf.
+        HashGenerator tree = new HashGenerator(
+                4096, dir, 4096L, null, false, 4096L);
+        byte[] leaf = DigestUtils.sha256(other);
+        new HashCheckpoint(p, "sha256tree", data.length, modified, 
+                4096, leaf).save(dir);
+        ByteArrayOutputStream leaves = new ByteArrayOutputStream();
+        leaves.write(leaf, 0, leaf.length);
+        for (int offset = 4096; offset < data.length; offset += 4096) {
+            byte[] next = DigestUtils.sha256(Arrays.copyOfRange(data, 
+                    offset, Math.min(data.length, offset + 4096)));
+            leaves.write(next, 0, next.length);
+        }
+        String resumed = tree.getHash(p, HashType.SHA256_TREE);
+        assertNotEquals(treeHash(data, 4096), resumed);
+        assertEquals(DigestUtils.sha256Hex(leaves.toByteArray()), resumed);
+        assertNull(HashCheckpoint.load(
+                dir, p, "sha256tree", data.length, modified));
+        
+        md5 = new ResumableMD5();
+        md5.update(data, 0, 8192);
+        new HashCheckpoint(p, "md5", data.length, modified, 
+                8192, toCheckpointState(md5)).save(dir);
+        assertEquals(DigestUtils.md5Hex(data), 
+                generator.getHash(p, HashType.MD5));
+        // The checkpoint is removed once the hash completes.
+        assertNull(HashCheckpoint.load(
+                dir, p, "md5", data.length, modified));
+        
+        new HashCheckpoint(p, "md5", data.length, modified - 1000, 
+                8192, toCheckpointState(new ResumableMD5())).save(dir);
+        assertEquals(DigestUtils.md5Hex(data), 
+                generator.getHash(p, HashType.MD5));
+        assertEquals(DigestUtils.sha256Hex(DigestUtils.sha256(data)), 
+                generator.getHash(p, HashType.SHA256_TREE));
+        
+        // MD5 and the fingerprint are resumed together.
+        md5 = new ResumableMD5();
+        md5.update(data, 0, 4096);
+        XXHash64 xxh = new XXHash64();
+        xxh.update(data, 0, 4096);
+        new HashCheckpoint(p, "md5+xxhash64", data.length, modified, 
+                4096, toCheckpointState(md5, xxh)).save(dir);
+        XXHash64 expected = new XXHash64();
+        expected.update(data);
+        Map<HashType, String> hashes = generator.getHashes(
+                p, EnumSet.of(HashType.MD5, HashType.XXHASH64));
+        assertEquals(DigestUtils.md5Hex(data), hashes.get(HashType.MD5));
+        assertEquals(Hex.encodeHexString(expected.digest()), 
+                hashes.get(HashType.XXHASH64));
+    }
+    
+    /**
+     * The fingerprint must match the published XXH64 test values (seed 0)
+     * however the input is split.
+     */
+    @Test
+    public void testXXHash64() throws IOException {
+        
+        byte[] data = "The quick brown fox jumps over the lazy dog"
+                .getBytes("US-ASCII");
+        XXHash64 xxh = new XXHash64();
+        assertEquals("ef46db3751d8e999", Hex.encodeHexString(xxh.digest()));
+        xxh.update(data);
+        assertEquals("0b242d361fda71bc", Hex.encodeHexString(xxh.digest()));
+        for (int split = 0; split <= data.length; split++) {
+            xxh.update(data, 0, split);
+            XXHash64 restored = new XXHash64();
+            restored.setState(xxh.getState());
+            restored.update(data, split, data.length - split);
+            assertEquals("0b242d361fda71bc", 
+                    Hex.encodeHexString(restored.digest()));
+            xxh.reset();
+        }
+        
+        // Buffers are read in place: a (big-endian) direct buffer with a 
+        // non-zero position gives the same hash, is consumed and keeps its
+        // byte order.
+        byte[] large = Files.readAllBytes(createFile(1000));
+        xxh.update(large, 3, 990);
+        String expected = Hex.encodeHexString(xxh.digest());
+        ByteBuffer direct = ByteBuffer.allocateDirect(large.length);
+        direct.put(large).position(3).limit(993);
+        xxh.update((ByteBuffer)direct.slice().limit(5));
+        direct.position(8);
+        xxh.update(direct);
+        assertEquals(expected, Hex.encodeHexString(xxh.digest()));
+        assertEquals(993, direct.position());
+        assertEquals(ByteOrder.BIG_ENDIAN, direct.order());
+    }
+    
+    /**
+     * Each thread re-uses one digest per hash type and its hex scratch 
+     * buffers, and results stay correct when hash types of different 
+     * digest lengths are interleaved on the same thread.
+     */
+    @Test
+    public void testDigestPools() throws Exception {
+        
+        MessageDigest md5 = HashGenerator.getDigest(HashType.MD5);
+        md5.update((byte)1);
+        assertSame(md5, HashGenerator.getDigest(HashType.MD5));
+        // The pooled digest is reset when it is handed out again.
+        assertEquals(DigestUtils.md5Hex(new byte[0]), 
+                HashGenerator.toHex(HashGenerator.getDigest(HashType.MD5)));
+        assertNotSame(md5, HashGenerator.getDigest(HashType.SHA256));
+        
+        final MessageDigest[] other = new MessageDigest[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    other[0] = HashGenerator.getDigest(HashType.MD5);
+                }
+                catch (NoSuchAlgorithmException nsae) { }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(md5, other[0]);
+        
+        HashGenerator generator = new HashGenerator(4096);
+        for (int size : new int[] { 0, 17, 4096 * 3 + 5 }) {
+            Path   p    = createFile(size);
+            byte[] data = Files.readAllBytes(p);
+            for (int i = 0; i < 2; i++) {
+                assertEquals(DigestUtils.sha512Hex(data), 
+                        generator.getHash(p, HashType.SHA512));
+                assertEquals(DigestUtils.md5Hex(data), 
+                        generator.getHash(p, HashType.MD5));
+                XXHash64 xxh = new XXHash64();
+                xxh.update(data);
+                assertEquals(Hex.encodeHexString(xxh.digest()), 
+                        generator.getHash(p, HashType.XXHASH64));
+                Map<HashType, String> hashes = generator.getHashes(p, 
+                        EnumSet.of(HashType.SHA1, HashType.SHA384, 
+                                HashType.SHA256_TREE));
+                assertEquals(DigestUtils.sha1Hex(data), 
+                        hashes.get(HashType.SHA1));
+                assertEquals(DigestUtils.sha384Hex(data), 
+                        hashes.get(HashType.SHA384));
+                assertEquals(DigestUtils.sha256Hex(DigestUtils.sha256(data)),
+                        hashes.get(HashType.SHA256_TREE));
+            }
+        }
+    }
+    
+    /**
+     * The sampled hash covers the size, head, pseudo-random blocks and 
+     * tail of the file, or the whole file if it is small.
+     */
+    @Test
+    public void testSampledHash() throws IOException {
+        
+        HashGenerator generator = new HashGenerator(4096);
+        int           block     = HashType.SAMPLE_BLOCK_SIZE;
+        
+        Path   small = createFile(100);
+        byte[] data  = Files.readAllBytes(small);
+        XXHash64 expected = new XXHash64();
+        expected.update(ByteBuffer.allocate(8).putLong(data.length).array());
+        expected.update(data);
+        assertEquals(Hex.encodeHexString(expected.digest()), 
+                generator.getHash(small, HashType.XXHASH64_SAMPLED));
+        
+        Path large = createFile((HashType.SAMPLE_BLOCKS + 2) * block + 1);
+        data = Files.readAllBytes(large);
+        expected.update(ByteBuffer.allocate(8).putLong(data.length).array());
+        expected.update(data, 0, block);
+        java.util.Random random = new java.util.Random(data.length);
+        for (int i = 0; i < HashType.SAMPLE_BLOCKS; i++) {
+            int offset = block + (int)Math.floorMod(
+                    random.nextLong(), data.length - (3L * block) + 1);
+            expected.update(data, offset, block);
+        }
+        expected.update(data, data.length - block, block);
+        String hash = Hex.encodeHexString(expected.digest());
+        assertEquals(hash, 
+                generator.getHash(large, HashType.XXHASH64_SAMPLED));
+        
+        // Changing the tail changes the sampled hash.
+        data[data.length - 1]++;
+        Files.write(large, data);
+        assertNotEquals(hash, 
+                generator.getHash(large, HashType.XXHASH64_SAMPLED));
+    }
+    
+    /**
+     * Ensure the token bucket delays consumption beyond its rate and that
+     * throttled reads produce the same hashes.
+     */
+    @Test
+    public void testRateLimiter() throws IOException, InterruptedException {
+        
+        RateLimiter limiter = new RateLimiter(1000000L);
+        long        start   = System.nanoTime();
+        limiter.acquire(1000000L);
+        limiter.acquire(250000L);
+        assertTrue((System.nanoTime() - start) >= 200000000L);
+        
+        limiter.setRate(0L);
+        start = System.nanoTime();
+        limiter.acquire(100000000L);
+        assertTrue((System.nanoTime() - start) < 100000000L);
+        
+        final long[] total = new long[1];
+        Path p = createFile(3 * 1024 * 1024 + 17);
+        ReadThrottle throttle = new ReadThrottle() {
+            @Override
+            public synchronized void acquire(Path file, int bytes) {
+                total[0] += bytes;
+            }
+        };
+        HashGenerator generator = new HashGenerator(
+                64 * 1024, null, 0L, throttle);
+        assertEquals(DigestUtils.md5Hex(Files.readAllBytes(p)), 
+                generator.getHash(p, HashType.MD5));
+        assertEquals(Files.size(p), total[0]);
+    }
+    
+    /**
+     * Ensure read-ahead produces the same hashes, including when resuming
+     * from a checkpoint.
+     */
+    @Test
+    public void testReadAhead() throws IOException {
+        
+        HashGenerator plain = new HashGenerator(8192);
+        HashGenerator ahead = new HashGenerator(8192, null, 0L, null, true);
+        for (int size : new int[] { 0, 1, 8191, 8192, 8193, 1000003 }) {
+            Path p = createFile(size);
+            assertEquals(plain.getHashes(p, EnumSet.of(
+                            HashType.MD5, HashType.SHA1, HashType.XXHASH64)),
+                    ahead.getHashes(p, EnumSet.of(
+                            HashType.MD5, HashType.SHA1, HashType.XXHASH64)));
+        }
+        
+        Path dir = Files.createTempDirectory("TestHashGenerator");
+        try {
+            Path p = createFile(1000003);
+            HashGenerator resumable = new HashGenerator(
+                    8192, dir, 65536L, null, true);
+            assertEquals(plain.getHash(p, HashType.MD5), 
+                    resumable.getHash(p, HashType.MD5));
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+    
+    /**
+     * Prefix hashes must match the hashes of the prefix, with and without
+     * read-ahead and for tree hashes, and must never read past the 
+     * requested length.  Checkpoints must not be written.
+     */
+    @Test
+    public void testPrefixHashes() throws IOException {
+        
+        Path dir = Files.createTempDirectory("TestHashGenerator");
+        try {
+            Path   p    = createFile(3 * 4096 + 17);
+            byte[] data = Files.readAllBytes(p);
+            for (boolean readAhead : new boolean[] { false, true }) {
+                HashGenerator generator = new HashGenerator(
+                        1000, dir, 4096L, null, readAhead, 4096L);
+                for (int length : new int[] { 0, 1, 999, 1000, 4097, 
+                        data.length, data.length + 1 }) {
+                    byte[] prefix = Arrays.copyOf(
+                            data, Math.min(length, data.length));
+                    Map<HashType, String> hashes = generator.getPrefixHashes(
+                            p, EnumSet.of(HashType.MD5, HashType.XXHASH64,
+                                    HashType.SHA256_TREE), 0, length);
+                    assertEquals(DigestUtils.md5Hex(prefix), 
+                            hashes.get(HashType.MD5));
+                    assertEquals(treeHash(prefix, 4096), 
+                            hashes.get(HashType.SHA256_TREE));
+                }
+                try (DirectoryStream<Path> files = 
+                        Files.newDirectoryStream(dir)) {
+                    assertFalse(files.iterator().hasNext());
+                }
+            }
+        }
+        finally {
+            deleteDirectory(dir);
+        }
+    }
+}